@@ -27,6 +27,7 @@ import java.io.PrintWriter;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -1225,15 +1226,19 @@ public class SPAnnotationProcessor extends AbstractProcessor {
 
 		importedClassNames.add(ArrayList.class.getName());
 		importedClassNames.add(Arrays.class.getName());
+		importedClassNames.add(Collections.class.getName());
 		
 		StringBuilder sb = new StringBuilder();
 		final String ppaField = "persistedPropertiesArray";
 		final String pplField = "persistedPropertiesList";
+		final String pplLocal = "persistedProperties";
 		
-		// private List<String> persistedPropertiesList = null;
+		// private volatile List<String> persistedPropertiesList = null;
 		// We are storing the persisted properties list here to save time and
-		// memory on recreating and destroying this list repeatedly. 
-		println(sb, tabs, String.format("private %s<%s> %s = null;",
+		// memory on recreating and destroying this list repeatedly. Helpers
+		// are shared between threads, so the list is only published once it
+		// is complete and it cannot be modified afterwards.
+		println(sb, tabs, String.format("private volatile %s<%s> %s = null;",
 				List.class.getSimpleName(),
 				String.class.getSimpleName(),
 				pplField));
@@ -1249,9 +1254,15 @@ public class SPAnnotationProcessor extends AbstractProcessor {
 		
 		// If we have already created a list holding the properties return that
 		// instead of creating a new one.
-		println(sb, tabs, String.format("if (%s != null) return %s;",
-				pplField,
+		// List<String> persistedProperties = persistedPropertiesList;
+		println(sb, tabs, String.format("%s<%s> %s = %s;",
+				List.class.getSimpleName(),
+				String.class.getSimpleName(),
+				pplLocal,
 				pplField));
+		println(sb, tabs, String.format("if (%s != null) return %s;",
+				pplLocal,
+				pplLocal));
 		
 		// Create array of strings holding persisted properties
 		// String[] persistedPropertiesArray = {
@@ -1275,26 +1286,36 @@ public class SPAnnotationProcessor extends AbstractProcessor {
 		}
 		println(sb, tabs, "};");
 		// Put properties into list, along with the parent's persisted properties
-		// persistedPropertiesList = 
+		// persistedProperties = 
 		// 		new ArrayList<String>(Arrays.asList(persistedPropertiesArray));
 		println(sb, tabs, 
 				String.format("%s = new %s<%s>(%s.asList(%s));",
-						pplField,
+						pplLocal,
 						ArrayList.class.getSimpleName(),
 						String.class.getSimpleName(),
 						Arrays.class.getSimpleName(),
 						ppaField));
 		if (SPObject.class.isAssignableFrom(visitedClass.getSuperclass())) {
-			// persistedPropertiesList.addAll(super.getPersistedProperties());
+			// persistedProperties.addAll(super.getPersistedProperties());
 			println(sb, tabs, 
 					String.format("%s.addAll(super.%s());",
-							pplField,
+							pplLocal,
 							GET_PERSISTED_PROPERTIES_METHOD_NAME));
 		}
 		
-		// return persistedPropertiesList;
+		// persistedProperties = Collections.unmodifiableList(persistedProperties);
+		println(sb, tabs, 
+				String.format("%s = %s.unmodifiableList(%s);",
+						pplLocal,
+						Collections.class.getSimpleName(),
+						pplLocal));
+		// persistedPropertiesList = persistedProperties;
+		println(sb, tabs, 
+				String.format("%s = %s;", pplField, pplLocal));
+		
+		// return persistedProperties;
 		println(sb, tabs, 
-				String.format("return %s;", pplField));
+				String.format("return %s;", pplLocal));
 		tabs--;
 		println(sb, tabs, "}");
 		return sb.toString();
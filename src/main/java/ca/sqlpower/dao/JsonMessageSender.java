@@ -19,12 +19,15 @@
 
 package ca.sqlpower.dao;
 
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONStreamWriter;
 
 /**
  * Class to receive and store JSON objects from persisters that communicate with MessageSenders.
@@ -67,8 +70,24 @@ public class JsonMessageSender implements MessageSender<JSONObject> {
     	return jsonArray;
     }
 
+    /**
+     * Returns the messages as the text of a JSON array. The text is written
+     * directly from the messages without copying them into a
+     * {@link JSONArray} first.
+     */
     public synchronized String getJsonString() {
-        return getJsonArray().toString();
+        StringWriter out = new StringWriter();
+        JSONStreamWriter writer = new JSONStreamWriter(out);
+        try {
+            writer.beginArray();
+            for (JSONObject object : jsonObjects) {
+                writer.value(object);
+            }
+            writer.endArray();
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+        return out.toString();
     }
     
 }
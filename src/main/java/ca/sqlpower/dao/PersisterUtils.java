@@ -24,6 +24,7 @@ import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Collection;
@@ -31,6 +32,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.imageio.ImageIO;
 
@@ -48,10 +51,41 @@ import ca.sqlpower.sqlobject.SQLObject;
  */
 public class PersisterUtils {
 	
+	/**
+	 * The classes loaded by name for the child type lookups, keyed by their
+	 * fully qualified name. Classes do not change at runtime so each name only
+	 * needs to go through the class loader once.
+	 */
+	private static final ConcurrentMap<String, Class<?>> classesByName = 
+		new ConcurrentHashMap<String, Class<?>>();
+
+	/**
+	 * The allowedChildTypes field of each SPObject class looked up so far.
+	 * The field is read each time it is used rather than its value being
+	 * cached, as some classes do not declare it final.
+	 */
+	private static final ConcurrentMap<Class<?>, Field> allowedChildTypesFields = 
+		new ConcurrentHashMap<Class<?>, Field>();
+	
 	private PersisterUtils() {
 		//cannot instantiate this class as it is just static utility methods.
 	}
 
+	/**
+	 * Loads the class of the given name with the class loader of this class,
+	 * remembering it for later calls.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Class<? extends SPObject> loadSPObjectClass(String className) 
+			throws ClassNotFoundException {
+		Class<?> loadedClass = classesByName.get(className);
+		if (loadedClass == null) {
+			loadedClass = PersisterUtils.class.getClassLoader().loadClass(className);
+			classesByName.putIfAbsent(className, loadedClass);
+		}
+		return (Class<? extends SPObject>) loadedClass;
+	}
+
 	/**
 	 * Converts an image to an output stream to be persisted in some way.
 	 * 
@@ -275,14 +309,12 @@ public class PersisterUtils {
      * returned, depending if it is the first. If the childType is not a
      * valid child type of the parentType -1 will be returned.
      */
-    @SuppressWarnings("unchecked")
     public static int getTypePosition(String childClassName, String parentClassName) 
             throws IllegalArgumentException, SecurityException, IllegalAccessException, NoSuchFieldException, ClassNotFoundException {
-        Class<? extends SPObject> childType = (Class<? extends SPObject>) PersisterUtils.class.getClassLoader().loadClass(childClassName);
-        Class<? extends SPObject> parentType = (Class<? extends SPObject>) PersisterUtils.class.getClassLoader().loadClass(parentClassName);
+        Class<? extends SPObject> childType = loadSPObjectClass(childClassName);
+        Class<? extends SPObject> parentType = loadSPObjectClass(parentClassName);
         
-        List<Class<? extends SPObject>> allowedChildTypes = (List<Class<? extends SPObject>>) 
-            parentType.getDeclaredField("allowedChildTypes").get(null);
+        List<Class<? extends SPObject>> allowedChildTypes = getAllowedChildTypes(parentType);
         for (int i = 0; i < allowedChildTypes.size(); i++) {
             Class<? extends SPObject> allowedType = allowedChildTypes.get(i);
             if (allowedType.isAssignableFrom(childType)) {
@@ -299,26 +331,23 @@ public class PersisterUtils {
      * null if the parent class has no valid child type of the given child
      * class.
      */
-    @SuppressWarnings("unchecked")
     public static Class<? extends SPObject> getParentAllowedChildType(String childClassName, String parentClassName) 
             throws IllegalArgumentException, SecurityException, IllegalAccessException, NoSuchFieldException, ClassNotFoundException {
-        Class<? extends SPObject> childType = (Class<? extends SPObject>) PersisterUtils.class.getClassLoader().loadClass(childClassName);
+        Class<? extends SPObject> childType = loadSPObjectClass(childClassName);
         
         if (parentClassName == null || parentClassName.trim().length() == 0) {
             return childType;
         }
         
-        Class<? extends SPObject> parentType = (Class<? extends SPObject>) PersisterUtils.class.getClassLoader().loadClass(parentClassName);
+        Class<? extends SPObject> parentType = loadSPObjectClass(parentClassName);
         return getParentAllowedChildType(childType, parentType);
     }
 
-	@SuppressWarnings("unchecked")
 	public static Class<? extends SPObject> getParentAllowedChildType(
 			Class<? extends SPObject> childType,
 			Class<? extends SPObject> parentType)
 			throws IllegalAccessException, NoSuchFieldException {
-		List<Class<? extends SPObject>> allowedChildTypes = (List<Class<? extends SPObject>>) 
-            parentType.getDeclaredField("allowedChildTypes").get(null);
+		List<Class<? extends SPObject>> allowedChildTypes = getAllowedChildTypes(parentType);
         if (allowedChildTypes.contains(childType)) return childType;
         for (int i = 0; i < allowedChildTypes.size(); i++) {
             Class<? extends SPObject> allowedType = allowedChildTypes.get(i);
@@ -335,7 +364,12 @@ public class PersisterUtils {
     @SuppressWarnings("unchecked")
     public static List<Class<? extends SPObject>> getAllowedChildTypes(Class<? extends SPObject> parentClass) 
     		throws IllegalArgumentException, SecurityException, IllegalAccessException, NoSuchFieldException {
-		return (List<Class<? extends SPObject>>) parentClass.getDeclaredField("allowedChildTypes").get(null);
+    	Field field = allowedChildTypesFields.get(parentClass);
+    	if (field == null) {
+    		field = parentClass.getDeclaredField("allowedChildTypes");
+    		allowedChildTypesFields.putIfAbsent(parentClass, field);
+    	}
+		return (List<Class<? extends SPObject>>) field.get(null);
     }
 
     /**
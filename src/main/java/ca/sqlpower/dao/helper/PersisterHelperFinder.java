@@ -19,8 +19,8 @@
 
 package ca.sqlpower.dao.helper;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import ca.sqlpower.object.SPObject;
 
@@ -40,19 +40,37 @@ public class PersisterHelperFinder {
 	 * The persister helpers won't change at runtime and there is a limited
 	 * number of them, one per SPObject class, so this cache can help speed up
 	 * performance, with little memory consumption, for large object trees.
+	 * This map holds the one instance of each helper, keyed by the fully
+	 * qualified name of the helper class. The only state a generated helper
+	 * keeps is its list of persisted properties, which it publishes safely
+	 * once built, so one instance is shared by all threads.
 	 */
-	private static final Map<Class<? extends SPObject>,  SPPersisterHelper<? extends SPObject>> cache = 
-			new HashMap<Class<? extends SPObject>, SPPersisterHelper<? extends SPObject>>();
+	private static final ConcurrentMap<String, SPPersisterHelper<? extends SPObject>> helpers = 
+			new ConcurrentHashMap<String, SPPersisterHelper<? extends SPObject>>();
 
 	/**
-	 * Returns a new instance of the persister helper for the given class. At
+	 * The helpers of {@link #helpers} keyed by the class they persist, so a
+	 * lookup by class does not have to build the helper's class name.
+	 */
+	private static final ConcurrentMap<Class<? extends SPObject>,  SPPersisterHelper<? extends SPObject>> cache = 
+			new ConcurrentHashMap<Class<? extends SPObject>, SPPersisterHelper<? extends SPObject>>();
+
+	/**
+	 * The helpers of {@link #helpers} keyed by the fully qualified name of
+	 * the class they persist.
+	 */
+	private static final ConcurrentMap<String, SPPersisterHelper<? extends SPObject>> cacheByName = 
+			new ConcurrentHashMap<String, SPPersisterHelper<? extends SPObject>>();
+
+	/**
+	 * Returns the persister helper for the given class. At
 	 * current all persisters are located in the
 	 * ca.sqlpower.dao.helper.generated package but this will change.
 	 * 
 	 * @param persistClass
 	 *            The new persister helper will create and modify objects of
 	 *            this type.
-	 * @return A new persister helper that will create and modify objects of the
+	 * @return The persister helper that will create and modify objects of the
 	 *         given type.
 	 * @throws ClassNotFoundException
 	 *             Thrown if there is no persister helper for the class. This
@@ -64,12 +82,12 @@ public class PersisterHelperFinder {
 	 *             Thrown if the default constructor is not visible for the
 	 *             persister helper.
 	 */
-	@SuppressWarnings("unchecked")
 	public static SPPersisterHelper<? extends SPObject> findPersister(
 			Class<? extends SPObject> persistClass) 
 			throws ClassNotFoundException, InstantiationException, IllegalAccessException {
-		if (cache.get(persistClass) != null) {
-			return cache.get(persistClass);
+		SPPersisterHelper<? extends SPObject> persister = cache.get(persistClass);
+		if (persister != null) {
+			return persister;
 		}
 		String className;
 		if (persistClass.getSimpleName().indexOf("$") == -1) {
@@ -78,21 +96,20 @@ public class PersisterHelperFinder {
 			className = persistClass.getSimpleName().substring(persistClass.getSimpleName().lastIndexOf("$") + 1);
 		}
 		String persisterClassName = persistClass.getPackage().getName() + "." + GENERATED_PACKAGE_NAME + "." + className + "PersisterHelper";
-		Class<?> persisterClass = PersisterHelperFinder.class.getClassLoader().loadClass(persisterClassName);
-		SPPersisterHelper<? extends SPObject> newPersister = (SPPersisterHelper<? extends SPObject>) persisterClass.newInstance();
-		cache.put(persistClass, newPersister);
-		return newPersister;
+		persister = getHelper(persisterClassName);
+		cache.putIfAbsent(persistClass, persister);
+		return persister;
 	}
 	
 	/**
-	 * Returns a new instance of the persister helper for the given class. At
+	 * Returns the persister helper for the given class. At
 	 * current all persisters are located in the
 	 * ca.sqlpower.dao.helper.generated package but this will change.
 	 * 
 	 * @param type
 	 *            The new persister helper will create and modify objects of
 	 *            this type. This must be the fully qualified class name.
-	 * @return A new persister helper that will create and modify objects of the
+	 * @return The persister helper that will create and modify objects of the
 	 *         given type.
 	 * @throws ClassNotFoundException
 	 *             Thrown if there is no persister helper for the class. This
@@ -104,12 +121,34 @@ public class PersisterHelperFinder {
 	 *             Thrown if the default constructor is not visible for the
 	 *             persister helper.
 	 */
-	@SuppressWarnings("unchecked")
 	public static SPPersisterHelper<? extends SPObject> findPersister(
 			String type) throws ClassNotFoundException, InstantiationException, IllegalAccessException {
-		String persisterClassName = getPersisterHelperClassName(type);
+		SPPersisterHelper<? extends SPObject> persister = cacheByName.get(type);
+		if (persister != null) {
+			return persister;
+		}
+		persister = getHelper(getPersisterHelperClassName(type));
+		cacheByName.putIfAbsent(type, persister);
+		return persister;
+	}
+
+	/**
+	 * Returns the one instance of the persister helper of the given class
+	 * name, creating it if this is the first request for it. If another
+	 * thread created the helper first, that helper is returned instead so
+	 * every caller shares one instance.
+	 */
+	@SuppressWarnings("unchecked")
+	private static SPPersisterHelper<? extends SPObject> getHelper(String persisterClassName) 
+			throws ClassNotFoundException, InstantiationException, IllegalAccessException {
+		SPPersisterHelper<? extends SPObject> persister = helpers.get(persisterClassName);
+		if (persister != null) {
+			return persister;
+		}
 		Class<?> persisterClass = PersisterHelperFinder.class.getClassLoader().loadClass(persisterClassName);
-		return (SPPersisterHelper<? extends SPObject>) persisterClass.newInstance();
+		SPPersisterHelper<? extends SPObject> newPersister = (SPPersisterHelper<? extends SPObject>) persisterClass.newInstance();
+		SPPersisterHelper<? extends SPObject> existing = helpers.putIfAbsent(persisterClassName, newPersister);
+		return existing == null ? newPersister : existing;
 	}
 	
 	/**
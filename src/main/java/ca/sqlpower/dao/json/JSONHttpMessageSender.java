@@ -19,9 +19,12 @@
 
 package ca.sqlpower.dao.json;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
@@ -30,9 +33,10 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.entity.StringEntity;
-import org.json.JSONArray;
+import org.apache.http.entity.ByteArrayEntity;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONStreamWriter;
 
 import ca.sqlpower.dao.HttpMessageSender;
 import ca.sqlpower.dao.SPPersistenceException;
@@ -42,26 +46,31 @@ import ca.sqlpower.enterprise.client.SPServerInfo;
  * An {@link HttpMessageSender} implementation that specifically sends it's
  * message content in the JSON format. (see <a
  * href="http://www.json.org">www.json.org</a>).
+ * <p>
+ * The messages are written straight into the request body with a
+ * {@link JSONStreamWriter} when they are flushed. Characters outside of ASCII
+ * are escaped so the body reads the same whatever character set the server
+ * decodes it with.
  */
 public class JSONHttpMessageSender extends HttpMessageSender<JSONObject> {
 	
-	private JSONArray messageArray;
+	private final List<JSONObject> messages;
 	
 	public JSONHttpMessageSender(HttpClient httpClient, SPServerInfo serverInfo,
 			String rootUUID) {
 		super(httpClient, serverInfo, rootUUID);
-		messageArray = new JSONArray();
+		messages = new ArrayList<JSONObject>();
 	}
 
 	public void send(JSONObject content) throws SPPersistenceException {
-		messageArray.put(content);
+		messages.add(content);
 	}
 	
 	public void flush() throws SPPersistenceException {
 		try {
 			URI serverURI = getServerURI();
 			HttpPost postRequest = new HttpPost(serverURI);
-			postRequest.setEntity(new StringEntity(messageArray.toString()));
+			postRequest.setEntity(new ByteArrayEntity(writeMessages()));
 			postRequest.setHeader("Content-Type", "application/json");
 			HttpUriRequest request = postRequest;
 	        getHttpClient().execute(request, new ResponseHandler<Void>() {
@@ -79,22 +88,33 @@ public class JSONHttpMessageSender extends HttpMessageSender<JSONObject> {
 	        });
 		} catch (URISyntaxException e) {
 			throw new SPPersistenceException(null, e);
+		} catch (JSONException e) {
+			throw new SPPersistenceException(null, e);
 		} catch (ClientProtocolException e) {
 			throw new SPPersistenceException(null, e);
 		} catch (IOException e) {
 			throw new SPPersistenceException(null, e);
 		} finally {
-			clearMessageArray();
+			messages.clear();
 		}
 	}
-	
-	public void clear() {
-		this.clearMessageArray();
+
+	/**
+	 * Writes the messages waiting to be sent as a JSON array of ASCII bytes.
+	 */
+	private byte[] writeMessages() throws JSONException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JSONStreamWriter writer = new JSONStreamWriter(out);
+		writer.beginArray();
+		for (JSONObject message : messages) {
+			writer.value(message);
+		}
+		writer.endArray();
+		writer.flush();
+		return out.toByteArray();
 	}
 	
-	private void clearMessageArray() {
-		for (int i = messageArray.length() - 1; i >= 0; i--) {
-			messageArray.remove(i);
-		}
+	public void clear() {
+		messages.clear();
 	}
 }
@@ -20,7 +20,10 @@
 package ca.sqlpower.dao.json;
 
 import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.annotation.Nonnull;
 
@@ -29,6 +32,8 @@ import org.apache.log4j.Logger;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONStreamReader;
+import org.json.JSONStreamWriter;
 import org.json.JSONTokener;
 
 import ca.sqlpower.dao.MessageDecoder;
@@ -70,13 +75,44 @@ public class SPJSONMessageDecoder implements MessageDecoder<String> {
 	}
 
 	/**
-	 * Takes in a String, which is passed as a {@link JSONTokener}, where each
-	 * token represents a single persister call.
+	 * Takes in a String containing an array of persister calls and reads it
+	 * with a {@link JSONStreamReader}.
 	 * 
-	 * @see #decode(JSONTokener)
+	 * @see #decode(JSONStreamReader)
 	 */
 	public void decode(@Nonnull String message) throws SPPersistenceException {
-		decode(new JSONTokener(message));
+		decode(new JSONStreamReader(message));
+	}
+
+	/**
+	 * Reads an array of persister calls from the given reader and makes each
+	 * call as soon as it has been read. Unlike {@link #decode(JSONTokener)} no
+	 * {@link JSONObject} is built for the calls; the members of each call are
+	 * read straight into a {@link PersistCall} that is reused for every call.
+	 * The members of a call may come in any order. Members that are not part
+	 * of a persist call are skipped.
+	 * <p>
+	 * The expected members of each call are the same as for
+	 * {@link #decode(JSONTokener)}.
+	 */
+	public void decode(@Nonnull JSONStreamReader reader) throws SPPersistenceException {
+		PersistCall call = new PersistCall();
+		try {
+			synchronized (persister) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					call.read(reader);
+					if (logger.isDebugEnabled()) {
+						logger.debug("Decoding Message: " + call);
+					}
+					decode(call);
+				}
+				reader.endArray();
+			}
+		} catch (JSONException e) {
+			logger.error("Error decoding persist call " + call);
+			throw new SPPersistenceException(call.getUUID(), e);
+		}
 	}
 
 	/**
@@ -232,34 +268,79 @@ public class SPJSONMessageDecoder implements MessageDecoder<String> {
 		}
 	}
 
-	private static Object getNullable(@Nonnull JSONObject jo, String propName) throws JSONException {
-		final Object value = jo.get(propName);
-		if (value == JSONObject.NULL) {
-			return null;
-		} else {
-			return value;
+	/**
+	 * Makes the persister calls in the given list, which were read ahead of
+	 * time with {@link PersistCall#read(JSONStreamReader)}. This lets the
+	 * calls of a large update be read off the network on one thread and made
+	 * in several smaller groups on another.
+	 */
+	public void decode(@Nonnull List<PersistCall> calls) throws SPPersistenceException {
+		synchronized (persister) {
+			for (PersistCall call : calls) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Decoding Message: " + call);
+				}
+				decode(call);
+			}
 		}
 	}
-	
+
+	/**
+	 * Rolls back the persister's transaction. This is used to abandon an
+	 * update whose calls were only partly given to
+	 * {@link #decode(List)} because the rest of them could not be read.
+	 */
+	public void rollback() {
+		synchronized (persister) {
+			persister.rollback();
+		}
+	}
+
 	public static Object getWithType(@Nonnull JSONObject jo, DataType type, String propName) throws JSONException {
-		if (getNullable(jo, propName) == null) return null;
+		return getWithType(jo.get(propName), type, propName);
+	}
+
+	/**
+	 * Converts a value read from a JSON persist call to the Java type used for
+	 * the given {@link DataType}. The value is one of the objects a
+	 * {@link JSONObject} holds and is converted the same way the typed getters
+	 * of {@link JSONObject} convert it.
+	 * 
+	 * @param value
+	 *            The value as read, {@link JSONObject#NULL} for a JSON null.
+	 * @param propName
+	 *            The name of the member the value was read from, used in
+	 *            error messages.
+	 */
+	private static Object getWithType(@Nonnull Object value, DataType type, String propName) throws JSONException {
+		if (value == JSONObject.NULL) return null;
 
 		switch (type) {
 		case BOOLEAN:
-			return Boolean.valueOf(jo.getBoolean(propName));
+			if (value.equals(Boolean.FALSE) || 
+					(value instanceof String && ((String) value).equalsIgnoreCase("false"))) {
+				return Boolean.FALSE;
+			} else if (value.equals(Boolean.TRUE) || 
+					(value instanceof String && ((String) value).equalsIgnoreCase("true"))) {
+				return Boolean.TRUE;
+			}
+			throw new JSONException("JSONObject[" + JSONObject.quote(propName) + "] is not a Boolean.");
 		case DOUBLE:
-			return Double.valueOf(jo.getDouble(propName));
+			return Double.valueOf(toDouble(value, propName));
 		case INTEGER:	
-			return Integer.valueOf(jo.getInt(propName));
+			return Integer.valueOf(value instanceof Number ? 
+					((Number) value).intValue() : (int) toDouble(value, propName));
 		case LONG:
-			return Long.valueOf(jo.getLong(propName));
+			return Long.valueOf(value instanceof Number ? 
+					((Number) value).longValue() : (long) toDouble(value, propName));
 		case SHORT:
-			return Short.valueOf(jo.getShort(propName));
+			return Short.valueOf(value instanceof Number ? 
+					((Number) value).shortValue() : (short) toDouble(value, propName));
 		case FLOAT:
-			return Float.valueOf(jo.getFloat(propName));
+			return Float.valueOf(value instanceof Number ? 
+					((Number) value).floatValue() : (float) toDouble(value, propName));
 		case PNG_IMG:
-			getNullable(jo, propName);
-			String base64Data = jo.getString(propName);
+			String base64Data = value.toString();
 			byte[] decodedBytes;
 			try {
 				decodedBytes = Base64.decodeBase64(base64Data.getBytes("ascii"));
@@ -271,7 +352,16 @@ public class SPJSONMessageDecoder implements MessageDecoder<String> {
 		case STRING:
 		case REFERENCE:
 		default:
-			return getNullable(jo, propName);
+			return value;
+		}
+	}
+
+	private static double toDouble(Object value, String propName) throws JSONException {
+		try {
+			return value instanceof Number ? 
+					((Number) value).doubleValue() : Double.valueOf((String) value).doubleValue();
+		} catch (Exception e) {
+			throw new JSONException("JSONObject[" + JSONObject.quote(propName) + "] is not a number.");
 		}
 	}
 
@@ -309,10 +399,23 @@ public class SPJSONMessageDecoder implements MessageDecoder<String> {
 	 *             be retrieved.
 	 */
 	private void decode(JSONObject jsonObject) throws SPPersistenceException {
+		PersistCall call = new PersistCall();
+		call.read(jsonObject);
+		decode(call);
+	}
+
+	/**
+	 * Makes the {@link SPPersister} call described by the given persist call.
+	 * 
+	 * @throws SPPersistenceException
+	 *             Thrown if a member the call needs is missing or cannot be
+	 *             converted to the type the call needs.
+	 */
+	private void decode(PersistCall call) throws SPPersistenceException {
 		String uuid = null;
 		try {
-			uuid = jsonObject.getString("uuid");
-			SPPersistMethod method = SPPersistMethod.getMethodForCode(jsonObject.getString(SPJSONPersister.METHOD));
+			uuid = call.getString(PersistCall.UUID);
+			SPPersistMethod method = SPPersistMethod.getMethodForCode(call.getString(PersistCall.METHOD));
 			String parentUUID;
 			String propertyName;
 			DataType propertyType;
@@ -325,32 +428,29 @@ public class SPJSONMessageDecoder implements MessageDecoder<String> {
 				persister.commit();
 				break;
 			case persistObject:
-				parentUUID = jsonObject.getString(SPJSONPersister.PARENT_UUID);
-				if (parentUUID.equals("")) {
-					//throw new SPPersistenceException(null, "Cannot persist object with null UUID, json is " + jsonObject);
-				}
-				String type = jsonObject.getString("type");
-				int index = jsonObject.getInt("index");
+				parentUUID = call.getString(PersistCall.PARENT_UUID);
+				String type = call.getString(PersistCall.TYPE);
+				int index = call.getInt(PersistCall.INDEX);
 				persister.persistObject(parentUUID, type, uuid, index);
 				break;
 			case changeProperty:
-				propertyName = jsonObject.getString(SPJSONPersister.PROPERTY_NAME);
-				propertyType = DataType.valueOf(jsonObject.getString("type"));
-				newValue = getWithType(jsonObject, propertyType, SPJSONPersister.NEW_VALUE);
-				Object oldValue = getWithType(jsonObject, propertyType, "oldValue");
+				propertyName = call.getString(PersistCall.PROPERTY_NAME);
+				propertyType = DataType.valueOf(call.getString(PersistCall.TYPE));
+				newValue = call.getWithType(PersistCall.NEW_VALUE, propertyType);
+				Object oldValue = call.getWithType(PersistCall.OLD_VALUE, propertyType);
 				persister.persistProperty(uuid, propertyName,
 						propertyType, oldValue, newValue);
 				break;
 			case persistProperty:
-				propertyName = jsonObject.getString(SPJSONPersister.PROPERTY_NAME);
-				propertyType = DataType.valueOf(jsonObject.getString("type"));
-				newValue = getWithType(jsonObject, propertyType, SPJSONPersister.NEW_VALUE);
+				propertyName = call.getString(PersistCall.PROPERTY_NAME);
+				propertyType = DataType.valueOf(call.getString(PersistCall.TYPE));
+				newValue = call.getWithType(PersistCall.NEW_VALUE, propertyType);
 				if (newValue == null) logger.debug("newValue was null for propertyName " + propertyName);
 				persister.persistProperty(uuid, propertyName,
 						propertyType, newValue);
 				break;
 			case removeObject:			
-				parentUUID = jsonObject.getString(SPJSONPersister.PARENT_UUID);
+				parentUUID = call.getString(PersistCall.PARENT_UUID);
 				if (parentUUID.equals("")) {
 					throw new SPPersistenceException(null, "Cannot persist object with null UUID");
 				}
@@ -364,10 +464,137 @@ public class SPJSONMessageDecoder implements MessageDecoder<String> {
 						"Does not support SP persistence method " + method);
 			}
 		} catch (JSONException e) {
-			if (jsonObject != null) {
-				logger.error("Error decoding JSONObject " + jsonObject);
-			}
+			logger.error("Error decoding persist call " + call);
 			throw new SPPersistenceException(uuid, e);
 		}
 	}
+
+	/**
+	 * The members of a single persist call. The values are the objects a
+	 * {@link JSONObject} would hold for them, or null for missing members, so
+	 * a call is decoded the same way whether it was read from a stream or
+	 * from a {@link JSONObject}.
+	 */
+	public static class PersistCall {
+
+		static final int METHOD = 0;
+		static final int UUID = 1;
+		static final int PARENT_UUID = 2;
+		static final int TYPE = 3;
+		static final int INDEX = 4;
+		static final int PROPERTY_NAME = 5;
+		static final int NEW_VALUE = 6;
+		static final int OLD_VALUE = 7;
+
+		/**
+		 * The JSON names of the members, indexed by the constants above.
+		 */
+		private static final String[] NAMES = new String[] {
+			SPJSONPersister.METHOD, "uuid", SPJSONPersister.PARENT_UUID, "type", "index",
+			SPJSONPersister.PROPERTY_NAME, SPJSONPersister.NEW_VALUE, "oldValue"
+		};
+
+		private final Object[] values = new Object[NAMES.length];
+
+		/**
+		 * Reads the next object of the reader into this call, replacing the
+		 * values of the previous call.
+		 */
+		public void read(JSONStreamReader reader) throws JSONException {
+			Arrays.fill(values, null);
+			reader.beginObject();
+			while (reader.hasNext()) {
+				int member = memberFor(reader.nextName());
+				if (member == -1) {
+					reader.skipValue();
+				} else {
+					values[member] = reader.nextValue();
+				}
+			}
+			reader.endObject();
+		}
+
+		public void read(JSONObject jsonObject) {
+			for (int i = 0; i < NAMES.length; i++) {
+				values[i] = jsonObject.opt(NAMES[i]);
+			}
+		}
+
+		private static int memberFor(String name) {
+			for (int i = 0; i < NAMES.length; i++) {
+				if (NAMES[i].equals(name)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		private Object get(int member) throws JSONException {
+			Object value = values[member];
+			if (value == null) {
+				throw new JSONException("JSONObject[" + JSONObject.quote(NAMES[member]) + "] not found.");
+			}
+			return value;
+		}
+
+		String getString(int member) throws JSONException {
+			return get(member).toString();
+		}
+
+		int getInt(int member) throws JSONException {
+			Object value = get(member);
+			return value instanceof Number ? 
+					((Number) value).intValue() : (int) toDouble(value, NAMES[member]);
+		}
+
+		Object getWithType(int member, DataType type) throws JSONException {
+			return SPJSONMessageDecoder.getWithType(get(member), type, NAMES[member]);
+		}
+
+		/**
+		 * Returns the persister method of the call, or null if the call does
+		 * not name one this version knows.
+		 */
+		public SPPersistMethod getMethod() {
+			return values[METHOD] == null ? null : SPPersistMethod.getMethodForCode(values[METHOD].toString());
+		}
+
+		/**
+		 * Returns the UUID of the call, or null if the call does not have
+		 * one.
+		 */
+		public String getUUID() {
+			return values[UUID] == null ? null : values[UUID].toString();
+		}
+
+		public String getPropertyName() {
+			return values[PROPERTY_NAME] == null ? null : values[PROPERTY_NAME].toString();
+		}
+
+		/**
+		 * Returns the new value of the call as read, {@link JSONObject#NULL}
+		 * for a JSON null or null if the call does not have one.
+		 */
+		public Object getNewValue() {
+			return values[NEW_VALUE];
+		}
+
+		@Override
+		public String toString() {
+			StringWriter out = new StringWriter();
+			JSONStreamWriter writer = new JSONStreamWriter(out);
+			try {
+				writer.beginObject();
+				for (int i = 0; i < NAMES.length; i++) {
+					if (values[i] != null) {
+						writer.name(NAMES[i]).value(values[i]);
+					}
+				}
+				writer.endObject();
+			} catch (JSONException e) {
+				return super.toString();
+			}
+			return out.toString();
+		}
+	}
 }
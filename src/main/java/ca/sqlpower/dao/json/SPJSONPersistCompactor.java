@@ -0,0 +1,395 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao.json;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import ca.sqlpower.dao.SPPersister.SPPersistMethod;
+import ca.sqlpower.dao.json.SPJSONMessageDecoder.PersistCall;
+
+/**
+ * Removes redundant persist calls from a buffer of JSON persist calls created
+ * by an {@link SPJSONPersister} before the buffer is sent to a server. The
+ * following are removed:
+ * <ul>
+ * <li>All but the last change to the same property of the same object. The
+ * remaining change keeps the old value of the first change so the server can
+ * still check it.</li>
+ * <li>An object that is added and later removed in the same buffer, along with
+ * every call for it and any descendants added under it in between.</li>
+ * <li>Property changes whose new value equals their old value or the value
+ * the server was last known to hold.</li>
+ * <li>Transactions left empty by the above.</li>
+ * </ul>
+ * The values the server holds are learned from buffers that were
+ * {@link #acknowledge(JSONArray) acknowledged} by the server and from updates
+ * the server sent that were {@link #recordServerChanges(JSONArray) recorded}.
+ * <p>
+ * This class is not thread safe; it is expected to be used on the same thread
+ * that fills the buffer.
+ */
+public class SPJSONPersistCompactor {
+
+    private static final Logger logger = Logger.getLogger(SPJSONPersistCompactor.class);
+
+    private static final String UUID = "uuid";
+
+    private static final String OLD_VALUE = "oldValue";
+
+    /**
+     * The last value of each property known to be on the server, keyed by
+     * {@link #propertyKey(String, String)}.
+     */
+    private final Map<String, Object> serverValues = new HashMap<String, Object>();
+
+    /**
+     * The keys in {@link #serverValues} of each object UUID so all of an
+     * object's values can be forgotten when it is added or removed.
+     */
+    private final Map<String, Set<String>> serverValueKeys = new HashMap<String, Set<String>>();
+
+    private int lastCallsRemoved;
+
+    private long lastBytesSaved;
+
+    private long totalCallsRemoved;
+
+    private long totalBytesSaved;
+
+    /**
+     * Returns a buffer with the redundant calls of the given buffer removed.
+     * The given buffer is not modified.
+     */
+    public JSONArray compact(JSONArray buffer) throws JSONException {
+        int length = buffer.length();
+        List<JSONObject> calls = new ArrayList<JSONObject>(length);
+        for (int i = 0; i < length; i++) {
+            calls.add(buffer.getJSONObject(i));
+        }
+        boolean[] dropped = new boolean[length];
+
+        cancelAddRemovePairs(calls, dropped);
+        JSONObject[] merged = collapsePropertyChanges(calls, dropped);
+        elideUnchangedProperties(calls, merged, dropped);
+
+        JSONArray compacted = new JSONArray();
+        LinkedList<Integer> openBegins = new LinkedList<Integer>();
+        List<JSONObject> kept = new ArrayList<JSONObject>(length);
+        List<Integer> keptIndices = new ArrayList<Integer>(length);
+        for (int i = 0; i < length; i++) {
+            if (dropped[i]) continue;
+            JSONObject call = merged[i] != null ? merged[i] : calls.get(i);
+            SPPersistMethod method = methodOf(call);
+            if (method == SPPersistMethod.begin) {
+                openBegins.addLast(kept.size());
+            } else if (method == SPPersistMethod.commit && !openBegins.isEmpty()) {
+                int begin = openBegins.removeLast();
+                if (begin == kept.size() - 1) {
+                    // An empty transaction, drop the begin and this commit.
+                    dropped[keptIndices.remove(begin)] = true;
+                    kept.remove(begin);
+                    dropped[i] = true;
+                    continue;
+                }
+            }
+            kept.add(call);
+            keptIndices.add(i);
+        }
+        for (JSONObject call : kept) {
+            compacted.put(call);
+        }
+
+        int callsRemoved = 0;
+        long bytesSaved = 0;
+        for (int i = 0; i < length; i++) {
+            if (dropped[i]) {
+                callsRemoved++;
+                // The object and the comma separating it from its neighbour.
+                bytesSaved += calls.get(i).toString().length() + 1;
+            }
+        }
+        lastCallsRemoved = callsRemoved;
+        lastBytesSaved = bytesSaved;
+        totalCallsRemoved += callsRemoved;
+        totalBytesSaved += bytesSaved;
+        if (logger.isDebugEnabled()) {
+            logger.debug("Compacted " + length + " persist calls to " + compacted.length() +
+                    ", saving " + bytesSaved + " bytes.");
+        }
+        return compacted;
+    }
+
+    /**
+     * Drops objects that are added and then removed in the same buffer along
+     * with every call between the two for the object or anything added under
+     * it.
+     */
+    private void cancelAddRemovePairs(List<JSONObject> calls, boolean[] dropped) throws JSONException {
+        Map<String, Integer> lastAdd = new HashMap<String, Integer>();
+        for (int j = 0; j < calls.size(); j++) {
+            JSONObject call = calls.get(j);
+            SPPersistMethod method = methodOf(call);
+            if (method == SPPersistMethod.persistObject) {
+                lastAdd.put(call.getString(UUID), j);
+            } else if (method == SPPersistMethod.removeObject) {
+                String uuid = call.getString(UUID);
+                Integer i = lastAdd.remove(uuid);
+                if (i == null || dropped[i]) continue;
+                Set<String> cancelled = new HashSet<String>();
+                cancelled.add(uuid);
+                for (int k = i; k <= j; k++) {
+                    JSONObject between = calls.get(k);
+                    SPPersistMethod betweenMethod = methodOf(between);
+                    if (betweenMethod == SPPersistMethod.persistObject
+                            && cancelled.contains(between.optString(SPJSONPersister.PARENT_UUID))) {
+                        cancelled.add(between.getString(UUID));
+                    }
+                    if (betweenMethod != SPPersistMethod.begin && betweenMethod != SPPersistMethod.commit
+                            && cancelled.contains(between.optString(UUID))) {
+                        dropped[k] = true;
+                    }
+                }
+                for (String cancelledUUID : cancelled) {
+                    lastAdd.remove(cancelledUUID);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collapses all changes to the same property into the last change. Returns
+     * the merged replacement for each call that had earlier changes folded into
+     * it, or null where the call is unchanged. The changes of an object are
+     * not merged across calls that add or remove it.
+     */
+    private JSONObject[] collapsePropertyChanges(List<JSONObject> calls, boolean[] dropped) throws JSONException {
+        JSONObject[] merged = new JSONObject[calls.size()];
+        Map<String, Integer> lastChange = new HashMap<String, Integer>();
+        Map<String, Set<String>> keysByUUID = new HashMap<String, Set<String>>();
+        for (int i = 0; i < calls.size(); i++) {
+            if (dropped[i]) continue;
+            JSONObject call = calls.get(i);
+            SPPersistMethod method = methodOf(call);
+            if (method == SPPersistMethod.persistObject || method == SPPersistMethod.removeObject) {
+                Set<String> keys = keysByUUID.remove(call.getString(UUID));
+                if (keys != null) {
+                    for (String key : keys) {
+                        lastChange.remove(key);
+                    }
+                }
+            } else if (method == SPPersistMethod.changeProperty || method == SPPersistMethod.persistProperty) {
+                String uuid = call.getString(UUID);
+                String key = propertyKey(uuid, call.getString(SPJSONPersister.PROPERTY_NAME));
+                Integer previousIndex = lastChange.put(key, i);
+                if (previousIndex != null) {
+                    JSONObject previous = merged[previousIndex] != null ? merged[previousIndex] : calls.get(previousIndex);
+                    dropped[previousIndex] = true;
+                    merged[previousIndex] = null;
+                    merged[i] = mergeChanges(previous, call);
+                }
+                Set<String> keys = keysByUUID.get(uuid);
+                if (keys == null) {
+                    keys = new HashSet<String>();
+                    keysByUUID.put(uuid, keys);
+                }
+                keys.add(key);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Returns one change with the effect of the earlier change followed by the
+     * later one. If either change is unconditional so is the result.
+     */
+    private static JSONObject mergeChanges(JSONObject earlier, JSONObject later) throws JSONException {
+        JSONObject result = new JSONObject(later, JSONObject.getNames(later));
+        if (methodOf(earlier) == SPPersistMethod.persistProperty
+                || methodOf(later) == SPPersistMethod.persistProperty) {
+            result.put(SPJSONPersister.METHOD, SPPersistMethod.persistProperty.getCode());
+            result.remove(OLD_VALUE);
+        } else {
+            result.put(OLD_VALUE, earlier.get(OLD_VALUE));
+        }
+        return result;
+    }
+
+    /**
+     * Drops property changes that would not change the value on the server.
+     */
+    private void elideUnchangedProperties(List<JSONObject> calls, JSONObject[] merged, boolean[] dropped) throws JSONException {
+        Set<String> addedOrRemoved = new HashSet<String>();
+        for (int i = 0; i < calls.size(); i++) {
+            if (dropped[i]) continue;
+            JSONObject call = merged[i] != null ? merged[i] : calls.get(i);
+            SPPersistMethod method = methodOf(call);
+            if (method == SPPersistMethod.persistObject || method == SPPersistMethod.removeObject) {
+                addedOrRemoved.add(call.getString(UUID));
+            } else if (method == SPPersistMethod.changeProperty || method == SPPersistMethod.persistProperty) {
+                Object newValue = call.opt(SPJSONPersister.NEW_VALUE);
+                if (method == SPPersistMethod.changeProperty && valuesEqual(call.opt(OLD_VALUE), newValue)) {
+                    dropped[i] = true;
+                    continue;
+                }
+                String uuid = call.getString(UUID);
+                if (addedOrRemoved.contains(uuid)) continue;
+                String key = propertyKey(uuid, call.getString(SPJSONPersister.PROPERTY_NAME));
+                if (serverValues.containsKey(key) && valuesEqual(serverValues.get(key), newValue)) {
+                    dropped[i] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Records that the server accepted the given buffer, so its property
+     * values are now the server's values.
+     */
+    public void acknowledge(JSONArray sentBuffer) throws JSONException {
+        recordServerChanges(sentBuffer);
+    }
+
+    /**
+     * Records the property values in the given persist calls as the values
+     * held by the server. This should be given the updates received from the
+     * server as well as the buffers the server accepted.
+     */
+    public void recordServerChanges(JSONArray persistCalls) throws JSONException {
+        for (int i = 0; i < persistCalls.length(); i++) {
+            JSONObject call = persistCalls.getJSONObject(i);
+            SPPersistMethod method = methodOf(call);
+            if (method == SPPersistMethod.persistObject || method == SPPersistMethod.removeObject) {
+                forgetServerValues(call.getString(UUID));
+            } else if (method == SPPersistMethod.changeProperty || method == SPPersistMethod.persistProperty) {
+                recordServerValue(call.getString(UUID), call.getString(SPJSONPersister.PROPERTY_NAME), 
+                        call.opt(SPJSONPersister.NEW_VALUE));
+            }
+        }
+    }
+
+    /**
+     * Records the property values in the given persist calls, as read from an
+     * update the server sent, as the values held by the server.
+     * 
+     * @see #recordServerChanges(JSONArray)
+     */
+    public void recordServerChanges(List<PersistCall> persistCalls) throws JSONException {
+        for (PersistCall call : persistCalls) {
+            SPPersistMethod method = call.getMethod();
+            if (method == SPPersistMethod.persistObject || method == SPPersistMethod.removeObject) {
+                forgetServerValues(required(call.getUUID(), UUID));
+            } else if (method == SPPersistMethod.changeProperty || method == SPPersistMethod.persistProperty) {
+                recordServerValue(required(call.getUUID(), UUID), 
+                        required(call.getPropertyName(), SPJSONPersister.PROPERTY_NAME), call.getNewValue());
+            }
+        }
+    }
+
+    private static String required(String value, String name) throws JSONException {
+        if (value == null) {
+            throw new JSONException("JSONObject[" + JSONObject.quote(name) + "] not found.");
+        }
+        return value;
+    }
+
+    private void recordServerValue(String uuid, String propertyName, Object newValue) {
+        String key = propertyKey(uuid, propertyName);
+        serverValues.put(key, newValue);
+        Set<String> keys = serverValueKeys.get(uuid);
+        if (keys == null) {
+            keys = new HashSet<String>();
+            serverValueKeys.put(uuid, keys);
+        }
+        keys.add(key);
+    }
+
+    private void forgetServerValues(String uuid) {
+        Set<String> keys = serverValueKeys.remove(uuid);
+        if (keys == null) return;
+        for (Iterator<String> it = keys.iterator(); it.hasNext(); ) {
+            serverValues.remove(it.next());
+        }
+    }
+
+    /**
+     * Forgets every value known to be on the server. This must be called if
+     * the server's state changes in a way that was not recorded, for example
+     * when an update is applied without passing it to
+     * {@link #recordServerChanges(List)}, or when an update whose changes were
+     * recorded is rolled back.
+     */
+    public void clearServerValues() {
+        serverValues.clear();
+        serverValueKeys.clear();
+    }
+
+    /**
+     * Returns the number of calls removed by the last call to
+     * {@link #compact(JSONArray)}.
+     */
+    public int getLastCallsRemoved() {
+        return lastCallsRemoved;
+    }
+
+    /**
+     * Returns the approximate number of bytes the last call to
+     * {@link #compact(JSONArray)} removed from the serialized buffer.
+     */
+    public long getLastBytesSaved() {
+        return lastBytesSaved;
+    }
+
+    public long getTotalCallsRemoved() {
+        return totalCallsRemoved;
+    }
+
+    public long getTotalBytesSaved() {
+        return totalBytesSaved;
+    }
+
+    private static SPPersistMethod methodOf(JSONObject call) {
+        return SPPersistMethod.getMethodForCode(call.optString(SPJSONPersister.METHOD));
+    }
+
+    private static String propertyKey(String uuid, String propertyName) {
+        return uuid + '\u0000' + propertyName;
+    }
+
+    private static boolean valuesEqual(Object a, Object b) {
+        if (a == null) a = JSONObject.NULL;
+        if (b == null) b = JSONObject.NULL;
+        if (a instanceof Number && b instanceof Number) {
+            return ((Number) a).doubleValue() == ((Number) b).doubleValue();
+        }
+        return a.equals(b);
+    }
+}
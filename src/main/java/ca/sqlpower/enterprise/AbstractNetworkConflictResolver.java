@@ -20,6 +20,7 @@
 package ca.sqlpower.enterprise;
 
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -30,17 +31,25 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.annotation.concurrent.GuardedBy;
+
+import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.AbstractHttpClient;
 import org.apache.log4j.Logger;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 import org.springframework.security.AccessDeniedException;
 
 import ca.sqlpower.dao.PersistedSPOProperty;
@@ -50,6 +59,8 @@ import ca.sqlpower.dao.SPPersistenceException;
 import ca.sqlpower.dao.SPPersister.DataType;
 import ca.sqlpower.dao.SPPersisterListener;
 import ca.sqlpower.dao.json.SPJSONMessageDecoder;
+import ca.sqlpower.dao.json.SPJSONMessageDecoder.PersistCall;
+import ca.sqlpower.dao.json.SPJSONPersistCompactor;
 import ca.sqlpower.dao.session.SessionPersisterSuperConverter;
 import ca.sqlpower.enterprise.client.ProjectLocation;
 import ca.sqlpower.object.SPObject;
@@ -228,10 +239,27 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
      * rate.
      */
     protected static final int AVG_WAIT_TIME_FOR_PERSIST = 12;
-    
+
+    /**
+     * The most batches of an update from the server that may be waiting for
+     * the foreground at once. The thread reading the update waits for the
+     * foreground to catch up before passing it any more. Each batch holds up
+     * to {@link StreamingUpdateResponseHandler#DEFAULT_CHUNK_SIZE} persist
+     * calls.
+     */
+    private static final int MAX_QUEUED_BATCHES = 2;
+
     private static final Logger logger = Logger.getLogger(AbstractNetworkConflictResolver.class);
     protected AtomicBoolean postingJSON = new AtomicBoolean(false);
     protected boolean updating = false;
+
+    /**
+     * The number of updates this resolver has started polling for. Each
+     * update is finished by the first call to {@link #finishUpdate(long)}
+     * with its number; later calls for the same update are ignored. Access
+     * must be synchronized on this resolver.
+     */
+    private long updateSequence;
     
     protected SPPersisterListener listener;
     protected SessionPersisterSuperConverter converter;
@@ -262,6 +290,18 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
     protected volatile boolean cancelled;
 
     protected JSONArray messageBuffer = new JSONArray();
+
+    /**
+     * Removes redundant persist calls from the {@link #messageBuffer} before
+     * it is posted and tracks the property values the server holds.
+     */
+    protected final SPJSONPersistCompactor outboundCompactor = new SPJSONPersistCompactor();
+
+    /**
+     * The message buffer produced by the last compaction. If this is still the
+     * message buffer when a post succeeds its values are now on the server.
+     */
+    private JSONArray compactedMessageBuffer;
     
     protected HashMap<String, PersistedSPObject> inboundObjectsToAdd = new HashMap<String, PersistedSPObject>();
     protected Multimap<String, PersistedSPOProperty> inboundPropertiesToChange = LinkedListMultimap.create();
@@ -274,6 +314,17 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
     protected List<UpdateListener> updateListeners = new ArrayList<UpdateListener>();
 
 	private final RunnableDispatcher runnable;
+
+    /**
+     * The latency and size of the updates received by this resolver.
+     */
+    private final UpdatePollMetrics pollMetrics = new UpdatePollMetrics();
+
+    /**
+     * The service polling the server on behalf of this resolver, or null if
+     * this resolver polls from its own thread.
+     */
+    private volatile UpdatePollService pollService;
 	
 	public AbstractNetworkConflictResolver(
             ProjectLocation projectLocation, 
@@ -361,171 +412,180 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
     }
 
     /**
-     * Exists for code reuse.
+     * Called on the foreground before the first persist calls of an update
+     * from the server are decoded. The update listeners are told the update is
+     * about to be applied.
      * 
-     * @param tokener
-     *            {@link JSONTokener} that tokenizes multiple persister calls.
      * @param newRevision
-     *            The new revision number.
-     * @throws SPPersistenceException
+     *            The revision the update brings the workspace to.
+     * @return False if the workspace is already at or past the update's
+     *         revision, in which case the update is skipped.
+     */
+    protected boolean startApplyingUpdate(int newRevision) {
+        if (currentRevision >= newRevision) return false;
+        for (UpdateListener listener : new ArrayList<UpdateListener>(updateListeners)) {
+            listener.preUpdatePerformed(AbstractNetworkConflictResolver.this);
+        }
+        return true;
+    }
+
+    /**
+     * Decodes one batch of the persist calls of an update from the server on
+     * the foreground. The property values in the batch are recorded as the
+     * server's values so the {@link #outboundCompactor} can drop local changes
+     * that would not change them. The batches of an update are decoded in order between
+     * {@link #startApplyingUpdate(int)} and
+     * {@link #finishApplyingUpdate(int, long)}.
+     * 
+     * @param persistCalls
+     *            The persister calls of the batch, as read from the server by
+     *            a {@link StreamingUpdateResponseHandler}.
      */
-    protected void decodeMessage(JSONTokener tokener, int newRevision, long timestamp) {
+    protected void decodeMessage(List<PersistCall> persistCalls) throws SPPersistenceException {
+        jsonDecoder.decode(persistCalls);
         try {
-            if (currentRevision < newRevision) {
-                List<UpdateListener> updateListenersCopy = new ArrayList<UpdateListener>(updateListeners);
-                for (UpdateListener listener : updateListeners) {
-                    listener.preUpdatePerformed(AbstractNetworkConflictResolver.this);
-                }
-                // Now we can apply the update ...
-                jsonDecoder.decode(tokener);
-                currentRevision = newRevision;
-                serverTimestamp = timestamp;
-                
-                if (logger.isDebugEnabled())
-                	logger.debug("Setting currentRevision to: " + currentRevision + 
-                				" and serverTimestamp to: " + serverTimestamp);
-                
-                for (UpdateListener listener : updateListenersCopy) {
-                    if (listener.updatePerformed(this)) {
-                        updateListeners.remove(listener);
-                    }
-                }
-            } 
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to decode the message from the server.", e);
+            outboundCompactor.recordServerChanges(persistCalls);
+        } catch (JSONException e) {
+            // the calls were decoded so this should not happen, but the
+            // values known to be on the server can no longer be trusted
+            logger.warn("Could not record the changes from the server.", e);
+            outboundCompactor.clearServerValues();
+        }
+    }
+
+    /**
+     * Called on the foreground once every persist call of an update from the
+     * server has been decoded. The workspace is now at the update's revision
+     * and the update listeners are told so.
+     */
+    protected void finishApplyingUpdate(int newRevision, long timestamp) {
+        currentRevision = newRevision;
+        serverTimestamp = timestamp;
+        
+        if (logger.isDebugEnabled())
+            logger.debug("Setting currentRevision to: " + currentRevision + 
+                    " and serverTimestamp to: " + serverTimestamp);
+        
+        for (UpdateListener listener : new ArrayList<UpdateListener>(updateListeners)) {
+            if (listener.updatePerformed(this)) {
+                updateListeners.remove(listener);
+            }
         }
     }
+
+    /**
+     * Called on the foreground if some of the persist calls of an update were
+     * decoded but the rest of the update could not be, or could not be read
+     * from the server. The transaction of the update is rolled back so none
+     * of it is applied, and the update will be requested again. The server
+     * values recorded from the decoded batches are forgotten with the rest.
+     */
+    protected void abandonUpdate() {
+        jsonDecoder.rollback();
+        outboundCompactor.clearServerValues();
+    }
     
+    /**
+     * Copies the pending changes of the persister listener into the outbound
+     * lists used to detect conflicts and compacts the message buffer that
+     * will be posted to the server. Only the last change to each property of
+     * an object is kept in the outbound lists.
+     */
     protected void fillOutboundPersistedLists() {
         for (PersistedSPObject obj : listener.getPersistedObjects()) {
             outboundObjectsToAdd.put(obj.getUUID(), obj);
         }
         for (PersistedSPOProperty prop : listener.getPersistedProperties()) {
+            Iterator<PersistedSPOProperty> existing = outboundPropertiesToChange.get(prop.getUUID()).iterator();
+            while (existing.hasNext()) {
+                if (existing.next().getPropertyName().equals(prop.getPropertyName())) {
+                    existing.remove();
+                }
+            }
             outboundPropertiesToChange.put(prop.getUUID(), prop);
         }
         for (RemovedObjectEntry rem : listener.getObjectsToRemove().values()) {
             outboundObjectsToRemove.put(rem.getRemovedChild().getUUID(), rem);
         }
+        compactMessageBuffer();
+    }
+
+    /**
+     * Removes redundant persist calls from the message buffer before it is
+     * posted. See {@link SPJSONPersistCompactor} for what is removed.
+     */
+    protected void compactMessageBuffer() {
+        try {
+            messageBuffer = outboundCompactor.compact(messageBuffer);
+            compactedMessageBuffer = messageBuffer;
+            if (outboundCompactor.getLastCallsRemoved() > 0) {
+                logger.info("Outbound compaction removed " + outboundCompactor.getLastCallsRemoved() + 
+                        " persist calls, saving " + outboundCompactor.getLastBytesSaved() + " bytes.");
+            }
+        } catch (JSONException e) {
+            logger.error("Could not compact the outbound persist calls, sending them as they are.", e);
+        }
+    }
+
+    public SPJSONPersistCompactor getOutboundCompactor() {
+        return outboundCompactor;
     }
     
     public void interrupt() {
         super.interrupt();
         cancelled = true;
+        UpdatePollService service = pollService;
+        if (service != null) {
+            service.unregister(this);
+        }
+    }
+
+    /**
+     * Starts polling the server for updates. If there is a shared
+     * {@link UpdatePollService} for the server the workspace is polled by it,
+     * along with the other workspaces open on the server, instead of by a
+     * thread of its own.
+     */
+    @Override
+    public synchronized void start() {
+        UpdatePollService service = getUpdatePollService();
+        if (service == null) {
+            super.start();
+        } else {
+            service.register(this);
+        }
+    }
+
+    /**
+     * Returns the service that will poll for this resolver's updates once it
+     * is started, or null if this resolver polls from its own thread. This is
+     * the server's shared service if the inbound client holds the session's
+     * cookies so the service can make requests on the session's behalf.
+     */
+    protected UpdatePollService getUpdatePollService() {
+        if (inboundHttpClient instanceof AbstractHttpClient) {
+            return ClientSideSessionUtils.getUpdatePollService(projectLocation.getServiceInfo(), 
+                    ((AbstractHttpClient) inboundHttpClient).getCookieStore());
+        }
+        return null;
     }
     
     @Override
     public void run() {
         try {
             while (!this.isInterrupted() && !cancelled) {
-               try { 
-                   
-                   while (updating) { // this should wait for persisting to server as well.
-                       synchronized (this) {
-                           wait();
-                       }
-                   }                   
-                   updating = true;                   
-                   // Request an update from the server using the current revision number.                   
-                   JSONMessage message = getJsonArray(inboundHttpClient);
-                   
-                   // Status 410 (Gone) means the workspace was deleted                   
-                   if (message.getStatusCode() == 410) {
-                       for (UpdateListener listener : updateListeners) {
-                           listener.workspaceDeleted();                           
-                       }
-                       updateListeners.clear();
-                       interrupt();
-                   } else if (message.getStatusCode() == 412) { //Precondition failed
-                	   upf.createUserPrompter(message.getBody(), UserPromptType.MESSAGE, UserPromptOptions.OK, 
-                			   UserPromptResponse.OK, null, "OK").promptUser();
-                	   continue;
-                   } else if (message.getStatusCode() == 403) { // FORBIDDEN, timestamp is older than server
-            		   updateListeners.clear();
-            		   interrupt();
-                	   if (projectLocation.getUUID().equals("system")) {
-                		   upf.createUserPrompter("Server at " + projectLocation.getServiceInfo().getServerAddress() + "has failed since your session began." +
-                    			   " Please restart the program to synchronize the system workspace with the server." , 
-                    			   UserPromptType.MESSAGE, 
-                    			   UserPromptOptions.OK, 
-                    			   UserPromptResponse.OK, 
-                    			   null, "OK").promptUser();                		   
-                	   } else {
-                		   upf.createUserPrompter("Server at "  + projectLocation.getServiceInfo().getServerAddress() + 
-                				   " has failed since your session began." +
-                				   " Please use the refresh button to synchronize workspace " + projectLocation.getName() + 
-                				   " with the server.", 
-                				   UserPromptType.MESSAGE, 
-                				   UserPromptOptions.OK, 
-                				   UserPromptResponse.OK, 
-                				   null, "OK").promptUser();
-                	   }
+               long sequence;
+               synchronized (this) {
+                   // this should wait for persisting to server as well.
+                   while ((sequence = beginUpdate()) == -1) {
+                       wait();
                    }
-                   
-                   // The updater may have been interrupted/closed/deleted while waiting for an update.
-                   if (this.isInterrupted() || cancelled) break;
-                   
-                   JSONObject json = new JSONObject(message.getBody());
-                   final JSONTokener tokener = new JSONTokener(json.getString("data"));
-                   final int jsonRevision = json.getInt("currentRevision");
-                   final long jsonTimestamp = json.getLong("serverTimestamp");
-                   
-                   runnable.runInForeground(new Runnable() {
-                       public void run() {
-                           try {
-                               if (!postingJSON.get()) {
-                                   decodeMessage(tokener, jsonRevision, jsonTimestamp);
-                               }
-                           } catch (AccessDeniedException e) {
-                               interrupt();
-                               List<UpdateListener> listenersToRemove = new ArrayList<UpdateListener>();
-                               for (UpdateListener listener : updateListeners) {
-                                   if (listener.updateException(AbstractNetworkConflictResolver.this, e)) {
-                                       listenersToRemove.add(listener);
-                                   }
-                               }
-                               updateListeners.removeAll(listenersToRemove);
-                               if (upf != null) {
-                                   upf.createUserPrompter(
-                                           "You do not have sufficient privileges to perform that action. " +
-                                           "Please hit the refresh button to synchronize with the server.", 
-                                           UserPromptType.MESSAGE, 
-                                           UserPromptOptions.OK, 
-                                           UserPromptResponse.OK, 
-                                           "OK", "OK").promptUser("");
-                               } else {
-                                   throw e;
-                               }
-                           } catch (Exception e) {
-                               // TODO: Discard corrupt workspace and start again from scratch.
-                               interrupt();
-                               List<UpdateListener> listenersToRemove = new ArrayList<UpdateListener>();
-                               for (UpdateListener listener : updateListeners) {
-                                   if (listener.updateException(AbstractNetworkConflictResolver.this, e)) {
-                                       listenersToRemove.add(listener);
-                                   }
-                               }
-                               updateListeners.removeAll(listenersToRemove);
-                               throw new RuntimeException("Update from server failed! Unable to decode the message: ", e);
-                           } finally {
-                               synchronized (AbstractNetworkConflictResolver.this) {
-                                   updating = false;
-                                   AbstractNetworkConflictResolver.this.notify();
-                               }
-                           }
-                       }
-                   });
+               }
+               try { 
+                   if (!pollForUpdate(inboundHttpClient, sequence)) break;
                } catch (Exception ex) {
-            	   Throwable root = ex;
-            	   while (root != null) {
-            		   if (root instanceof SPPersistenceException) {
-            			   getUserPrompterFactory().createUserPrompter(
-            					   "An exception occurred while updating from the server. See logs for more details.", 
-            					   UserPromptType.MESSAGE, UserPromptOptions.OK, UserPromptResponse.OK, true, "OK").promptUser();
-            			   break;
-            		   }
-            		   root = root.getCause();
-            	   }
-                   logger.error("Failed to contact server. Will retry in " + retryDelay + " ms.", ex);
+                   reportPollFailure(ex);
+                   endUpdate(sequence);
                    Thread.sleep(retryDelay);
                }
             }
@@ -535,27 +595,491 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
         
         inboundHttpClient.getConnectionManager().shutdown();
     }
+
+    /**
+     * Requests the next update from the server with the given client and
+     * passes it to the foreground to be applied. The update must have been
+     * started with {@link #beginUpdate()}; it is finished once it has been
+     * applied, at which point the next poll can be made. If this method
+     * throws an exception the update was not applied, any part of it that
+     * reached the foreground is rolled back, and the caller must end it with
+     * {@link #endUpdate(long)} before retrying.
+     * <p>
+     * This is called in a loop by this resolver's own thread, or by an
+     * {@link UpdatePollService} that polls for many workspaces on the same
+     * server.
+     * 
+     * @param sequence
+     *            The number of the update, as returned by
+     *            {@link #beginUpdate()}.
+     * @return False if the workspace was deleted or the resolver was stopped
+     *         and polling should not continue.
+     */
+    protected boolean pollForUpdate(HttpClient client, long sequence) throws JSONException {
+        return pollForUpdate(client, sequence, null, 0);
+    }
+
+    /**
+     * Polls for the next update like {@link #pollForUpdate(HttpClient, long)}
+     * but gives up the long poll if the server has not started sending an
+     * update within the given time. The update is then finished without
+     * anything being applied so the next poll can be made.
+     * 
+     * @param timer
+     *            Gives up the long poll once the time is up. This may be null
+     *            if there is no timeout.
+     * @param timeout
+     *            The time in milliseconds to wait for the server, or 0 to
+     *            wait for as long as the server holds the long poll.
+     */
+    protected boolean pollForUpdate(HttpClient client, long sequence, 
+            ScheduledExecutorService timer, long timeout) throws JSONException {
+        // Request an update from the server using the current revision number.
+        JSONMessage message = getUpdate(client, sequence, timer, timeout);
+
+        if (message.getStatusCode() == HttpStatus.SC_REQUEST_TIMEOUT) {
+            // There was no update yet, let the next workspace be polled.
+            finishUpdate(sequence);
+            return !isCancelled();
+        }
+
+        // Status 410 (Gone) means the workspace was deleted                   
+        if (message.getStatusCode() == 410) {
+            for (UpdateListener listener : updateListeners) {
+                listener.workspaceDeleted();                           
+            }
+            updateListeners.clear();
+            interrupt();
+        } else if (message.getStatusCode() == 412) { //Precondition failed
+            if (upf != null) {
+                upf.createUserPrompter(message.getBody(), UserPromptType.MESSAGE, UserPromptOptions.OK, 
+                        UserPromptResponse.OK, null, "OK").promptUser();
+            } else {
+                logger.warn("The server refused the update request: " + message.getBody());
+            }
+            // Nothing was applied, so poll again.
+            finishUpdate(sequence);
+            return true;
+        } else if (message.getStatusCode() == 403) { // FORBIDDEN, timestamp is older than server
+            updateListeners.clear();
+            interrupt();
+            if (projectLocation.getUUID().equals("system")) {
+                upf.createUserPrompter("Server at " + projectLocation.getServiceInfo().getServerAddress() + "has failed since your session began." +
+                        " Please restart the program to synchronize the system workspace with the server." , 
+                        UserPromptType.MESSAGE, 
+                        UserPromptOptions.OK, 
+                        UserPromptResponse.OK, 
+                        null, "OK").promptUser();                		   
+            } else {
+                upf.createUserPrompter("Server at "  + projectLocation.getServiceInfo().getServerAddress() + 
+                        " has failed since your session began." +
+                        " Please use the refresh button to synchronize workspace " + projectLocation.getName() + 
+                        " with the server.", 
+                        UserPromptType.MESSAGE, 
+                        UserPromptOptions.OK, 
+                        UserPromptResponse.OK, 
+                        null, "OK").promptUser();
+            }
+        }
+
+        // The updater may have been interrupted/closed/deleted while waiting for an update.
+        if (isCancelled()) return false;
+
+        // A null body means the update was read as it streamed in and has
+        // already been passed to the foreground. Updates are always read that
+        // way so any other successful response is not an update.
+        if (message.getBody() != null) {
+            throw new RuntimeException("The server did not send an update: " + message.getBody());
+        }
+        return true;
+    }
+
+    /**
+     * Reports an exception thrown while polling the server for an update. If
+     * the exception was caused by the server failing to persist the user is
+     * told, otherwise it is only logged as the poll will be retried.
+     */
+    protected void reportPollFailure(Exception ex) {
+        pollMetrics.pollFailed();
+        Throwable root = ex;
+        while (root != null) {
+            if (root instanceof SPPersistenceException) {
+                getUserPrompterFactory().createUserPrompter(
+                        "An exception occurred while updating from the server. See logs for more details.", 
+                        UserPromptType.MESSAGE, UserPromptOptions.OK, UserPromptResponse.OK, true, "OK").promptUser();
+                break;
+            }
+            root = root.getCause();
+        }
+        logger.error("Failed to contact server. Will retry in " + retryDelay + " ms.", ex);
+    }
+
+    /**
+     * Returns true if this resolver has been stopped and should no longer poll
+     * the server for updates.
+     */
+    public boolean isCancelled() {
+        return isInterrupted() || cancelled;
+    }
     
     /**
-     * Creates and executes an HttpGet request for an update from the server.
-     * @return A JSONMessage holding the successfulness and message body of the server's response
+     * Returns the time in milliseconds to wait before polling again after a
+     * poll fails.
+     */
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * Returns the latency and update size metrics of this resolver's polls.
+     */
+    public UpdatePollMetrics getPollMetrics() {
+        return pollMetrics;
+    }
+    
+    /**
+     * Handles an exception thrown while applying an update from the server on
+     * the foreground thread. The updater is stopped and the update listeners
+     * are notified. Access denied exceptions are reported to the user, all
+     * other exceptions are rethrown.
+     */
+    protected void handleUpdateException(Exception e) {
+        interrupt();
+        List<UpdateListener> listenersToRemove = new ArrayList<UpdateListener>();
+        for (UpdateListener listener : updateListeners) {
+            if (listener.updateException(AbstractNetworkConflictResolver.this, e)) {
+                listenersToRemove.add(listener);
+            }
+        }
+        updateListeners.removeAll(listenersToRemove);
+        if (e instanceof AccessDeniedException) {
+            if (upf != null) {
+                upf.createUserPrompter(
+                        "You do not have sufficient privileges to perform that action. " +
+                        "Please hit the refresh button to synchronize with the server.", 
+                        UserPromptType.MESSAGE, 
+                        UserPromptOptions.OK, 
+                        UserPromptResponse.OK, 
+                        "OK", "OK").promptUser("");
+            } else {
+                throw (AccessDeniedException) e;
+            }
+        } else {
+            // TODO: Discard corrupt workspace and start again from scratch.
+            throw new RuntimeException("Update from server failed! Unable to decode the message: ", e);
+        }
+    }
+
+    /**
+     * Starts an update if no update is in progress. The update is in
+     * progress until it is finished by {@link #finishUpdate(long)} or
+     * {@link #endUpdate(long)}.
+     * 
+     * @return The number of the update that was started, or -1 if an update
+     *         is already in progress.
+     */
+    synchronized long beginUpdate() {
+        if (updating) return -1;
+        updating = true;
+        return ++updateSequence;
+    }
+
+    /**
+     * Ends the given update and wakes the updater thread so it can request
+     * the next one. Nothing is done if the update has already ended.
+     * 
+     * @return True if this call ended the update.
+     */
+    synchronized boolean endUpdate(long sequence) {
+        if (!updating || sequence != updateSequence) return false;
+        updating = false;
+        notify();
+        return true;
+    }
+
+    /**
+     * Marks the given update as complete so the next one can be requested.
+     * If this resolver is polled by an {@link UpdatePollService} the service
+     * is told, once, that the update has finished.
+     */
+    protected void finishUpdate(long sequence) {
+        if (!endUpdate(sequence)) return;
+        UpdatePollService service = pollService;
+        if (service != null) {
+            service.updateFinished(this);
+        }
+    }
+
+    /**
+     * Sets the service that polls the server for this resolver's updates in
+     * place of this resolver's own thread. The service is told each time an
+     * update finishes so it can poll for the next one. This is set by
+     * {@link UpdatePollService#register(AbstractNetworkConflictResolver)}.
+     */
+    void setPollService(UpdatePollService pollService) {
+        this.pollService = pollService;
+    }
+
+    /**
+     * Passes the persist calls of an update to the foreground in batches as
+     * they are streamed from the server, so the update is decoded while the
+     * rest of it is still being read. Each batch is decoded in its own call to
+     * the foreground so applying a large update does not hold up the
+     * foreground for the whole time it takes, and at most
+     * {@link #MAX_QUEUED_BATCHES} batches wait for the foreground at once so
+     * a large update is never held in memory in full.
+     * <p>
+     * The server sends each update as one transaction, which the session
+     * persister only applies to the workspace when the commit at its end is
+     * decoded, so other work on the foreground between batches does not see a
+     * partly applied update. Whether the update is applied at all is decided
+     * when its first batch reaches the foreground. If decoding fails, or the
+     * update cannot be read to its end, the transaction is rolled back.
+     */
+    private class UpdateCollector implements StreamingUpdateResponseHandler.UpdateHandler {
+
+        private final long sequence;
+
+        /**
+         * Limits the parts of the update waiting for the foreground. A permit
+         * is taken on the reading thread and given back when the part runs.
+         */
+        private final Semaphore queuedBatches = new Semaphore(MAX_QUEUED_BATCHES);
+
+        /**
+         * Set once the first part of the update has been passed to the
+         * foreground.
+         */
+        private volatile boolean started;
+
+        /**
+         * Set if the request was given up before the update started to
+         * arrive.
+         */
+        @GuardedBy("this")
+        private boolean timedOut;
+
+        /**
+         * Set once the end of the update has been passed to the foreground.
+         * From then on the foreground is responsible for finishing the
+         * update.
+         */
+        private volatile boolean finished;
+
+        /**
+         * True while the update is being decoded. This is false if the update
+         * was skipped or decoding it failed. Only used on the foreground.
+         */
+        private boolean decoding;
+
+        /**
+         * True once a batch has been given to the decoder. Only used on the
+         * foreground.
+         */
+        private boolean decoded;
+
+        UpdateCollector(long sequence) {
+            this.sequence = sequence;
+        }
+
+        public void updateStarted(final int revision, long timestamp) {
+            synchronized (this) {
+                if (timedOut) {
+                    throw new IllegalStateException("The request for the update timed out.");
+                }
+                started = true;
+            }
+            runInForeground(new UpdatePart() {
+                void apply() {
+                    decoding = !postingJSON.get() && startApplyingUpdate(revision);
+                }
+            });
+        }
+
+        public void persistCallsRead(final List<PersistCall> calls) {
+            runInForeground(new UpdatePart() {
+                void apply() throws SPPersistenceException {
+                    if (!decoding) return;
+                    decoded = true;
+                    decodeMessage(calls);
+                }
+            });
+        }
+
+        public void updateFinished(final int revision, final long timestamp) {
+            finished = true;
+            runInForeground(new UpdatePart() {
+                void apply() {
+                    try {
+                        if (decoding) {
+                            decoding = false;
+                            finishApplyingUpdate(revision, timestamp);
+                        }
+                    } finally {
+                        finishUpdate(sequence);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Rolls back the part of the update already given to the foreground
+         * because the rest of it could not be read. The caller ends the
+         * update.
+         */
+        void abandon() {
+            if (!started || finished) return;
+            runInForeground(new UpdatePart() {
+                void apply() {
+                    stopDecoding();
+                }
+            });
+        }
+
+        /**
+         * Marks the request for the update as timed out unless the update has
+         * already started to arrive.
+         * 
+         * @return True if the request can be aborted.
+         */
+        synchronized boolean timeOut() {
+            if (started) return false;
+            timedOut = true;
+            return true;
+        }
+
+        synchronized boolean isTimedOut() {
+            return timedOut;
+        }
+
+        boolean isFinished() {
+            return finished;
+        }
+
+        /**
+         * Stops decoding the update, rolling back the batches that were
+         * decoded. Only called on the foreground.
+         */
+        private void stopDecoding() {
+            boolean rollback = decoding && decoded;
+            decoding = false;
+            if (rollback) {
+                try {
+                    abandonUpdate();
+                } catch (RuntimeException e) {
+                    logger.error("Could not roll back the update from the server.", e);
+                }
+            }
+        }
+
+        /**
+         * Passes a part of the update to the foreground, waiting first if too
+         * many parts are already waiting.
+         */
+        private void runInForeground(UpdatePart part) {
+            queuedBatches.acquireUninterruptibly();
+            runnable.runInForeground(part);
+        }
+
+        /**
+         * One part of the update, run on the foreground. If a part fails the
+         * rest of the update is skipped, the failure is handled by
+         * {@link AbstractNetworkConflictResolver#handleUpdateException(Exception)}
+         * and the update is finished.
+         */
+        private abstract class UpdatePart implements Runnable {
+
+            abstract void apply() throws Exception;
+
+            public final void run() {
+                queuedBatches.release();
+                try {
+                    apply();
+                } catch (Exception e) {
+                    try {
+                        stopDecoding();
+                        handleUpdateException(e);
+                    } finally {
+                        finishUpdate(sequence);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Requests an update from the server and passes the persist calls in the
+     * response to the foreground as they arrive. If the response is not a
+     * successful update the message from the server is returned with its
+     * body so it can be handled by the caller. If the update was read and
+     * passed to the foreground to be applied the body of the returned message
+     * is null. If the update could not be read to its end, whatever part of
+     * it reached the foreground is rolled back and an exception is thrown.
+     */
+    protected JSONMessage getUpdate(HttpClient client, long sequence) {
+        return getUpdate(client, sequence, null, 0);
+    }
+
+    /**
+     * Requests an update like {@link #getUpdate(HttpClient, long)} but waits
+     * at most the given time in milliseconds for the server to start sending
+     * an update, or for as long as the server holds the request if the time
+     * is 0. If the server does not start in time the request is aborted by
+     * the timer and a message with the status
+     * {@link HttpStatus#SC_REQUEST_TIMEOUT} is returned. An update that has
+     * started to arrive is never cut off.
      */
-    protected JSONMessage getJsonArray(HttpClient client) {
+    protected JSONMessage getUpdate(HttpClient client, long sequence, 
+            ScheduledExecutorService timer, long timeout) {
+        final UpdateCollector collector = new UpdateCollector(sequence);
+        ScheduledFuture<?> abort = null;
         try {
-            URI uri = new URI("http", null, 
-                    projectLocation.getServiceInfo().getServerAddress(), 
-                    projectLocation.getServiceInfo().getPort(),
-                    projectLocation.getServiceInfo().getPath() + contextRelativePath, 
-                    "oldRevisionNo=" + currentRevision + "&serverTimestamp=" + serverTimestamp, null);
-            logger.debug("GETting URI: " + uri.toString());
-            HttpUriRequest request = new HttpGet(uri);
-            return client.execute(request, new JSONResponseHandler());
+            logger.debug("GETting URI: " + getUpdateURI().toString());
+            final HttpGet request = new HttpGet(getUpdateURI());
+            if (timeout > 0) {
+                abort = timer.schedule(new Runnable() {
+                    public void run() {
+                        if (collector.timeOut()) {
+                            request.abort();
+                        }
+                    }
+                }, timeout, TimeUnit.MILLISECONDS);
+            }
+            StreamingUpdateResponseHandler handler = new StreamingUpdateResponseHandler(collector);
+            long startTime = System.currentTimeMillis();
+            JSONMessage message = client.execute(request, handler);
+            pollMetrics.pollCompleted(System.currentTimeMillis() - startTime, 
+                    handler.getBytesRead(), handler.getPersistCallCount());
+            return message;
         } catch (AccessDeniedException ade) {
             throw new AccessDeniedException("Access Denied");
         } catch (Exception ex) {
+            if (collector.isTimedOut()) {
+                logger.debug("No update for " + projectLocation.getUUID() + " within " + timeout + " ms.");
+                return new JSONMessage(null, HttpStatus.SC_REQUEST_TIMEOUT);
+            }
+            if (collector.isFinished()) {
+                // The whole update was read, only the end of the response
+                // could not be. The update is already being applied.
+                logger.warn("Failed reading the end of the update from the server.", ex);
+                return new JSONMessage(null, 200);
+            }
+            collector.abandon();
             throw new RuntimeException("Unable to get json from server", ex);
+        } finally {
+            if (abort != null) {
+                abort.cancel(false);
+            }
         }
     }
+
+    private URI getUpdateURI() throws URISyntaxException {
+        return new URI("http", null, 
+                projectLocation.getServiceInfo().getServerAddress(), 
+                projectLocation.getServiceInfo().getPort(),
+                projectLocation.getServiceInfo().getPath() + contextRelativePath, 
+                "oldRevisionNo=" + currentRevision + "&serverTimestamp=" + serverTimestamp, null);
+    }
     
     /**
      * Creates and executes an HttpPost request containing the json of whatever
@@ -576,7 +1100,12 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
             postRequest.setEntity(new StringEntity(jsonArray)); 
             postRequest.setHeader("Content-Type", "application/json");
             HttpUriRequest request = postRequest;
-            return outboundHttpClient.execute(request, new JSONResponseHandler());
+            JSONMessage message = outboundHttpClient.execute(request, new JSONResponseHandler());
+            if (message.isSuccessful() && compactedMessageBuffer != null && compactedMessageBuffer == messageBuffer) {
+                // The server now holds the values in the compacted buffer.
+                outboundCompactor.acknowledge(compactedMessageBuffer);
+            }
+            return message;
         } catch (AccessDeniedException ade) {
             throw ade;
         } catch (Exception ex) {
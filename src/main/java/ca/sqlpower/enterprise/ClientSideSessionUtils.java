@@ -26,6 +26,8 @@ import java.net.URISyntaxException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
@@ -36,11 +38,18 @@ import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.entity.mime.MultipartEntity;
 import org.apache.http.entity.mime.content.ContentBody;
 import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.entity.mime.content.StringBody;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
@@ -78,6 +87,13 @@ public class ClientSideSessionUtils {
 	 */
 	public static final String SYSTEM_UUID = "system";
 	
+	/**
+	 * The update poll service of each server, shared by every workspace
+	 * opened on that server.
+	 */
+	private static final ConcurrentMap<SPServerInfo, UpdatePollService> updatePollServices = 
+		new ConcurrentHashMap<SPServerInfo, UpdatePollService>();
+	
 	public static HttpClient createHttpClient(SPServerInfo serviceInfo, CookieStore cookieStore) {
 		return createHttpClient(serviceInfo.getServerAddress(), serviceInfo.getUsername(), serviceInfo.getPassword(), cookieStore);
 	}
@@ -92,6 +108,49 @@ public class ClientSideSessionUtils {
             new UsernamePasswordCredentials(username, password));
         return httpClient;
 	}
+
+	/**
+	 * Creates a client that can be used by many threads at once, keeping up
+	 * to the given number of connections to the server open. This is meant
+	 * for services that share one client between many workspaces, such as the
+	 * {@link UpdatePollService}.
+	 */
+	public static HttpClient createPooledHttpClient(SPServerInfo serviceInfo, CookieStore cookieStore, int maxConnections) {
+		HttpParams params = new BasicHttpParams();
+		HttpConnectionParams.setConnectionTimeout(params, 2000);
+		ConnManagerParams.setMaxTotalConnections(params, maxConnections);
+		ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(maxConnections));
+		SchemeRegistry schemeRegistry = new SchemeRegistry();
+		schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+		schemeRegistry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+		DefaultHttpClient httpClient = new DefaultHttpClient(
+				new ThreadSafeClientConnManager(params, schemeRegistry), params);
+		httpClient.setCookieStore(cookieStore);
+		httpClient.getCredentialsProvider().setCredentials(
+				new AuthScope(serviceInfo.getServerAddress(), AuthScope.ANY_PORT), 
+				new UsernamePasswordCredentials(serviceInfo.getUsername(), serviceInfo.getPassword()));
+		return httpClient;
+	}
+
+	/**
+	 * Returns the service that polls the given server for updates to all of
+	 * the workspaces open on it, creating it the first time it is needed. The
+	 * cookie store is only used if the service is created, so the sessions of
+	 * a server must share one.
+	 */
+	public static UpdatePollService getUpdatePollService(SPServerInfo serviceInfo, CookieStore cookieStore) {
+		UpdatePollService service = updatePollServices.get(serviceInfo);
+		if (service == null) {
+			UpdatePollService newService = new UpdatePollService(serviceInfo, cookieStore);
+			service = updatePollServices.putIfAbsent(serviceInfo, newService);
+			if (service == null) {
+				service = newService;
+			} else {
+				newService.shutdown();
+			}
+		}
+		return service;
+	}
     
     public static ProjectLocation createNewServerSession(SPServerInfo serviceInfo, String name, 
     		CookieStore cookieStore, UserPrompterFactory userPrompterFactory)
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.enterprise;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStreamReader;
+import org.json.JSONStreamReader.Token;
+import org.springframework.security.AccessDeniedException;
+
+import ca.sqlpower.dao.json.SPJSONMessageDecoder.PersistCall;
+
+/**
+ * Reads an update response from the server and passes the persist calls it
+ * contains to an {@link UpdateHandler} in chunks as they are parsed off of the
+ * response stream. The calls are read with a {@link JSONStreamReader} straight
+ * into {@link PersistCall}s, also when the server nests the update in a
+ * string, so no {@link JSONObject} is built for them and the update is never
+ * converted back to a string and parsed again, which the
+ * {@link JSONResponseHandler} path requires.
+ * <p>
+ * Only successful responses whose kind is "data" are streamed. Any other
+ * response is given to a {@link JSONResponseHandler} and its
+ * {@link JSONMessage} is returned. When a response is streamed the returned
+ * message has a null body as its contents were already given to the handler.
+ */
+public class StreamingUpdateResponseHandler implements ResponseHandler<JSONMessage> {
+
+    /**
+     * Receives the parts of an update as they are read from the server.
+     * Methods are called on the thread reading the response.
+     */
+    public static interface UpdateHandler {
+
+        /**
+         * Called once the revision and timestamp of the update are known and
+         * before any persist calls are given to the handler.
+         */
+        void updateStarted(int revision, long timestamp);
+
+        /**
+         * Called with each chunk of persist calls in the order they appear in
+         * the update. The list given will not be modified after this call.
+         */
+        void persistCallsRead(List<PersistCall> persistCalls);
+
+        /**
+         * Called after the last chunk of persist calls has been given to the
+         * handler.
+         */
+        void updateFinished(int revision, long timestamp);
+    }
+
+    /**
+     * The default number of persist calls given to the handler at once.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    /**
+     * The character set responses are read with if the server does not name
+     * one.
+     */
+    public static final String DEFAULT_CHARSET = "UTF-8";
+
+    private final UpdateHandler handler;
+
+    private final int chunkSize;
+
+    /**
+     * The number of bytes read from the body of the last response handled.
+     */
+    private volatile long bytesRead;
+
+    /**
+     * The number of persist calls given to the handler from the last response.
+     */
+    private volatile int persistCallCount;
+
+    public StreamingUpdateResponseHandler(UpdateHandler handler) {
+        this(handler, DEFAULT_CHUNK_SIZE);
+    }
+
+    public StreamingUpdateResponseHandler(UpdateHandler handler, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be positive but was " + chunkSize);
+        }
+        this.handler = handler;
+        this.chunkSize = chunkSize;
+    }
+
+    public JSONMessage handleResponse(HttpResponse response) throws IOException {
+        int status = response.getStatusLine().getStatusCode();
+        if (status == 401) {
+            throw new AccessDeniedException("Access Denied");
+        }
+        bytesRead = 0;
+        HttpEntity entity = response.getEntity();
+        String charset = EntityUtils.getContentCharSet(entity);
+        if (charset == null) {
+            charset = DEFAULT_CHARSET;
+        }
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new CountingInputStream(entity.getContent()), charset));
+        return handleResponse(reader, status);
+    }
+
+    /**
+     * Returns the number of bytes read from the body of the last HTTP response
+     * handled.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns the number of persist calls read from the last update handled.
+     */
+    public int getPersistCallCount() {
+        return persistCallCount;
+    }
+
+    /**
+     * Reads the response body from the given reader. Responses that are not
+     * successful are handled the same way as {@link JSONResponseHandler}.
+     */
+    public JSONMessage handleResponse(Reader reader, int status) {
+        persistCallCount = 0;
+        if (status != 200) {
+            return new JSONResponseHandler().handleResponse(reader, status);
+        }
+        try {
+            JSONStreamReader json = new JSONStreamReader(reader);
+            JSONObject envelope = new JSONObject();
+            Object bufferedData = null;
+            boolean streamed = false;
+            json.beginObject();
+            while (json.hasNext()) {
+                String key = json.nextName();
+                if (!key.equals("data")) {
+                    envelope.put(key, json.nextValue());
+                } else if ("data".equals(envelope.opt("responseKind"))) {
+                    JSONStreamReader updateReader = valueReader(json);
+                    readUpdate(updateReader, updateReader != json);
+                    streamed = true;
+                } else {
+                    bufferedData = json.nextValue();
+                    envelope.put(key, bufferedData);
+                }
+            }
+            json.endObject();
+            if (!streamed && bufferedData != null && "data".equals(envelope.opt("responseKind"))) {
+                // the kind of the response came after its data
+                readUpdate(new JSONStreamReader(bufferedData.toString()), true);
+                streamed = true;
+            }
+            if (streamed) {
+                return new JSONMessage(null, status);
+            }
+            return new JSONResponseHandler().handleResponse(envelope.toString(), status);
+        } catch (JSONException e) {
+            throw new RuntimeException("Unable to read the update from the server.", e);
+        }
+    }
+
+    /**
+     * Reads the object containing the revision, timestamp and persist calls
+     * of the update. The persist calls are streamed to the handler if the
+     * revision and timestamp come before them, otherwise they have to be held
+     * until the revision is known.
+     * 
+     * @param nested
+     *            True if the reader only contains the update, in which case
+     *            it is checked that nothing follows the update.
+     */
+    private void readUpdate(JSONStreamReader json, boolean nested) throws JSONException {
+        Integer revision = null;
+        Long timestamp = null;
+        List<PersistCall> bufferedCalls = null;
+        boolean streamed = false;
+        json.beginObject();
+        while (json.hasNext()) {
+            String key = json.nextName();
+            if (key.equals("currentRevision")) {
+                revision = Integer.valueOf(json.nextInt());
+            } else if (key.equals("serverTimestamp")) {
+                timestamp = Long.valueOf(json.nextLong());
+            } else if (key.equals("data")) {
+                JSONStreamReader dataReader = valueReader(json);
+                if (revision != null && timestamp != null) {
+                    handler.updateStarted(revision, timestamp);
+                    readPersistCalls(dataReader, dataReader != json, true);
+                    streamed = true;
+                } else {
+                    bufferedCalls = readPersistCalls(dataReader, dataReader != json, false);
+                }
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        if (nested) {
+            // throws if anything but whitespace follows the update
+            json.peek();
+        }
+        if (revision == null || timestamp == null) {
+            throw new JSONException("The update is missing its revision or timestamp.");
+        }
+        if (!streamed) {
+            handler.updateStarted(revision, timestamp);
+            if (bufferedCalls != null) {
+                for (int i = 0; i < bufferedCalls.size(); i += chunkSize) {
+                    handler.persistCallsRead(new ArrayList<PersistCall>(
+                            bufferedCalls.subList(i, Math.min(i + chunkSize, bufferedCalls.size()))));
+                }
+            }
+        }
+        handler.updateFinished(revision, timestamp);
+    }
+
+    /**
+     * Reads the array of persist calls one call at a time. If the calls are
+     * streamed they are given to the handler whenever a full chunk has been
+     * read and null is returned, otherwise all of the calls are returned.
+     */
+    private List<PersistCall> readPersistCalls(JSONStreamReader json, boolean nested, boolean stream)
+            throws JSONException {
+        List<PersistCall> calls = new ArrayList<PersistCall>();
+        json.beginArray();
+        while (json.hasNext()) {
+            PersistCall call = new PersistCall();
+            call.read(json);
+            calls.add(call);
+            persistCallCount++;
+            if (stream && calls.size() == chunkSize) {
+                handler.persistCallsRead(calls);
+                calls = new ArrayList<PersistCall>();
+            }
+        }
+        json.endArray();
+        if (nested) {
+            json.peek();
+        }
+        if (!stream) {
+            return calls;
+        }
+        if (!calls.isEmpty()) {
+            handler.persistCallsRead(calls);
+        }
+        return null;
+    }
+
+    /**
+     * Returns a reader for the next value of the given reader. If the value
+     * is a quoted string the returned reader reads the unescaped contents of
+     * the string straight out of the given reader, which is how the server
+     * nests JSON documents. Otherwise the given reader is returned.
+     */
+    private static JSONStreamReader valueReader(JSONStreamReader json) throws JSONException {
+        if (json.peek() == Token.STRING) {
+            return new JSONStreamReader(json.nextStringReader());
+        }
+        return json;
+    }
+
+    /**
+     * Counts the bytes read from the response body.
+     */
+    private class CountingInputStream extends FilterInputStream {
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                bytesRead++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                bytesRead += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            bytesRead += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.enterprise;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Tracks how long the polls for updates of a single workspace take and how
+ * large the updates they receive are. The latency of a poll is the time from
+ * sending the request until the whole response has been read, which includes
+ * the time the server held the request open waiting for a change.
+ */
+@ThreadSafe
+public class UpdatePollMetrics {
+
+    private int pollCount;
+
+    private int failedPollCount;
+
+    private long lastLatency;
+
+    private long maxLatency;
+
+    private long totalLatency;
+
+    private long lastUpdateBytes;
+
+    private long totalUpdateBytes;
+
+    private int lastPersistCallCount;
+
+    private long totalPersistCallCount;
+
+    /**
+     * Records a poll that completed.
+     *
+     * @param latency
+     *            The time in milliseconds the poll took.
+     * @param bytes
+     *            The size of the response body in bytes.
+     * @param persistCalls
+     *            The number of persist calls in the update.
+     */
+    public synchronized void pollCompleted(long latency, long bytes, int persistCalls) {
+        pollCount++;
+        lastLatency = latency;
+        maxLatency = Math.max(maxLatency, latency);
+        totalLatency += latency;
+        lastUpdateBytes = bytes;
+        totalUpdateBytes += bytes;
+        lastPersistCallCount = persistCalls;
+        totalPersistCallCount += persistCalls;
+    }
+
+    /**
+     * Records a poll that failed to reach the server or could not be read.
+     */
+    public synchronized void pollFailed() {
+        failedPollCount++;
+    }
+
+    public synchronized int getPollCount() {
+        return pollCount;
+    }
+
+    public synchronized int getFailedPollCount() {
+        return failedPollCount;
+    }
+
+    public synchronized long getLastLatency() {
+        return lastLatency;
+    }
+
+    public synchronized long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * Returns the average time in milliseconds a completed poll took, or 0 if
+     * no polls have completed.
+     */
+    public synchronized double getAverageLatency() {
+        if (pollCount == 0) return 0;
+        return (double) totalLatency / pollCount;
+    }
+
+    public synchronized long getLastUpdateBytes() {
+        return lastUpdateBytes;
+    }
+
+    public synchronized long getTotalUpdateBytes() {
+        return totalUpdateBytes;
+    }
+
+    public synchronized int getLastPersistCallCount() {
+        return lastPersistCallCount;
+    }
+
+    public synchronized long getTotalPersistCallCount() {
+        return totalPersistCallCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "polls=" + pollCount + ", failed=" + failedPollCount +
+            ", lastLatency=" + lastLatency + "ms, averageLatency=" + getAverageLatency() +
+            "ms, maxLatency=" + maxLatency + "ms, lastUpdateBytes=" + lastUpdateBytes +
+            ", lastPersistCalls=" + lastPersistCallCount;
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.enterprise;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.HttpClient;
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.enterprise.client.SPServerInfo;
+
+/**
+ * Polls one server for updates to any number of open workspaces using a small,
+ * fixed pool of threads and a shared pool of HTTP connections. This replaces
+ * the thread and connection each {@link AbstractNetworkConflictResolver}
+ * would otherwise hold open for the life of its workspace.
+ * <p>
+ * Workspaces that are ready for their next update wait in the pool's queue.
+ * A poller thread takes the next workspace, sends its long poll and hands the
+ * persist calls of the response to the workspace's resolver, which applies
+ * them on the foreground. The workspace is queued again once its update has
+ * been applied, or after a retry delay if the poll failed. The delay starts
+ * at the resolver's retry delay and doubles with each failure in a row, up to
+ * {@link #MAX_RETRY_DELAY}.
+ * <p>
+ * A poll holds its poller thread and connection while the server holds the
+ * long poll, so each long poll is given up after the poll timeout if no
+ * update has started to arrive and its workspace goes to the back of the
+ * queue. The pollers take turns among all of the workspaces, however many
+ * there are. An update made while its workspace is waiting for a poller is
+ * not lost: the server answers the workspace's next poll with it at once.
+ * The longest a workspace waits for a poller is about the poll timeout times
+ * the number of workspaces per poller.
+ * <p>
+ * A resolver whose server has a shared service, see
+ * {@link ClientSideSessionUtils#getUpdatePollService(SPServerInfo, CookieStore)},
+ * registers itself with it when it is started instead of running its own
+ * thread. Resolvers registered with this service some other way must not also
+ * be started as threads.
+ */
+public class UpdatePollService {
+
+    private static final Logger logger = Logger.getLogger(UpdatePollService.class);
+
+    /**
+     * The default number of threads and connections the workspaces of a
+     * server share.
+     */
+    public static final int DEFAULT_POLLER_COUNT = 4;
+
+    /**
+     * The longest time in milliseconds to wait before retrying a workspace
+     * whose polls keep failing.
+     */
+    public static final long MAX_RETRY_DELAY = 60000;
+
+    /**
+     * The default time in milliseconds a long poll is held before it is given
+     * up to let the next workspace be polled.
+     */
+    public static final int DEFAULT_POLL_TIMEOUT = 5000;
+
+    private final SPServerInfo serverInfo;
+
+    /**
+     * The client all polls are made through. Its connection manager must be
+     * safe to use from all of the pollers at once.
+     */
+    private final HttpClient httpClient;
+
+    /**
+     * The time in milliseconds a long poll is held before it is given up.
+     */
+    private volatile int pollTimeout = DEFAULT_POLL_TIMEOUT;
+
+    private final ExecutorService pollers;
+
+    /**
+     * Queues workspaces again after a failed poll once their retry delay has
+     * passed, and gives up long polls that have timed out.
+     */
+    private final ScheduledExecutorService retryTimer;
+
+    /**
+     * The resolvers registered with this service, keyed by workspace UUID.
+     */
+    private final Map<String, AbstractNetworkConflictResolver> resolvers =
+        Collections.synchronizedMap(new HashMap<String, AbstractNetworkConflictResolver>());
+
+    /**
+     * The resolvers that are waiting in the pollers' queue. A resolver is only
+     * queued once even if it is scheduled again before its poll runs.
+     */
+    private final Set<AbstractNetworkConflictResolver> queued =
+        Collections.synchronizedSet(new HashSet<AbstractNetworkConflictResolver>());
+
+    /**
+     * The number of polls in a row that have failed for each resolver whose
+     * last poll failed.
+     */
+    private final ConcurrentMap<AbstractNetworkConflictResolver, Integer> failureCounts =
+        new ConcurrentHashMap<AbstractNetworkConflictResolver, Integer>();
+
+    public UpdatePollService(SPServerInfo serverInfo, CookieStore cookieStore) {
+        this(serverInfo, cookieStore, DEFAULT_POLLER_COUNT);
+    }
+
+    /**
+     * @param serverInfo
+     *            The server to poll.
+     * @param cookieStore
+     *            The cookies of the client session, shared with the rest of
+     *            the session's requests.
+     * @param pollerCount
+     *            The number of threads and connections used to poll. Any
+     *            number of workspaces can share them.
+     */
+    public UpdatePollService(SPServerInfo serverInfo, CookieStore cookieStore, int pollerCount) {
+        this(serverInfo, ClientSideSessionUtils.createPooledHttpClient(serverInfo, cookieStore, pollerCount), pollerCount);
+    }
+
+    /**
+     * @param httpClient
+     *            The client to poll with. It must allow as many concurrent
+     *            requests as there are pollers.
+     */
+    public UpdatePollService(SPServerInfo serverInfo, HttpClient httpClient, int pollerCount) {
+        if (pollerCount < 1) {
+            throw new IllegalArgumentException("At least one poller is required but " + pollerCount + " were requested.");
+        }
+        this.serverInfo = serverInfo;
+        this.httpClient = httpClient;
+        final String threadName = "updater-" + serverInfo.getServerAddress() + "-";
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, threadName + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+        pollers = Executors.newFixedThreadPool(pollerCount, threadFactory);
+        retryTimer = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    /**
+     * Starts polling for updates to the given resolver's workspace. The
+     * workspace must be on this service's server.
+     */
+    public void register(AbstractNetworkConflictResolver resolver) {
+        if (!serverInfo.equals(resolver.projectLocation.getServiceInfo())) {
+            throw new IllegalArgumentException("The workspace " + resolver.projectLocation.getName() +
+                    " is not on the server " + serverInfo.getName());
+        }
+        synchronized (resolvers) {
+            resolver.setPollService(this);
+            resolvers.put(resolver.projectLocation.getUUID(), resolver);
+        }
+        schedulePoll(resolver);
+    }
+
+    /**
+     * Stops polling for the given resolver's workspace. A poll that is in
+     * progress is allowed to finish but the workspace will not be polled
+     * again.
+     */
+    public void unregister(AbstractNetworkConflictResolver resolver) {
+        remove(resolver);
+        resolver.setPollService(null);
+    }
+
+    /**
+     * Called by a resolver when it has finished applying an update and is
+     * ready for the next one.
+     */
+    void updateFinished(AbstractNetworkConflictResolver resolver) {
+        schedulePoll(resolver);
+    }
+
+    /**
+     * Queues a poll of the given resolver's workspace if it is still
+     * registered.
+     */
+    private void schedulePoll(final AbstractNetworkConflictResolver resolver) {
+        if (!isRegistered(resolver)) return;
+        if (resolver.isCancelled()) {
+            remove(resolver);
+            return;
+        }
+        if (!queued.add(resolver)) return;
+        try {
+            pollers.execute(new Runnable() {
+                public void run() {
+                    queued.remove(resolver);
+                    poll(resolver);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.remove(resolver);
+            logger.debug("Not polling " + resolver.projectLocation.getUUID() + " as the service was shut down.");
+        }
+    }
+
+    /**
+     * Makes one poll for the given resolver's workspace. This runs on a poller
+     * thread.
+     */
+    private void poll(final AbstractNetworkConflictResolver resolver) {
+        final long sequence = resolver.beginUpdate();
+        // The update is still being applied, the resolver will tell us
+        // when it is done.
+        if (sequence == -1) return;
+        try {
+            boolean keepPolling = resolver.pollForUpdate(httpClient, sequence, retryTimer, pollTimeout);
+            failureCounts.remove(resolver);
+            if (!keepPolling) {
+                remove(resolver);
+            }
+        } catch (Exception ex) {
+            resolver.reportPollFailure(ex);
+            resolver.endUpdate(sequence);
+            Integer failures = failureCounts.get(resolver);
+            failures = failures == null ? 1 : failures + 1;
+            failureCounts.put(resolver, failures);
+            try {
+                retryTimer.schedule(new Runnable() {
+                    public void run() {
+                        schedulePoll(resolver);
+                    }
+                }, getRetryDelay(resolver), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                logger.debug("Not retrying " + resolver.projectLocation.getUUID() + " as the service was shut down.");
+            }
+        }
+    }
+
+    /**
+     * Returns the time in milliseconds the given resolver will wait before
+     * its next poll if its last poll failed. The resolver's retry delay is
+     * doubled for each failure after the first, up to
+     * {@link #MAX_RETRY_DELAY}.
+     */
+    long getRetryDelay(AbstractNetworkConflictResolver resolver) {
+        Integer failures = failureCounts.get(resolver);
+        long delay = resolver.getRetryDelay();
+        for (int i = 1; failures != null && i < failures && delay < MAX_RETRY_DELAY; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, MAX_RETRY_DELAY);
+    }
+
+    private boolean isRegistered(AbstractNetworkConflictResolver resolver) {
+        return resolvers.get(resolver.projectLocation.getUUID()) == resolver;
+    }
+
+    /**
+     * Removes the given resolver if it is the one registered for its
+     * workspace.
+     */
+    private void remove(AbstractNetworkConflictResolver resolver) {
+        synchronized (resolvers) {
+            if (isRegistered(resolver)) {
+                resolvers.remove(resolver.projectLocation.getUUID());
+            }
+        }
+        failureCounts.remove(resolver);
+    }
+
+    /**
+     * Returns the poll metrics of the given workspace, or null if the
+     * workspace is not registered with this service.
+     */
+    public UpdatePollMetrics getMetrics(String workspaceUUID) {
+        AbstractNetworkConflictResolver resolver = resolvers.get(workspaceUUID);
+        if (resolver == null) return null;
+        return resolver.getPollMetrics();
+    }
+
+    /**
+     * Returns the poll metrics of every registered workspace keyed by
+     * workspace UUID.
+     */
+    public Map<String, UpdatePollMetrics> getAllMetrics() {
+        Map<String, UpdatePollMetrics> metrics = new HashMap<String, UpdatePollMetrics>();
+        synchronized (resolvers) {
+            for (Map.Entry<String, AbstractNetworkConflictResolver> entry : resolvers.entrySet()) {
+                metrics.put(entry.getKey(), entry.getValue().getPollMetrics());
+            }
+        }
+        return metrics;
+    }
+
+    public SPServerInfo getServerInfo() {
+        return serverInfo;
+    }
+
+    public int getPollTimeout() {
+        return pollTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds a long poll is held before it is given up
+     * for the next workspace. Shorter times let workspaces waiting for a
+     * poller get their updates sooner at the cost of more requests.
+     */
+    public void setPollTimeout(int pollTimeout) {
+        if (pollTimeout < 1) {
+            throw new IllegalArgumentException("The poll timeout must be positive but was " + pollTimeout);
+        }
+        this.pollTimeout = pollTimeout;
+    }
+
+    /**
+     * Stops all polling and closes the shared connections. Polls in progress
+     * are interrupted.
+     */
+    public void shutdown() {
+        resolvers.clear();
+        queued.clear();
+        failureCounts.clear();
+        retryTimer.shutdownNow();
+        pollers.shutdownNow();
+        httpClient.getConnectionManager().shutdown();
+    }
+}
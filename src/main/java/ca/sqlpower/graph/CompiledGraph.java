@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.graph;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A snapshot of the topology of a {@link GraphModel} that graph algorithms can
+ * traverse without going back to the model. Each node of the model is given
+ * an integer id from 0 to {@link #getNodeCount()} - 1 in the order the model
+ * returns its nodes, and the adjacency of every node is stored in two arrays
+ * in compressed sparse row form: the ids of the nodes adjacent to node
+ * <code>u</code> are <code>adjacent[offsets[u]]</code> up to but not
+ * including <code>adjacent[offsets[u + 1]]</code>, in the order the model
+ * returned them.
+ * <p>
+ * Compiling a graph asks the model for its nodes once and for the adjacent
+ * nodes of each node once. This is worth doing whenever an algorithm visits a
+ * node's adjacency more than once, or whenever the model calculates its
+ * adjacency on each call, and it keeps the memory used by graphs with
+ * hundreds of thousands of nodes down to a few integers per node and edge.
+ * <p>
+ * Adjacent nodes the model returns that are not in its set of nodes are left
+ * out of the compiled graph. The compiled graph does not change when the
+ * model changes; compile the model again to pick up the changes.
+ * 
+ * @param <V>
+ *            The node (vertex) type
+ */
+@Immutable
+public class CompiledGraph<V> {
+
+    /**
+     * The nodes of the graph indexed by their id.
+     */
+    private final Object[] nodes;
+    
+    /**
+     * Maps each node of the graph to its id.
+     */
+    private final Map<V, Integer> ids;
+    
+    /**
+     * The position in {@link #adjacent} where the adjacency of each node
+     * starts. This has one more entry than there are nodes so the adjacency of
+     * node <code>u</code> always ends at <code>offsets[u + 1]</code>.
+     */
+    private final int[] offsets;
+    
+    /**
+     * The ids of the adjacent nodes of every node, grouped by node.
+     */
+    private final int[] adjacent;
+
+    /**
+     * Compiles the current topology of the given model.
+     */
+    public CompiledGraph(GraphModel<V, ?> model) {
+        Collection<V> modelNodes = model.getNodes();
+        int nodeCount = modelNodes.size();
+        nodes = new Object[nodeCount];
+        ids = new HashMap<V, Integer>(Math.max(16, (int) (nodeCount / 0.75f) + 1));
+        int id = 0;
+        for (V node : modelNodes) {
+            if (ids.containsKey(node)) continue;
+            nodes[id] = node;
+            ids.put(node, id);
+            id++;
+        }
+        // the model may list a node more than once
+        nodeCount = id;
+        
+        offsets = new int[nodeCount + 1];
+        int[] edges = new int[Math.max(16, nodeCount)];
+        int edgeCount = 0;
+        for (int u = 0; u < nodeCount; u++) {
+            offsets[u] = edgeCount;
+            for (V v : model.getAdjacentNodes(getNode(u))) {
+                Integer vId = ids.get(v);
+                if (vId == null) continue;
+                if (edgeCount == edges.length) {
+                    int[] larger = new int[edges.length * 2];
+                    System.arraycopy(edges, 0, larger, 0, edgeCount);
+                    edges = larger;
+                }
+                edges[edgeCount++] = vId;
+            }
+        }
+        offsets[nodeCount] = edgeCount;
+        adjacent = new int[edgeCount];
+        System.arraycopy(edges, 0, adjacent, 0, edgeCount);
+    }
+    
+    public int getNodeCount() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Returns the number of edges in the compiled graph. Edges to nodes outside
+     * of the graph are not counted.
+     */
+    public int getEdgeCount() {
+        return adjacent.length;
+    }
+
+    /**
+     * Returns the id of the given node, or -1 if the node is not in this
+     * graph.
+     */
+    public int getId(V node) {
+        Integer id = ids.get(node);
+        if (id == null) return -1;
+        return id;
+    }
+    
+    /**
+     * Returns the node with the given id.
+     */
+    @SuppressWarnings("unchecked")
+    public V getNode(int id) {
+        return (V) nodes[id];
+    }
+    
+    /**
+     * Returns the number of nodes adjacent to the node with the given id.
+     */
+    public int getOutDegree(int id) {
+        return offsets[id + 1] - offsets[id];
+    }
+
+    /**
+     * Returns the id of the <code>i</code>th node adjacent to the node with the
+     * given id, where <code>i</code> is less than the node's
+     * {@link #getOutDegree(int) out degree}.
+     */
+    public int getAdjacentId(int id, int i) {
+        return adjacent[offsets[id] + i];
+    }
+
+    /**
+     * Returns the nodes adjacent to the given node in the order the model
+     * returned them. The returned list is a view on this graph and cannot be
+     * modified.
+     */
+    public List<V> getAdjacentNodes(V node) {
+        final int id = getId(node);
+        if (id == -1) {
+            throw new IllegalArgumentException("The node " + node + " is not in this graph.");
+        }
+        return new AbstractList<V>() {
+            @Override
+            public V get(int index) {
+                if (index < 0 || index >= size()) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+                }
+                return getNode(getAdjacentId(id, index));
+            }
+            @Override
+            public int size() {
+                return getOutDegree(id);
+            }
+        };
+    }
+    
+    @Override
+    public String toString() {
+        return "CompiledGraph[" + getNodeCount() + " nodes, " + getEdgeCount() + " edges]";
+    }
+}
@@ -24,13 +24,15 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 
 /**
  * Implements an algorithm that partitions a graph into its set of
- * connected components
+ * connected components. Two nodes are in the same component if there is a
+ * path between them, following edges in either direction.
  */
 public class ConnectedComponentFinder<V, E> {
 
@@ -51,52 +53,60 @@ public class ConnectedComponentFinder<V, E> {
     }
     
     public Set<Set<V>> findConnectedComponents(GraphModel<V, E> model) {
-        
-        // all nodes in the graph that we have not yet assigned to a component
-        final Set<V> undiscovered;
-        if (comparator != null) {
-            ArrayList<V> sortedNodes = new ArrayList<V>(model.getNodes());
-            Collections.sort(sortedNodes, comparator);
-            undiscovered = new LinkedHashSet<V>(sortedNodes);
-        } else {
-            undiscovered = new HashSet<V>();
-            undiscovered.addAll(model.getNodes());
-        }
+        return findConnectedComponents(new CompiledGraph<V>(model));
+    }
 
-        if (logger.isDebugEnabled()) {
-            logger.debug("Nodes to process:" + undiscovered);
-                
+    /**
+     * Partitions the given compiled graph into its connected components by
+     * merging the endpoints of every edge in a {@link UnionFind}, which takes
+     * close to linear time in the size of the graph. If this finder has a
+     * comparator the components are returned in the order of their smallest
+     * node, otherwise they are in the order of the first of their nodes in the
+     * graph's node order.
+     */
+    public Set<Set<V>> findConnectedComponents(CompiledGraph<V> graph) {
+        int nodeCount = graph.getNodeCount();
+        UnionFind sets = new UnionFind(nodeCount);
+        for (int u = 0; u < nodeCount; u++) {
+            int degree = graph.getOutDegree(u);
+            for (int i = 0; i < degree; i++) {
+                sets.union(u, graph.getAdjacentId(u, i));
+            }
         }
-
-        // the current component of the graph we're discovering using the BFS
-        final Set<V> thisComponent = new HashSet<V>();
         
-        // the components we've finished discovering
-        Set<Set<V>> components = new LinkedHashSet<Set<V>>();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Found " + sets.getSetCount() + " components in " + graph);
+        }
         
-        BreadthFirstSearch<V, E> bfs = new BreadthFirstSearch<V, E>();
-        bfs.addBreadthFirstSearchListener(new BreadthFirstSearchListener<V>() {
-            public void nodeDiscovered(V node) {
-                undiscovered.remove(node);
-                thisComponent.add(node);
-            }
-        });
+        List<Integer> order = new ArrayList<Integer>(nodeCount);
+        for (int u = 0; u < nodeCount; u++) {
+            order.add(u);
+        }
+        if (comparator != null) {
+            final CompiledGraph<V> g = graph;
+            Collections.sort(order, new Comparator<Integer>() {
+                public int compare(Integer o1, Integer o2) {
+                    return comparator.compare(g.getNode(o1), g.getNode(o2));
+                }
+            });
+        }
         
-        while (!undiscovered.isEmpty()) {
-            
-            logger.debug("Starting new BFS");
-            
-            V node = undiscovered.iterator().next();
-            bfs.performSearch(model, node);
-            
-            if (logger.isDebugEnabled()) {
-                logger.debug("  Search found "+thisComponent.size()+" nodes");
+        // the component of each representative, created when the first of
+        // its nodes comes up in the order
+        List<Set<V>> componentByRoot = new ArrayList<Set<V>>(Collections.<Set<V>>nCopies(nodeCount, null));
+        List<Set<V>> components = new ArrayList<Set<V>>(sets.getSetCount());
+        for (int u : order) {
+            int root = sets.find(u);
+            Set<V> component = componentByRoot.get(root);
+            if (component == null) {
+                component = new HashSet<V>();
+                componentByRoot.set(root, component);
+                components.add(component);
             }
-            
-            components.add(new HashSet<V>(thisComponent));
-            thisComponent.clear();
+            component.add(graph.getNode(u));
         }
         
-        return components;
+        // the components can only be hashed once they are complete
+        return new LinkedHashSet<Set<V>>(components);
     }
 }
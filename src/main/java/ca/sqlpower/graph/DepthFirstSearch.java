@@ -19,11 +19,8 @@
 
 package ca.sqlpower.graph;
 
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.log4j.Logger;
 
@@ -31,6 +28,10 @@ import org.apache.log4j.Logger;
  * The DepthFirstSearch class performs a depth-first search on a given
  * {@link GraphModel}, where vertices are of type V and the edges that connect
  * them are of type E.
+ * <p>
+ * The search runs on a {@link CompiledGraph} of the model and keeps its own
+ * stack, so it visits graphs with very long paths (such as long chains of
+ * foreign keys) without running out of call stack.
  *
  * @param V the vertex type of the graph.
  * @param E The edge type of the graph.
@@ -39,19 +40,6 @@ public class DepthFirstSearch<V, E> {
     
     private static final Logger logger = Logger.getLogger(DepthFirstSearch.class);
     
-    /**
-     * Maps the vertices of the graph) to their associated VertexInfo instances.  
-     * VertexInfo objects store information about the DFS execution which will be 
-     * of interest to users of the class. 
-     */
-    private Map<V, VertexInfo> vertexInfo;
-    
-    /**
-     * Tracks the current visit time.  This variable is only useful
-     * during the execution of the search.
-     */
-    private int visitTime;
-    
     /**
      * Keeps track of the order the DFS finished with each of the vertices
      * in the graph.  The last vertex finished is at the head of the list.
@@ -67,94 +55,7 @@ public class DepthFirstSearch<V, E> {
      */
 	private boolean cyclic = false;
 
-    /**
-     * The VertexInfo class contains visit information related to the DFS
-     * algorithm's discovery of a vertex in the graph.  It is capable of
-     * classifying a vertex as "white," "grey," and "black" depending on
-     * when it was started and finished by the DFS.
-     */
-    private class VertexInfo {
-        
-        /**
-         * A serial number assigned to this vertex when it is first discovered
-         * by the DFS.
-         */
-        private int discoveryTime;
-        
-        /**
-         * A serial number assigned to this vertex when the DFS leaves it.
-         */
-        private int finishTime;
-        
-        /**
-         * The vertex that the DFS was at when it discovered this vertex.
-         * In SQLTable terms, the predecessor is a pkTable which exports its
-         * key to this table.
-         */
-        private V predecessor;
-        
-        /**
-         * Returns true iff this vertex has not been started (discovered) yet.
-         */
-        public boolean isWhite() {
-            return (discoveryTime == 0 && finishTime == 0);
-        }
-        
-        /**
-         * Returns true iff this vertex has been started but not
-         * finished.
-         */
-        public boolean isGrey() {
-            return (discoveryTime != 0 && finishTime == 0);
-        }
-
-        /**
-         * Returns true iff this vertex has been started and finished.
-         */
-        public boolean isBlack() {
-            return finishTime != 0;
-        }
-        
-        /**
-         * See {@link #discoveryTime}.
-         */
-        public int getDiscoveryTime() {
-            return discoveryTime;
-        }
-        /**
-         * See {@link #discoveryTime}.
-         */
-        public void setDiscoveryTime(int discoveryTime) {
-            this.discoveryTime = discoveryTime;
-        }
-        /**
-         * See {@link #finishTime}.
-         */
-        public int getFinishTime() {
-            return finishTime;
-        }
-        /**
-         * See {@link #finishTime}.
-         */
-        public void setFinishTime(int finishTime) {
-            this.finishTime = finishTime;
-        }
-        /**
-         * See {@link #predecessor}.
-         */
-        public V getPredecessor() {
-            return predecessor;
-        }
-        /**
-         * See {@link #predecessor}.
-         */
-        public void setPredecessor(V predecessor) {
-            this.predecessor = predecessor;
-        }
-    }
-    
     public DepthFirstSearch() {
-    	vertexInfo = new HashMap<V, VertexInfo>();
     	finishOrder = new LinkedList<V>();
     }
 
@@ -170,50 +71,61 @@ public class DepthFirstSearch<V, E> {
         if (logger.isDebugEnabled()) {
             logger.debug("Performing Search on: " + model);
         }
-        Collection<V> vertices = model.getNodes();
-        vertexInfo.clear();
-        finishOrder.clear();
-        for (V u : vertices) {
-            vertexInfo.put(u, new VertexInfo());
-        }
-        visitTime = 0;
-        for (V u : vertices) {
-            VertexInfo vi = vertexInfo.get(u);
-            if (vi.isWhite()) visit(u, model);
-        }
+        performSearch(new CompiledGraph<V>(model));
     }
 
     /**
-     * The recursive subroutine of performSearch.  Explores the connected
-     * subgraph at u, colouring nodes as they are encountered. 
+     * Performs a depth-first search on the given compiled graph. The vertices
+     * are started in the graph's node order and the adjacent vertices of each
+     * vertex are explored in the order the graph's model returned them.
+     * Vertices are coloured as described in section 23.3 of "Introduction to
+     * Algorithms" by Cormen et al (ISBN 0-07-013143-0): white vertices have
+     * not been discovered, grey vertices have been discovered but not
+     * finished, and black vertices have been finished.
      * 
-     * <p>This is an implementation of the DFS-VISIT routine in section
-     * 23.3 of "Introduction to Algorithms" by Cormen et al (ISBN 
-     * 0-07-013143-0).
-     *
-     * @param u
-     * @param model
+     * @param graph
+     *            The graph that the DFS will run on
      */
-    private boolean visit(V u, GraphModel<V, E> model) {
-    	boolean ret = true;
-        VertexInfo vi = vertexInfo.get(u);
-        vi.setDiscoveryTime(++visitTime);
-        for (V v : model.getAdjacentNodes(u)) {
-            VertexInfo vi2 = vertexInfo.get(v);
-            if (vi2 == null) {
-                logger.debug("Skipping vertex " + v + " because it is not in the set of tables to search");
-            } else {
-                if (vi2.isWhite()) {
-                    vi2.setPredecessor(u);
-                    visit(v, model);
-                } else if (vi2.isGrey()) {
-                	cyclic = true;
+    public void performSearch(CompiledGraph<V> graph) {
+        finishOrder.clear();
+        cyclic = false;
+        
+        final byte white = 0;
+        final byte grey = 1;
+        final byte black = 2;
+        int nodeCount = graph.getNodeCount();
+        byte[] colour = new byte[nodeCount];
+        
+        // The vertices that have been started but not finished, with the
+        // index of the next adjacent vertex to explore from each of them.
+        int[] stack = new int[nodeCount];
+        int[] nextAdjacent = new int[nodeCount];
+        
+        for (int root = 0; root < nodeCount; root++) {
+            if (colour[root] != white) continue;
+            int depth = 0;
+            stack[0] = root;
+            nextAdjacent[0] = 0;
+            colour[root] = grey;
+            while (depth >= 0) {
+                int u = stack[depth];
+                if (nextAdjacent[depth] < graph.getOutDegree(u)) {
+                    int v = graph.getAdjacentId(u, nextAdjacent[depth]++);
+                    if (colour[v] == white) {
+                        colour[v] = grey;
+                        depth++;
+                        stack[depth] = v;
+                        nextAdjacent[depth] = 0;
+                    } else if (colour[v] == grey) {
+                        cyclic = true;
+                    }
+                } else {
+                    colour[u] = black;
+                    finishOrder.addFirst(graph.getNode(u));
+                    depth--;
                 }
             }
         }
-        vi.setFinishTime(++visitTime);
-        finishOrder.addFirst(u);
-        return ret;
     }
     
     /**
@@ -19,9 +19,7 @@
 
 package ca.sqlpower.graph;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
@@ -36,21 +34,14 @@ public class DijkstrasAlgorithm<V, E> {
 
 	Logger logger = Logger.getLogger(DijkstrasAlgorithm.class);
 	
-	/**
-	 * The map of nodes to the distance between them and the starting node. Infinity is 
-	 * represented by the maximum size of an int.
-	 */
-	private Map<V, Integer> d = new HashMap<V, Integer>();
-	
-	/**
-	 * The map that contains <node, parent node> pairs when Dijkstra's algorithm is run.
-	 */
-	private Map<V, V> pi = new HashMap<V, V>();
-	
 	/**
 	 * Performs Dijkstra's algorithm on the given graph, starting with the given
 	 * node. This algorithm is described in "Introduction to Algorithms" by
 	 * Cormen et al, Chapter 25.
+	 * <p>
+	 * The graph is compiled before the search; if the same graph will be
+	 * searched from several starting nodes compile it once and use
+	 * {@link #calculateShortestPaths(CompiledGraph, Object)} instead.
 	 * 
 	 * @param graph
 	 *            The graph to run Dijkstra's algorithm on.
@@ -61,71 +52,61 @@ public class DijkstrasAlgorithm<V, E> {
 	 *         not reached.
 	 */
 	public Map<V, V> calculateShortestPaths(GraphModel<V, E> graph, V start) {
-		initializeSingleSource(graph, start);
-		List<V> S = new ArrayList<V>();
-		List<V> Q = new ArrayList<V>(graph.getNodes());
-		while (!Q.isEmpty()) {
-			V u = extractMin(Q);
-			S.add(u);
-			for (V v: graph.getAdjacentNodes(u)) {
-				relax(u, v);
-			}
-		}
-		return pi;
+		return calculateShortestPaths(new CompiledGraph<V>(graph), start);
 	}
 
 	/**
-	 * This method relaxes the edge between the nodes by reducing the weight of
-	 * the edges based on the shortest path from the starting node to v.
+	 * Performs Dijkstra's algorithm on the given compiled graph, starting with
+	 * the given node. Every edge has a weight of 1. The nodes still to be
+	 * visited are kept in a binary heap keyed on their distance from the start
+	 * so the search takes O((V + E) log V) time. Of the nodes that are the same
+	 * distance from the start, the one that comes first in the graph's node
+	 * order is visited first.
 	 * 
-	 * @param u
-	 *            A node that has a path to the starting node and is connected
-	 *            to v.
-	 * @param v
-	 *            The node that has an edge with u that we wish to relax.
+	 * @param graph
+	 *            The graph to run Dijkstra's algorithm on.
+	 * @param startingNode
+	 *            The node to start running Dijkstra's algorithm from.
+	 * @return The pi map. The map contains <node, parent node> pairs given from
+	 *         Dijkstra's algorithm. The map will not contain the node if it was
+	 *         not reached.
 	 */
-	private void relax(V u, V v) {
-		if (d.get(v) > d.get(u) + 1) {
-			d.put(v, d.get(u) + 1);
-			pi.put(v, u);
+	public Map<V, V> calculateShortestPaths(CompiledGraph<V> graph, V start) {
+		Map<V, V> pi = new HashMap<V, V>();
+		int s = graph.getId(start);
+		if (s == -1) return pi;
+		
+		int nodeCount = graph.getNodeCount();
+		int[] d = new int[nodeCount];
+		int[] parent = new int[nodeCount];
+		boolean[] finished = new boolean[nodeCount];
+		for (int i = 0; i < nodeCount; i++) {
+			d[i] = Integer.MAX_VALUE;
+			parent[i] = -1;
 		}
+		d[s] = 0;
 		
-	}
-
-	/**
-	 * Extracts the node that has the shortest path to the starting node. This
-	 * node will be removed from the given list.
-	 * 
-	 * @param q
-	 *            The list that contains the nodes we have not reached yet in
-	 *            Dijkstra's algorithm.
-	 * @return The node that has the shortest path to the starting node.
-	 */
-	private V extractMin(List<V> q) {
-		V u = null;
-		for (V v: q) {
-			if (u == null || d.get(u) > d.get(v)) {
-				u = v;
+		IntMinHeap q = new IntMinHeap(nodeCount);
+		q.insertOrDecrease(s, 0);
+		while (!q.isEmpty()) {
+			int u = q.removeMin();
+			finished[u] = true;
+			int degree = graph.getOutDegree(u);
+			for (int i = 0; i < degree; i++) {
+				int v = graph.getAdjacentId(u, i);
+				if (!finished[v] && d[v] > d[u] + 1) {
+					d[v] = d[u] + 1;
+					parent[v] = u;
+					q.insertOrDecrease(v, d[v]);
+				}
 			}
 		}
-		q.remove(u);
-		return u;
-	}
-
-	/**
-	 * Initializes the d and pi maps for finding the shortest paths in a graph
-	 * by using Dijkstra's algorithm.
-	 * 
-	 * @param graph
-	 *            The list of nodes in the graph we will be running Dijkstra's
-	 *            algorithm on.
-	 * @param start
-	 *            The starting node for finding the shortest path to.
-	 */
-	private void initializeSingleSource(GraphModel<V, E> graph, V start) {
-		for(V v: graph.getNodes()) {
-			d.put(v, new Integer(Integer.MAX_VALUE - 1));
+		
+		for (int v = 0; v < nodeCount; v++) {
+			if (parent[v] != -1) {
+				pi.put(graph.getNode(v), graph.getNode(parent[v]));
+			}
 		}
-		d.put(start, new Integer(0));
+		return pi;
 	}
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.graph;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A binary min-heap of the integers 0 to n - 1 ordered by an integer key,
+ * supporting decrease-key in logarithmic time. Elements with equal keys come
+ * out smallest element first so the order of removal is deterministic. This
+ * is the priority queue used by {@link DijkstrasAlgorithm}.
+ */
+class IntMinHeap {
+
+    /**
+     * The elements in heap order.
+     */
+    private final int[] heap;
+    
+    /**
+     * The position of each element in {@link #heap}, or -1 if the element is
+     * not in the heap.
+     */
+    private final int[] position;
+    
+    /**
+     * The key of each element.
+     */
+    private final int[] keys;
+    
+    private int size;
+    
+    public IntMinHeap(int capacity) {
+        heap = new int[capacity];
+        position = new int[capacity];
+        keys = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            position[i] = -1;
+        }
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public boolean contains(int element) {
+        return position[element] != -1;
+    }
+    
+    /**
+     * Adds the element with the given key, or lowers its key if it is already
+     * in the heap with a larger key.
+     */
+    public void insertOrDecrease(int element, int key) {
+        int i = position[element];
+        if (i == -1) {
+            i = size++;
+            heap[i] = element;
+            position[element] = i;
+        } else if (key >= keys[element]) {
+            return;
+        }
+        keys[element] = key;
+        siftUp(i);
+    }
+
+    /**
+     * Removes and returns the element with the smallest key.
+     */
+    public int removeMin() {
+        if (size == 0) throw new NoSuchElementException();
+        int min = heap[0];
+        position[min] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            position[heap[0]] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+    
+    /**
+     * Returns true if element a belongs closer to the top of the heap than
+     * element b.
+     */
+    private boolean before(int a, int b) {
+        return keys[a] < keys[b] || (keys[a] == keys[b] && a < b);
+    }
+    
+    private void siftUp(int i) {
+        int element = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(element, heap[parent])) break;
+            heap[i] = heap[parent];
+            position[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = element;
+        position[element] = i;
+    }
+    
+    private void siftDown(int i) {
+        int element = heap[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], element)) break;
+            heap[i] = heap[child];
+            position[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = element;
+        position[element] = i;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.graph;
+
+/**
+ * A disjoint-set forest over the integers 0 to n - 1, using union by rank and
+ * path halving so a sequence of unions and finds runs in nearly linear time.
+ * This is used to partition a {@link CompiledGraph} into its connected
+ * components.
+ */
+public class UnionFind {
+
+    /**
+     * The parent of each element. An element that is its own parent is the
+     * representative of its set.
+     */
+    private final int[] parent;
+    
+    /**
+     * An upper bound on the height of the tree under each representative.
+     */
+    private final byte[] rank;
+    
+    private int setCount;
+    
+    /**
+     * Creates a forest where each of the given number of elements is in a set
+     * of its own.
+     */
+    public UnionFind(int size) {
+        parent = new int[size];
+        rank = new byte[size];
+        for (int i = 0; i < size; i++) {
+            parent[i] = i;
+        }
+        setCount = size;
+    }
+    
+    /**
+     * Returns the representative of the set the given element is in.
+     */
+    public int find(int element) {
+        while (parent[element] != element) {
+            parent[element] = parent[parent[element]];
+            element = parent[element];
+        }
+        return element;
+    }
+
+    /**
+     * Merges the sets the two elements are in.
+     * 
+     * @return true if the elements were in different sets.
+     */
+    public boolean union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) return false;
+        if (rank[rootA] < rank[rootB]) {
+            parent[rootA] = rootB;
+        } else if (rank[rootA] > rank[rootB]) {
+            parent[rootB] = rootA;
+        } else {
+            parent[rootB] = rootA;
+            rank[rootA]++;
+        }
+        setCount--;
+        return true;
+    }
+    
+    public boolean isConnected(int a, int b) {
+        return find(a) == find(b);
+    }
+    
+    /**
+     * Returns the number of disjoint sets.
+     */
+    public int getSetCount() {
+        return setCount;
+    }
+    
+    public int size() {
+        return parent.length;
+    }
+}
@@ -47,8 +47,14 @@ public abstract class AbstractSPObject implements SPObject {
 	
     private static final Logger logger = Logger.getLogger(AbstractSPObject.class);
 	
-    protected final List<SPListener> listeners = 
-        Collections.synchronizedList(new ArrayList<SPListener>());
+    /**
+     * The listeners on this object. Events are fired to a snapshot of this
+     * list taken when the event is fired, so listeners can be added and
+     * removed without waiting for events in progress on other threads.
+     */
+    private final SPListenerList listenerList = new SPListenerList();
+    
+    protected final List<SPListener> listeners = listenerList;
     
 	private SPObject parent;
 	private String name;
@@ -324,9 +330,8 @@ public abstract class AbstractSPObject implements SPObject {
     protected SPChildEvent fireChildAdded(Class<? extends SPObject> type, SPObject child, int index) {
     	if (logger.isDebugEnabled()) logger.debug("Child Added: " + type + " notifying " + listeners.size() + " listeners");
     	
-    	synchronized(listeners) {
-    		if (listeners.isEmpty()) return null;
-    	}
+    	final SPListener[] staticListeners = listenerList.snapshot();
+    	if (staticListeners.length == 0) return null;
     	
     	if (!isForegroundThread()) {
     		throw new IllegalStateException("Event for adding the child " + child.getName() + 
@@ -334,12 +339,8 @@ public abstract class AbstractSPObject implements SPObject {
     	}
     	
         final SPChildEvent e = new SPChildEvent(this, type, child, index, EventType.ADDED);
-        synchronized(listeners) {
-        	List<SPListener> staticListeners = new ArrayList<SPListener>(listeners);
-        	for (int i = staticListeners.size() - 1; i >= 0; i--) {
-        		final SPListener listener = staticListeners.get(i);
-        		listener.childAdded(e);
-        	}
+        for (int i = staticListeners.length - 1; i >= 0; i--) {
+        	staticListeners[i].childAdded(e);
         }
         return e;
     }
@@ -360,11 +361,10 @@ public abstract class AbstractSPObject implements SPObject {
      *         testing purposes.
      */
     protected SPChildEvent fireChildRemoved(Class<? extends SPObject> type, SPObject child, int index) {
-    	logger.debug("Child Removed: " + type + " notifying " + listeners.size() + " listeners: " + listeners);
+    	if (logger.isDebugEnabled()) logger.debug("Child Removed: " + type + " notifying " + listeners.size() + " listeners: " + listeners);
     	
-    	synchronized(listeners) {
-    		if (listeners.isEmpty()) return null;
-    	}
+    	final SPListener[] staticListeners = listenerList.snapshot();
+    	if (staticListeners.length == 0) return null;
     	
     	if (!isForegroundThread()) {
     		throw new IllegalStateException("Event for removing the child " + child.getName() + 
@@ -372,12 +372,8 @@ public abstract class AbstractSPObject implements SPObject {
     	}
     	
         final SPChildEvent e = new SPChildEvent(this, type, child, index, EventType.REMOVED);
-        synchronized(listeners) {
-        	List<SPListener> staticListeners = new ArrayList<SPListener>(listeners);
-        	for (int i = staticListeners.size() - 1; i >= 0; i--) {
-        		final SPListener listener = staticListeners.get(i);
-        		listener.childRemoved(e);
-        	}
+        for (int i = staticListeners.length - 1; i >= 0; i--) {
+        	staticListeners[i].childRemoved(e);
         }
         return e;
     }
@@ -392,9 +388,8 @@ public abstract class AbstractSPObject implements SPObject {
     protected PropertyChangeEvent firePropertyChange(final String propertyName, final boolean oldValue, 
             final boolean newValue) {
     	if (oldValue == newValue) return null;
-    	synchronized(listeners) {
-    		if (listeners.size() == 0) return null;
-    	}
+    	final SPListener[] staticListeners = listenerList.snapshot();
+    	if (staticListeners.length == 0) return null;
     	
     	if (!isForegroundThread()) {
     		throw new IllegalStateException("Event for property change " + propertyName + 
@@ -402,12 +397,8 @@ public abstract class AbstractSPObject implements SPObject {
     	}
     	
         final PropertyChangeEvent evt = new PropertyChangeEvent(this, propertyName, oldValue, newValue);
-        synchronized(listeners) {
-        	List<SPListener> staticListeners = new ArrayList<SPListener>(listeners);
-        	for (int i = staticListeners.size() - 1; i >= 0; i--) {
-        		SPListener listener = staticListeners.get(i);
-        		listener.propertyChanged(evt);
-        	}
+        for (int i = staticListeners.length - 1; i >= 0; i--) {
+        	staticListeners[i].propertyChanged(evt);
         }
         return evt;
     }
@@ -423,9 +414,8 @@ public abstract class AbstractSPObject implements SPObject {
             final int newValue) {
     	if (oldValue == newValue) return null;
     	
-    	synchronized(listeners) {
-    		if (listeners.size() == 0) return null;
-    	}
+    	final SPListener[] staticListeners = listenerList.snapshot();
+    	if (staticListeners.length == 0) return null;
     	
     	if (!isForegroundThread()) {
     		throw new IllegalStateException("Event for property change " + propertyName + 
@@ -433,12 +423,8 @@ public abstract class AbstractSPObject implements SPObject {
     	}
     	
         final PropertyChangeEvent evt = new PropertyChangeEvent(this, propertyName, oldValue, newValue);
-        synchronized(listeners) {
-        	List<SPListener> staticListeners = new ArrayList<SPListener>(listeners);
-        	for (int i = staticListeners.size() - 1; i >= 0; i--) {
-        		SPListener listener = staticListeners.get(i);
-        		listener.propertyChanged(evt);
-        	}
+        for (int i = staticListeners.length - 1; i >= 0; i--) {
+        	staticListeners[i].propertyChanged(evt);
         }
         return evt;
     }
@@ -454,9 +440,8 @@ public abstract class AbstractSPObject implements SPObject {
             final char newValue) {
     	if (oldValue == newValue) return null;
     	
-    	synchronized(listeners) {
-    		if (listeners.size() == 0) return null;
-    	}
+    	final SPListener[] staticListeners = listenerList.snapshot();
+    	if (staticListeners.length == 0) return null;
     	
     	if (!isForegroundThread()) {
     		throw new IllegalStateException("Event for property change " + propertyName + 
@@ -464,12 +449,8 @@ public abstract class AbstractSPObject implements SPObject {
     	}
     	
         final PropertyChangeEvent evt = new PropertyChangeEvent(this, propertyName, oldValue, newValue);
-        synchronized(listeners) {
-        	List<SPListener> staticListeners = new ArrayList<SPListener>(listeners);
-        	for (int i = staticListeners.size() - 1; i >= 0; i--) {
-        		SPListener listener = staticListeners.get(i);
-        		listener.propertyChanged(evt);
-        	}
+        for (int i = staticListeners.length - 1; i >= 0; i--) {
+        	staticListeners[i].propertyChanged(evt);
         }
         return evt;
     }
@@ -486,13 +467,12 @@ public abstract class AbstractSPObject implements SPObject {
     	if ((oldValue == null && newValue == null)
     			|| (oldValue != null && oldValue.equals(newValue))) return null; 
     	
-    	synchronized(listeners) {
-    		if (listeners.size() == 0) return null;
-    		if (logger.isDebugEnabled()) {
-    			logger.debug("Firing property change \"" + propertyName
-    					+ "\" to " + listeners.size() + " listeners: "
-    					+ listeners);
-    		}
+    	final SPListener[] staticListeners = listenerList.snapshot();
+    	if (staticListeners.length == 0) return null;
+    	if (logger.isDebugEnabled()) {
+    		logger.debug("Firing property change \"" + propertyName
+    				+ "\" to " + staticListeners.length + " listeners: "
+    				+ listeners);
     	}
     	
     	if (!isForegroundThread()) {
@@ -501,12 +481,8 @@ public abstract class AbstractSPObject implements SPObject {
     	}
     	
         final PropertyChangeEvent evt = new PropertyChangeEvent(this, propertyName, oldValue, newValue);
-        synchronized(listeners) {
-        	List<SPListener> staticListeners = new ArrayList<SPListener>(listeners);
-        	for (int i = staticListeners.size() - 1; i >= 0; i--) {
-        		SPListener listener = staticListeners.get(i);
-        		listener.propertyChanged(evt);
-        	}
+        for (int i = staticListeners.length - 1; i >= 0; i--) {
+        	staticListeners[i].propertyChanged(evt);
         }
         return evt;
     }
@@ -519,21 +495,16 @@ public abstract class AbstractSPObject implements SPObject {
      *         testing purposes.
      */
     protected TransactionEvent fireTransactionStarted(final String message) {
-    	synchronized (listeners) {
-    		if (listeners.size() == 0) return null;            
-    	}
+    	final SPListener[] staticListeners = listenerList.snapshot();
+    	if (staticListeners.length == 0) return null;
     	if (!isForegroundThread()) {
     		throw new IllegalStateException("Event for a transaction start" + 
     				" must fired on the foreground thread.");
     	}
-    	logger.debug(getName() + "[" + getUUID() + "]: Firing transaction started to " + listeners.size() + " listeners");
+    	if (logger.isDebugEnabled()) logger.debug(getName() + "[" + getUUID() + "]: Firing transaction started to " + staticListeners.length + " listeners");
         final TransactionEvent evt = TransactionEvent.createStartTransactionEvent(this, message);
-        synchronized (listeners) {
-        	List<SPListener> staticListeners = new ArrayList<SPListener>(listeners);
-        	for (int i = staticListeners.size() - 1; i >= 0; i--) {
-        		final SPListener listener = staticListeners.get(i);
-        		listener.transactionStarted(evt);
-        	}
+        for (int i = staticListeners.length - 1; i >= 0; i--) {
+        	staticListeners[i].transactionStarted(evt);
         }
         return evt;
     }
@@ -555,37 +526,29 @@ public abstract class AbstractSPObject implements SPObject {
      *         testing purposes.
      */
     protected TransactionEvent fireTransactionEnded(final String message) {
-    	synchronized (listeners) {
-    		if (listeners.size() == 0) return null;            
-    	}
+    	final SPListener[] staticListeners = listenerList.snapshot();
+    	if (staticListeners.length == 0) return null;
     	if (!isForegroundThread()) {
     		throw new IllegalStateException("Event for a transaction end" + 
     				" must fired on the foreground thread.");
     	}
-    	logger.debug(getName() + "[" + getUUID() + "]: Firing transaction ended to " + listeners.size() + " listeners");
+    	if (logger.isDebugEnabled()) logger.debug(getName() + "[" + getUUID() + "]: Firing transaction ended to " + staticListeners.length + " listeners");
         final TransactionEvent evt = TransactionEvent.createEndTransactionEvent(this, message);
         
-        synchronized (listeners) {
-        	List<SPListener> staticListeners = new ArrayList<SPListener>(listeners);
-        	for (int i = staticListeners.size() - 1; i >= 0; i--) {
-        		if (staticListeners.get(i) instanceof VetoableSPListener) {
-        			final VetoableSPListener vetoableListener = (VetoableSPListener) staticListeners.get(i);
-        			try {
-        				vetoableListener.vetoableChange();
-        			} catch (Exception e) {
-        				rollback(e.getMessage());
-        				throw new RuntimeException(e);
-        			}
+        for (int i = staticListeners.length - 1; i >= 0; i--) {
+        	if (staticListeners[i] instanceof VetoableSPListener) {
+        		final VetoableSPListener vetoableListener = (VetoableSPListener) staticListeners[i];
+        		try {
+        			vetoableListener.vetoableChange();
+        		} catch (Exception e) {
+        			rollback(e.getMessage());
+        			throw new RuntimeException(e);
         		}
         	}
         }
         
-        synchronized (listeners) {
-        	List<SPListener> staticListeners = new ArrayList<SPListener>(listeners);
-        	for (int i = staticListeners.size() - 1; i >= 0; i--) {
-        		final SPListener listener = staticListeners.get(i);
-        		listener.transactionEnded(evt);
-        	}
+        for (int i = staticListeners.length - 1; i >= 0; i--) {
+        	staticListeners[i].transactionEnded(evt);
         }
         return evt;
 	}
@@ -600,21 +563,16 @@ public abstract class AbstractSPObject implements SPObject {
      *         testing purposes.
      */
     protected TransactionEvent fireTransactionRollback(final String message) {
-    	synchronized (listeners) {
-    		if (listeners.size() == 0) return null;            
-    	}
+    	final SPListener[] staticListeners = listenerList.snapshot();
+    	if (staticListeners.length == 0) return null;
     	if (!isForegroundThread()) {
     		throw new IllegalStateException("Event for a transaction rollback" + 
     				" must fired on the foreground thread.");
     	}
-    	logger.debug(getName() + "[" + getUUID() + "]: Firing transaction rollback to " + listeners.size() + " listeners");
+    	if (logger.isDebugEnabled()) logger.debug(getName() + "[" + getUUID() + "]: Firing transaction rollback to " + staticListeners.length + " listeners");
         final TransactionEvent evt = TransactionEvent.createRollbackTransactionEvent(this, message);
-        synchronized (listeners) {
-        	List<SPListener> staticListeners = new ArrayList<SPListener>(listeners);
-        	for (int i = staticListeners.size() - 1; i >= 0; i--) {
-        		final SPListener listener = staticListeners.get(i);
-        		listener.transactionRollback(evt);
-        	}
+        for (int i = staticListeners.length - 1; i >= 0; i--) {
+        	staticListeners[i].transactionRollback(evt);
         }
         return evt;
     }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.object;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * The list of listeners on an {@link AbstractSPObject}. Every change to the
+ * list replaces its backing array with a new copy, so the array returned by
+ * {@link #snapshot()} never changes once it has been handed out. Events can
+ * then be fired to the snapshot without holding a lock or copying the list,
+ * and listeners are free to add or remove listeners while an event is being
+ * fired without affecting the event in progress.
+ * <p>
+ * Listeners are added and removed far less often than events are fired so
+ * the cost of copying on each change is small in comparison.
+ */
+@ThreadSafe
+class SPListenerList extends AbstractList<SPListener> implements RandomAccess {
+
+    private static final SPListener[] EMPTY = new SPListener[0];
+
+    /**
+     * The current listeners. The array this refers to is never modified.
+     */
+    private volatile SPListener[] listeners = EMPTY;
+
+    /**
+     * Returns the listeners in this list at the time of the call. The returned
+     * array must not be modified.
+     */
+    SPListener[] snapshot() {
+        return listeners;
+    }
+
+    @Override
+    public SPListener get(int index) {
+        SPListener[] current = listeners;
+        if (index < 0 || index >= current.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + current.length);
+        }
+        return current[index];
+    }
+
+    @Override
+    public int size() {
+        return listeners.length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return listeners.length == 0;
+    }
+
+    @Override
+    public synchronized SPListener set(int index, SPListener element) {
+        SPListener[] copy = listeners.clone();
+        SPListener old = copy[index];
+        copy[index] = element;
+        listeners = copy;
+        return old;
+    }
+
+    @Override
+    public synchronized void add(int index, SPListener element) {
+        SPListener[] current = listeners;
+        if (index < 0 || index > current.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + current.length);
+        }
+        SPListener[] copy = new SPListener[current.length + 1];
+        System.arraycopy(current, 0, copy, 0, index);
+        copy[index] = element;
+        System.arraycopy(current, index, copy, index + 1, current.length - index);
+        modCount++;
+        listeners = copy;
+    }
+
+    @Override
+    public synchronized SPListener remove(int index) {
+        SPListener[] current = listeners;
+        if (index < 0 || index >= current.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + current.length);
+        }
+        SPListener old = current[index];
+        if (current.length == 1) {
+            listeners = EMPTY;
+        } else {
+            SPListener[] copy = new SPListener[current.length - 1];
+            System.arraycopy(current, 0, copy, 0, index);
+            System.arraycopy(current, index + 1, copy, index, current.length - index - 1);
+            listeners = copy;
+        }
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public synchronized boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0) return false;
+        remove(index);
+        return true;
+    }
+
+    @Override
+    public synchronized void clear() {
+        modCount++;
+        listeners = EMPTY;
+    }
+}
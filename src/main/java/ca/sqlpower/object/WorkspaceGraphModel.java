@@ -112,6 +112,20 @@ public class WorkspaceGraphModel implements GraphModel<SPObject, WorkspaceGraphM
      * This list will map each node to a list of outbound edges on the node.
      */
     private final Map<SPObject, Set<WorkspaceGraphModelEdge>> outboundEdges;
+    
+    /**
+     * Maps each node to the nodes at the other end of its outbound edges. This
+     * is kept in step with {@link #outboundEdges} so the searches run while
+     * building the graph, and by users of the graph, do not have to collect
+     * the adjacent nodes on each call.
+     */
+    private final Map<SPObject, Set<SPObject>> adjacentNodes;
+    
+    /**
+     * All of the edges in the graph, collected the first time they are asked
+     * for. This is null if the edges need to be collected again.
+     */
+    private Set<WorkspaceGraphModelEdge> allEdges;
 
     /**
      * This node is the starting point when creating the graph.
@@ -124,6 +138,12 @@ public class WorkspaceGraphModel implements GraphModel<SPObject, WorkspaceGraphM
 		this.inboundEdges = inboundEdges;
 		this.outboundEdges = outboundEdges;
 		this.graphStartNode = graphStartNode;
+		adjacentNodes = new HashMap<SPObject, Set<SPObject>>();
+		for (Map.Entry<SPObject, Set<WorkspaceGraphModelEdge>> entry : outboundEdges.entrySet()) {
+		    for (WorkspaceGraphModelEdge edge : entry.getValue()) {
+		        addAdjacentNode(entry.getKey(), edge.getChild());
+		    }
+		}
     }
     
     /**
@@ -181,6 +201,7 @@ public class WorkspaceGraphModel implements GraphModel<SPObject, WorkspaceGraphM
     	nodes = new HashSet<SPObject>();
     	outboundEdges = new HashMap<SPObject, Set<WorkspaceGraphModelEdge>>();
     	inboundEdges = new HashMap<SPObject, Set<WorkspaceGraphModelEdge>>();
+    	adjacentNodes = new HashMap<SPObject, Set<SPObject>>();
     	
         this.graphStartNode = graphStartNode;
         createGraph(root, showOnlyDependencies, reversePolarity);
@@ -244,7 +265,9 @@ public class WorkspaceGraphModel implements GraphModel<SPObject, WorkspaceGraphM
                 }
             }
             outboundEdges.remove(removedNode);
+            adjacentNodes.remove(removedNode);
         }
+        allEdges = null;
 	}
 
 	void createGraph(SPObject root, boolean showOnlyDependencies,
@@ -299,6 +322,7 @@ public class WorkspaceGraphModel implements GraphModel<SPObject, WorkspaceGraphM
                     outboundEdges.put(parentNode, parentOutboundList);
                 }
                 parentOutboundList.add(edge);
+                addAdjacentNode(parentNode, childNode);
             }
             
             if (!showOnlyDependencies) {
@@ -313,24 +337,36 @@ public class WorkspaceGraphModel implements GraphModel<SPObject, WorkspaceGraphM
         }
 	}
 
+	/**
+	 * Records that the child is at the end of an outbound edge of the parent.
+	 */
+	private void addAdjacentNode(SPObject parent, SPObject child) {
+	    Set<SPObject> adjacent = adjacentNodes.get(parent);
+	    if (adjacent == null) {
+	        adjacent = new HashSet<SPObject>();
+	        adjacentNodes.put(parent, adjacent);
+	    }
+	    adjacent.add(child);
+	    allEdges = null;
+	}
+
     public Collection<SPObject> getAdjacentNodes(SPObject node) {
-        Collection<SPObject> adjacentNodes = new HashSet<SPObject>();
-        Set<WorkspaceGraphModelEdge> edges = outboundEdges.get(node);
-        if (edges == null) return Collections.emptySet();
-        for (WorkspaceGraphModelEdge edge : edges) {
-            adjacentNodes.add(edge.getChild());
-        }
-        return adjacentNodes;
+        Set<SPObject> adjacent = adjacentNodes.get(node);
+        if (adjacent == null) return Collections.emptySet();
+        return adjacent;
     }
 
     public Collection<WorkspaceGraphModelEdge> getEdges() {
-        Set<WorkspaceGraphModelEdge> allEdges = new HashSet<WorkspaceGraphModelEdge>();
-        
-        //All of the edged in the inbound map should also be in the outbound map 
-        //so only add one of the two
-        for (Set<WorkspaceGraphModelEdge> edges : inboundEdges.values()) {
-            if (edges == null) continue;
-            allEdges.addAll(edges);
+        if (allEdges == null) {
+            Set<WorkspaceGraphModelEdge> edgeSet = new HashSet<WorkspaceGraphModelEdge>();
+
+            //All of the edged in the inbound map should also be in the outbound map 
+            //so only add one of the two
+            for (Set<WorkspaceGraphModelEdge> edges : inboundEdges.values()) {
+                if (edges == null) continue;
+                edgeSet.addAll(edges);
+            }
+            allEdges = Collections.unmodifiableSet(edgeSet);
         }
         return allEdges;
     }
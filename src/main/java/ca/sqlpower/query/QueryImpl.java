@@ -45,6 +45,7 @@ import ca.sqlpower.graph.DepthFirstSearch;
 import ca.sqlpower.graph.GraphModel;
 import ca.sqlpower.sql.JDBCDataSource;
 import ca.sqlpower.sql.SPDataSource;
+import ca.sqlpower.sql.jdbcwrapper.DriverDialect;
 import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLDatabase;
 import ca.sqlpower.sqlobject.SQLDatabaseMapping;
@@ -103,53 +104,158 @@ public class QueryImpl implements Query {
 	class TableJoinGraph implements GraphModel<Container, SQLJoin> {
 
 		public Collection<Container> getAdjacentNodes(Container node) {
-			List<Container> adjacencyNodes = new ArrayList<Container>();
-			if (joinMapping.get(node) != null) {
-				for (SQLJoin join : joinMapping.get(node)) {
+			return getJoinGraph().getAdjacentNodes(node);
+		}
+
+		public Collection<SQLJoin> getEdges() {
+			return getJoinGraph().getEdges();
+		}
+
+		public Collection<SQLJoin> getInboundEdges(Container node) {
+			return getJoinGraph().getInboundEdges(node);
+		}
+
+		public Collection<Container> getNodes() {
+			return getJoinGraph().getNodes();
+		}
+
+		public Collection<SQLJoin> getOutboundEdges(Container node) {
+			return getJoinGraph().getOutboundEdges(node);
+		}
+		
+	}
+
+	/**
+	 * A copy of the tables and joins of this query as they were at one point
+	 * in time, with the adjacent tables of each table worked out ahead of
+	 * time. The snapshot never changes; when a table or join is added or
+	 * removed the query discards its snapshot and builds a new one the next
+	 * time it is needed. The order the tables are joined in and whether the
+	 * tables contain cross joins are calculated from the snapshot the first
+	 * time they are asked for and kept with it.
+	 */
+	private static class JoinGraphSnapshot implements GraphModel<Container, SQLJoin> {
+		
+		private final List<Container> nodes;
+		
+		private final List<SQLJoin> edges;
+		
+		private final Map<Container, List<Container>> adjacentNodes;
+		
+		private final Map<Container, List<SQLJoin>> joins;
+		
+		@GuardedBy("this")
+		private List<Container> joinOrder;
+		
+		@GuardedBy("this")
+		private Boolean crossJoins;
+		
+		JoinGraphSnapshot(List<Container> fromTableList, Map<Container, List<SQLJoin>> joinMapping) {
+			nodes = Collections.unmodifiableList(new ArrayList<Container>(fromTableList));
+			List<SQLJoin> edgesList = new ArrayList<SQLJoin>();
+			adjacentNodes = new HashMap<Container, List<Container>>();
+			joins = new HashMap<Container, List<SQLJoin>>();
+			for (Map.Entry<Container, List<SQLJoin>> entry : joinMapping.entrySet()) {
+				Container node = entry.getKey();
+				List<Container> adjacencyNodes = new ArrayList<Container>(entry.getValue().size());
+				for (SQLJoin join : entry.getValue()) {
 					if (join.getLeftColumn().getContainer() == node) {
 						adjacencyNodes.add(join.getRightColumn().getContainer());
 					} else {
-					    adjacencyNodes.add(join.getLeftColumn().getContainer());
+						adjacencyNodes.add(join.getLeftColumn().getContainer());
 					}
 				}
+				adjacentNodes.put(node, Collections.unmodifiableList(adjacencyNodes));
+				joins.put(node, Collections.unmodifiableList(new ArrayList<SQLJoin>(entry.getValue())));
+				edgesList.addAll(entry.getValue());
 			}
+			edges = Collections.unmodifiableList(edgesList);
+		}
+
+		public Collection<Container> getAdjacentNodes(Container node) {
+			List<Container> adjacencyNodes = adjacentNodes.get(node);
+			if (adjacencyNodes == null) return Collections.emptyList();
 			return adjacencyNodes;
 		}
 
 		public Collection<SQLJoin> getEdges() {
-			List<SQLJoin> edgesList = new ArrayList<SQLJoin>();
-			for (List<SQLJoin> joinList : joinMapping.values()) {
-				for (SQLJoin join : joinList) {
-					edgesList.add(join);
-				}
-			}
-			return edgesList;
+			return edges;
 		}
 
 		public Collection<SQLJoin> getInboundEdges(Container node) {
-			List<SQLJoin> inboundEdges = new ArrayList<SQLJoin>();
-			if (joinMapping.get(node) != null) {
-				for (SQLJoin join : joinMapping.get(node)) {
-				    inboundEdges.add(join);
-				}
-			}
-			return inboundEdges;
+			return getJoins(node);
 		}
 
 		public Collection<Container> getNodes() {
-			return fromTableList;
+			return nodes;
 		}
 
 		public Collection<SQLJoin> getOutboundEdges(Container node) {
-			List<SQLJoin> outboundEdges = new ArrayList<SQLJoin>();
-			if (joinMapping.get(node) != null) {
-				for (SQLJoin join : joinMapping.get(node)) {
-				    outboundEdges.add(join);
-				}
+			return getJoins(node);
+		}
+		
+		/**
+		 * Returns the joins connected to the given table.
+		 */
+		List<SQLJoin> getJoins(Container node) {
+			List<SQLJoin> nodeJoins = joins.get(node);
+			if (nodeJoins == null) return Collections.emptyList();
+			return nodeJoins;
+		}
+
+		/**
+		 * Returns the tables in the order a depth first search of the graph
+		 * finished them, which is the order they are placed in the FROM
+		 * clause.
+		 */
+		synchronized List<Container> getJoinOrder() {
+			if (joinOrder == null) {
+				DepthFirstSearch<Container, SQLJoin> dfs = new DepthFirstSearch<Container, SQLJoin>();
+				dfs.performSearch(this);
+				joinOrder = Collections.unmodifiableList(new ArrayList<Container>(dfs.getFinishOrder()));
+			}
+			return joinOrder;
+		}
+
+		/**
+		 * See {@link Query#containsCrossJoins()}.
+		 */
+		synchronized boolean containsCrossJoins() {
+			if (crossJoins == null) {
+				crossJoins = findCrossJoins();
 			}
-			return outboundEdges;
+			return crossJoins;
 		}
 		
+		private boolean findCrossJoins() {
+			List<Container> order = getJoinOrder();
+			//If each container is connected to at least one of the containers
+			//that came before it in the finish order there will be no cross joins
+			Set<Container> previousContainers = new HashSet<Container>();
+			if (order.size() == 0) return false;
+			previousContainers.add(order.get(0));
+			for (int i = 1; i < order.size(); i++) {
+				Container container = order.get(i);
+				
+				boolean connected = false;
+				List<SQLJoin> list = joins.get(container);
+				if (list == null) return true;
+				for (SQLJoin join : list) {
+					Container leftContainer = join.getLeftColumn().getParent();
+					Container rightContainer = join.getRightColumn().getParent();
+					if ((leftContainer == container && previousContainers.contains(rightContainer))
+							|| (rightContainer == container && previousContainers.contains(leftContainer))) {
+						connected = true;
+						break;
+					}
+				}
+				if (!connected) {
+					return true;
+				}
+				previousContainers.add(container);
+			}
+			return false;
+		}
 	}
 
 	/**
@@ -169,6 +275,13 @@ public class QueryImpl implements Query {
 	 */
 	private final Map<Container, List<SQLJoin>> joinMapping;
 	
+	/**
+	 * The graph of the tables in {@link #fromTableList} and the joins in
+	 * {@link #joinMapping}. This is null when the tables or joins have changed
+	 * since it was last built. Use {@link #getJoinGraph()} to access it.
+	 */
+	private volatile JoinGraphSnapshot joinGraph;
+	
 	/**
 	 * This is the global where clause that is for all non-column-specific where
 	 * entries.
@@ -539,7 +652,15 @@ public class QueryImpl implements Query {
 		
 		String quoteString = "";
 		Connection con = null;
-		if (database != null) {
+		DriverDialect dialect = null;
+		if (database != null && database.getDataSource() != null) {
+		    dialect = DriverDialect.getCached(database.getDataSource());
+		}
+		if (dialect != null) {
+		    if (dialect.getIdentifierQuoteString() != null) {
+		        quoteString = dialect.getIdentifierQuoteString();
+		    }
+		} else if (database != null) {
 		    try {
 		        con = database.getConnection();
 		        quoteString = con.getMetaData().getIdentifierQuoteString();
@@ -602,10 +723,10 @@ public class QueryImpl implements Query {
 		}
 		boolean isFirstFrom = true;
 		
-		DepthFirstSearch<Container, SQLJoin> dfs = new DepthFirstSearch<Container, SQLJoin>();
-		dfs.performSearch(new TableJoinGraph());
+		List<Container> joinOrder = getJoinGraph().getJoinOrder();
 		Container previousTable = null;
-		for (Container table : dfs.getFinishOrder()) {
+		for (int tableIndex = 0; tableIndex < joinOrder.size(); tableIndex++) {
+			Container table = joinOrder.get(tableIndex);
 			String qualifiedName;
 			if (table.getContainedObject() instanceof SQLTable) {
 				qualifiedName = ((SQLTable)table.getContainedObject()).toQualifiedName(quoteString);
@@ -654,8 +775,8 @@ public class QueryImpl implements Query {
 						} else {
 							otherColumn = join.getLeftColumn();
 						}
-						for (int i = 0; i < dfs.getFinishOrder().indexOf(table); i++) {
-							if (otherColumn.getContainer() == dfs.getFinishOrder().get(i)) {
+						for (int i = 0; i < tableIndex; i++) {
+							if (otherColumn.getContainer() == joinOrder.get(i)) {
 								if (isFirstJoin) {
 									isFirstJoin = false;
 								} else {
@@ -817,35 +938,29 @@ public class QueryImpl implements Query {
      * @see ca.sqlpower.query.Query#containsCrossJoins()
      */
 	public boolean containsCrossJoins() {
-	    DepthFirstSearch<Container, SQLJoin> dfs = new DepthFirstSearch<Container, SQLJoin>();
-	    final TableJoinGraph graph = new TableJoinGraph();
-        dfs.performSearch(graph);
-        //If each container is connected to at least one of the containers
-        //that came before it in the finish order there will be no cross joins
-        List<Container> previousContainers = new ArrayList<Container>();
-        if (dfs.getFinishOrder().size() == 0) return false;
-        previousContainers.add(dfs.getFinishOrder().get(0));
-	    for (int i = 1; i < dfs.getFinishOrder().size(); i++) {
-	        Container container = dfs.getFinishOrder().get(i);
-	        
-	        boolean connected = false;
-	        List<SQLJoin> list = joinMapping.get(container);
-			if (list == null) return true;
-	        for (SQLJoin join : list) {
-	            Container leftContainer = join.getLeftColumn().getParent();
-	            Container rightContainer = join.getRightColumn().getParent();
-	            if ((leftContainer == container && previousContainers.contains(rightContainer))
-	                || (rightContainer == container && previousContainers.contains(leftContainer))) {
-	                connected = true;
-	                break;
-	            }
-	        }
-	        if (!connected) {
-	            return true;
-	        }
-	        previousContainers.add(container);
+	    return getJoinGraph().containsCrossJoins();
+	}
+
+	/**
+	 * Returns the graph of the tables and joins currently in this query,
+	 * building it if the tables or joins have changed since it was last
+	 * built.
+	 */
+	private JoinGraphSnapshot getJoinGraph() {
+	    JoinGraphSnapshot graph = joinGraph;
+	    if (graph == null) {
+	        graph = new JoinGraphSnapshot(fromTableList, joinMapping);
+	        joinGraph = graph;
 	    }
-	    return false;
+	    return graph;
+	}
+
+	/**
+	 * Discards the graph of tables and joins. This must be called whenever a
+	 * table or join is added to or removed from this query.
+	 */
+	private void joinGraphChanged() {
+	    joinGraph = null;
 	}
 
 	/**
@@ -1026,6 +1141,7 @@ public class QueryImpl implements Query {
 	        if (!removed) {
 	            return;
 	        }
+	        joinGraphChanged();
 	        table.removeChildListener(getTableChildListener());
 	        for (Item col : table.getItems()) {
 	            removeItem(col);
@@ -1059,6 +1175,7 @@ public class QueryImpl implements Query {
 	    try {
 	    	startCompoundEdit("Add Table " + container.getName());
 	    	fromTableList.add(index, container);
+	    	joinGraphChanged();
 	    	container.addChildListener(getTableChildListener());
 	    	for (Item col : container.getItems()) {
 	    		addItem(col);
@@ -1101,6 +1218,7 @@ public class QueryImpl implements Query {
 				break;
 			}
 		}
+		joinGraphChanged();
 		fireJoinRemoved(joinLine);
 	}
 
@@ -1151,6 +1269,7 @@ public class QueryImpl implements Query {
 	    	joinMapping.get(rightContainer).add(join);
 	    }
 	    join.setParent(this);
+	    joinGraphChanged();
 	    fireJoinAdded(join);
 	}
 	
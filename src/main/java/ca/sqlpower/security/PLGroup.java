@@ -20,10 +20,13 @@
 package ca.sqlpower.security;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -192,7 +195,8 @@ public class PLGroup implements DatabaseObject, java.io.Serializable {
 	 * restricted to those named in this set.  All members of the set
 	 * must be of type String.  You can only use a non-null filter if
 	 * you specify a non-null userName.  (which implies a required
-	 * null groupName).
+	 * null groupName).  A large filter is looked up in chunks of at
+	 * most {@link SQL#MAX_IN_LIST_SIZE} names.
 	 */
 	protected static List find(Connection con, String groupName, String userName,
 							   boolean searchByPrefix, Set filter)
@@ -208,30 +212,77 @@ public class PLGroup implements DatabaseObject, java.io.Serializable {
 				("filter is not allowed unless non-null userName is specified");
 		}
 
+		List results;
+		if (filter == null) {
+			results = findChunk(con, groupName, userName, searchByPrefix, null);
+		} else {
+			results = new ArrayList();
+			List filterList = new ArrayList(filter);
+			for (int i = 0; i < filterList.size(); i += SQL.MAX_IN_LIST_SIZE) {
+				int end = Math.min(filterList.size(), i + SQL.MAX_IN_LIST_SIZE);
+				results.addAll(findChunk(con, groupName, userName, searchByPrefix, filterList.subList(i, end)));
+			}
+			if (filterList.size() > SQL.MAX_IN_LIST_SIZE) {
+				Collections.sort(results, GROUP_NAME_ORDER);
+			}
+		}
+
+		if (groupName != null && !searchByPrefix && results.size() > 1) {
+			throw new IllegalStateException("Got more than one result for group "+groupName);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Orders groups the same way as the ORDER BY clause of
+	 * {@link #findChunk(Connection, String, String, boolean, List)}.
+	 */
+	private static final Comparator GROUP_NAME_ORDER = new Comparator() {
+		public int compare(Object o1, Object o2) {
+			return ((PLGroup) o1).getGroupName().compareTo(((PLGroup) o2).getGroupName());
+		}
+	};
+
+	/**
+	 * Runs a single query for {@link #find(Connection, String, String, boolean, Set)}.
+	 *
+	 * @param groupNames If non-null, the returned groups are restricted
+	 * to the (at most {@link SQL#MAX_IN_LIST_SIZE}) names in this list.
+	 */
+	private static List findChunk(Connection con, String groupName, String userName,
+								  boolean searchByPrefix, List groupNames)
+	throws SQLException {
+
 		List results = new LinkedList();
-        Statement stmt = null;
+        PreparedStatement stmt = null;
         try {
 			StringBuffer sql = new StringBuffer(500);
 			sql.append("SELECT g.group_name, g.group_desc, g.last_update_date,");
 			sql.append(" g.last_update_user, g.last_update_os_user, g.create_date");
+			String key = null;
+			int inListSize = 0;
 			if (groupName != null) {
 				sql.append(" FROM pl_group g");
 				if (searchByPrefix) {
-					sql.append(" WHERE g.group_name LIKE ").append(SQL.quote(groupName+"%"));
+					sql.append(" WHERE g.group_name LIKE ?");
 				} else {
-					sql.append(" WHERE g.group_name=").append(SQL.quote(groupName));
+					sql.append(" WHERE g.group_name = ?");
 				}
+				key = groupName;
 			} else if (userName != null) {
 				sql.append(" FROM pl_group g, user_group ug");
 				sql.append(" WHERE g.group_name = ug.group_name");
 				if (searchByPrefix) {
-					sql.append(" AND ug.user_id LIKE ").append(SQL.quote(userName+"%"));
+					sql.append(" AND ug.user_id LIKE ?");
 				} else {
-					sql.append(" AND ug.user_id=").append(SQL.quote(userName));
+					sql.append(" AND ug.user_id = ?");
 				}
-				if (filter != null) {
+				key = userName;
+				if (groupNames != null) {
+					inListSize = SQL.inListSize(groupNames.size());
 					sql.append(" AND g.group_name IN(")
-						.append(SQL.quoteCollection(filter))
+						.append(SQL.inListPlaceholders(inListSize))
 						.append(")");
 				}
 			} else {
@@ -239,8 +290,14 @@ public class PLGroup implements DatabaseObject, java.io.Serializable {
 			}
 			sql.append(" ORDER BY g.group_name");
 
-            stmt = con.createStatement();
-            ResultSet rs = stmt.executeQuery(sql.toString());
+            stmt = con.prepareStatement(sql.toString());
+            if (key != null) {
+            	stmt.setString(1, searchByPrefix ? key + "%" : key);
+            }
+            if (inListSize > 0) {
+            	SQL.bindInList(stmt, 2, groupNames, inListSize);
+            }
+            ResultSet rs = stmt.executeQuery();
 
 			boolean hasRows = rs.next();
             if( (!hasRows) && (groupName != null) ) { 
@@ -271,10 +328,6 @@ public class PLGroup implements DatabaseObject, java.io.Serializable {
             }
         }
 
-		if (groupName != null && !searchByPrefix && results.size() > 1) {
-			throw new IllegalStateException("Got more than one result for group "+groupName);
-		}
-
 		return results;
 	}
 	
@@ -283,15 +336,12 @@ public class PLGroup implements DatabaseObject, java.io.Serializable {
 	 * belonging to this group.
 	 */
 	public List getMemberNames(Connection con) throws SQLException {
-		StringBuffer sql = new StringBuffer(100);
-		sql.append("SELECT user_id FROM user_group");
-		sql.append(" WHERE group_name=").append(SQL.quote(getGroupName()));
-
-		Statement stmt = null;
+		PreparedStatement stmt = null;
 
 		try {
-			stmt = con.createStatement();
-			ResultSet rs = stmt.executeQuery(sql.toString());
+			stmt = con.prepareStatement("SELECT user_id FROM user_group WHERE group_name = ?");
+			stmt.setString(1, getGroupName());
+			ResultSet rs = stmt.executeQuery();
 			List members = new LinkedList();
 			while (rs.next()) {
 				members.add(rs.getString(1));
@@ -320,22 +370,27 @@ public class PLGroup implements DatabaseObject, java.io.Serializable {
 		
 		secContext.checkModify(con, this);
 
-		Statement stmt = null;
+		PreparedStatement stmt = null;
 		try {
+			// the system date function is the same for every call on a
+			// given database, so it doesn't stop the statement being reused
 			StringBuffer sql = new StringBuffer(200);
 			sql.append("INSERT INTO user_group (user_id");
 			sql.append(", group_name, last_update_date, last_update_user");
 			sql.append(", last_update_os_user, create_date");
-			sql.append(") VALUES (").append(SQL.quote(newUserId));
-			sql.append(", ").append(SQL.quote(getGroupName()));
+			sql.append(") VALUES (?, ?");
 			sql.append(", ").append(DBConnection.getSystemDate(con));
-			sql.append(", ").append(SQL.quote(secContext.getPrincipal().getUserName()));
+			sql.append(", ?");
 			sql.append(", 'Power*Dashboard Web Facility'");
 			sql.append(", ").append(DBConnection.getSystemDate(con));
 			sql.append(")");
 			
-			stmt = con.createStatement();
-			int updateCount = stmt.executeUpdate(sql.toString());
+			stmt = con.prepareStatement(sql.toString());
+			stmt.setString(1, newUserId);
+			stmt.setString(2, getGroupName());
+			stmt.setString(3, secContext.getPrincipal().getUserName());
+			int updateCount = stmt.executeUpdate();
+			PLSecurityManager.clearPermissionCache();
 
 			if (updateCount != 1) {
 				throw new IllegalStateException("Insert statement affected "+updateCount
@@ -365,17 +420,21 @@ public class PLGroup implements DatabaseObject, java.io.Serializable {
 		
 		secContext.checkModify(con, this);
 
-		Statement stmt = null;
+		PreparedStatement stmt = null;
 		try {
 			StringBuffer sql = new StringBuffer(100);
-			sql.append("DELETE FROM user_group");
-			sql.append(" WHERE group_name=").append(SQL.quote(getGroupName()));
+			sql.append("DELETE FROM user_group WHERE group_name = ?");
 			if (removeUserId != null) {
-				sql.append(" AND user_id=").append(SQL.quote(removeUserId));
+				sql.append(" AND user_id = ?");
 			}
 
-			stmt = con.createStatement();
-			int updateCount = stmt.executeUpdate(sql.toString());
+			stmt = con.prepareStatement(sql.toString());
+			stmt.setString(1, getGroupName());
+			if (removeUserId != null) {
+				stmt.setString(2, removeUserId);
+			}
+			int updateCount = stmt.executeUpdate();
+			PLSecurityManager.clearPermissionCache();
 
 			if (removeUserId != null && updateCount != 1) {
 				throw new IllegalStateException("Delete statement for group "+getGroupName()
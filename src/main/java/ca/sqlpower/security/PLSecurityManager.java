@@ -20,11 +20,13 @@
 package ca.sqlpower.security;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 
@@ -50,6 +52,25 @@ public class PLSecurityManager implements java.io.Serializable {
 	public static final String INVALID_MANAGER = "security.invalid";
 	public static final String INSUFFICIENT_ACCESS = "security.insufficient";
 
+	/**
+	 * The default number of milliseconds a user's permissions are kept in
+	 * memory before they are read from the database again.
+	 */
+	public static final long DEFAULT_PERMISSION_CACHE_TTL = 60000;
+
+	/**
+	 * The number of milliseconds a user's permissions are kept in memory
+	 * before they are read again. A value of 0 turns the cache off, in which
+	 * case every check queries the privilege tables directly.
+	 */
+	private static volatile long permissionCacheTimeToLive = DEFAULT_PERMISSION_CACHE_TTL;
+
+	/**
+	 * Counts the changes made to permissions through this class. Cached
+	 * permissions read before the latest change are not used.
+	 */
+	private static final AtomicLong permissionGeneration = new AtomicLong();
+
 	PLUser principal;
 
 	/**
@@ -102,17 +123,14 @@ public class PLSecurityManager implements java.io.Serializable {
 												DatabaseObject obj)
 		throws SQLException {
 
-		StringBuffer sql = new StringBuffer(500);
-		sql.append("SELECT COUNT(object_name)");
-		sql.append(" FROM have_i_the_right");
-		sql.append(" WHERE user_id=").append(SQL.quote(p.getUserId()));
-		sql.append(" AND object_type=").append(SQL.quote(obj.getObjectType()));
-		sql.append(" AND modify_ind='Y'");
-
-		Statement stmt = null;
+		PreparedStatement stmt = null;
 		try {
-			stmt = con.createStatement();
-			ResultSet rs = stmt.executeQuery(sql.toString());
+			stmt = con.prepareStatement("SELECT COUNT(object_name)" +
+					" FROM have_i_the_right" +
+					" WHERE user_id=? AND object_type=? AND modify_ind='Y'");
+			stmt.setString(1, p.getUserId());
+			stmt.setString(2, obj.getObjectType());
+			ResultSet rs = stmt.executeQuery();
 			rs.next();
 			int numResults = rs.getInt(1);
 
@@ -346,6 +364,12 @@ public class PLSecurityManager implements java.io.Serializable {
 	 * to find out if a given user has a certain permission.  All the
 	 * checkXXX methods work by calling this one.
 	 *
+	 * <p>The user's permissions and those of all the user's groups are read
+	 * in a single query and kept with the user for the
+	 * {@link #setPermissionCacheTimeToLive(long) permission cache time to live},
+	 * or until permissions are changed through this class, so checking many
+	 * objects for the same user only goes to the database once.
+	 *
 	 * @param exceptionWhenDenied If true, this method will throw a
 	 * PLSecurityException instead of returning false.
 	 */
@@ -356,6 +380,40 @@ public class PLSecurityManager implements java.io.Serializable {
 									   boolean exceptionWhenDenied)
 		throws SQLException, PLSecurityException {
 
+		checkPermissionArguments(obj, perm);
+		
+		boolean granted;
+		long timeToLive = permissionCacheTimeToLive;
+		if (timeToLive > 0) {
+			PermissionSnapshot snapshot = p.getPermissionSnapshot();
+			if (snapshot == null || !snapshot.isFresh(System.currentTimeMillis(), timeToLive)) {
+				snapshot = PermissionSnapshot.load(con, p);
+				p.setPermissionSnapshot(snapshot);
+			}
+			granted = snapshot.isGranted(obj, perm);
+		} else {
+			granted = checkPermissionUncached(con, p, obj, perm);
+		}
+		if (granted) {
+			return true;
+		}
+		
+		if (exceptionWhenDenied) {
+			throw new PLSecurityException(perm, INSUFFICIENT_ACCESS, obj);
+		}
+		return false;
+	}
+
+	/**
+	 * Checks the permission of the user and each of the user's groups with
+	 * separate queries. This is used when the permission cache is turned off.
+	 */
+	private static boolean checkPermissionUncached(Connection con,
+												   PLUser p,
+												   DatabaseObject obj,
+												   String perm)
+		throws SQLException, PLSecurityException {
+		
 		DatabaseObject sysObject = getSystemObject(obj.getObjectType());
 
 		if (checkUserPermission(con, p, obj, perm)
@@ -371,13 +429,24 @@ public class PLSecurityManager implements java.io.Serializable {
 				return true;
 			}
 		}
-		
-		if (exceptionWhenDenied) {
-			throw new PLSecurityException(perm, INSUFFICIENT_ACCESS, obj);
-		}
 		return false;
 	}
 
+	/**
+	 * Throws an IllegalArgumentException if the permission cannot be checked
+	 * on the given object.
+	 */
+	private static void checkPermissionArguments(DatabaseObject obj, String perm) {
+		if (obj instanceof AllDatabaseObject) {
+			sysPermToColName(perm);
+		} else if (perm.equals(CREATE_PERMISSION)) {
+			throw new IllegalArgumentException
+				("CREATE_PERMISSION is only valid for AllDatabaseObject types.");
+		} else {
+			permToColName(perm);
+		}
+	}
+
 	/**
 	 * Use this method to find out if a given group has a certain
 	 * permission.  This is different from {@link #checkGroupPermission}
@@ -427,45 +496,8 @@ public class PLSecurityManager implements java.io.Serializable {
 				("CREATE_PERMISSION is only valid for AllDatabaseObject types.");
 		}
 
-		StringBuffer sql = new StringBuffer(500);
-		if (obj instanceof AllDatabaseObject) {
-			sql.append("SELECT create_any_ind, modify_any_ind, delete_any_ind,");
-			sql.append(" execute_any_ind, grant_any_ind, notify_any_ind");
-			sql.append(" FROM user_system_privs");
-			sql.append(" WHERE user_id=").append(SQL.quote(p.getUserId()));
-			sql.append(" AND object_type=").append(SQL.quote(obj.getObjectType()));			
-		} else {
-			sql.append("SELECT modify_ind, delete_ind, execute_ind, grant_ind, notify_ind");
-			sql.append(" FROM user_object_privs");
-			sql.append(" WHERE user_id=").append(SQL.quote(p.getUserId()));
-			sql.append(" AND object_type=").append(SQL.quote(obj.getObjectType()));
-			sql.append(" AND object_name=").append(SQL.quote(obj.getObjectName()));
-		}
-
-		Statement stmt = null;
-		try {
-			stmt = con.createStatement();
-			ResultSet rs = stmt.executeQuery(sql.toString());
-			if (rs.next()) {
-				String ind = null;
-				if (obj instanceof AllDatabaseObject) {
-					ind = rs.getString(sysPermToColName(perm));
-				} else {
-					ind = rs.getString(permToColName(perm));
-				}
-				if (ind != null && ind.equals("Y")) {
-					// Access granted
-					return true;
-				}
-			}
-
-			return false;
-
-		} finally {
-			if (stmt != null) {
-				stmt.close();
-			}
-		}
+		return checkGranteePermission(con, "user_id", p.getUserId(),
+				"user_system_privs", "user_object_privs", obj, perm);
 	}
 
 	/**
@@ -485,32 +517,48 @@ public class PLSecurityManager implements java.io.Serializable {
 				("CREATE_PERMISSION is only valid for AllDatabaseObject types");
 		}
 
-		StringBuffer sql = new StringBuffer(500);
-		if (obj instanceof AllDatabaseObject) {
-			sql.append("SELECT create_any_ind, modify_any_ind, delete_any_ind,");
-			sql.append(" execute_any_ind, grant_any_ind, notify_any_ind");
-			sql.append(" FROM group_system_privs");
-			sql.append(" WHERE group_name=").append(SQL.quote(p.getGroupName()));
-			sql.append(" AND object_type=").append(SQL.quote(obj.getObjectType()));			
-		} else {
-			sql.append("SELECT modify_ind, delete_ind, execute_ind, grant_ind, notify_ind");
-			sql.append(" FROM group_object_privs");
-			sql.append(" WHERE group_name=").append(SQL.quote(p.getGroupName()));
-			sql.append(" AND object_type=").append(SQL.quote(obj.getObjectType()));
-			sql.append(" AND object_name=").append(SQL.quote(obj.getObjectName()));
-		}
+		return checkGranteePermission(con, "group_name", p.getGroupName(),
+				"group_system_privs", "group_object_privs", obj, perm);
+	}
 
-		Statement stmt = null;
+	/**
+	 * Does the SQL for checkUserPermission and checkGroupPermission.
+	 *
+	 * @param granteeColumn The column of the privilege tables that holds
+	 * the grantee's name.
+	 * @param granteeName The name of the user or group.
+	 * @param systemTable The table of system privileges for the grantee.
+	 * @param objectTable The table of object privileges for the grantee.
+	 */
+	private static boolean checkGranteePermission(Connection con,
+												  String granteeColumn,
+												  String granteeName,
+												  String systemTable,
+												  String objectTable,
+												  DatabaseObject obj,
+												  String perm)
+		throws SQLException {
+		
+		PreparedStatement stmt = null;
 		try {
-			stmt = con.createStatement();
-			ResultSet rs = stmt.executeQuery(sql.toString());
+			String colName;
+			if (obj instanceof AllDatabaseObject) {
+				colName = sysPermToColName(perm);
+				stmt = con.prepareStatement("SELECT " + colName +
+						" FROM " + systemTable +
+						" WHERE " + granteeColumn + "=? AND object_type=?");
+			} else {
+				colName = permToColName(perm);
+				stmt = con.prepareStatement("SELECT " + colName +
+						" FROM " + objectTable +
+						" WHERE " + granteeColumn + "=? AND object_type=? AND object_name=?");
+				stmt.setString(3, obj.getObjectName());
+			}
+			stmt.setString(1, granteeName);
+			stmt.setString(2, obj.getObjectType());
+			ResultSet rs = stmt.executeQuery();
 			if (rs.next()) {
-				String ind = null;
-				if (obj instanceof AllDatabaseObject) {
-					ind = rs.getString(sysPermToColName(perm));
-				} else {
-					ind = rs.getString(permToColName(perm));
-				}
+				String ind = rs.getString(1);
 				if (ind != null && ind.equals("Y")) {
 					// Access granted
 					return true;
@@ -910,6 +958,7 @@ public class PLSecurityManager implements java.io.Serializable {
 
 			} // end if (check if we need to update view_kpi_ind)
 		} finally {
+			clearPermissionCache();
 			if (stmt != null) {
 				stmt.close();
 			}
@@ -951,6 +1000,7 @@ public class PLSecurityManager implements java.io.Serializable {
 		try {
 			stmt = con.createStatement();
 			stmt.executeUpdate(sql.toString());
+			clearPermissionCache();
 
 			// If this is a Kpi, give the user "view kpi" privileges
 			if(obj.getObjectType().equals("KPI")){
@@ -1031,6 +1081,7 @@ public class PLSecurityManager implements java.io.Serializable {
 			stmt.executeUpdate(sql.toString());
 			
 		} finally {
+			clearPermissionCache();
 			if (stmt != null) {
 				stmt.close();
 			}
@@ -1105,6 +1156,7 @@ public class PLSecurityManager implements java.io.Serializable {
 			stmt.executeUpdate(sql.toString());
 			
 		} finally {
+			clearPermissionCache();
 			if (stmt != null) {
 				stmt.close();
 			}
@@ -1176,6 +1228,39 @@ public class PLSecurityManager implements java.io.Serializable {
 		principal = null;
 	}
 
+	/**
+	 * Sets the number of milliseconds a user's permissions are kept in
+	 * memory before they are read from the database again. A value of 0
+	 * turns the cache off.
+	 */
+	public static void setPermissionCacheTimeToLive(long millis) {
+		if (millis < 0) {
+			throw new IllegalArgumentException("The time to live cannot be negative: " + millis);
+		}
+		permissionCacheTimeToLive = millis;
+	}
+
+	public static long getPermissionCacheTimeToLive() {
+		return permissionCacheTimeToLive;
+	}
+
+	/**
+	 * Discards the cached permissions of every user so the next check for
+	 * each user reads the privilege tables again. Grants and revokes made
+	 * through this class do this automatically; call this after changing
+	 * privileges or group membership some other way.
+	 */
+	public static void clearPermissionCache() {
+		permissionGeneration.incrementAndGet();
+	}
+
+	/**
+	 * Returns the number of times the permission cache has been cleared.
+	 */
+	static long getPermissionGeneration() {
+		return permissionGeneration.get();
+	}
+
 	/**
 	 * Returns an instance of AllDatabaseObject, which represents all
 	 * objects of a given type.
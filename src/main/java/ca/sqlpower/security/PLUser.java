@@ -22,9 +22,11 @@ package ca.sqlpower.security;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -61,6 +63,12 @@ public class PLUser implements DatabaseObject, java.io.Serializable {
     protected String lastUpdateOsUser;
 	protected Boolean omniscient;
 	protected Boolean superuser;
+
+	/**
+	 * The permissions of this user as last read by the security manager, or
+	 * null if they have not been read since the group name filter changed.
+	 */
+	private transient volatile PermissionSnapshot permissionSnapshot;
 	protected boolean loaderUser;
 	protected boolean summarizerUser;
 	protected boolean matchmakerUser;
@@ -437,7 +445,7 @@ public class PLUser implements DatabaseObject, java.io.Serializable {
 		}
 
 		List results = new LinkedList();
-        Statement stmt = null;
+        PreparedStatement stmt = null;
         try {
 			StringBuffer sql = new StringBuffer();
 			sql.append("SELECT");
@@ -449,23 +457,28 @@ public class PLUser implements DatabaseObject, java.io.Serializable {
 			sql.append(" FROM pl_user");
 			if (userId != null) {
 				if (searchByPrefix) {
-					sql.append(" WHERE user_id LIKE ").append(SQL.quote(userId+"%"));
+					sql.append(" WHERE user_id LIKE ?");
 				} else {
-					sql.append(" WHERE user_id = ").append(SQL.quote(userId));
+					sql.append(" WHERE user_id = ?");
 				}
 				// don't check the password unless we're told to (yes, I know this is weird)
 				if (passwordRequired) {					
 					if (password != null) {
-						sql.append(" AND (password = ").append(SQL.quote(cryptedPassword));
-						sql.append(" OR password IS NULL)");
+						sql.append(" AND (password = ? OR password IS NULL)");
 					}
 				}
 			}
 			sql.append(" ORDER BY user_id");
 
-			if (logger.isDebugEnabled()) logger.debug("Finding user: "+sql.toString());
-            stmt = con.createStatement();
-            ResultSet rs = stmt.executeQuery(sql.toString());
+			if (logger.isDebugEnabled()) logger.debug("Finding user: "+sql.toString()+" with user id "+userId);
+            stmt = con.prepareStatement(sql.toString());
+            if (userId != null) {
+            	stmt.setString(1, searchByPrefix ? userId + "%" : userId);
+            	if (passwordRequired && password != null) {
+            		stmt.setString(2, cryptedPassword);
+            	}
+            }
+            ResultSet rs = stmt.executeQuery();
 			
 			boolean hasRows = rs.next();
             if ( (!hasRows) && (userId != null) ) { 
@@ -532,21 +545,48 @@ public class PLUser implements DatabaseObject, java.io.Serializable {
 	 * useful if you want a list of all groups this user belongs to
 	 * regardless of its current groupNameFilter.  In that case, call
 	 * this method with <code>filter = null</code>.
+	 *
+	 * <p>A large filter is looked up in chunks of at most
+	 * {@link SQL#MAX_IN_LIST_SIZE} names, one query per chunk.
 	 */
 	public List getGroupNamesWithFilter(Connection con, Set filter) throws SQLException {
-		Statement stmt = null;
-		ResultSet rs = null;
 		List results = new LinkedList();
+		if (filter == null) {
+			addGroupNames(con, null, results);
+		} else {
+			List filterList = new ArrayList(filter);
+			for (int i = 0; i < filterList.size(); i += SQL.MAX_IN_LIST_SIZE) {
+				int end = Math.min(filterList.size(), i + SQL.MAX_IN_LIST_SIZE);
+				addGroupNames(con, filterList.subList(i, end), results);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Adds the names of this user's groups to <code>results</code>.
+	 * If <code>groupNames</code> is non-null, only the groups named in
+	 * it (at most {@link SQL#MAX_IN_LIST_SIZE} of them) are added.
+	 */
+	private void addGroupNames(Connection con, List groupNames, List results)
+		throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
 		StringBuffer sql = new StringBuffer();
-		sql.append("SELECT group_name FROM user_group WHERE user_id=")
-			.append(SQL.quote(getUserId()));
-		if (filter != null) {
-			sql.append(" AND group_name IN(").append(SQL.quoteCollection(filter)).append(")");
+		sql.append("SELECT group_name FROM user_group WHERE user_id = ?");
+		int inListSize = 0;
+		if (groupNames != null) {
+			inListSize = SQL.inListSize(groupNames.size());
+			sql.append(" AND group_name IN(").append(SQL.inListPlaceholders(inListSize)).append(")");
 		}
 
 		try {
-			stmt = con.createStatement();
-			rs = stmt.executeQuery(sql.toString());
+			stmt = con.prepareStatement(sql.toString());
+			stmt.setString(1, getUserId());
+			if (groupNames != null) {
+				SQL.bindInList(stmt, 2, groupNames, inListSize);
+			}
+			rs = stmt.executeQuery();
 			while (rs.next()) {
 				results.add(rs.getString(1));
 			}
@@ -554,8 +594,26 @@ public class PLUser implements DatabaseObject, java.io.Serializable {
 			if (rs != null) rs.close();
 			if (stmt != null) stmt.close();
 		}
+	}
 
-		return results;
+	/**
+	 * Returns true if this user belongs to the named group, ignoring
+	 * the group name filter.
+	 */
+	private boolean isMemberOf(Connection con, String groupName) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			stmt = con.prepareStatement(
+					"SELECT 1 FROM user_group WHERE user_id = ? AND group_name = ?");
+			stmt.setString(1, getUserId());
+			stmt.setString(2, groupName);
+			rs = stmt.executeQuery();
+			return rs.next();
+		} finally {
+			if (rs != null) rs.close();
+			if (stmt != null) stmt.close();
+		}
 	}
 
 	/**
@@ -637,6 +695,15 @@ public class PLUser implements DatabaseObject, java.io.Serializable {
 		this.groupNameFilter = namesToInclude;
 		omniscient = null;
 		superuser = null;
+		permissionSnapshot = null;
+	}
+	
+	PermissionSnapshot getPermissionSnapshot() {
+		return permissionSnapshot;
+	}
+	
+	void setPermissionSnapshot(PermissionSnapshot permissionSnapshot) {
+		this.permissionSnapshot = permissionSnapshot;
 	}
 
     public String getUserId() {
@@ -695,22 +762,7 @@ public class PLUser implements DatabaseObject, java.io.Serializable {
 			&& !groupNameFilter.contains(PLGroup.OMNISCIENT_GROUP_NAME)) {
 			return false;
 		} else if (omniscient == null) {
-			Statement stmt = null;
-			ResultSet rs = null;
-			try {
-				stmt = con.createStatement();
-				rs = stmt.executeQuery("SELECT 1 FROM user_group WHERE user_id="
-									   +SQL.quote(getUserId())+" AND group_name="
-									   +SQL.quote(PLGroup.OMNISCIENT_GROUP_NAME));
-				if (rs.next()) {
-					omniscient = Boolean.TRUE;
-				} else {
-					omniscient = Boolean.FALSE;
-				}
-			} finally {
-				if (rs != null) rs.close();
-				if (stmt != null) stmt.close();
-			}
+			omniscient = Boolean.valueOf(isMemberOf(con, PLGroup.OMNISCIENT_GROUP_NAME));
 		}
 		return omniscient.booleanValue();
 	}
@@ -731,24 +783,7 @@ public class PLUser implements DatabaseObject, java.io.Serializable {
 			&& !groupNameFilter.contains(PLGroup.ADMIN_GROUP)) {
 			return false;
 		} else if (superuser == null) {
-			Statement stmt = null;
-			ResultSet rs = null;
-			try {
-				stmt = con.createStatement();
-				String sql = "SELECT 1 FROM user_group WHERE user_id="
-					+SQL.quote(getUserId())+" AND group_name="
-					+SQL.quote(PLGroup.ADMIN_GROUP);
-				logger.debug("isSuperuser query "+sql);
-				rs = stmt.executeQuery(sql);
-				if (rs.next()) {
-					superuser = Boolean.TRUE;
-				} else {
-					superuser = Boolean.FALSE;
-				}
-			} finally {
-				if (rs != null) rs.close();
-				if (stmt != null) stmt.close();
-			}
+			superuser = Boolean.valueOf(isMemberOf(con, PLGroup.ADMIN_GROUP));
 		}
 		logger.debug("isSuperuser returns "+superuser.booleanValue());
 		return superuser.booleanValue();
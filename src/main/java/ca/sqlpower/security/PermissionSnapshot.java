@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.security;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.concurrent.Immutable;
+
+import ca.sqlpower.sql.DatabaseObject;
+
+/**
+ * Every permission one user holds, either directly or through the groups the
+ * user belongs to, as of the time the snapshot was loaded. The whole snapshot
+ * is read with a single query so that checking the permissions on many
+ * objects for the same user costs one round trip to the database instead of
+ * several per object.
+ * <p>
+ * The snapshot respects the user's group name filter as it was when the
+ * snapshot was loaded; groups outside the filter contribute no permissions.
+ * 
+ * @see PLSecurityManager#checkPermission(Connection, PLUser, DatabaseObject, String, boolean)
+ */
+@Immutable
+class PermissionSnapshot {
+
+    /**
+     * Selects the object and system privileges of a user and of every group
+     * the user belongs to. Each row holds the kind of grantee ('U' for the user
+     * or 'G' for a group), the grantee's name, the scope ('O' for an object
+     * privilege or 'S' for a system privilege), the object type and name, and
+     * then the modify, delete, execute, grant, notify and create indicators.
+     * Object privileges cannot grant create. The user id is bound to all four
+     * parameters.
+     */
+    static final String LOAD_SQL =
+        "SELECT 'U', user_id, 'O', object_type, object_name," +
+        " modify_ind, delete_ind, execute_ind, grant_ind, notify_ind, 'N'" +
+        " FROM user_object_privs WHERE user_id=?" +
+        " UNION ALL" +
+        " SELECT 'U', user_id, 'S', object_type, 'ALL'," +
+        " modify_any_ind, delete_any_ind, execute_any_ind, grant_any_ind, notify_any_ind, create_any_ind" +
+        " FROM user_system_privs WHERE user_id=?" +
+        " UNION ALL" +
+        " SELECT 'G', p.group_name, 'O', p.object_type, p.object_name," +
+        " p.modify_ind, p.delete_ind, p.execute_ind, p.grant_ind, p.notify_ind, 'N'" +
+        " FROM group_object_privs p, user_group ug, pl_group g" +
+        " WHERE p.group_name=ug.group_name AND g.group_name=ug.group_name AND ug.user_id=?" +
+        " UNION ALL" +
+        " SELECT 'G', p.group_name, 'S', p.object_type, 'ALL'," +
+        " p.modify_any_ind, p.delete_any_ind, p.execute_any_ind, p.grant_any_ind, p.notify_any_ind, p.create_any_ind" +
+        " FROM group_system_privs p, user_group ug, pl_group g" +
+        " WHERE p.group_name=ug.group_name AND g.group_name=ug.group_name AND ug.user_id=?";
+
+    /**
+     * The permissions in the order of the indicator columns of
+     * {@link #LOAD_SQL}.
+     */
+    private static final String[] PERMISSION_COLUMNS = new String[] {
+        PLSecurityManager.MODIFY_PERMISSION,
+        PLSecurityManager.DELETE_PERMISSION,
+        PLSecurityManager.EXECUTE_PERMISSION,
+        PLSecurityManager.GRANT_PERMISSION,
+        PLSecurityManager.NOTIFY_PERMISSION,
+        PLSecurityManager.CREATE_PERMISSION
+    };
+
+    /**
+     * The position of the first indicator column in {@link #LOAD_SQL}.
+     */
+    private static final int FIRST_PERMISSION_COLUMN = 6;
+    
+    /**
+     * One key for each permission granted. See {@link #key(char, String, String, String)}.
+     */
+    private final Set<String> granted;
+    
+    /**
+     * The time in milliseconds the snapshot was read.
+     */
+    private final long loadTime;
+
+    /**
+     * The value of {@link PLSecurityManager#getPermissionGeneration()} when
+     * the snapshot was read. Any grant made since then makes the snapshot
+     * stale.
+     */
+    private final long generation;
+    
+    private PermissionSnapshot(Set<String> granted, long loadTime, long generation) {
+        this.granted = granted;
+        this.loadTime = loadTime;
+        this.generation = generation;
+    }
+
+    /**
+     * Reads the permissions of the given user from the database.
+     */
+    static PermissionSnapshot load(Connection con, PLUser user) throws SQLException {
+        long generation = PLSecurityManager.getPermissionGeneration();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = con.prepareStatement(LOAD_SQL);
+            for (int i = 1; i <= 4; i++) {
+                ps.setString(i, user.getUserId());
+            }
+            rs = ps.executeQuery();
+            return read(rs, user.getGroupNameFilter(), generation);
+        } finally {
+            if (rs != null) rs.close();
+            if (ps != null) ps.close();
+        }
+    }
+
+    /**
+     * Builds a snapshot from the rows of a result set in the form returned by
+     * {@link #LOAD_SQL}.
+     * 
+     * @param groupNameFilter
+     *            If not null, only the groups named in this set contribute
+     *            their permissions.
+     * @param generation
+     *            The permission generation the rows were read in.
+     */
+    static PermissionSnapshot read(ResultSet rs, Set<?> groupNameFilter, long generation) throws SQLException {
+        Set<String> granted = new HashSet<String>();
+        while (rs.next()) {
+            String granteeKind = rs.getString(1);
+            if ("G".equals(granteeKind) && groupNameFilter != null
+                    && !groupNameFilter.contains(rs.getString(2))) {
+                continue;
+            }
+            char scope = rs.getString(3).charAt(0);
+            String objectType = rs.getString(4);
+            String objectName = rs.getString(5);
+            for (int i = 0; i < PERMISSION_COLUMNS.length; i++) {
+                if ("Y".equals(rs.getString(FIRST_PERMISSION_COLUMN + i))) {
+                    granted.add(key(scope, objectType, objectName, PERMISSION_COLUMNS[i]));
+                }
+            }
+        }
+        return new PermissionSnapshot(granted, System.currentTimeMillis(), generation);
+    }
+
+    private static String key(char scope, String objectType, String objectName, String perm) {
+        StringBuilder key = new StringBuilder(perm.length() + objectType.length() + 
+                (objectName == null ? 0 : objectName.length()) + 4);
+        key.append(scope).append('\u0000').append(perm).append('\u0000').append(objectType);
+        if (scope == 'O') {
+            key.append('\u0000').append(objectName);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns true if the user or one of the user's groups was granted the
+     * permission on the given object specifically or on all objects of its
+     * type.
+     */
+    boolean isGranted(DatabaseObject obj, String perm) {
+        if (granted.contains(key('S', obj.getObjectType(), null, perm))) {
+            return true;
+        }
+        if (obj instanceof PLSecurityManager.AllDatabaseObject) {
+            return false;
+        }
+        return granted.contains(key('O', obj.getObjectType(), obj.getObjectName(), perm));
+    }
+    
+    /**
+     * Returns true if this snapshot may be used at the given time.
+     * 
+     * @param timeToLive
+     *            The number of milliseconds a snapshot stays fresh.
+     */
+    boolean isFresh(long now, long timeToLive) {
+        return generation == PLSecurityManager.getPermissionGeneration()
+            && now - loadTime < timeToLive;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Hands out sequence values from blocks reserved through another generator,
+ * so only one in every block size calls to {@link #nextLong(String)} goes to
+ * the database. Each sequence has its own block.
+ * <p>
+ * If an executor is given, the next block of a sequence is fetched on it once
+ * half of the current block has been handed out, so callers do not normally
+ * wait for the database at all. The prefetch uses the wrapped generator's
+ * connection from the executor's thread; if the connection is also used for
+ * other work it is safer to give the wrapped generator a connection of its
+ * own.
+ * <p>
+ * Values reserved but not handed out before this generator is discarded are
+ * lost, so sequences will have gaps.
+ */
+@ThreadSafe
+public class BlockSequenceGenerator extends SequenceGenerator {
+
+    private static final Logger logger = Logger.getLogger(BlockSequenceGenerator.class);
+
+    /**
+     * The values of one sequence that have been reserved but not yet handed
+     * out.
+     */
+    private static class Block {
+
+        @GuardedBy("this")
+        private long[] values = new long[0];
+
+        @GuardedBy("this")
+        private int next;
+
+        /**
+         * The fetch of the next block of values, or null if it has not been
+         * started.
+         */
+        @GuardedBy("this")
+        private FutureTask<long[]> prefetch;
+    }
+
+    private final SequenceGenerator source;
+
+    private final int blockSize;
+
+    /**
+     * Runs the prefetches. If null the next block is fetched when the current
+     * one runs out.
+     */
+    private final Executor prefetchExecutor;
+
+    private final ConcurrentMap<String, Block> blocks = new ConcurrentHashMap<String, Block>();
+
+    /**
+     * Creates a generator that fetches a new block only when the current one
+     * runs out.
+     */
+    public BlockSequenceGenerator(SequenceGenerator source, int blockSize) {
+        this(source, blockSize, null);
+    }
+
+    /**
+     * @param source
+     *            The generator the blocks are reserved through.
+     * @param blockSize
+     *            The number of values to reserve at once.
+     * @param prefetchExecutor
+     *            Fetches the next block before the current one runs out. If
+     *            null, no blocks are fetched ahead of time.
+     */
+    public BlockSequenceGenerator(SequenceGenerator source, int blockSize, Executor prefetchExecutor) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("The block size must be at least 1 but was " + blockSize);
+        }
+        this.source = source;
+        this.blockSize = blockSize;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    @Override
+    public long nextLong(String sequenceTable) throws SQLException {
+        Block block = getBlock(sequenceTable);
+        synchronized (block) {
+            if (block.next == block.values.length) {
+                refill(sequenceTable, block);
+            }
+            long value = block.values[block.next++];
+            if (prefetchExecutor != null && block.prefetch == null
+                    && block.values.length - block.next <= blockSize / 2) {
+                startPrefetch(sequenceTable, block);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Hands out exactly count values, taking them from the current block
+     * first and reserving the rest directly through the wrapped generator if
+     * the block does not hold enough. The values reserved directly do not
+     * touch the block, so a request larger than the block size costs one
+     * trip to the database rather than several refills.
+     */
+    @Override
+    public long[] nextLongs(String sequenceTable, int count) throws SQLException {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one value must be requested but " + count + " were.");
+        }
+        Block block = getBlock(sequenceTable);
+        synchronized (block) {
+            if (block.next == block.values.length) {
+                refill(sequenceTable, block);
+            }
+            long[] values = new long[count];
+            int filled = Math.min(count, block.values.length - block.next);
+            System.arraycopy(block.values, block.next, values, 0, filled);
+            block.next += filled;
+            while (filled < count) {
+                long[] more = source.nextLongs(sequenceTable, count - filled);
+                System.arraycopy(more, 0, values, filled, more.length);
+                filled += more.length;
+            }
+            return values;
+        }
+    }
+
+    private Block getBlock(String sequenceTable) {
+        Block block = blocks.get(sequenceTable);
+        if (block == null) {
+            Block newBlock = new Block();
+            block = blocks.putIfAbsent(sequenceTable, newBlock);
+            if (block == null) {
+                block = newBlock;
+            }
+        }
+        return block;
+    }
+
+    /**
+     * Replaces the used up values of the block with the prefetched block, or
+     * with a block fetched now if no prefetch was started.
+     */
+    @GuardedBy("block")
+    private void refill(String sequenceTable, Block block) throws SQLException {
+        long[] values;
+        if (block.prefetch != null) {
+            FutureTask<long[]> prefetch = block.prefetch;
+            block.prefetch = null;
+            try {
+                values = prefetch.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                SQLException ex = new SQLException("Interrupted while waiting for the next block of " + sequenceTable);
+                ex.initCause(e);
+                throw ex;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof SQLException) {
+                    throw (SQLException) e.getCause();
+                }
+                SQLException ex = new SQLException("Could not fetch the next block of " + sequenceTable);
+                ex.initCause(e.getCause());
+                throw ex;
+            }
+        } else {
+            values = source.nextLongs(sequenceTable, blockSize);
+        }
+        logger.debug("Reserved " + values.length + " values of " + sequenceTable);
+        block.values = values;
+        block.next = 0;
+    }
+
+    @GuardedBy("block")
+    private void startPrefetch(final String sequenceTable, Block block) {
+        block.prefetch = new FutureTask<long[]>(new Callable<long[]>() {
+            public long[] call() throws Exception {
+                return source.nextLongs(sequenceTable, blockSize);
+            }
+        });
+        try {
+            prefetchExecutor.execute(block.prefetch);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Not prefetching " + sequenceTable + " as the executor rejected it.");
+            block.prefetch = null;
+        }
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Closes the wrapped generator.
+     * 
+     * @deprecated See {@link SequenceGenerator#close()}.
+     */
+    @Deprecated
+    @Override
+    public void close() throws SQLException {
+        source.close();
+    }
+}
@@ -2,6 +2,8 @@ package ca.sqlpower.sql;
 
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 
@@ -47,6 +49,14 @@ public class CachedResultSetMetaData implements ResultSetMetaData, java.io.Seria
 	private boolean definitelyWritable[];
 	private String columnClassName[];
 
+	/**
+	 * Maps the case folded name of each column to its 1-based index. If two
+	 * columns have the same name the first one is kept. Built the first time
+	 * a column is looked up by name and discarded whenever the columns
+	 * change.
+	 */
+	private transient volatile Map<String, Integer> columnIndex;
+
 	/**
 	 * Creates a new cached resultset metadata object with no columns.
 	 * After construction, columns can be added one at a time by calling
@@ -80,6 +90,7 @@ public class CachedResultSetMetaData implements ResultSetMetaData, java.io.Seria
 	}
 
 	protected void createArrays(int columnCount) {
+		this.columnIndex = null;
 		this.autoIncrement = new boolean[columnCount];
 		this.caseSensitive = new boolean[columnCount];
 		this.searchable = new boolean[columnCount];
@@ -199,6 +210,41 @@ public class CachedResultSetMetaData implements ResultSetMetaData, java.io.Seria
 		return columnCount;
 	}
 
+	/**
+	 * Returns the 1-based index of the first column having the given name, or
+	 * -1 if there is no such column. The comparison is case insensitive in the
+	 * same way as {@link String#equalsIgnoreCase(String)}.
+	 */
+	public int getColumnIndex(String name) {
+		if (name == null) return -1;
+		Map<String, Integer> index = columnIndex;
+		if (index == null) {
+			index = new HashMap<String, Integer>(columnCount * 2);
+			for (int i = 0; i < columnCount; i++) {
+				if (columnName[i] == null) continue;
+				String key = foldCase(columnName[i]);
+				if (!index.containsKey(key)) {
+					index.put(key, i + 1);
+				}
+			}
+			columnIndex = index;
+		}
+		Integer idx = index.get(foldCase(name));
+		return idx == null ? -1 : idx;
+	}
+
+	/**
+	 * Returns a copy of the given string with each character mapped so that two
+	 * strings fold to the same value exactly when they are equal ignoring case.
+	 */
+	private static String foldCase(String s) {
+		char[] chars = s.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+		}
+		return new String(chars);
+	}
+
 	// ==========================================
 	// RESULT SET META DATA INTERFACE
 	// ==========================================
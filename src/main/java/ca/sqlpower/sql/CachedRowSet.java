@@ -70,6 +70,33 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 */
 	protected List<Object[]> data;
 
+	/**
+	 * True if this row set is a cursor made by {@link #createCursor()}. The
+	 * data of a cursor is an unmodifiable snapshot that may be shared with
+	 * other cursors, so moving a cursor does not need to lock the data.
+	 */
+	private boolean readOnlyCursor;
+
+	/**
+	 * The snapshot of {@link #data} most recently handed out to a cursor, or
+	 * null if none has been made. It is reused by later cursors as long as the
+	 * data has not changed.
+	 */
+	private transient List<Object[]> snapshot;
+
+	/**
+	 * The data list and its modification count at the time {@link #snapshot}
+	 * was taken.
+	 */
+	private transient List<Object[]> snapshotSource;
+	private transient int snapshotModCount;
+
+	/**
+	 * Counts the rows added to and removed from the current data list, so a
+	 * stale {@link #snapshot} can be noticed.
+	 */
+	private int modCount;
+
 	/**
 	 * The current row.  This gets updated by next().
 	 */
@@ -158,6 +185,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 				while (data.size() > rowLimit) { 
 					data.remove(0);
 				}
+				modCount++;
 			}
 			
 			fireRowAdded(row, rowNum);
@@ -392,10 +420,53 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 		if (data == null) {
 			return 0;
 		}
+		if (readOnlyCursor) {
+			return data.size();
+		}
 		synchronized (data) {	
 			return data.size();
 		}
 	}
+
+	/**
+	 * Returns a new row set that reads the rows this row set holds now through
+	 * its own cursor. Any number of cursors can be created and moved on
+	 * different threads at the same time without locking each other or this
+	 * row set, which makes them the way to share one cached result between
+	 * threads.
+	 * <p>
+	 * The cursor shares this row set's meta data and an unmodifiable snapshot
+	 * of its list of rows. Rows added to this row set later are not seen by
+	 * the cursor, and rows cannot be inserted through the cursor. The row
+	 * arrays themselves are not copied, so values changed through the
+	 * updateXXX() methods of this row set are seen by its cursors.
+	 */
+	public CachedRowSet createCursor() {
+		CachedRowSet cursor = new CachedRowSet();
+		cursor.makeUppercase = makeUppercase;
+		cursor.rsmd = rsmd;
+		cursor.data = getSnapshot();
+		cursor.readOnlyCursor = true;
+		return cursor;
+	}
+
+	/**
+	 * Returns an unmodifiable copy of the current list of rows, reusing the
+	 * last copy made if the rows have not changed since.
+	 */
+	private List<Object[]> getSnapshot() {
+		if (data == null || readOnlyCursor) {
+			return data;
+		}
+		synchronized (data) {
+			if (snapshot == null || snapshotSource != data || snapshotModCount != modCount) {
+				snapshot = Collections.unmodifiableList(new ArrayList<Object[]>(data));
+				snapshotSource = data;
+				snapshotModCount = modCount;
+			}
+			return snapshot;
+		}
+	}
 	
 	/**
 	 * Tells this cached result set if it should make all column names upper case.
@@ -411,7 +482,9 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	public List<Object[]> getData() {
 		if (data == null)
 			return new ArrayList<Object[]>();
-		else {			
+		else if (readOnlyCursor) {
+			return data;
+		} else {			
 			synchronized (data) {	
 				return Collections.unmodifiableList(new ArrayList<Object[]>(data));
 			}
@@ -430,13 +503,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * column simply doesn't exist in the result set.
 	 */
 	public int getColumnIndex(String columnName) throws SQLException {
-		int idx = -1;
-		for (int i = 0; i < rsmd.getColumnCount(); i++) {
-			if (rsmd.getColumnName(i + 1).equalsIgnoreCase(columnName)) {
-				idx = i + 1;
-				break;
-			}
-		}
+		int idx = rsmd.getColumnIndex(columnName);
 		if (logger.isDebugEnabled()) {
 			logger.debug("getColumnIndex("+columnName+") returns "+idx);
 		}
@@ -1033,6 +1100,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 */
 	public boolean isAfterLast() throws SQLException {
 		if (data == null) return false;
+		if (readOnlyCursor) return rownum >= data.size();
 		synchronized (data) {	
 			return rownum >= data.size();
 		}
@@ -1053,6 +1121,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 */
     public boolean isLast() throws SQLException {
 		if (data == null) return false;
+		if (readOnlyCursor) return rownum == (data.size() - 1);
 		synchronized (data) {	
 			return rownum == (data.size() - 1);
 		}
@@ -1072,6 +1141,10 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 */ 
     public void afterLast() throws SQLException {
     	if (data != null) {
+    		if (readOnlyCursor) {
+    			absolute(data.size());
+    			return;
+    		}
     		synchronized (data) {	
     			absolute(data.size());
 			}
@@ -1116,36 +1189,45 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
     public boolean absolute(int row) throws SQLException {
 		if (data == null) return false;
 
+		if (readOnlyCursor) return moveToAbsolute(row);
 		synchronized (data) {	
-			curCol = -1;
-			curRow = null;
-			
-			// adjust row to be a 0-based index from beginning of data set
-			if (row < 0) {
-				rownum = data.size() + row;
-			} else {
-				rownum = row - 1;
-			}
-			
-			// same as beforeFirst()
-			if (rownum < 0) {
-				rownum = BEFORE_FIRST_ROW;
-				return false;
-			}
-			
-			// same as afterLast()
-			if (rownum >= data.size()) {
-				rownum = data.size();
-				return false;
-			}
-			
-			// now do the positioning
-			if (data.size() > 0) {
-				curRow = (Object[]) data.get(rownum);
-				return true;
-			} else {
-				return false;
-			}
+			return moveToAbsolute(row);
+		}
+	}
+
+	/**
+	 * Does the work of {@link #absolute(int)}. The caller must hold the lock on
+	 * the data unless this row set is a read-only cursor.
+	 */
+	private boolean moveToAbsolute(int row) {
+		curCol = -1;
+		curRow = null;
+		
+		// adjust row to be a 0-based index from beginning of data set
+		if (row < 0) {
+			rownum = data.size() + row;
+		} else {
+			rownum = row - 1;
+		}
+		
+		// same as beforeFirst()
+		if (rownum < 0) {
+			rownum = BEFORE_FIRST_ROW;
+			return false;
+		}
+		
+		// same as afterLast()
+		if (rownum >= data.size()) {
+			rownum = data.size();
+			return false;
+		}
+		
+		// now do the positioning
+		if (data.size() > 0) {
+			curRow = (Object[]) data.get(rownum);
+			return true;
+		} else {
+			return false;
 		}
 	}
 
@@ -1186,27 +1268,36 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
     public boolean relative(int rows) throws SQLException {
 		if (data == null) return false;
 
+		if (readOnlyCursor) return moveToRelative(rows);
 		synchronized (data) {	
-			curCol = -1;
-			curRow = null;
-			
-			rownum += rows;
-			
-			if (rownum < 0) {
-				rownum = BEFORE_FIRST_ROW;
-				return false;
-			}
-			
-			if (rownum >= data.size()) {
-				rownum = data.size();
-				return false;
-			}
-			
-			curRow = (Object[]) data.get(rownum);
-			return true;
+			return moveToRelative(rows);
 		}
 	}
 
+	/**
+	 * Does the work of {@link #relative(int)}. The caller must hold the lock on
+	 * the data unless this row set is a read-only cursor.
+	 */
+	private boolean moveToRelative(int rows) {
+		curCol = -1;
+		curRow = null;
+		
+		rownum += rows;
+		
+		if (rownum < 0) {
+			rownum = BEFORE_FIRST_ROW;
+			return false;
+		}
+		
+		if (rownum >= data.size()) {
+			rownum = data.size();
+			return false;
+		}
+		
+		curRow = (Object[]) data.get(rownum);
+		return true;
+	}
+
 	/**
 	 * Not supported.
 	 *
@@ -1809,6 +1900,9 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
     }
 
     public void insertRow() throws SQLException {
+    	if (readOnlyCursor) {
+    		throw new SQLException("Rows cannot be inserted through a read-only cursor");
+    	}
     	synchronized (data) {	
     		if (rownum != INSERT_ROW) {
     			throw new SQLException("Not on insert row");
@@ -1817,6 +1911,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
     			throw new SQLException("The insert row has already been inserted");
     		}
     		data.add(curRow);
+    		modCount++;
     		insertRowAlreadyInserted = true;
 		}
     }
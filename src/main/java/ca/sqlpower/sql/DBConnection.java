@@ -7,6 +7,8 @@ import java.util.ArrayList;
 
 import javax.servlet.ServletContext;
 
+import ca.sqlpower.sql.jdbcwrapper.DriverDialect;
+
 public class DBConnection {
 
     /**
@@ -40,8 +42,13 @@ public class DBConnection {
 		String url="";
 		
 		try {
-			dmd = con.getMetaData();
-			url = dmd.getURL();
+			DriverDialect dialect = DriverDialect.forConnection(con);
+			if (dialect != null) {
+				url = String.valueOf(dialect.getUrl());
+			} else {
+				dmd = con.getMetaData();
+				url = dmd.getURL();
+			}
 		} catch(SQLException e) {
 			System.out.println("problem in DBConnection.isOracle: "+e.getMessage());
 		}
@@ -63,8 +70,15 @@ public class DBConnection {
 		DatabaseMetaData dmd;
 		
 		try {
-			dmd = con.getMetaData();
-			if(dmd.getDatabaseProductName().indexOf("PostgreSQL") >= 0) {
+			String productName;
+			DriverDialect dialect = DriverDialect.forConnection(con);
+			if (dialect != null) {
+				productName = String.valueOf(dialect.getDatabaseProductName());
+			} else {
+				dmd = con.getMetaData();
+				productName = dmd.getDatabaseProductName();
+			}
+			if(productName.indexOf("PostgreSQL") >= 0) {
 				return true;
 			} else {
 				return false;
@@ -84,8 +98,15 @@ public class DBConnection {
 		DatabaseMetaData dmd;
 		
 		try {
-			dmd = con.getMetaData();
-			if(dmd.getDatabaseProductName().indexOf("Microsoft SQL Server") >= 0) {
+			String productName;
+			DriverDialect dialect = DriverDialect.forConnection(con);
+			if (dialect != null) {
+				productName = String.valueOf(dialect.getDatabaseProductName());
+			} else {
+				dmd = con.getMetaData();
+				productName = dmd.getDatabaseProductName();
+			}
+			if(productName.indexOf("Microsoft SQL Server") >= 0) {
 				return true;
 			} else {
 				return false;
@@ -105,8 +126,15 @@ public class DBConnection {
 		DatabaseMetaData dmd;
 		
 		try {
-			dmd = con.getMetaData();
-			if(dmd.getDatabaseProductName().indexOf("DB2") >= 0) {
+			String productName;
+			DriverDialect dialect = DriverDialect.forConnection(con);
+			if (dialect != null) {
+				productName = String.valueOf(dialect.getDatabaseProductName());
+			} else {
+				dmd = con.getMetaData();
+				productName = dmd.getDatabaseProductName();
+			}
+			if(productName.indexOf("DB2") >= 0) {
 				return true;
 			} else {
 				return false;
@@ -1,15 +1,16 @@
 package ca.sqlpower.sql;
 
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
 import org.apache.log4j.Logger;
 
+import ca.sqlpower.sql.jdbcwrapper.DriverDialect;
 import ca.sqlpower.util.Cache;
-import ca.sqlpower.util.LeastRecentlyUsedCache;
-import ca.sqlpower.util.SynchronizedCache;
+import ca.sqlpower.util.ConcurrentLeastRecentlyUsedCache;
 
 
 public class DelayedWebResultSet extends WebResultSet {
@@ -22,7 +23,7 @@ public class DelayedWebResultSet extends WebResultSet {
 	 * addResultsToCache(key,value) because that can also be
 	 * overridden.
 	 */
-	private static Cache resultCache = null;
+	private static volatile Cache resultCache = null;
 	private static Object resultCacheMutex = new Object();
 
 	private static final Logger logger = Logger.getLogger(DelayedWebResultSet.class);
@@ -172,9 +173,7 @@ public class DelayedWebResultSet extends WebResultSet {
 
 		if (cacheEnabled) {
 				
-			String cacheKey = sqlQuery 
-				+"&"+con.getMetaData().getURL() 
-				+"&"+con.getMetaData().getUserName();
+			String cacheKey = sqlQuery + "&" + connectionIdentity(con);
 			
 			CachedRowSet results = (CachedRowSet) getCachedResult(cacheKey);
 			if (results != null) {
@@ -275,6 +274,20 @@ public class DelayedWebResultSet extends WebResultSet {
 		cacheEnabled=v;
 	}
 	
+	/**
+	 * Returns a string identifying the database and user of the given
+	 * connection for the result cache key.  Connections made through a
+	 * data source already know this; others are asked for their metadata.
+	 */
+	private static String connectionIdentity(Connection con) throws SQLException {
+		DriverDialect dialect = DriverDialect.forConnection(con);
+		if (dialect != null) {
+			return dialect.getUrl() + "&" + dialect.getUserName();
+		}
+		DatabaseMetaData dbmd = con.getMetaData();
+		return dbmd.getURL() + "&" + dbmd.getUserName();
+	}
+	
 	/**
 	 * Returns the cache that the DelayedWebResultSets in this JVM are
 	 * using.  You should always use this method for getting the
@@ -285,7 +298,7 @@ public class DelayedWebResultSet extends WebResultSet {
 		if (resultCache == null) {
 			synchronized (resultCacheMutex) {
 				if (resultCache == null) {
-					resultCache = new SynchronizedCache(new LeastRecentlyUsedCache(100));
+					resultCache = new ConcurrentLeastRecentlyUsedCache<String, CachedRowSet>(100);
 				}
 			}
 		}
@@ -299,7 +312,7 @@ public class DelayedWebResultSet extends WebResultSet {
 		if (resultCache == null) {
 			synchronized (resultCacheMutex) {
 				if (resultCache == null) {
-					resultCache = new SynchronizedCache(new LeastRecentlyUsedCache(100));
+					resultCache = new ConcurrentLeastRecentlyUsedCache<String, CachedRowSet>(100);
 				}
 			}
 		}
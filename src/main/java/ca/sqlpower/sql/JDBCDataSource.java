@@ -37,6 +37,7 @@ import java.util.Properties;
 import org.apache.log4j.Logger;
 
 import ca.sqlpower.sql.jdbcwrapper.ConnectionDecorator;
+import ca.sqlpower.sql.jdbcwrapper.DriverDialect;
 
 public class JDBCDataSource extends SPDataSource {
 
@@ -299,8 +300,12 @@ public class JDBCDataSource extends SPDataSource {
 				throw new SQLException(
 						"JDBC Driver returned a null connection!");
 			}
-			Connection connection = ConnectionDecorator
-					.createFacade(realConnection);
+			Connection connection = ConnectionDecorator.createFacade(
+					realConnection, DriverDialect.forDataSource(this, realConnection));
+			if (connection instanceof ConnectionDecorator) {
+				((ConnectionDecorator) connection).setStatementCacheSize(
+						getParentType().getStatementCacheSize());
+			}
 			logger.debug("Connection class is: "
 					+ connection.getClass().getName());
 			return connection;
@@ -317,6 +317,13 @@ public class JDBCDataSourceType {
      */
     public static final String SUPPORTS_QUOTING_NAME = "Supports Quoting Name";
     
+    /**
+     * The number of idle prepared statements each connection of this type
+     * keeps open for reuse. Caching is off for types that do not set this
+     * property, as some drivers do not reset a statement properly between uses.
+     */
+    public static final String STATEMENT_CACHE_SIZE = "Statement Cache Size";
+    
     /**
      * This type's parent type.  This value will be null if this type has no
      * parent.
@@ -628,6 +635,27 @@ public class JDBCDataSourceType {
         return true;
     }
 
+    /**
+     * Returns the number of idle prepared statements a connection to this
+     * platform should keep open for reuse, or 0 if statements should not be
+     * cached on this platform.
+     */
+    public int getStatementCacheSize() {
+        String ret = getProperty(STATEMENT_CACHE_SIZE);
+        if (ret == null) return 0;
+        try {
+            return Math.max(0, Integer.parseInt(ret.trim()));
+        } catch (NumberFormatException ex) {
+            logger.warn("Ignoring invalid " + STATEMENT_CACHE_SIZE + " '" + ret +
+                    "' for database type " + getName());
+            return 0;
+        }
+    }
+
+    public void setStatementCacheSize(int size) {
+        putPropertyImpl("statementCacheSize", STATEMENT_CACHE_SIZE, String.valueOf(size));
+    }
+
     /**
      * Returns all the properties of this data source type.  This will not
      * include any inherited values, so unless you're trying to save this data source
@@ -1,6 +1,7 @@
 package ca.sqlpower.sql;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -44,6 +45,30 @@ public class OracleSequenceGenerator extends SequenceGenerator {
 		return nextval;
 	}
 
+	/**
+	 * Retrieves count values from the specified Oracle sequence with a
+	 * single hierarchical query against dual.
+	 */
+	@Override
+	public long[] nextLongs(String sequenceTable, int count) throws SQLException {
+		if (count < 1) {
+			throw new IllegalArgumentException("At least one value must be requested but " + count + " were.");
+		}
+		StringBuffer sql = new StringBuffer();
+		sql.append("SELECT ").append(sequenceTable).append(
+			".nextval FROM dual CONNECT BY LEVEL <= ?");
+
+		PreparedStatement stmt = null;
+		try {
+			stmt = con.prepareStatement(sql.toString());
+			stmt.setInt(1, count);
+			return readValues(stmt.executeQuery(), count);
+		} finally {
+			if (stmt != null)
+				stmt.close();
+		}
+	}
+
 	/**
 	 * Closes the connection that was passed to the constructor.  You
 	 * should probably close it yourself rather than calling this
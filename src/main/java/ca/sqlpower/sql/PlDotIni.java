@@ -23,7 +23,6 @@
  */
 package ca.sqlpower.sql;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -33,16 +32,22 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.charset.Charset;
 import java.sql.DatabaseMetaData;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
 
+import javax.annotation.concurrent.GuardedBy;
 import javax.swing.event.UndoableEditEvent;
 import javax.swing.event.UndoableEditListener;
 import javax.swing.undo.AbstractUndoableEdit;
@@ -58,6 +63,7 @@ import ca.sqlpower.sqlobject.SQLTypePhysicalPropertiesProvider;
 import ca.sqlpower.sqlobject.SQLTypePhysicalPropertiesProvider.BasicSQLType;
 import ca.sqlpower.sqlobject.SQLTypePhysicalPropertiesProvider.PropertyType;
 import ca.sqlpower.sqlobject.UserDefinedSQLType;
+import ca.sqlpower.util.SQLPowerUtils;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
@@ -87,13 +93,17 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
 		@Override
 		public void redo() throws CannotRedoException {
 			super.redo();
-			fileSections.add(type);
+			synchronized (fileSections) {
+				fileSections.add(type);
+			}
 		}
 
 		@Override
 		public void undo() throws CannotUndoException {
 			super.undo();
-			fileSections.remove(type);
+			synchronized (fileSections) {
+				fileSections.remove(type);
+			}
 		}
 		
 		public JDBCDataSourceType getType() {
@@ -112,13 +122,17 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
 		@Override
 		public void redo() throws CannotRedoException {
 			super.redo();
-			fileSections.remove(type);
+			synchronized (fileSections) {
+				fileSections.remove(type);
+			}
 		}
 
 		@Override
 		public void undo() throws CannotUndoException {
 			super.undo();
-			fileSections.add(type);
+			synchronized (fileSections) {
+				fileSections.add(type);
+			}
 		}
 		
 		public JDBCDataSourceType getType() {
@@ -266,48 +280,194 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
      * A list of Section and SPDataSource objects, in the order they appear in the file;
      * this List contains Mixed Content (both Section and SPDataSource) which is
      * A Very Bad Idea(tm) so it cannot be converted to Java 5 Generic Collection.
+     * <p>
+     * The monitor thread merges the file into this list while other threads
+     * read it, so the list is only used while holding its lock. Listeners are
+     * never called with the lock held; see {@link #deferredWork}.
      */
+    @GuardedBy("fileSections")
     private final List<Object> fileSections = new ArrayList<Object>();
 
+    /**
+     * Work that calls out to listeners, queued in order while the lock on
+     * {@link #fileSections} is held. This is the events for added and removed
+     * data sources and the property changes merged into existing sections.
+     * Each public method that changes the sections takes the queued work with
+     * {@link #takeDeferredWork()} before it releases the lock and runs it
+     * afterwards, so a listener that reads this collection from another
+     * thread cannot deadlock with the thread changing it.
+     */
+    @GuardedBy("fileSections")
+    private final List<Runnable> deferredWork = new ArrayList<Runnable>();
+
     /**
      * The time we last read the PL.INI file.
      */
-    private long fileTime;
+    private volatile long fileTime;
+
+    /**
+     * The length of the PL.INI file when we last read or wrote it. Used
+     * with {@link #fileTime} to tell if the file has changed.
+     */
+    private volatile long fileLength;
+
+    /**
+     * The lower-case names of the data sources that were in the PL.INI file
+     * when we last read or wrote it. A data source in this set that is
+     * missing from the file when it is reloaded was removed by someone else.
+     */
+    private volatile Set<String> dataSourcesInFile = Collections.emptySet();
+
+    /**
+     * The character set the PL.INI file is read and written in. Passwords
+     * are always handled as raw bytes.
+     */
+    private Charset charset = Charset.defaultCharset();
+
+    /**
+     * Matches the keys in a data source type section that describe the
+     * physical properties of a data type on that platform.
+     */
+    private static final Pattern TYPE_PHYSICAL_PROPERTIES_KEY =
+        Pattern.compile("ca.sqlpower.sqlobject.SQLTypePhysicalProperties_\\d+");
     
     /**
      * Base URI for server: JAR spec lookups.
      */
     private URI serverBaseURI;
     
-    boolean shuttingDown = false;
-    
     /** Seconds to wait between checking the file. */
     int WAIT_TIME = 30;
 
     /**
-     * Thread to stat file periodically, reload if PL changed it.
-     * FIXME This thread is not currently started!
+     * Thread to stat file periodically, reload if PL changed it. A thread
+     * cannot be started twice, so {@link #startMonitor()} creates a new one
+     * each time. Null while the file is not being monitored.
      */
-    Thread monitor = new Thread() {
-		public void run() {
-			while (!shuttingDown) {
-				try {
-					Thread.sleep(WAIT_TIME * 1000);
-					if (lastFileAccessed == null) {
-						continue;
-					}
-					long newFileTime = lastFileAccessed.lastModified();
-					if (newFileTime != fileTime) {
-                        logger.debug("Re-reading PL.INI file because it has been modified externally.");
-						read(lastFileAccessed);
-						fileTime = newFileTime;
-					}
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
-			}
-		}
-	};
+    @GuardedBy("this")
+    Thread monitor;
+
+    /**
+     * Checks the file every {@link #WAIT_TIME} seconds until it is no longer
+     * this collection's monitor.
+     */
+    private class MonitorThread extends Thread {
+
+        MonitorThread() {
+            super("PL.INI monitor");
+            setDaemon(true);
+        }
+
+        public void run() {
+            while (isMonitor(this)) {
+                try {
+                    Thread.sleep(WAIT_TIME * 1000);
+                    reloadIfModified();
+                } catch (InterruptedException e) {
+                    logger.debug("PL.INI monitor interrupted");
+                } catch (Exception e) {
+                    logger.error("Error re-reading PL.INI file", e);
+                }
+            }
+        }
+    }
+
+    private synchronized boolean isMonitor(Thread thread) {
+        return monitor == thread;
+    }
+
+    /**
+     * Starts checking the last file read or written every {@link #WAIT_TIME}
+     * seconds and reloading it when it changes. The reload happens on the
+     * monitor thread, so listeners on this collection must be prepared to
+     * be called from it. Does nothing if the monitor is already running.
+     */
+    public synchronized void startMonitor() {
+        if (monitor == null) {
+            monitor = new MonitorThread();
+            monitor.start();
+        }
+    }
+
+    /**
+     * Stops the thread started by {@link #startMonitor()}. The monitor can be
+     * started again afterwards.
+     */
+    public synchronized void stopMonitor() {
+        if (monitor != null) {
+            monitor.interrupt();
+            monitor = null;
+        }
+    }
+
+    /**
+     * Reads the last file read or written again if its modification time or
+     * length has changed since. Data sources whose properties are unchanged
+     * are left alone, new data sources fire an add event, and data sources
+     * that were in the file before but have been removed from it are removed
+     * from this collection and fire a remove event.
+     * 
+     * @return True if the file had changed and was read again.
+     */
+    public boolean reloadIfModified() throws IOException {
+        File location = lastFileAccessed;
+        if (location == null) return false;
+        if (location.lastModified() == fileTime && location.length() == fileLength) {
+            return false;
+        }
+        logger.debug("Re-reading PL.INI file because it has been modified externally.");
+        List<Runnable> work = Collections.emptyList();
+        try {
+            synchronized (fileSections) {
+                try {
+                    Set<String> previous = dataSourcesInFile;
+                    readFile(location);
+                    for (SPDataSource ds : getConnections()) {
+                        String name = dataSourceKey(ds);
+                        if (previous.contains(name) && !dataSourcesInFile.contains(name)) {
+                            removeDataSourceImpl(ds);
+                        }
+                    }
+                } finally {
+                    work = takeDeferredWork();
+                }
+            }
+        } finally {
+            runWithoutAutoSave(work);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the work queued in {@link #deferredWork} and empties the queue.
+     * The caller must run the work once it has released the lock.
+     */
+    @GuardedBy("fileSections")
+    private List<Runnable> takeDeferredWork() {
+        if (deferredWork.isEmpty()) return Collections.emptyList();
+        List<Runnable> work = new ArrayList<Runnable>(deferredWork);
+        deferredWork.clear();
+        return work;
+    }
+
+    private void runDeferredWork(List<Runnable> work) {
+        for (Runnable r : work) {
+            r.run();
+        }
+    }
+
+    /**
+     * Runs the given work without saving the file for each data source added
+     * or removed, as a file being read does not need to be saved.
+     */
+    private void runWithoutAutoSave(List<Runnable> work) {
+        try {
+            dontAutoSave = true;
+            runDeferredWork(work);
+        } finally {
+            dontAutoSave = false;
+        }
+    }
 
     File lastFileAccessed;
 
@@ -324,7 +484,9 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
      * represents.
      */
     Object getSection(int number) {
-        return fileSections.get(number);
+        synchronized (fileSections) {
+            return fileSections.get(number);
+        }
     }
 
     /**
@@ -335,7 +497,9 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
      * to the number of database types plus the number of connections.
      */
     int getSectionCount() {
-        return fileSections.size();
+        synchronized (fileSections) {
+            return fileSections.size();
+        }
     }
     
     /**
@@ -343,16 +507,171 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
      */
     private enum ReadState {READ_DS, READ_GENERIC, READ_TYPE, READ_SQLTYPE}
 
+    /**
+     * The existing sections of this collection by name, so each section read
+     * from a file can be merged with its existing counterpart without
+     * searching all of the sections. The data source and data source type
+     * names are in lower case because they are matched without regard to
+     * case.
+     */
+    private class SectionIndex {
+        private final Map<String, SPDataSource> dataSources = new HashMap<String, SPDataSource>();
+        private final Map<String, JDBCDataSourceType> dataSourceTypes = new HashMap<String, JDBCDataSourceType>();
+        private final Map<String, UserDefinedSQLType> sqlTypes = new HashMap<String, UserDefinedSQLType>();
+        private final Map<String, Section> sections = new HashMap<String, Section>();
+        
+        /**
+         * The lower-case names of the data sources read.
+         */
+        private final Set<String> dataSourcesRead = new HashSet<String>();
+
+        /**
+         * Indexes the current sections. The caller must hold the lock on
+         * {@link #fileSections}.
+         */
+        SectionIndex() {
+            for (Object o : fileSections) {
+                if (o instanceof SPDataSource) {
+                    putIfAbsent(dataSources, dataSourceKey((SPDataSource) o), (SPDataSource) o);
+                } else if (o instanceof JDBCDataSourceType) {
+                    String name = ((JDBCDataSourceType) o).getName();
+                    if (name != null) {
+                        putIfAbsent(dataSourceTypes, name.toLowerCase(), (JDBCDataSourceType) o);
+                    }
+                } else if (o instanceof UserDefinedSQLType) {
+                    putIfAbsent(sqlTypes, ((UserDefinedSQLType) o).getName(), (UserDefinedSQLType) o);
+                } else if (o instanceof Section) {
+                    putIfAbsent(sections, ((Section) o).getName(), (Section) o);
+                }
+            }
+        }
+
+        private <T> void putIfAbsent(Map<String, T> map, String key, T value) {
+            if (!map.containsKey(key)) {
+                map.put(key, value);
+            }
+        }
+    }
+
+    /**
+     * Returns the name a data source is matched on when merging.
+     */
+    private static String dataSourceKey(SPDataSource ds) {
+        String name = ds.getDisplayName();
+        return name == null ? null : name.toLowerCase();
+    }
+
+    /**
+     * Splits a stream into CRLF-terminated lines, reading it in large blocks.
+     * A line longer than {@link #MAX_LINE_LENGTH} bytes is split into pieces
+     * no longer than that and an error is logged.
+     * <p>
+     * We require CRLF line ends because the encrypted password could contain
+     * a bare CR or LF, which we don't want to interpret as an end-of-line.
+     */
+    private static class LineReader {
+        private static final int MAX_LINE_LENGTH = 10000;
+        
+        private final InputStream in;
+        private final byte[] buffer = new byte[8192];
+        private int position;
+        private int limit;
+        private byte[] line = new byte[256];
+
+        LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Returns all of the bytes of the next line except the terminating
+         * CRLF, or null if the stream is already at end-of-file.
+         */
+        byte[] readLine() throws IOException {
+            int lineSize = 0;
+            for (;;) {
+                if (position == limit) {
+                    limit = in.read(buffer);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        if (lineSize == 0) return null;
+                        break;
+                    }
+                }
+                if (lineSize == line.length) {
+                    line = Arrays.copyOf(line, Math.min(line.length * 2, MAX_LINE_LENGTH));
+                }
+                byte b = buffer[position++];
+                line[lineSize++] = b;
+                if (b == '\n' && lineSize >= 2 && line[lineSize - 2] == '\r') {
+                    lineSize -= 2;
+                    break;
+                }
+                if (lineSize == MAX_LINE_LENGTH) {
+                    logger.error("Maximum line size exceeded while reading pl.ini.  Line will be split up.");
+                    break;
+                }
+            }
+            return Arrays.copyOf(line, lineSize);
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+
     public void read(File location) throws IOException {
+        List<Runnable> work = Collections.emptyList();
+        try {
+            synchronized (fileSections) {
+                try {
+                    readFile(location);
+                } finally {
+                    work = takeDeferredWork();
+                }
+            }
+        } finally {
+            runWithoutAutoSave(work);
+        }
+    }
+    
+    public void read(InputStream inStream) throws IOException {
+        List<Runnable> work = Collections.emptyList();
+        try {
+            synchronized (fileSections) {
+                try {
+                    readImpl(inStream);
+                } finally {
+                    work = takeDeferredWork();
+                }
+            }
+        } finally {
+            runWithoutAutoSave(work);
+        }
+    }
+
+    @GuardedBy("fileSections")
+    private void readFile(File location) throws IOException {
         if (!location.canRead()) {
             throw new IOException("pl.ini file is not readable: " + location.getAbsolutePath());
         }
         fileTime =  location.lastModified();
+        fileLength = location.length();
         lastFileAccessed = location;
-        read(new FileInputStream(location));
+        dataSourcesInFile = readImpl(new FileInputStream(location));
     }
-    
-    public void read(InputStream inStream) throws IOException {
+
+    /**
+     * Reads the sections of the given stream and merges them into this
+     * collection in a single pass. The caller must hold the lock on
+     * {@link #fileSections} and run the {@link #deferredWork} this queues,
+     * which copies the properties read into the existing sections and links
+     * the sections to their parent types.
+     * 
+     * @return The lower-case names of the data sources read.
+     */
+    @GuardedBy("fileSections")
+    private Set<String> readImpl(InputStream inStream) throws IOException {
         
     	if (inStream == null) throw new NullPointerException("InputStream was null!");
     	
@@ -367,37 +686,40 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
             SPDataSource currentDS = null;
             UserDefinedSQLType currentSQLType = null;
             Section currentSection = new Section(null);  // this accounts for any properties before the first named section
-            Multimap<String, SQLTypePhysicalProperties> typePropertiesMap = ArrayListMultimap.create();
+            final Multimap<String, SQLTypePhysicalProperties> typePropertiesMap = ArrayListMultimap.create();
+            SectionIndex index = new SectionIndex();
             
             // Can't use Reader to read this file because the encrypted passwords contain non-ASCII characters
-            BufferedInputStream in = new BufferedInputStream(inStream);
+            LineReader in = new LineReader(inStream);
 
             byte[] lineBytes = null;
 
-            while ((lineBytes = readLine(in)) != null) {
-                String line = new String(lineBytes);
+            while ((lineBytes = in.readLine()) != null) {
+                String line = new String(lineBytes, charset);
                 
                 line = convertOldLines(line);
                 
-                logger.debug("Read in new line: "+line);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Read in new line: "+line);
+                }
                 
                 if (line.startsWith("[")) {
-                    mergeFileData(mode, currentType, currentDS, currentSQLType, currentSection);
+                    mergeFileData(index, mode, currentType, currentDS, currentSQLType, currentSection);
                 }
                 if (line.startsWith("[Databases_")) {
-                    logger.debug("It's a new database connection spec!" +fileSections);
+                    logger.debug("It's a new database connection spec!");
                     currentDS =  new JDBCDataSource(this);
                     mode = ReadState.READ_DS;
                 } else if (line.startsWith("[OLAP_databases_")) {
-                    logger.debug("It's a new database connection spec!" +fileSections);
+                    logger.debug("It's a new database connection spec!");
                     currentDS =  new Olap4jDataSource(this);
                     mode = ReadState.READ_DS;
                 } else if (line.startsWith("[Database Types_")) {
-                    logger.debug("It's a new database type!" + fileSections);
+                    logger.debug("It's a new database type!");
                     currentType =  new JDBCDataSourceType(getServerBaseURI());
                     mode = ReadState.READ_TYPE;
                 } else if (line.startsWith("[Data Types_")) {
-                	logger.debug("It's a new data type!" + fileSections);
+                	logger.debug("It's a new data type!");
                 	currentSQLType = new UserDefinedSQLType();
                 	String platform = SQLTypePhysicalPropertiesProvider.GENERIC_PLATFORM; 
                 	currentSQLType.setConstraintType(platform, SQLTypeConstraint.NONE);
@@ -422,7 +744,9 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
                         key = line;
                         value = null;
                     }
-                    logger.debug("key="+key+",val="+value);
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("key="+key+",val="+value);
+                    }
 
                     if (mode == ReadState.READ_DS) {
                         // passwords are special, because the spectacular obfustaction technique
@@ -436,7 +760,7 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
                         }
                         currentDS.put(key, value);
                     } else if (mode == ReadState.READ_TYPE) {
-                    	if (key.matches("ca.sqlpower.sqlobject.SQLTypePhysicalProperties_\\d+")) {
+                    	if (TYPE_PHYSICAL_PROPERTIES_KEY.matcher(key).matches()) {
                     		String[] values = value.split(",");
                     		String typeUUID = values[0];
                     		SQLTypePhysicalProperties props = new SQLTypePhysicalProperties(currentType.getName());
@@ -455,53 +779,81 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
                 }
             }
             in.close();
-            mergeFileData(mode, currentType, currentDS, currentSQLType, currentSection);
+            mergeFileData(index, mode, currentType, currentDS, currentSQLType, currentSection);
 
-            // hook up database type hierarchy, and assign parentType pointers to data sources themselves
-            for (Object o : fileSections) {
-                if (o instanceof JDBCDataSourceType) {
-                    JDBCDataSourceType dst = (JDBCDataSourceType) o;
-                    String parentTypeName = dst.getProperty(JDBCDataSourceType.PARENT_TYPE_NAME);
-                    if (parentTypeName != null) {
-                        JDBCDataSourceType parentType = getDataSourceType(parentTypeName);
-                        if (parentType == null) {
-                            throw new IllegalStateException(
-                                    "Database type \""+dst.getName()+"\" refers to parent type \""+
-                                    parentTypeName+"\", which doesn't exist");
-                        }
-                        dst.setParentType(parentType);
+            final List<Object> sections = new ArrayList<Object>(fileSections);
+            deferredWork.add(new Runnable() {
+                public void run() {
+                    linkSections(sections, typePropertiesMap);
+                }
+            });
+            logger.info("Finished reading file.");
+            return index.dataSourcesRead;
+        } finally {
+            dontAutoSave = false;
+        }
+	}
+
+    /**
+     * Sets the parent type of each of the given data sources and data source
+     * types, and gives each data type the physical properties read for it.
+     * Run once the properties read have been merged into the existing
+     * sections.
+     */
+    private void linkSections(List<Object> sections, Multimap<String, SQLTypePhysicalProperties> typePropertiesMap) {
+        // the first type of each name, as getDataSourceType() would find it
+        Map<String, JDBCDataSourceType> typesByName = new HashMap<String, JDBCDataSourceType>();
+        for (Object o : sections) {
+            if (o instanceof JDBCDataSourceType) {
+                JDBCDataSourceType dst = (JDBCDataSourceType) o;
+                if (!typesByName.containsKey(dst.getName())) {
+                    typesByName.put(dst.getName(), dst);
+                }
+            }
+        }
+
+        // hook up database type hierarchy, and assign parentType pointers to data sources themselves
+        for (Object o : sections) {
+            if (o instanceof JDBCDataSourceType) {
+                JDBCDataSourceType dst = (JDBCDataSourceType) o;
+                String parentTypeName = dst.getProperty(JDBCDataSourceType.PARENT_TYPE_NAME);
+                if (parentTypeName != null) {
+                    JDBCDataSourceType parentType = typesByName.get(parentTypeName);
+                    if (parentType == null) {
+                        throw new IllegalStateException(
+                                "Database type \""+dst.getName()+"\" refers to parent type \""+
+                                parentTypeName+"\", which doesn't exist");
                     }
-                } else if (o instanceof JDBCDataSource) {
-                    JDBCDataSource ds = (JDBCDataSource) o;
-                    String typeName = ds.getPropertiesMap().get(JDBCDataSource.DBCS_CONNECTION_TYPE);
-                    if (typeName != null) {
-                        JDBCDataSourceType type = getDataSourceType(typeName);
-                        if (type == null) {
-                            logger.error(
-                                    "Database connection \""+ds.getName()+"\" refers to database type \""+
-                                    typeName+"\", which doesn't exist");
-                        } else {
+                    dst.setParentType(parentType);
+                }
+            } else if (o instanceof JDBCDataSource) {
+                JDBCDataSource ds = (JDBCDataSource) o;
+                String typeName = ds.getPropertiesMap().get(JDBCDataSource.DBCS_CONNECTION_TYPE);
+                if (typeName != null) {
+                    JDBCDataSourceType type = typesByName.get(typeName);
+                    if (type == null) {
+                        logger.error(
+                                "Database connection \""+ds.getName()+"\" refers to database type \""+
+                                typeName+"\", which doesn't exist");
+                    } else {
+                        if (logger.isDebugEnabled()) {
                             logger.debug("The data source type \"" + type + "\" is being set as the parent type of" + ds);
-                            ds.setParentType(type);
                         }
+                        ds.setParentType(type);
                     }
-                } else if (o instanceof UserDefinedSQLType) {
-                	// Attach SQLTypePhysicalProperties to their type
-                	UserDefinedSQLType type = (UserDefinedSQLType) o;
-                	Collection<SQLTypePhysicalProperties> typeProperties = typePropertiesMap.get(type.getUUID());
-                	if (typeProperties != null) {
-                		for (SQLTypePhysicalProperties properties : typeProperties) {
-                			type.putPhysicalProperties(properties.getPlatform(), properties);
-                		}
-                	}
                 }
+            } else if (o instanceof UserDefinedSQLType) {
+            	// Attach SQLTypePhysicalProperties to their type
+            	UserDefinedSQLType type = (UserDefinedSQLType) o;
+            	Collection<SQLTypePhysicalProperties> typeProperties = typePropertiesMap.get(type.getUUID());
+            	if (typeProperties != null) {
+            		for (SQLTypePhysicalProperties properties : typeProperties) {
+            			type.putPhysicalProperties(properties.getPlatform(), properties);
+            		}
+            	}
             }
-        } finally {
-            dontAutoSave = false;
         }
-
-		logger.info("Finished reading file.");
-	}
+    }
 
     /**
      * This method exists to convert older properties in a Pl.ini file to new properties.
@@ -532,78 +884,127 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
 	 * @param currentSQLType Only used when mode = READ_SQLTYPE 
      * @param currentSection Only used when mode = READ_GENERIC
      */
-    private void mergeFileData(ReadState mode, JDBCDataSourceType currentType, SPDataSource currentDS, UserDefinedSQLType currentSQLType, Section currentSection) {
+    private void mergeFileData(SectionIndex index, ReadState mode, JDBCDataSourceType currentType, SPDataSource currentDS, UserDefinedSQLType currentSQLType, Section currentSection) {
         if (mode == ReadState.READ_DS) {
-            mergeDataSource(currentDS);
+            mergeDataSource(index, currentDS);
         } else if (mode == ReadState.READ_GENERIC) {
-            mergeSection(currentSection);
+            mergeSection(index, currentSection);
         } else if (mode == ReadState.READ_SQLTYPE) {
-        	mergeSQLType(currentSQLType);
+        	mergeSQLType(index, currentSQLType);
         } else if (mode == ReadState.READ_TYPE) {
             // special case: sometimes the parser ends up thinking there was
             // an empty ds type section at the end of the file. we can't merge it.
             if (currentType.getProperties().size() > 0) {
-                mergeDataSourceType(currentType);
+                mergeDataSourceType(index, currentType);
             }
         } else {
             throw new IllegalArgumentException("Unknown read state. Can't merge");
         }
     }
 
-	private void mergeSection(Section currentSection) {
+	@GuardedBy("fileSections")
+	private void mergeSection(SectionIndex index, Section currentSection) {
         logger.debug("Attempting to merge Section: \"" + currentSection.getName() + "\"");
-        for (Object o : fileSections) {
-            if (o instanceof Section) {
-                Section s = (Section) o;
-                if ( (s.getName() == null && currentSection.getName() == null)
-                    || (s.getName() != null && s.getName().equals(currentSection.getName())) ) {
-                    logger.debug("Found a section to merge, now merging");
-                    s.merge(currentSection);
-                    return;
-                }
-            }
+        Section s = index.sections.get(currentSection.getName());
+        if (s != null) {
+            logger.debug("Found a section to merge, now merging");
+            s.merge(currentSection);
+            return;
         }
         
         logger.debug("Didn't find section to merge. Adding...");
         fileSections.add(currentSection);
+        index.sections.put(currentSection.getName(), currentSection);
     }
 
     /**
-	 * Reads bytes from the input stream until a CRLF pair or end-of-file is encountered.
-	 * If a line is longer than some arbitrary maximum (currently 10000 bytes), it will
-	 * be split into pieces not larger than that size and returned as separate lines.
-	 * In this case, an error will be logged to the class's logger.
-	 *
-	 * <p>Note: We think that we require CRLF line ends because the encrypted password
-	 * could contain a bare CR or LF, which we don't want to interpret as an end-of-line.
-	 *
-     * @param in The input stream to read.
-     * @return All of the bytes read except the terminating CRLF.  If there are no more
-     * bytes to read (because in is already at end-of-file) then this method returns null.
+     * Copies the properties of the given data source into the existing one
+     * with the same name (ignoring case) found through the index, or adds it
+     * if there is none. Only the properties whose values differ are copied,
+     * so a data source that has not changed fires no events at all. The
+     * properties are copied by the {@link #deferredWork} this queues.
      */
-    private byte[] readLine(BufferedInputStream in) throws IOException {
-        final int MAX_LINE_LENGTH = 10000;
-        byte[] buffer = new byte[MAX_LINE_LENGTH];
-        int lineSize = 0;
-        int ch;
-        while ( (ch = in.read()) != -1 && lineSize < MAX_LINE_LENGTH) {
-            buffer[lineSize] = (byte) ch;
-            lineSize++;
-            if (lineSize >= 2 && buffer[lineSize-2] == '\r' && buffer[lineSize-1] == '\n') {
-                lineSize -= 2;
-                break;
-            }
+    @GuardedBy("fileSections")
+    private void mergeDataSource(SectionIndex index, SPDataSource dbcs) {
+        String key = dataSourceKey(dbcs);
+        index.dataSourcesRead.add(key);
+        SPDataSource existing = index.dataSources.get(key);
+        if (existing == null) {
+            addDataSourceImpl(dbcs);
+            index.dataSources.put(key, dbcs);
+            return;
         }
+        final SPDataSource target = existing;
+        final Map<String, String> properties = dbcs.getPropertiesMap();
+        deferredWork.add(new Runnable() {
+            public void run() {
+                Map<String, String> existingProperties = target.getPropertiesMap();
+                for (Map.Entry<String, String> ent : properties.entrySet()) {
+                    if (!existingProperties.containsKey(ent.getKey())
+                            || !SQLPowerUtils.areEqual(existingProperties.get(ent.getKey()), ent.getValue())) {
+                        target.put(ent.getKey(), ent.getValue());
+                    }
+                }
+            }
+        });
+    }
 
-        // check for end of file
-        if (ch == -1 && lineSize == 0) return null;
-
-        // check for split lines
-        if (lineSize == MAX_LINE_LENGTH) logger.error("Maximum line size exceeded while reading pl.ini.  Line will be split up.");
+    /**
+     * Copies the properties of the given type into the existing type with
+     * the same name (ignoring case) found through the index, or adds it if
+     * there is none. The properties are copied by the {@link #deferredWork}
+     * this queues.
+     */
+    @GuardedBy("fileSections")
+    private void mergeDataSourceType(SectionIndex index, JDBCDataSourceType dst) {
+        String newName = dst.getName();
+        if (newName == null) {
+            throw new IllegalArgumentException("Can't merge a nameless data source type: "+dst);
+        }
+        JDBCDataSourceType current = index.dataSourceTypes.get(newName.toLowerCase());
+        if (current == null) {
+            addDataSourceTypeImpl(dst);
+            index.dataSourceTypes.put(newName.toLowerCase(), dst);
+            return;
+        }
+        final JDBCDataSourceType target = current;
+        final Map<String, String> properties = dst.getProperties();
+        deferredWork.add(new Runnable() {
+            public void run() {
+                Map<String, String> currentProperties = target.getProperties();
+                for (Map.Entry<String, String> ent : properties.entrySet()) {
+                    if (!currentProperties.containsKey(ent.getKey())
+                            || !SQLPowerUtils.areEqual(currentProperties.get(ent.getKey()), ent.getValue())) {
+                        target.putProperty(ent.getKey(), ent.getValue());
+                    }
+                }
+            }
+        });
+    }
 
-        byte chopBuffer[] = new byte[lineSize];
-        System.arraycopy(buffer, 0, chopBuffer, 0, lineSize);
-        return chopBuffer;
+    /**
+     * Copies the properties of the given data type into the existing one
+     * with the same name found through the index, or adds it if there is
+     * none. The properties are copied by the {@link #deferredWork} this
+     * queues.
+     */
+    @GuardedBy("fileSections")
+    private void mergeSQLType(SectionIndex index, UserDefinedSQLType sqlType) {
+        UserDefinedSQLType existingType = index.sqlTypes.get(sqlType.getName());
+        if (existingType == null) {
+            addSQLType(sqlType);
+            index.sqlTypes.put(sqlType.getName(), sqlType);
+            return;
+        }
+        final UserDefinedSQLType target = existingType;
+        final Map<String, String> properties = createSQLTypePropertiesMap(sqlType);
+        deferredWork.add(new Runnable() {
+            public void run() {
+                for (Map.Entry<String, String> entry : properties.entrySet()) {
+                    putPropertyIntoSQLType(target, entry.getKey(), entry.getValue());
+                }
+            }
+        });
     }
 
     public void write() throws IOException {
@@ -625,6 +1026,12 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
     	    out.close();
             lastFileAccessed = location;
     	    fileTime = location.lastModified();
+    	    fileLength = location.length();
+    	    Set<String> names = new HashSet<String>();
+    	    for (SPDataSource ds : getConnections()) {
+    	        names.add(dataSourceKey(ds));
+    	    }
+    	    dataSourcesInFile = names;
         } finally {
             dontAutoSave = false;
         }
@@ -643,9 +1050,11 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
         int olapNum = 1;
         int sqltypeNum = 1;
 
-        Iterator<Object> it = fileSections.iterator();
-	    while (it.hasNext()) {
-	        Object next = it.next();
+        List<Object> sections;
+        synchronized (fileSections) {
+            sections = new ArrayList<Object>(fileSections);
+        }
+        for (Object next : sections) {
 
 	        if (next instanceof Section) {
 	            writeSection(out, ((Section) next).getName(), ((Section) next).getPropertiesMap());
@@ -653,7 +1062,7 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
                 writeSection(out, "Databases_"+dbNum, ((JDBCDataSource) next).getPropertiesMap());
                 dbNum++;
             } else if (next instanceof JDBCDataSourceType) {
-            	List<SQLTypePhysicalProperties> properties = getPropertiesForDataSourceType((JDBCDataSourceType) next);
+            	List<SQLTypePhysicalProperties> properties = getPropertiesForDataSourceType(sections, (JDBCDataSourceType) next);
             	Map<String, String> propMap = new LinkedHashMap<String,String>(((JDBCDataSourceType) next).getProperties());
             	for (int i = 0 ; i < properties.size() ; i++) {
             		SQLTypePhysicalProperties typeProp = properties.get(i);
@@ -681,10 +1090,10 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
 	    }
 	}
 	
-	private List<SQLTypePhysicalProperties> getPropertiesForDataSourceType(JDBCDataSourceType ds) {
+	private List<SQLTypePhysicalProperties> getPropertiesForDataSourceType(List<Object> sections, JDBCDataSourceType ds) {
 		List<SQLTypePhysicalProperties> propertiesList = new ArrayList<SQLTypePhysicalProperties>();
 		
-		for (Object o : fileSections) {
+		for (Object o : sections) {
 			if (o instanceof UserDefinedSQLType) {
 				UserDefinedSQLType type = (UserDefinedSQLType) o;
 				SQLTypePhysicalProperties properties = type.getPhysicalProperties(ds.getName());
@@ -762,16 +1171,16 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
 	private void writeSection(OutputStream out, String name, Map<String, String> properties) throws IOException {
 	    if (name != null) {
 	        String sectionHeading = "["+name+"]" + DOS_CR_LF;
-	        out.write(sectionHeading.getBytes());
+	        out.write(sectionHeading.getBytes(charset));
 	    }
 
 	    // output LOGICAL first (if it exists)
 	    String s = null;
 	    if ((s = (String) properties.get("Logical")) != null) {
-	        out.write("Logical".getBytes());
-            out.write("=".getBytes());
-            out.write(s.getBytes());
-	        out.write(DOS_CR_LF.getBytes());
+	        out.write("Logical".getBytes(charset));
+            out.write("=".getBytes(charset));
+            out.write(s.getBytes(charset));
+	        out.write(DOS_CR_LF.getBytes(charset));
 	    }
 
 	    // now get everything else, and ignore the LOGICAL property
@@ -779,18 +1188,18 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
 	    while (it.hasNext()) {
 	        Map.Entry<String, String> ent = it.next();
 	        if (!ent.getKey().equals("Logical")) {
-	        	out.write(((String) ent.getKey()).getBytes());
+	        	out.write(((String) ent.getKey()).getBytes(charset));
 	        	if (ent.getValue() != null) {
 	        		byte[] val;
 	        		if (ent.getKey().equals("PWD")) {
 	        			val = encryptPassword(9, ((String) ent.getValue()));
 	        		} else {
-	        			val = ((String) ent.getValue()).getBytes();
+	        			val = ((String) ent.getValue()).getBytes(charset);
 	        		}
-	        		out.write("=".getBytes());
+	        		out.write("=".getBytes(charset));
 	        		out.write(val);
 	        	}
-	        	out.write(DOS_CR_LF.getBytes());
+	        	out.write(DOS_CR_LF.getBytes(charset));
 	        }
 	    }
 	}
@@ -800,28 +1209,32 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
     }
     
     public <C extends SPDataSource> C getDataSource(String name, Class<C> classType) {
-        Iterator<Object> it = fileSections.iterator();
-        while (it.hasNext()) {
-            Object next = it.next();
-            if (classType.isInstance(next)) {
-                C ds = classType.cast(next);
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Checking if data source "+ds+" is PL Logical connection "+name);
+        synchronized (fileSections) {
+            Iterator<Object> it = fileSections.iterator();
+            while (it.hasNext()) {
+                Object next = it.next();
+                if (classType.isInstance(next)) {
+                    C ds = classType.cast(next);
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Checking if data source "+ds+" is PL Logical connection "+name);
+                    }
+                    if (ds.getName().equals(name)) return ds;
                 }
-                if (ds.getName().equals(name)) return ds;
             }
         }
         return null;
     }
 
     public JDBCDataSourceType getDataSourceType(String name) {
-        for (Object next : fileSections) {
-            if (next instanceof JDBCDataSourceType) {
-                JDBCDataSourceType dst = (JDBCDataSourceType) next;
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Checking if data source type "+dst+" is called "+name);
+        synchronized (fileSections) {
+            for (Object next : fileSections) {
+                if (next instanceof JDBCDataSourceType) {
+                    JDBCDataSourceType dst = (JDBCDataSourceType) next;
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Checking if data source type "+dst+" is called "+name);
+                    }
+                    if (dst.getName().equals(name)) return dst;
                 }
-                if (dst.getName().equals(name)) return dst;
             }
         }
         return null;
@@ -829,10 +1242,12 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
 
     public List<JDBCDataSourceType> getDataSourceTypes() {
         List<JDBCDataSourceType> list = new ArrayList<JDBCDataSourceType>();
-        for (Object next : fileSections) {
-            if (next instanceof JDBCDataSourceType) {
-                JDBCDataSourceType dst = (JDBCDataSourceType) next;
-                list.add(dst);
+        synchronized (fileSections) {
+            for (Object next : fileSections) {
+                if (next instanceof JDBCDataSourceType) {
+                    JDBCDataSourceType dst = (JDBCDataSourceType) next;
+                    list.add(dst);
+                }
             }
         }
         return list;
@@ -855,13 +1270,13 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
      */
     public <C extends SPDataSource> List<C> getConnections(Class<C> classType) {
         List<C> connections = new ArrayList<C>();
-	    Iterator<Object> it = fileSections.iterator();
-	    while (it.hasNext()) {
-	        Object next = it.next();
-	        if (classType.isInstance(next)) {
-	            connections.add(classType.cast(next));
-	        }
-	    }
+        synchronized (fileSections) {
+            for (Object next : fileSections) {
+                if (classType.isInstance(next)) {
+                    connections.add(classType.cast(next));
+                }
+            }
+        }
         Collections.sort(connections);
         return connections;
     }
@@ -947,44 +1362,59 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
      */
 	public void addDataSource(SPDataSource dbcs) {
 		String newName = dbcs.getDisplayName();
-		for (Object o : fileSections) {
-			if (o instanceof SPDataSource) {
-				SPDataSource oneDbcs = (SPDataSource) o;
-				if (newName.equalsIgnoreCase(oneDbcs.getDisplayName())) {
-					throw new IllegalArgumentException(
-							"There is already a datasource with the name " + newName);
+		List<Runnable> work;
+		synchronized (fileSections) {
+			for (Object o : fileSections) {
+				if (o instanceof SPDataSource) {
+					SPDataSource oneDbcs = (SPDataSource) o;
+					if (newName.equalsIgnoreCase(oneDbcs.getDisplayName())) {
+						throw new IllegalArgumentException(
+								"There is already a datasource with the name " + newName);
+					}
 				}
 			}
+			addDataSourceImpl(dbcs);
+			work = takeDeferredWork();
 		}
-		addDataSourceImpl(dbcs);
+		runDeferredWork(work);
     }
 
 	/* (non-Javadoc)
      * @see ca.sqlpower.architect.DataSourceCollection#mergeDataSource(ca.sqlpower.architect.SPDataSource)
      */
     public void mergeDataSource(SPDataSource dbcs) {
-    	String newName = dbcs.getDisplayName();
-    	for (Object o : fileSections) {
-    		if (o instanceof SPDataSource) {
-				SPDataSource oneDbcs = (SPDataSource) o;
-				if (newName.equalsIgnoreCase(oneDbcs.getDisplayName())) {
-                    for (Map.Entry<String, String> ent : dbcs.getPropertiesMap().entrySet()) {
-                        oneDbcs.put(ent.getKey(), ent.getValue());
-                    }
-				    return;
-				}
-			}
-    	}
-        
-        // we only get here if we didn't find a data source to update.
-        addDataSourceImpl(dbcs);
+        List<Runnable> work;
+        synchronized (fileSections) {
+            mergeDataSource(new SectionIndex(), dbcs);
+            work = takeDeferredWork();
+        }
+        runDeferredWork(work);
     }
 
     /* (non-Javadoc)
      * @see ca.sqlpower.architect.DataSourceCollection#removeDataSource(ca.sqlpower.architect.SPDataSource)
      */
     public void removeDataSource(SPDataSource dbcs) {
-        
+        boolean removed;
+        List<Runnable> work;
+        synchronized (fileSections) {
+            removed = removeDataSourceImpl(dbcs);
+            work = takeDeferredWork();
+        }
+        runDeferredWork(work);
+        if (!removed) {
+            throw new IllegalArgumentException("dbcs not in list");
+        }
+    }
+
+    /**
+     * Removes the data source with the same name as the given one and queues
+     * a remove event.
+     * 
+     * @return False if there is no data source with the given one's name.
+     */
+    @GuardedBy("fileSections")
+    private boolean removeDataSourceImpl(SPDataSource dbcs) {
         // need to know the index we're removing in order to fire the remove event
         // (so using an indexed for loop, not a ListIterator)
         for ( int where=0; where<fileSections.size(); where++ ) {
@@ -994,11 +1424,11 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
                 if (current.getName().equals(dbcs.getName())) {
                     fileSections.remove(where);
                     fireRemoveEvent(where, dbcs);
-                    return;
+                    return true;
                 }
             }
         }
-        throw new IllegalArgumentException("dbcs not in list");
+        return false;
     }
 
     /**
@@ -1006,44 +1436,44 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
      * with the same name, if one exists.  Otherwise, adds the given dst as a new section.
      */
     public void mergeDataSourceType(JDBCDataSourceType dst) {
-        logger.debug("Merging data source type "+dst.getName());
-        String newName = dst.getName();
-        if (newName == null) {
-            throw new IllegalArgumentException("Can't merge a nameless data source type: "+dst);
+        List<Runnable> work;
+        synchronized (fileSections) {
+            mergeDataSourceType(new SectionIndex(), dst);
+            work = takeDeferredWork();
         }
-        for (Object o : fileSections) {
-            if (o instanceof JDBCDataSourceType) {
-                JDBCDataSourceType current = (JDBCDataSourceType) o;
-                if (newName.equalsIgnoreCase(current.getName())) {
-                    logger.debug("    Found it");
-                    for (Map.Entry<String, String> ent : dst.getProperties().entrySet()) {
-                        current.putProperty(ent.getKey(), ent.getValue());
-                    }
-                    return;
-                }
-            }
-        }
-        
-        logger.debug("    Not found.. adding");
-        addDataSourceType(dst);
-
+        runDeferredWork(work);
     }
 
 	/**
-	 * Common code for add and merge.  Adds the given dbcs as a section, then fires an add event.
+	 * Common code for add and merge.  Adds the given dbcs as a section, then queues an add event.
 	 * @param dbcs
 	 */
+	@GuardedBy("fileSections")
 	private void addDataSourceImpl(SPDataSource dbcs) {
 		fileSections.add(dbcs);
 		fireAddEvent(dbcs);
 	}
 
     public void addDataSourceType(JDBCDataSourceType dataSourceType) {
+        List<Runnable> work;
+        synchronized (fileSections) {
+            addDataSourceTypeImpl(dataSourceType);
+            work = takeDeferredWork();
+        }
+        runDeferredWork(work);
+    }
+
+    @GuardedBy("fileSections")
+    private void addDataSourceTypeImpl(final JDBCDataSourceType dataSourceType) {
         // TODO fire an event for adding the dstype
         fileSections.add(dataSourceType);
-        for (int i = undoListeners.size() - 1; i >= 0; i--) {
-        	undoListeners.get(i).undoableEditHappened(new UndoableEditEvent(this, new AddDSTypeUndoableEdit(dataSourceType)));
-        }
+        deferredWork.add(new Runnable() {
+            public void run() {
+                for (int i = undoListeners.size() - 1; i >= 0; i--) {
+                    undoListeners.get(i).undoableEditHappened(new UndoableEditEvent(PlDotIni.this, new AddDSTypeUndoableEdit(dataSourceType)));
+                }
+            }
+        });
     }
 
     public boolean removeDataSourceType(JDBCDataSourceType dataSourceType) {
@@ -1051,7 +1481,9 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
     	for (int i = undoListeners.size() - 1; i >= 0; i--) {
     		undoListeners.get(i).undoableEditHappened(new UndoableEditEvent(this, new RemoveDSTypeUndoableEdit(dataSourceType)));
     	}
-        return fileSections.remove(dataSourceType);
+    	synchronized (fileSections) {
+    	    return fileSections.remove(dataSourceType);
+    	}
     }
 
 	/**
@@ -1059,44 +1491,56 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
 	 * the properties. Otherwise, add a new section for this type.
 	 */
 	public void mergeSQLType(UserDefinedSQLType sqlType) {
-		String name = sqlType.getName();
-		for (Object o : fileSections) {
-			if (o instanceof UserDefinedSQLType) {
-				UserDefinedSQLType existingType = (UserDefinedSQLType) o;
-				if (existingType.getName().equals(name)) {
-					for (Map.Entry<String, String> entry : createSQLTypePropertiesMap(sqlType).entrySet()) {
-						putPropertyIntoSQLType(existingType, entry.getKey(), entry.getValue());
-					}
-					return;
-				}
-			}
+		List<Runnable> work;
+		synchronized (fileSections) {
+			mergeSQLType(new SectionIndex(), sqlType);
+			work = takeDeferredWork();
 		}
-		addSQLType(sqlType);
+		runDeferredWork(work);
 	}
     
+	@GuardedBy("fileSections")
 	private void addSQLType(UserDefinedSQLType sqlType) {
 		// TODO: If this method is made public for client code to add new types,
 		// there will probably have to be events fired for UI
 		fileSections.add(sqlType);
     }
-    
+
+    /**
+     * Queues an add event for the data source just added to the end of the
+     * sections. The event is fired once the lock has been released.
+     */
+    @GuardedBy("fileSections")
     private void fireAddEvent(SPDataSource dbcs) {
 		int index = fileSections.size()-1;
-		DatabaseListChangeEvent e = new DatabaseListChangeEvent(this, index, dbcs);
-    	synchronized(listeners) {
-			for(DatabaseListChangeListener listener : listeners) {
-				listener.databaseAdded(e);
+		final DatabaseListChangeEvent e = new DatabaseListChangeEvent(this, index, dbcs);
+		deferredWork.add(new Runnable() {
+			public void run() {
+				synchronized(listeners) {
+					for(DatabaseListChangeListener listener : listeners) {
+						listener.databaseAdded(e);
+					}
+				}
 			}
-		}
+		});
 	}
 
+    /**
+     * Queues a remove event for the data source just removed from the given
+     * index. The event is fired once the lock has been released.
+     */
+    @GuardedBy("fileSections")
     private void fireRemoveEvent(int i, SPDataSource dbcs) {
-    	DatabaseListChangeEvent e = new DatabaseListChangeEvent(this, i, dbcs);
-    	synchronized(listeners) {
-			for(DatabaseListChangeListener listener : listeners) {
-				listener.databaseRemoved(e);
-			}
-		}
+    	final DatabaseListChangeEvent e = new DatabaseListChangeEvent(this, i, dbcs);
+    	deferredWork.add(new Runnable() {
+    		public void run() {
+    			synchronized(listeners) {
+    				for(DatabaseListChangeListener listener : listeners) {
+    					listener.databaseRemoved(e);
+    				}
+    			}
+    		}
+    	});
     }
 
     /* (non-Javadoc)
@@ -1133,11 +1577,25 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
 		return mondrianServerBaseURI;
 	}
 
+	/**
+	 * Sets the character set the PL.INI file is read and written in. The
+	 * default is the platform's default character set.
+	 */
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+
+	public Charset getCharset() {
+		return charset;
+	}
+
 	public UserDefinedSQLType getSQLType(String name) {
-		for (Object o : fileSections) {
-			if (o instanceof UserDefinedSQLType) {
-				if (((UserDefinedSQLType) o).getName().equals(name)) {
-					return (UserDefinedSQLType) o;
+		synchronized (fileSections) {
+			for (Object o : fileSections) {
+				if (o instanceof UserDefinedSQLType) {
+					if (((UserDefinedSQLType) o).getName().equals(name)) {
+						return (UserDefinedSQLType) o;
+					}
 				}
 			}
 		}
@@ -1146,9 +1604,11 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
 
 	public List<UserDefinedSQLType> getSQLTypes() {
 		List<UserDefinedSQLType> list = new ArrayList<UserDefinedSQLType>();
-		for (Object o : fileSections) {
-			if (o instanceof UserDefinedSQLType) {
-				list.add((UserDefinedSQLType) o);
+		synchronized (fileSections) {
+			for (Object o : fileSections) {
+				if (o instanceof UserDefinedSQLType) {
+					list.add((UserDefinedSQLType) o);
+				}
 			}
 		}
 		return list;
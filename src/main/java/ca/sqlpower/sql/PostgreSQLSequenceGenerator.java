@@ -1,6 +1,7 @@
 package ca.sqlpower.sql;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -46,6 +47,27 @@ public class PostgreSQLSequenceGenerator extends SequenceGenerator {
         return nextval;
     }
 
+    /**
+     * Retrieves count values from the specified PostgreSQL sequence with a
+     * single query over generate_series.
+     */
+    @Override
+    public long[] nextLongs(String sequenceTable, int count) throws SQLException {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one value must be requested but " + count + " were.");
+        }
+        PreparedStatement stmt = null;
+        try {
+            stmt = con.prepareStatement("SELECT nextval(?) FROM generate_series(1, ?)");
+            stmt.setString(1, sequenceTable);
+            stmt.setInt(2, count);
+            return readValues(stmt.executeQuery(), count);
+        } finally {
+            if (stmt != null)
+                stmt.close();
+        }
+    }
+
     /**
      * Closes the connection that was passed to the constructor.  You
      * should probably close it yourself rather than calling this
@@ -1,6 +1,7 @@
 package ca.sqlpower.sql;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -17,8 +18,8 @@ import java.util.List;
 import org.apache.log4j.Logger;
 
 import ca.sqlpower.util.Cache;
+import ca.sqlpower.util.ConcurrentLeastRecentlyUsedCache;
 import ca.sqlpower.util.LabelValueBean;
-import ca.sqlpower.util.LeastRecentlyUsedCache;
 
 public class SQL {
 
@@ -28,7 +29,8 @@ public class SQL {
 	 * A cache of the last 20 column types we looked up in the
 	 * database.  See {@link #columnType(Connection,String,String,String)}.
 	 */
-	private static Cache colTypeCache = new LeastRecentlyUsedCache(20);
+	private static final Cache<String, Integer> colTypeCache =
+		new ConcurrentLeastRecentlyUsedCache<String, Integer>(20);
 
     /**
      * This class cannot be instantiated
@@ -41,12 +43,13 @@ public class SQL {
 	 * Returns the java.sql.Types type of the given owner+table+column
 	 * combination.  Caches the N most recently used answers, so
 	 * calling this method on repeated requests shouldn't be a
-	 * significant slowdown.
+	 * significant slowdown.  Threads looking up different columns
+	 * do not wait for each other.
 	 */
-	public static synchronized int columnType(Connection con, String owner, String table, String column)
+	public static int columnType(Connection con, String owner, String table, String column)
 		throws SQLException {
 		String cacheKey = con.getMetaData().getURL()+owner+"."+table+"."+column;
-		Integer colType = (Integer) colTypeCache.get(cacheKey);
+		Integer colType = colTypeCache.get(cacheKey);
 		if(colType == null) {
 			Statement stmt=null;
 			try {
@@ -121,6 +124,75 @@ public class SQL {
 		return outputString.toString();
 	}
 
+	/**
+	 * The largest number of values {@link #inListSize(int)} will make
+	 * room for in one IN list.  Longer lists have to be split into
+	 * chunks of this size and queried once per chunk.
+	 */
+	public static final int MAX_IN_LIST_SIZE = 128;
+
+	/**
+	 * Returns the number of placeholders to use in a parameterized IN
+	 * list for <code>count</code> values.  The size is rounded up to
+	 * the next power of two (but never past {@link #MAX_IN_LIST_SIZE})
+	 * so that a handful of statement texts covers every list length,
+	 * and the database can keep reusing their parsed plans instead of
+	 * hard-parsing a new statement for each distinct length.
+	 *
+	 * @throws IllegalArgumentException if count is less than 1 or more
+	 * than MAX_IN_LIST_SIZE.
+	 */
+	public static int inListSize(int count) {
+		if (count < 1 || count > MAX_IN_LIST_SIZE) {
+			throw new IllegalArgumentException(
+					"IN list size must be between 1 and " + MAX_IN_LIST_SIZE + " but was " + count);
+		}
+		int size = 1;
+		while (size < count) size <<= 1;
+		return size;
+	}
+
+	/**
+	 * Returns <code>size</code> JDBC parameter placeholders separated
+	 * by commas, for use between the parentheses of an IN list.
+	 */
+	public static String inListPlaceholders(int size) {
+		StringBuffer sb = new StringBuffer(size * 2);
+		for (int i = 0; i < size; i++) {
+			if (i > 0) sb.append(",");
+			sb.append("?");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Binds the given values to an IN list of <code>size</code>
+	 * placeholders that starts at parameter <code>index</code>.  When
+	 * there are fewer values than placeholders, the last value is
+	 * repeated to fill the list, which does not change the result of
+	 * the IN test.
+	 *
+	 * @param values The values to bind.  Must contain between 1 and
+	 * <code>size</code> items.
+	 * @return The index of the first parameter after the IN list.
+	 */
+	public static int bindInList(PreparedStatement ps, int index, List<?> values, int size)
+		throws SQLException {
+		if (values.isEmpty() || values.size() > size) {
+			throw new IllegalArgumentException(
+					"Can't bind " + values.size() + " values to an IN list of size " + size);
+		}
+		Object last = null;
+		for (Object value : values) {
+			ps.setObject(index++, value);
+			last = value;
+		}
+		for (int i = values.size(); i < size; i++) {
+			ps.setObject(index++, last);
+		}
+		return index;
+	}
+
 	/**
 	 * Creates a SQL "IN" expression. Each item in the collection
 	 * <code>values</code> is individually quoted.  If one or more of
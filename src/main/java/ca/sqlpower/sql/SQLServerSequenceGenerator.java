@@ -20,6 +20,31 @@ public class SQLServerSequenceGenerator extends SequenceGenerator {
 	
 	@Override
 	public long nextLong(String sequenceTable) throws SQLException {
+		return reserve(sequenceTable, 1);
+	}
+
+	/**
+	 * Reserves count consecutive values of the sequence table by advancing
+	 * its current value once.
+	 */
+	@Override
+	public long[] nextLongs(String sequenceTable, int count) throws SQLException {
+		if (count < 1) {
+			throw new IllegalArgumentException("At least one value must be requested but " + count + " were.");
+		}
+		long first = reserve(sequenceTable, count);
+		long[] values = new long[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = first + i;
+		}
+		return values;
+	}
+
+	/**
+	 * Advances the current value of the sequence table by count and returns
+	 * the first of the values reserved.
+	 */
+	private long reserve(String sequenceTable, int count) throws SQLException {
 		StringBuffer selectSql = new StringBuffer();
         selectSql.append("SELECT currval FROM ").append(SQL.escapeStatement(sequenceTable)).append(";");
         long nextval;
@@ -39,7 +64,7 @@ public class SQLServerSequenceGenerator extends SequenceGenerator {
             
             StringBuffer updateSql = new StringBuffer();
             updateSql.append("UPDATE ").append(SQL.escapeStatement(sequenceTable));
-            updateSql.append(" SET currval=" + nextval);
+            updateSql.append(" SET currval=" + (nextval + count - 1));
             logger.debug("Sequence Generator update SQL statement is: " + updateSql);
             int updateRS = stmt.executeUpdate(updateSql.toString());
             if (updateRS == 0) {
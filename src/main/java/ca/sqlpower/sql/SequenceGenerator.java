@@ -1,7 +1,9 @@
 package ca.sqlpower.sql;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.concurrent.Executor;
 
 public abstract class SequenceGenerator {
 
@@ -24,6 +26,58 @@ public abstract class SequenceGenerator {
     public abstract long nextLong(String sequenceTable) 
         throws SQLException;
 
+    /**
+     * Retrieves several unique values from the specified sequence table in
+     * as few trips to the database as the RDBMS allows. This version simply
+     * calls {@link #nextLong(String)} once for each value; subclasses
+     * override it to fetch the whole block at once.
+     *
+     * @param sequenceTable The name of the database resource to use
+     * for generating the unique numbers.
+     * @param count The number of values to retrieve.
+     * @return At least one and at most count values, none of which has
+     * been or will be returned again for this sequenceTable. The values
+     * are in the order the sequence handed them out but need not be
+     * consecutive.
+     * @throws SQLException if a database error occurs.
+     */
+    public long[] nextLongs(String sequenceTable, int count) throws SQLException {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one value must be requested but " + count + " were.");
+        }
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = nextLong(sequenceTable);
+        }
+        return values;
+    }
+
+    /**
+     * Reads the first column of up to count rows of the given result set
+     * into an array, then closes the result set.
+     *
+     * @throws SQLException if the result set has no rows.
+     */
+    protected static long[] readValues(ResultSet rs, int count) throws SQLException {
+        try {
+            long[] values = new long[count];
+            int read = 0;
+            while (read < count && rs.next()) {
+                values[read++] = rs.getLong(1);
+            }
+            if (read == 0) {
+                throw new SQLException("The sequence returned nothing!");
+            } else if (read < count) {
+                long[] shorter = new long[read];
+                System.arraycopy(values, 0, shorter, 0, read);
+                values = shorter;
+            }
+            return values;
+        } finally {
+            rs.close();
+        }
+    }
+
     /**
      * Examines the given (open) connection object and returns a
      * suitable subclass for generating unique sequences.  If your
@@ -49,6 +103,42 @@ public abstract class SequenceGenerator {
         }
     }
 
+    /**
+     * Returns a generator for the given connection that reserves values
+     * from each sequence in blocks of the given size and hands them out from
+     * memory. The next block is only fetched once the current one runs out;
+     * use {@link #getInstance(Connection, int, Executor)} to fetch it ahead
+     * of time. See {@link BlockSequenceGenerator}.
+     *
+     * @param con An open connection to the database you want to
+     * generate unique sequences in.
+     * @param blockSize The number of values to reserve at once.
+     * @throws IllegalArgumentException if the given connection is not
+     * from a supported database.
+     */
+    public static SequenceGenerator getInstance(Connection con, int blockSize) {
+        return getInstance(con, blockSize, null);
+    }
+
+    /**
+     * Returns a generator for the given connection that reserves values
+     * from each sequence in blocks of the given size and fetches the next
+     * block on the given executor while the current one is being handed out.
+     * The prefetch uses the connection from the executor's thread, so the
+     * connection should not be shared with other work.
+     *
+     * @param con An open connection to the database you want to
+     * generate unique sequences in.
+     * @param blockSize The number of values to reserve at once.
+     * @param prefetchExecutor Runs the prefetches. If null, blocks are
+     * only fetched when the current one runs out.
+     * @throws IllegalArgumentException if the given connection is not
+     * from a supported database.
+     */
+    public static SequenceGenerator getInstance(Connection con, int blockSize, Executor prefetchExecutor) {
+        return new BlockSequenceGenerator(getInstance(con), blockSize, prefetchExecutor);
+    }
+
 	/**
 	 * Tells a SequenceGenerator instance that you no longer need it.
 	 * This version does nothing, but the Oracle subclass (for
@@ -54,6 +54,24 @@ public final class CacheKey {
         this.schemaName = schemaName;
     }
 
+    /**
+     * Creates a new cache key for the database described by the given
+     * dialect. Keys made this way are equal to keys made from the metadata of
+     * the same connection, without making any metadata calls.
+     * 
+     * @param dialect
+     *            The dialect of the connection whose data is being cached.
+     * @param catalogName
+     *            The catalog of the data being cached, or null.
+     * @param schemaName
+     *            The schema of the data being cached, or null.
+     */
+    public CacheKey(DriverDialect dialect, String catalogName, String schemaName) {
+        this.dsAddress = dialect.getIdentity();
+        this.catalogName = catalogName;
+        this.schemaName = schemaName;
+    }
+
     /**
      * Generates a hash code based on the data source, catalog, and schema names.
      */
@@ -44,6 +44,8 @@ import java.util.concurrent.Executor;
 
 import org.apache.log4j.Logger;
 
+import ca.sqlpower.util.ConcurrentCacheStats;
+
 
 /**
  * The ConnectionDecorator wraps a JDBC Connection object and delegates all operations to it.
@@ -58,6 +60,18 @@ public abstract class ConnectionDecorator implements Connection {
 	
 	private int openStatementCount;
 	
+	/**
+	 * The hit, miss and eviction counts of the prepared statement cache.
+	 * These are kept when the cache is resized.
+	 */
+	private final ConcurrentCacheStats statementCacheStats = new ConcurrentCacheStats();
+	
+	/**
+	 * The idle prepared statements of this connection, or null if statement
+	 * caching is turned off (which is the default).
+	 */
+	private PreparedStatementCache statementCache;
+	
 	public Array createArrayOf(String arg0, Object[] arg1) throws SQLException {
 		throw new UnsupportedOperationException("Currently it is only possible to wrap JDBC 3.");
 	}
@@ -117,6 +131,11 @@ public abstract class ConnectionDecorator implements Connection {
 	
 	protected DatabaseMetaDataDecorator databaseMetaDataDecorator = null;
 	
+	/**
+	 * The dialect of this connection's database. See {@link #getDialect()}.
+	 */
+	private volatile DriverDialect dialect;
+	
 	/**
 	 * Creates a new ConnectionDecorator which delegates to the given connection.
 	 * Outside users can create a ConnectionDecorator using the public {@link #createFacade(Connection)} method.
@@ -133,43 +152,52 @@ public abstract class ConnectionDecorator implements Connection {
      * ConnectionDecorator using the public {@link #createFacade(Connection)}
      * method.
      * <p>
+     * This reads the connection's metadata to pick the wrapper. Connections
+     * made from a data source should use
+     * {@link #createFacade(Connection, DriverDialect)} with the data source's
+     * shared dialect instead.
+     * <p>
      * XXX it would be far better for us to specify which wrappers to use for
      * which connections at the DataSourceType level. Hard-coding the wrapper
-     * configuration here is slightly harmful.
+     * configuration in {@link DriverDialect} is slightly harmful.
      * 
      * @param delegate
      *            The object to which all JDBC operations will be delegated.
      */
 	public static Connection createFacade(Connection delegate) throws SQLException {
-	    String driverName = delegate.getMetaData().getDriverName();
+		return createFacade(delegate, DriverDialect.resolve(delegate));
+	}
+
+	/**
+	 * Creates a new ConnectionDecorator (or appropriate subclass) for the
+	 * given dialect which delegates to the given connection. Use this version
+	 * when the dialect is already known, for example from
+	 * {@link DriverDialect#forDataSource(ca.sqlpower.sql.JDBCDataSource, Connection)},
+	 * to avoid reading the connection's metadata again.
+	 */
+	public static Connection createFacade(Connection delegate, DriverDialect dialect) {
 		logger.debug("static createFacade, driver class is: " + delegate.getClass().getName());
-        logger.debug("static createFacade, driver name is: " + driverName);
-		if (driverName.equals("PostgreSQL Native Driver")) {
-			return new PostgresConnectionDecorator(delegate);
-        } else if (driverName.equals("Oracle JDBC driver")) {
-            return new OracleConnectionDecorator(delegate);
-        } else if (driverName.equals("SQLServer")
-        		|| driverName.equals("Microsoft SQL Server 2005 JDBC Driver")
-        		|| driverName.startsWith("Microsoft SQL Server JDBC Driver")) {
-        	return new SQLServerConnectionDecorator(delegate);      	
-        } else if (driverName.equals("MySQL-AB JDBC Driver")) {
-            return new MySQLConnectionDecorator(delegate);
-        } else if (driverName.equals("HSQL Database Engine Driver")) {
-            return new HSQLDBConnectionDecorator(delegate);
-        } else if (driverName.equals("SQLiteJDBC")) {
-            return new SQLiteConnectionDecorator(delegate);
-        } else if (driverName.equals("RBW_JDBC_Driver")) {
-            return new RedBrickConnectionDecorator(delegate);
-        } else if (driverName.equals("jConnect (TM) for JDBC (TM)")) {
-            return new SybaseConnectionDecorator(delegate);
-		} else if (driverName.equals("SQL Power Mock JDBC Database Driver")) {
-			// we don't want to decorate these at all
-			return delegate;
-		} else {
-			return new GenericConnectionDecorator(delegate);
+		logger.debug("static createFacade, dialect is: " + dialect);
+		Connection facade = dialect.decorate(delegate);
+		if (facade instanceof ConnectionDecorator) {
+			((ConnectionDecorator) facade).dialect = dialect;
 		}
+		return facade;
 	}
     
+	/**
+	 * Returns the dialect of the database this connection is connected to. The
+	 * dialect is normally given when the decorator is created; decorators that
+	 * were created directly read it from the connection's metadata the first
+	 * time it is asked for.
+	 */
+	public DriverDialect getDialect() throws SQLException {
+		if (dialect == null) {
+			dialect = DriverDialect.resolve(connection);
+		}
+		return dialect;
+	}
+	
 	/**
 	 * Returns the number of statements that have been opened but not closed on this connection.
 	 * 
@@ -195,6 +223,91 @@ public abstract class ConnectionDecorator implements Connection {
 		logger.debug("Existing Statement closed: Count is "+openStatementCount);
 	}
 	
+	/**
+	 * Sets the number of idle prepared statements this connection keeps open
+	 * for reuse. While caching is on, preparing SQL that was prepared and
+	 * closed before on this connection with the same result set options
+	 * returns the statement the driver already parsed, and closing a
+	 * statement returns it to the cache instead of closing it in the driver.
+	 * Only the prepareStatement variants that take result set options (or
+	 * none) are cached.
+	 * <p>
+	 * Some drivers do not reset a statement properly between uses, so caching
+	 * is turned on per database type through
+	 * {@link ca.sqlpower.sql.JDBCDataSourceType#getStatementCacheSize()}.
+	 * 
+	 * @param size
+	 *            The most idle statements to keep, or 0 to turn caching off
+	 *            and close the statements already cached.
+	 */
+	public void setStatementCacheSize(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Statement cache size can't be negative: " + size);
+		}
+		PreparedStatementCache oldCache = statementCache;
+		if (oldCache != null && oldCache.getMaxSize() == size) return;
+		statementCache = size == 0 ? null : new PreparedStatementCache(size, statementCacheStats);
+		if (oldCache != null) {
+			oldCache.close();
+		}
+	}
+	
+	/**
+	 * Returns the number of idle prepared statements this connection keeps
+	 * open, or 0 if statement caching is off.
+	 */
+	public int getStatementCacheSize() {
+		PreparedStatementCache cache = statementCache;
+		return cache == null ? 0 : cache.getMaxSize();
+	}
+	
+	/**
+	 * Returns the hit, miss and eviction counts of this connection's prepared
+	 * statement cache.
+	 */
+	public ConcurrentCacheStats getStatementCacheStats() {
+		return statementCacheStats;
+	}
+	
+	/**
+	 * Prepares a statement for the given key, reusing an idle one from the
+	 * statement cache if caching is on.
+	 */
+	private PreparedStatement prepareCachedStatement(PreparedStatementCache.Key key) throws SQLException {
+		PreparedStatementCache cache = statementCache;
+		PreparedStatement ps = null;
+		if (cache != null) {
+			ps = cache.checkOut(key);
+		}
+		if (ps == null) {
+			if (key.getResultSetHoldability() != -1) {
+				ps = connection.prepareStatement(key.getSql(), key.getResultSetType(),
+						key.getResultSetConcurrency(), key.getResultSetHoldability());
+			} else if (key.getResultSetType() != -1) {
+				ps = connection.prepareStatement(key.getSql(), key.getResultSetType(),
+						key.getResultSetConcurrency());
+			} else {
+				ps = connection.prepareStatement(key.getSql());
+			}
+		}
+		PreparedStatement decorator = makePreparedStatementDecorator(ps);
+		if (cache != null && decorator instanceof PreparedStatementDecorator) {
+			((PreparedStatementDecorator) decorator).setCacheKey(key);
+		}
+		return decorator;
+	}
+	
+	/**
+	 * Called by a {@link PreparedStatementDecorator} when it is closed.
+	 * 
+	 * @return true if the driver statement was returned to the statement
+	 *         cache; false if the caller has to close it.
+	 */
+	boolean releaseStatement(PreparedStatementCache.Key key, PreparedStatement ps) {
+		PreparedStatementCache cache = statementCache;
+		return cache != null && cache.checkIn(key, ps);
+	}
+	
 	/**
 	 * Subclasses must implement this method by creating and returning a new
 	 * Statement decorator appropriate for the database platform.
@@ -219,6 +332,11 @@ public abstract class ConnectionDecorator implements Connection {
 	 * @throws java.sql.SQLException
 	 */
 	public void close() throws SQLException {
+		PreparedStatementCache cache = statementCache;
+		statementCache = null;
+		if (cache != null) {
+			cache.close();
+		}
 		connection.close();
 	}
 
@@ -394,7 +512,7 @@ public abstract class ConnectionDecorator implements Connection {
 	 * @throws java.sql.SQLException
 	 */
 	public PreparedStatement prepareStatement(String sql) throws SQLException {
-		return makePreparedStatementDecorator(connection.prepareStatement(sql));
+		return prepareCachedStatement(new PreparedStatementCache.Key(sql, -1, -1, -1));
 	}
 	/**
 	 * @param sql
@@ -415,8 +533,8 @@ public abstract class ConnectionDecorator implements Connection {
 	 */
 	public PreparedStatement prepareStatement(String sql, int resultSetType,
 			int resultSetConcurrency) throws SQLException {
-		return makePreparedStatementDecorator(connection.prepareStatement(sql, resultSetType,
-				resultSetConcurrency));
+		return prepareCachedStatement(new PreparedStatementCache.Key(sql, resultSetType,
+				resultSetConcurrency, -1));
 	}
 	/**
 	 * @param sql
@@ -429,7 +547,7 @@ public abstract class ConnectionDecorator implements Connection {
 	public PreparedStatement prepareStatement(String sql, int resultSetType,
 			int resultSetConcurrency, int resultSetHoldability)
 	throws SQLException {
-		return makePreparedStatementDecorator(connection.prepareStatement(sql, resultSetType,
+		return prepareCachedStatement(new PreparedStatementCache.Key(sql, resultSetType,
 				resultSetConcurrency, resultSetHoldability));
 	}
 	/**
@@ -0,0 +1,402 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql.jdbcwrapper;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.concurrent.Immutable;
+
+import org.apache.commons.dbcp.DelegatingConnection;
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sql.JDBCDataSource;
+
+/**
+ * Describes the driver and database behind a connection: which decorator
+ * family wraps it, how it identifies itself and which optional features it
+ * supports. The description is read from the connection's metadata once per
+ * data source and shared by every connection made from that data source, so
+ * code that needs to know what kind of database it is talking to can ask the
+ * {@link ConnectionDecorator} instead of making metadata calls, which are
+ * round trips to the server on some drivers.
+ */
+@Immutable
+public final class DriverDialect {
+
+    private static final Logger logger = Logger.getLogger(DriverDialect.class);
+
+    /**
+     * The kinds of driver we have decorators for.
+     */
+    public enum Family {
+        POSTGRES, ORACLE, SQL_SERVER, MYSQL, HSQLDB, SQLITE, REDBRICK, SYBASE,
+
+        /**
+         * The SQL Power mock driver, whose connections are not decorated.
+         */
+        MOCK,
+
+        /**
+         * Any driver we don't have a specific decorator for.
+         */
+        GENERIC
+    }
+
+    /**
+     * The dialects resolved so far, keyed by {@link #dataSourceKey(JDBCDataSource)}.
+     */
+    private static final ConcurrentMap<String, DriverDialect> dialects =
+        new ConcurrentHashMap<String, DriverDialect>();
+
+    private final Family family;
+    private final String driverName;
+    private final String databaseProductName;
+    private final String databaseProductVersion;
+    private final String url;
+    private final String userName;
+    private final String identifierQuoteString;
+    private final boolean supportsTransactions;
+    private final boolean supportsBatchUpdates;
+    private final boolean supportsSchemas;
+    private final boolean supportsCatalogs;
+
+    private DriverDialect(DatabaseMetaData dbmd) throws SQLException {
+        driverName = dbmd.getDriverName();
+        family = familyOf(driverName);
+        databaseProductName = readDatabaseProductName(dbmd);
+        databaseProductVersion = readDatabaseProductVersion(dbmd);
+        url = readURL(dbmd);
+        userName = readUserName(dbmd);
+        identifierQuoteString = readIdentifierQuoteString(dbmd);
+        supportsTransactions = readSupportsTransactions(dbmd);
+        supportsBatchUpdates = readSupportsBatchUpdates(dbmd);
+        supportsSchemas = readSupportsSchemas(dbmd);
+        supportsCatalogs = readSupportsCatalogs(dbmd);
+    }
+
+    /**
+     * Reads a dialect from the given connection's metadata. This always goes
+     * to the metadata; use {@link #forDataSource(JDBCDataSource, Connection)}
+     * or {@link #forConnection(Connection)} to share dialects.
+     */
+    public static DriverDialect resolve(Connection con) throws SQLException {
+        return new DriverDialect(con.getMetaData());
+    }
+
+    /**
+     * Returns the dialect of the given data source, reading it from the given
+     * connection's metadata if this is the first connection made for a data
+     * source with the same driver, URL and user.
+     * 
+     * @param ds
+     *            The data source the connection was made from.
+     * @param con
+     *            A new, undecorated connection to the data source.
+     */
+    public static DriverDialect forDataSource(JDBCDataSource ds, Connection con) throws SQLException {
+        String key = dataSourceKey(ds);
+        DriverDialect dialect = dialects.get(key);
+        if (dialect == null) {
+            dialect = resolve(con);
+            DriverDialect existing = dialects.putIfAbsent(key, dialect);
+            if (existing != null) {
+                dialect = existing;
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Resolved dialect for " + ds.getName() + ": " + dialect);
+            }
+        }
+        return dialect;
+    }
+
+    /**
+     * Returns the dialect of the given data source if a connection has been
+     * made to it already, or null if not.
+     */
+    public static DriverDialect getCached(JDBCDataSource ds) {
+        return dialects.get(dataSourceKey(ds));
+    }
+
+    /**
+     * Returns the dialect already known for the given connection without
+     * making any metadata calls, or null if the connection was not made
+     * through a {@link ConnectionDecorator} (possibly inside a connection
+     * pool). Callers should fall back on the connection's metadata when this
+     * returns null.
+     */
+    public static DriverDialect forConnection(Connection con) throws SQLException {
+        if (con instanceof DelegatingConnection) {
+            con = ((DelegatingConnection) con).getInnermostDelegate();
+        }
+        if (con instanceof ConnectionDecorator) {
+            return ((ConnectionDecorator) con).getDialect();
+        }
+        return null;
+    }
+
+    /**
+     * Forgets every dialect resolved so far. Data sources that now point at a
+     * different kind of database will get a new dialect on their next
+     * connection.
+     */
+    public static void clearCache() {
+        dialects.clear();
+    }
+
+    private static String dataSourceKey(JDBCDataSource ds) {
+        return ds.getDriverClass() + "\n" + ds.getUrl() + "\n" + ds.getUser();
+    }
+
+    /**
+     * Picks the decorator family for the given JDBC driver name.
+     */
+    static Family familyOf(String driverName) {
+        if (driverName == null) {
+            return Family.GENERIC;
+        } else if (driverName.equals("PostgreSQL Native Driver")) {
+            return Family.POSTGRES;
+        } else if (driverName.equals("Oracle JDBC driver")) {
+            return Family.ORACLE;
+        } else if (driverName.equals("SQLServer")
+                || driverName.equals("Microsoft SQL Server 2005 JDBC Driver")
+                || driverName.startsWith("Microsoft SQL Server JDBC Driver")) {
+            return Family.SQL_SERVER;
+        } else if (driverName.equals("MySQL-AB JDBC Driver")) {
+            return Family.MYSQL;
+        } else if (driverName.equals("HSQL Database Engine Driver")) {
+            return Family.HSQLDB;
+        } else if (driverName.equals("SQLiteJDBC")) {
+            return Family.SQLITE;
+        } else if (driverName.equals("RBW_JDBC_Driver")) {
+            return Family.REDBRICK;
+        } else if (driverName.equals("jConnect (TM) for JDBC (TM)")) {
+            return Family.SYBASE;
+        } else if (driverName.equals("SQL Power Mock JDBC Database Driver")) {
+            return Family.MOCK;
+        } else {
+            return Family.GENERIC;
+        }
+    }
+
+    /**
+     * Wraps the given connection in the decorator for this dialect's family.
+     * Mock connections are returned as they are.
+     */
+    Connection decorate(Connection delegate) {
+        switch (family) {
+        case POSTGRES:
+            return new PostgresConnectionDecorator(delegate);
+        case ORACLE:
+            return new OracleConnectionDecorator(delegate);
+        case SQL_SERVER:
+            return new SQLServerConnectionDecorator(delegate);
+        case MYSQL:
+            return new MySQLConnectionDecorator(delegate);
+        case HSQLDB:
+            return new HSQLDBConnectionDecorator(delegate);
+        case SQLITE:
+            return new SQLiteConnectionDecorator(delegate);
+        case REDBRICK:
+            return new RedBrickConnectionDecorator(delegate);
+        case SYBASE:
+            return new SybaseConnectionDecorator(delegate);
+        case MOCK:
+            // we don't want to decorate these at all
+            return delegate;
+        default:
+            return new GenericConnectionDecorator(delegate);
+        }
+    }
+
+    // The metadata properties below are optional. Drivers that can't provide
+    // a string property give null, and drivers that can't say whether they
+    // support a feature are taken not to support it.
+
+    private static String readDatabaseProductName(DatabaseMetaData dbmd) {
+        try {
+            return dbmd.getDatabaseProductName();
+        } catch (SQLException ex) {
+            logger.debug("Driver could not provide the database product name", ex);
+        } catch (UnsupportedOperationException ex) {
+            logger.debug("Driver does not support the database product name", ex);
+        }
+        return null;
+    }
+
+    private static String readDatabaseProductVersion(DatabaseMetaData dbmd) {
+        try {
+            return dbmd.getDatabaseProductVersion();
+        } catch (SQLException ex) {
+            logger.debug("Driver could not provide the database product version", ex);
+        } catch (UnsupportedOperationException ex) {
+            logger.debug("Driver does not support the database product version", ex);
+        }
+        return null;
+    }
+
+    private static String readURL(DatabaseMetaData dbmd) {
+        try {
+            return dbmd.getURL();
+        } catch (SQLException ex) {
+            logger.debug("Driver could not provide the URL", ex);
+        } catch (UnsupportedOperationException ex) {
+            logger.debug("Driver does not support the URL", ex);
+        }
+        return null;
+    }
+
+    private static String readUserName(DatabaseMetaData dbmd) {
+        try {
+            return dbmd.getUserName();
+        } catch (SQLException ex) {
+            logger.debug("Driver could not provide the user name", ex);
+        } catch (UnsupportedOperationException ex) {
+            logger.debug("Driver does not support the user name", ex);
+        }
+        return null;
+    }
+
+    private static String readIdentifierQuoteString(DatabaseMetaData dbmd) {
+        try {
+            return dbmd.getIdentifierQuoteString();
+        } catch (SQLException ex) {
+            logger.debug("Driver could not provide the identifier quote string", ex);
+        } catch (UnsupportedOperationException ex) {
+            logger.debug("Driver does not support the identifier quote string", ex);
+        }
+        return null;
+    }
+
+    private static boolean readSupportsTransactions(DatabaseMetaData dbmd) {
+        try {
+            return dbmd.supportsTransactions();
+        } catch (SQLException ex) {
+            logger.debug("Driver could not say if it supports transactions", ex);
+        } catch (UnsupportedOperationException ex) {
+            logger.debug("Driver does not say if it supports transactions", ex);
+        }
+        return false;
+    }
+
+    private static boolean readSupportsBatchUpdates(DatabaseMetaData dbmd) {
+        try {
+            return dbmd.supportsBatchUpdates();
+        } catch (SQLException ex) {
+            logger.debug("Driver could not say if it supports batch updates", ex);
+        } catch (UnsupportedOperationException ex) {
+            logger.debug("Driver does not say if it supports batch updates", ex);
+        }
+        return false;
+    }
+
+    private static boolean readSupportsSchemas(DatabaseMetaData dbmd) {
+        try {
+            return dbmd.supportsSchemasInTableDefinitions();
+        } catch (SQLException ex) {
+            logger.debug("Driver could not say if it supports schemas", ex);
+        } catch (UnsupportedOperationException ex) {
+            logger.debug("Driver does not say if it supports schemas", ex);
+        }
+        return false;
+    }
+
+    private static boolean readSupportsCatalogs(DatabaseMetaData dbmd) {
+        try {
+            return dbmd.supportsCatalogsInTableDefinitions();
+        } catch (SQLException ex) {
+            logger.debug("Driver could not say if it supports catalogs", ex);
+        } catch (UnsupportedOperationException ex) {
+            logger.debug("Driver does not say if it supports catalogs", ex);
+        }
+        return false;
+    }
+
+    public Family getFamily() {
+        return family;
+    }
+
+    public String getDriverName() {
+        return driverName;
+    }
+
+    public String getDatabaseProductName() {
+        return databaseProductName;
+    }
+
+    public String getDatabaseProductVersion() {
+        return databaseProductVersion;
+    }
+
+    /**
+     * The URL the driver reports for the connection.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * The database user the driver reports for the connection.
+     */
+    public String getUserName() {
+        return userName;
+    }
+
+    /**
+     * Returns a string that identifies the database and user of the
+     * connection, for use in cache keys.
+     */
+    public String getIdentity() {
+        return url + ";" + userName;
+    }
+
+    /**
+     * The string used to quote identifiers, or " " if the database does not
+     * support quoting, as {@link DatabaseMetaData#getIdentifierQuoteString()}.
+     */
+    public String getIdentifierQuoteString() {
+        return identifierQuoteString;
+    }
+
+    public boolean supportsTransactions() {
+        return supportsTransactions;
+    }
+
+    public boolean supportsBatchUpdates() {
+        return supportsBatchUpdates;
+    }
+
+    public boolean supportsSchemas() {
+        return supportsSchemas;
+    }
+
+    public boolean supportsCatalogs() {
+        return supportsCatalogs;
+    }
+
+    @Override
+    public String toString() {
+        return family + " (" + driverName + ", " + databaseProductName + " " +
+            databaseProductVersion + ") " + getIdentity();
+    }
+}
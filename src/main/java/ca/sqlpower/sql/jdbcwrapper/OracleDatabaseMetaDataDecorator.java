@@ -79,13 +79,26 @@ public class OracleDatabaseMetaDataDecorator extends DatabaseMetaDataDecorator {
     /**
 	 * A cache of the imported and exported key metadata. When querying for
 	 * either, we cache the entire key list for a schema and then query the cache
-	 * in subsequent queries.
+	 * in subsequent queries. Each cached key list is indexed by both its
+	 * {@link #PKTABLE_NAME_COLUMN} and {@link #FKTABLE_NAME_COLUMN}.
      * <p>
      * This field should be accessed via {@link #getCachedResult(MetaDataCache, CacheKey)}
      * and {@link #putCachedResult(MetaDataCache, CacheKey, Object)}.
 	 */
-    private static final MetaDataCache<CacheKey, CachedRowSet> importedAndExportedKeysCache =
-        new MetaDataCache<CacheKey, CachedRowSet>();
+    private static final MetaDataCache<CacheKey, IndexedCachedRowSet> importedAndExportedKeysCache =
+        new MetaDataCache<CacheKey, IndexedCachedRowSet>();
+
+    /**
+     * The column numbers of the table names in the imported and exported keys
+     * result sets.
+     */
+    private static final int PKTABLE_NAME_COLUMN = 3;
+    private static final int FKTABLE_NAME_COLUMN = 7;
+    
+    /**
+     * The column number of the table name in the columns result set.
+     */
+    private static final int COLUMNS_TABLE_NAME_COLUMN = 3;
     
     /**
 	 * A cache of column metadata. When queried the first time, we cache the
@@ -315,13 +328,13 @@ public class OracleDatabaseMetaDataDecorator extends DatabaseMetaDataDecorator {
 	@Override
 	public ResultSet getImportedKeys(String catalog, final String schema, final String table)
 			throws SQLException {
-	    CacheKey cacheKey = new CacheKey(getConnection().getMetaData(), catalog, schema);
+	    CacheKey cacheKey = new CacheKey(getConnection().getDialect(), catalog, schema);
 		Statement stmt = null;
 		ResultSet rs = null;
 		try {
 			stmt = getConnection().createStatement();
 	        StringBuilder sql = new StringBuilder();
-	        CachedRowSet cachedResult = getCachedResult(importedAndExportedKeysCache, cacheKey);
+	        IndexedCachedRowSet cachedResult = getCachedResult(importedAndExportedKeysCache, cacheKey);
 
 	        if (cachedResult == null) {
 		        /*
@@ -369,38 +382,29 @@ public class OracleDatabaseMetaDataDecorator extends DatabaseMetaDataDecorator {
 		        logger.debug("getImportedKeys() sql statement was: " + sql.toString());
 		        rs = stmt.executeQuery(sql.toString());
 		        
-		        CachedRowSet result = new CachedRowSet();
-		        result.populate(rs);
-		        
 		        if (cacheType.get() == null || cacheType.get().equals(CacheType.NO_CACHE)) {
+		            CachedRowSet result = new CachedRowSet();
+		            result.populate(rs);
 		        	return result;
 		        } else {
+		            IndexedCachedRowSet result = new IndexedCachedRowSet(
+		                    rs, PKTABLE_NAME_COLUMN, FKTABLE_NAME_COLUMN);
 		        	putCachedResult(importedAndExportedKeysCache, cacheKey, result);
 		        	cachedResult = result;
 		        }
 	        }
 	        
-			CachedRowSet crs = new CachedRowSet();
-			RowFilter filter = new RowFilter() {
-				public boolean acceptsRow(Object[] row) {
-					boolean result;
-					// expecting row[5] to be FK_TABLE_SCHEM
-					// expecting row[6] to be FK_TABLE_NAME
-					if (schema != null){
-						result = (schema.equals(row[5]) && table.equals(row[6]));
-					} else {
-						result = table.equals(row[6]);
-					}
-					return result;
-				}
-			};
-			
-			synchronized (cachedResult) {
-			    crs.populate(cachedResult, filter);
-			    cachedResult.beforeFirst();
-            }
+			RowFilter filter = null;
+			if (schema != null) {
+			    filter = new RowFilter() {
+			        public boolean acceptsRow(Object[] row) {
+			            // expecting row[5] to be FK_TABLE_SCHEM
+			            return schema.equals(row[5]);
+			        }
+			    };
+			}
 			
-			return crs;
+			return cachedResult.extract(FKTABLE_NAME_COLUMN, table, filter);
 		} finally {
 			if (rs != null) {
                 try {
@@ -422,13 +426,13 @@ public class OracleDatabaseMetaDataDecorator extends DatabaseMetaDataDecorator {
 	@Override
 	public ResultSet getExportedKeys(String catalog, final String schema, final String table)
 			throws SQLException {
-        CacheKey cacheKey = new CacheKey(getConnection().getMetaData(), catalog, schema);
+        CacheKey cacheKey = new CacheKey(getConnection().getDialect(), catalog, schema);
 		Statement stmt = null;
 		ResultSet rs = null;
 		try {
 			stmt = getConnection().createStatement();
 	        StringBuilder sql = new StringBuilder();
-	        CachedRowSet cachedResult = getCachedResult(importedAndExportedKeysCache, cacheKey);
+	        IndexedCachedRowSet cachedResult = getCachedResult(importedAndExportedKeysCache, cacheKey);
 
 	        if (cachedResult == null) {
 		        /*
@@ -476,38 +480,29 @@ public class OracleDatabaseMetaDataDecorator extends DatabaseMetaDataDecorator {
 		        logger.debug("getExportedKeys() sql statement was: " + sql.toString());
 		        rs = stmt.executeQuery(sql.toString());
 		        
-		        CachedRowSet result = new CachedRowSet();
-		        result.populate(rs);
-		        
 		        if (cacheType.get() == null || cacheType.get().equals(CacheType.NO_CACHE)) {
+		            CachedRowSet result = new CachedRowSet();
+		            result.populate(rs);
 		        	return result;
 		        } else {
+		            IndexedCachedRowSet result = new IndexedCachedRowSet(
+		                    rs, PKTABLE_NAME_COLUMN, FKTABLE_NAME_COLUMN);
 		        	putCachedResult(importedAndExportedKeysCache, cacheKey, result);
 		        	cachedResult = result;
 		        }
 	        }
 	        
-			CachedRowSet crs = new CachedRowSet();
-			RowFilter filter = new RowFilter() {
-				public boolean acceptsRow(Object[] row) {
-					boolean result;
-					// expecting row[1] to be PK_TABLE_SCHEM
-					// expecting row[2] to be PK_TABLE_NAME
-					if (schema != null){
-						result = (schema.equals(row[1]) && table.equals(row[2]));
-					} else {
-						result = table.equals(row[2]);
-					}
-					return result;
-				}
-			};
-
-            synchronized (cachedResult) {
-                crs.populate(cachedResult, filter);
-                cachedResult.beforeFirst();
-            }
+			RowFilter filter = null;
+			if (schema != null) {
+			    filter = new RowFilter() {
+			        public boolean acceptsRow(Object[] row) {
+			            // expecting row[1] to be PK_TABLE_SCHEM
+			            return schema.equals(row[1]);
+			        }
+			    };
+			}
 			
-			return crs;
+			return cachedResult.extract(PKTABLE_NAME_COLUMN, table, filter);
 		} finally {
 			if (rs != null) {
                 try {
@@ -538,7 +533,7 @@ public class OracleDatabaseMetaDataDecorator extends DatabaseMetaDataDecorator {
 		
 	    logger.debug("getColumns("+catalog+", "+schemaPattern+", "+tableNamePattern+", "+columnNamePattern+") cache mode=" + cacheType.get());
 	    
-	    final CacheKey cacheKey = new CacheKey(getConnection().getMetaData(), catalog, schemaPattern);
+	    final CacheKey cacheKey = new CacheKey(getConnection().getDialect(), catalog, schemaPattern);
 	    
 		Statement stmt = null;
 		ResultSet rs = null;
@@ -611,7 +606,7 @@ public class OracleDatabaseMetaDataDecorator extends DatabaseMetaDataDecorator {
 		            result.populate(rs);
 		        	return result;
 		        } else {
-		            IndexedCachedRowSet result = new IndexedCachedRowSet(rs, 3);
+		            IndexedCachedRowSet result = new IndexedCachedRowSet(rs, COLUMNS_TABLE_NAME_COLUMN);
 		        	putCachedResult(columnsCache, cacheKey, result);
 		        	cachedResult = result;
 		        }
@@ -649,18 +644,23 @@ public class OracleDatabaseMetaDataDecorator extends DatabaseMetaDataDecorator {
 			
 			logger.debug("Filtering cache...");
 			CachedRowSet filtered;
-			synchronized (cachedResult) {
-			    if (tableNamePattern != null && !tableNamePattern.contains("%")) {
-			        // exact match requested--we can use the index for table name
-			        // (filter still applies to column name)
-			        filtered = cachedResult.extractSingleTable(tableNamePattern);
-			    } else {
-			        // have to search every row for wildcard match on table name
-			        filtered = new CachedRowSet();
-			        filtered.populate(cachedResult, filter);
+			if (tableNamePattern != null && !tableNamePattern.contains("%")) {
+			    // exact match requested--we can use the index for table name
+			    // (filter still applies to column name)
+			    RowFilter columnFilter = null;
+			    if (cp != null) {
+			        columnFilter = new RowFilter() {
+			            public boolean acceptsRow(Object[] row) {
+			                return cp.matcher(row[3].toString()).matches();
+			            }
+			        };
 			    }
-			    cachedResult.beforeFirst();
-            }
+			    filtered = cachedResult.extract(COLUMNS_TABLE_NAME_COLUMN, tableNamePattern, columnFilter);
+			} else {
+			    // have to search every row for wildcard match on table name
+			    filtered = new CachedRowSet();
+			    filtered.populate(cachedResult.createCursor(), filter);
+			}
 			
 			return filtered;
 		} finally {
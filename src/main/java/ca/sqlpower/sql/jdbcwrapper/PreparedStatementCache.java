@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql.jdbcwrapper;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.util.ConcurrentCacheStats;
+
+/**
+ * Holds the idle driver statements of one {@link ConnectionDecorator} so that
+ * preparing the same SQL again reuses the statement the driver (and the
+ * database) already parsed. A statement is checked out of the cache while it
+ * is in use and checked back in when its decorator is closed, so a cached
+ * statement is never shared between two callers. When the cache is full the
+ * statement that has been idle the longest is closed.
+ */
+class PreparedStatementCache {
+
+    private static final Logger logger = Logger.getLogger(PreparedStatementCache.class);
+
+    /**
+     * Identifies statements that can stand in for each other: the same SQL
+     * text prepared with the same result set options. Options that were not
+     * given to prepareStatement are stored as -1 so a statement prepared with
+     * the driver defaults is not mistaken for one with explicit options.
+     */
+    static final class Key {
+        private final String sql;
+        private final int resultSetType;
+        private final int resultSetConcurrency;
+        private final int resultSetHoldability;
+
+        Key(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) {
+            if (sql == null) throw new NullPointerException("Null SQL not allowed");
+            this.sql = sql;
+            this.resultSetType = resultSetType;
+            this.resultSetConcurrency = resultSetConcurrency;
+            this.resultSetHoldability = resultSetHoldability;
+        }
+
+        String getSql() {
+            return sql;
+        }
+
+        int getResultSetType() {
+            return resultSetType;
+        }
+
+        int getResultSetConcurrency() {
+            return resultSetConcurrency;
+        }
+
+        int getResultSetHoldability() {
+            return resultSetHoldability;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return resultSetType == other.resultSetType
+                && resultSetConcurrency == other.resultSetConcurrency
+                && resultSetHoldability == other.resultSetHoldability
+                && sql.equals(other.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 17;
+            result = 31 * result + sql.hashCode();
+            result = 31 * result + resultSetType;
+            result = 31 * result + resultSetConcurrency;
+            result = 31 * result + resultSetHoldability;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return sql;
+        }
+    }
+
+    private final int maxSize;
+
+    private final ConcurrentCacheStats stats;
+
+    /**
+     * The idle statements, least recently returned first.
+     */
+    private final LinkedHashMap<Key, PreparedStatement> statements;
+
+    private boolean closed;
+
+    /**
+     * @param maxSize
+     *            The most idle statements to keep open.
+     * @param stats
+     *            The statistics to record hits, misses and evictions in.
+     */
+    PreparedStatementCache(final int maxSize, final ConcurrentCacheStats stats) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive but was " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.stats = stats;
+        statements = new LinkedHashMap<Key, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+                if (size() <= maxSize) return false;
+                stats.itemEvicted();
+                closeQuietly(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Removes and returns an idle statement for the given key, or returns null
+     * if there is none and a new statement has to be prepared.
+     */
+    synchronized PreparedStatement checkOut(Key key) {
+        PreparedStatement ps = statements.remove(key);
+        if (ps == null) {
+            stats.cacheMiss();
+        } else {
+            stats.cacheHit();
+        }
+        return ps;
+    }
+
+    /**
+     * Puts a statement that its user has closed back into the cache. The
+     * statement's parameters and warnings are cleared first. The caller must
+     * already have closed the statement's result sets and cleared its batch,
+     * and must not check in a statement whose settings it changed, as those
+     * cannot be reset to the values the statement was prepared with.
+     *
+     * @return true if the statement was cached; false if the caller has to
+     *         close it because the cache is closed or the statement could not
+     *         be reset.
+     */
+    synchronized boolean checkIn(Key key, PreparedStatement ps) {
+        if (closed) return false;
+        try {
+            ps.clearParameters();
+            ps.clearWarnings();
+        } catch (SQLException ex) {
+            logger.debug("Not caching statement that could not be reset: " + key, ex);
+            return false;
+        }
+        PreparedStatement old = statements.put(key, ps);
+        stats.itemsInserted(1);
+        if (old != null && old != ps) {
+            // two copies of the same statement were in use at once, keep
+            // only the one returned last
+            closeQuietly(key, old);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the most idle statements this cache keeps open.
+     */
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of idle statements in the cache.
+     */
+    synchronized int size() {
+        return statements.size();
+    }
+
+    /**
+     * Closes every idle statement. Statements that are checked out are closed
+     * for real when their users close them.
+     */
+    void close() {
+        Map<Key, PreparedStatement> idle;
+        synchronized (this) {
+            closed = true;
+            idle = new LinkedHashMap<Key, PreparedStatement>(statements);
+            statements.clear();
+        }
+        for (Map.Entry<Key, PreparedStatement> entry : idle.entrySet()) {
+            closeQuietly(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static void closeQuietly(Key key, PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException ex) {
+            logger.warn("Failed to close cached statement: " + key, ex);
+        }
+    }
+}
@@ -21,7 +21,9 @@ import java.sql.SQLWarning;
 import java.sql.SQLXML;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 
 /**
  * A class that passes through all PreparedStatement method calls to
@@ -110,7 +112,7 @@ public abstract class PreparedStatementDecorator implements PreparedStatement{
 	}
 
 	public boolean isClosed() throws SQLException {
-		throw new UnsupportedOperationException("Currently it is only possible to wrap JDBC 3.");
+		return closed;
 	}
 
 	public boolean isPoolable() throws SQLException {
@@ -139,6 +141,44 @@ public abstract class PreparedStatementDecorator implements PreparedStatement{
 	 */
 	private final PreparedStatement preparedStatement;
 	
+	/**
+	 * The key to return the prepared statement to the parent connection's
+	 * statement cache with when this decorator is closed, or null if the
+	 * statement is not cached.
+	 */
+	private PreparedStatementCache.Key cacheKey;
+	
+	/**
+	 * Every result set this statement has returned while it is cached. They
+	 * are closed when the statement goes back to the cache, as they would
+	 * have been if the statement were really closed.
+	 */
+	private final List<ResultSet> openResultSets = new ArrayList<ResultSet>();
+	
+	/**
+	 * True if a batch has been added to since it was last executed or
+	 * cleared. The batch is cleared before the statement goes back to the
+	 * cache so the next user does not run it.
+	 */
+	private boolean batchPending;
+	
+	/**
+	 * True if {@link #execute()} or one of its variants produced a result set
+	 * the caller may not have asked for. It is closed with the others when
+	 * the statement goes back to the cache.
+	 */
+	private boolean executeResultPending;
+	
+	/**
+	 * True if a setting that outlives a single execution, such as the maximum
+	 * row count or the query timeout, has been changed. Such a statement is
+	 * closed instead of being cached, so the next user gets the settings it
+	 * was prepared with.
+	 */
+	private boolean settingsChanged;
+	
+	private boolean closed;
+	
 	/**
 	 * Creates a new prepared statement decorator for the given result set.
 	 */
@@ -150,280 +190,424 @@ public abstract class PreparedStatementDecorator implements PreparedStatement{
 
 	protected abstract ResultSet makeResultSetDecorator(ResultSet rs);
 
+	void setCacheKey(PreparedStatementCache.Key cacheKey) {
+		this.cacheKey = cacheKey;
+	}
+
 	protected abstract ResultSetMetaData makeResultSetMetaDataDecorator(ResultSetMetaData rsmd);
 
+	/**
+	 * Remembers a result set to close when the statement goes back to the
+	 * cache, and returns it.
+	 */
+	private ResultSet track(ResultSet rs) {
+		if (cacheKey != null && rs != null) {
+			openResultSets.add(rs);
+		}
+		return rs;
+	}
+
+	/**
+	 * Remembers whether an execute call left a result set on the driver
+	 * statement, and returns the given result of the call.
+	 */
+	private boolean executed(boolean hasResultSet) {
+		if (cacheKey != null && hasResultSet) {
+			executeResultPending = true;
+		}
+		return hasResultSet;
+	}
+
+	/**
+	 * Throws an exception if this statement has been closed. Once closed, the
+	 * driver statement may already be handed out again by the parent
+	 * connection's statement cache, so it must not be used through this
+	 * decorator any more.
+	 */
+	private void checkOpen() throws SQLException {
+		if (closed) {
+			throw new SQLException("Statement is closed");
+		}
+	}
+
 	// ------------ PreparedStatement interface is below this line ------------------
 	
 	public void addBatch() throws SQLException {
+		checkOpen();
+		batchPending = true;
 		preparedStatement.addBatch();
 	}
 
 	public void addBatch(String sql) throws SQLException {
+		checkOpen();
+		batchPending = true;
 		preparedStatement.addBatch(sql);
 	}
 
 	public void cancel() throws SQLException {
+		checkOpen();
 		preparedStatement.cancel();
 	}
 
 	public void clearBatch() throws SQLException {
+		checkOpen();
 		preparedStatement.clearBatch();
+		batchPending = false;
 	}
 
 	public void clearParameters() throws SQLException {
+		checkOpen();
 		preparedStatement.clearParameters();
 	}
 
 	public void clearWarnings() throws SQLException {
+		checkOpen();
 		preparedStatement.clearWarnings();
 	}
 
+	/**
+	 * Closes this statement. If the parent connection caches statements, the
+	 * driver statement is returned to its cache instead of being closed, once
+	 * its result sets are closed and its batch is cleared. A statement whose
+	 * settings were changed is always closed.
+	 */
 	public void close() throws SQLException {
+		if (closed) return;
+		closed = true;
+		if (cacheKey != null && !settingsChanged) {
+			try {
+				for (ResultSet rs : openResultSets) {
+					rs.close();
+				}
+				openResultSets.clear();
+				if (executeResultPending) {
+					ResultSet rs = preparedStatement.getResultSet();
+					if (rs != null) {
+						rs.close();
+					}
+					executeResultPending = false;
+				}
+				if (batchPending) {
+					preparedStatement.clearBatch();
+					batchPending = false;
+				}
+			} catch (SQLException ex) {
+				preparedStatement.close();
+				throw ex;
+			}
+			if (parentConnection.releaseStatement(cacheKey, preparedStatement)) {
+				return;
+			}
+		}
 		preparedStatement.close();
 	}
 
 	public boolean execute() throws SQLException {
-		return preparedStatement.execute();
+		checkOpen();
+		return executed(preparedStatement.execute());
 	}
 
 	public boolean execute(String sql, int autoGeneratedKeys)
 			throws SQLException {
-		return preparedStatement.execute(sql, autoGeneratedKeys);
+		checkOpen();
+		return executed(preparedStatement.execute(sql, autoGeneratedKeys));
 	}
 
 	public boolean execute(String sql, int[] columnIndexes) throws SQLException {
-		return preparedStatement.execute(sql, columnIndexes);
+		checkOpen();
+		return executed(preparedStatement.execute(sql, columnIndexes));
 	}
 
 	public boolean execute(String sql, String[] columnNames)
 			throws SQLException {
-		return preparedStatement.execute(sql, columnNames);
+		checkOpen();
+		return executed(preparedStatement.execute(sql, columnNames));
 	}
 
 	public boolean execute(String sql) throws SQLException {
-		return preparedStatement.execute(sql);
+		checkOpen();
+		return executed(preparedStatement.execute(sql));
 	}
 
 	public int[] executeBatch() throws SQLException {
+		checkOpen();
+		batchPending = false;
 		return preparedStatement.executeBatch();
 	}
 
 	public ResultSet executeQuery() throws SQLException {
-		return makeResultSetDecorator(preparedStatement.executeQuery());
+		checkOpen();
+		return track(makeResultSetDecorator(preparedStatement.executeQuery()));
 	}
 
 	public ResultSet executeQuery(String sql) throws SQLException {
-		return makeResultSetDecorator(preparedStatement.executeQuery(sql));
+		checkOpen();
+		return track(makeResultSetDecorator(preparedStatement.executeQuery(sql)));
 	}
 
 	public int executeUpdate() throws SQLException {
+		checkOpen();
 		return preparedStatement.executeUpdate();
 	}
 
 	public int executeUpdate(String sql, int autoGeneratedKeys)
 			throws SQLException {
+		checkOpen();
 		return preparedStatement.executeUpdate(sql, autoGeneratedKeys);
 	}
 
 	public int executeUpdate(String sql, int[] columnIndexes)
 			throws SQLException {
+		checkOpen();
 		return preparedStatement.executeUpdate(sql, columnIndexes);
 	}
 
 	public int executeUpdate(String sql, String[] columnNames)
 			throws SQLException {
+		checkOpen();
 		return preparedStatement.executeUpdate(sql, columnNames);
 	}
 
 	public int executeUpdate(String sql) throws SQLException {
+		checkOpen();
 		return preparedStatement.executeUpdate(sql);
 	}
 
 	public Connection getConnection() throws SQLException {
+		checkOpen();
 		return parentConnection;
 	}
 
 	public int getFetchDirection() throws SQLException {
+		checkOpen();
 		return preparedStatement.getFetchDirection();
 	}
 
 	public int getFetchSize() throws SQLException {
+		checkOpen();
 		return preparedStatement.getFetchSize();
 	}
 
 	public ResultSet getGeneratedKeys() throws SQLException {
-		return makeResultSetDecorator(preparedStatement.getGeneratedKeys());
+		checkOpen();
+		return track(makeResultSetDecorator(preparedStatement.getGeneratedKeys()));
 	}
 
 	public int getMaxFieldSize() throws SQLException {
+		checkOpen();
 		return preparedStatement.getMaxFieldSize();
 	}
 
 	public int getMaxRows() throws SQLException {
+		checkOpen();
 		return preparedStatement.getMaxRows();
 	}
 
 	public ResultSetMetaData getMetaData() throws SQLException {
+		checkOpen();
 		return makeResultSetMetaDataDecorator(preparedStatement.getMetaData());
 	}
 
 	public boolean getMoreResults() throws SQLException {
+		checkOpen();
 		return preparedStatement.getMoreResults();
 	}
 
 	public boolean getMoreResults(int current) throws SQLException {
+		checkOpen();
 		return preparedStatement.getMoreResults(current);
 	}
 
 	public ParameterMetaData getParameterMetaData() throws SQLException {
+		checkOpen();
 		return preparedStatement.getParameterMetaData();
 	}
 
 	public int getQueryTimeout() throws SQLException {
+		checkOpen();
 		return preparedStatement.getQueryTimeout();
 	}
 
 	public ResultSet getResultSet() throws SQLException {
+		checkOpen();
 		if (preparedStatement.getResultSet() == null) {
 			return null;
 		}
-		return makeResultSetDecorator(preparedStatement.getResultSet());
+		return track(makeResultSetDecorator(preparedStatement.getResultSet()));
 	}
 
 	public int getResultSetConcurrency() throws SQLException {
+		checkOpen();
 		return preparedStatement.getResultSetConcurrency();
 	}
 
 	public int getResultSetHoldability() throws SQLException {
+		checkOpen();
 		return preparedStatement.getResultSetHoldability();
 	}
 
 	public int getResultSetType() throws SQLException {
+		checkOpen();
 		return preparedStatement.getResultSetType();
 	}
 
 	public int getUpdateCount() throws SQLException {
+		checkOpen();
 		return preparedStatement.getUpdateCount();
 	}
 
 	public SQLWarning getWarnings() throws SQLException {
+		checkOpen();
 		return preparedStatement.getWarnings();
 	}
 
 	public void setArray(int i, Array x) throws SQLException {
+		checkOpen();
 		preparedStatement.setArray(i, x);
 	}
 
 	public void setAsciiStream(int parameterIndex, InputStream x, int length)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setAsciiStream(parameterIndex, x, length);
 	}
 
 	public void setBigDecimal(int parameterIndex, BigDecimal x)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setBigDecimal(parameterIndex, x);
 	}
 
 	public void setBinaryStream(int parameterIndex, InputStream x, int length)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setBinaryStream(parameterIndex, x, length);
 	}
 
 	public void setBlob(int i, Blob x) throws SQLException {
+		checkOpen();
 		preparedStatement.setBlob(i, x);
 	}
 
 	public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+		checkOpen();
 		preparedStatement.setBoolean(parameterIndex, x);
 	}
 
 	public void setByte(int parameterIndex, byte x) throws SQLException {
+		checkOpen();
 		preparedStatement.setByte(parameterIndex, x);
 	}
 
 	public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+		checkOpen();
 		preparedStatement.setBytes(parameterIndex, x);
 	}
 
 	public void setCharacterStream(int parameterIndex, Reader reader, int length)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setCharacterStream(parameterIndex, reader, length);
 	}
 
 	public void setClob(int i, Clob x) throws SQLException {
+		checkOpen();
 		preparedStatement.setClob(i, x);
 	}
 
 	public void setCursorName(String name) throws SQLException {
+		checkOpen();
+		settingsChanged = true;
 		preparedStatement.setCursorName(name);
 	}
 
 	public void setDate(int parameterIndex, Date x, Calendar cal)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setDate(parameterIndex, x, cal);
 	}
 
 	public void setDate(int parameterIndex, Date x) throws SQLException {
+		checkOpen();
 		preparedStatement.setDate(parameterIndex, x);
 	}
 
 	public void setDouble(int parameterIndex, double x) throws SQLException {
+		checkOpen();
 		preparedStatement.setDouble(parameterIndex, x);
 	}
 
 	public void setEscapeProcessing(boolean enable) throws SQLException {
+		checkOpen();
+		settingsChanged = true;
 		preparedStatement.setEscapeProcessing(enable);
 	}
 
 	public void setFetchDirection(int direction) throws SQLException {
+		checkOpen();
+		settingsChanged = true;
 		preparedStatement.setFetchDirection(direction);
 	}
 
 	public void setFetchSize(int rows) throws SQLException {
+		checkOpen();
+		settingsChanged = true;
 		preparedStatement.setFetchSize(rows);
 	}
 
 	public void setFloat(int parameterIndex, float x) throws SQLException {
+		checkOpen();
 		preparedStatement.setFloat(parameterIndex, x);
 	}
 
 	public void setInt(int parameterIndex, int x) throws SQLException {
+		checkOpen();
 		preparedStatement.setInt(parameterIndex, x);
 	}
 
 	public void setLong(int parameterIndex, long x) throws SQLException {
+		checkOpen();
 		preparedStatement.setLong(parameterIndex, x);
 	}
 
 	public void setMaxFieldSize(int max) throws SQLException {
+		checkOpen();
+		settingsChanged = true;
 		preparedStatement.setMaxFieldSize(max);
 	}
 
 	public void setMaxRows(int max) throws SQLException {
+		checkOpen();
+		settingsChanged = true;
 		preparedStatement.setMaxRows(max);
 	}
 
 	public void setNull(int paramIndex, int sqlType, String typeName)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setNull(paramIndex, sqlType, typeName);
 	}
 
 	public void setNull(int parameterIndex, int sqlType) throws SQLException {
+		checkOpen();
 		preparedStatement.setNull(parameterIndex, sqlType);
 	}
 
 	public void setObject(int parameterIndex, Object x, int targetSqlType,
 			int scale) throws SQLException {
+		checkOpen();
 		
 		preparedStatement.setObject(parameterIndex, x, targetSqlType, scale);
 	}
 
 	public void setObject(int parameterIndex, Object x, int targetSqlType)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setObject(parameterIndex, x, targetSqlType);
 	}
 
 	public void setObject(int parameterIndex, Object x) throws SQLException {
+		checkOpen();
 		preparedStatement.setObject(parameterIndex, applyJavaToJdbcMappings(x));
 	}
 	
@@ -453,57 +637,71 @@ public abstract class PreparedStatementDecorator implements PreparedStatement{
 	}
 
 	public void setQueryTimeout(int seconds) throws SQLException {
+		checkOpen();
+		settingsChanged = true;
 		preparedStatement.setQueryTimeout(seconds);
 	}
 
 	public void setRef(int i, Ref x) throws SQLException {
+		checkOpen();
 		preparedStatement.setRef(i, x);
 	}
 
 	public void setShort(int parameterIndex, short x) throws SQLException {
+		checkOpen();
 		preparedStatement.setShort(parameterIndex, x);
 	}
 
 	public void setString(int parameterIndex, String x) throws SQLException {
+		checkOpen();
 		preparedStatement.setString(parameterIndex, x);
 	}
 
 	public void setTime(int parameterIndex, Time x, Calendar cal)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setTime(parameterIndex, x, cal);
 	}
 
 	public void setTime(int parameterIndex, Time x) throws SQLException {
+		checkOpen();
 		preparedStatement.setTime(parameterIndex, x);
 	}
 
 	public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setTimestamp(parameterIndex, x, cal);
 	}
 
 	public void setTimestamp(int parameterIndex, Timestamp x)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setTimestamp(parameterIndex, x);
 	}
 
 	@SuppressWarnings("deprecation")
 	public void setUnicodeStream(int parameterIndex, InputStream x, int length)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setUnicodeStream(parameterIndex, x, length);
 	}
 
 	public void setURL(int parameterIndex, URL x) throws SQLException {
+		checkOpen();
 		preparedStatement.setURL(parameterIndex, x);
 	}
 	
 	@Override
 	public void closeOnCompletion() throws SQLException {
+		checkOpen();
+		settingsChanged = true;
 		preparedStatement.closeOnCompletion();
 	}
 
 	@Override
 	public boolean isCloseOnCompletion() throws SQLException {
+		checkOpen();
 		return preparedStatement.isCloseOnCompletion();
 	}
 }
@@ -44,15 +44,17 @@ public class SQLServerConnectionDecorator extends ConnectionDecorator {
         
     	if (databaseMetaDataDecorator == null) {
     		DatabaseMetaData rawDBMD = super.getMetaData();
-            if (rawDBMD.getDatabaseProductVersion().startsWith("8")) {
+    		String version = getDialect().getDatabaseProductVersion();
+    		if (version == null) version = "";
+            if (version.startsWith("8")) {
             	databaseMetaDataDecorator = new SQLServer2000DatabaseMetaDataDecorator(rawDBMD, this);
-            } else if (rawDBMD.getDatabaseProductVersion().startsWith("9")) {
+            } else if (version.startsWith("9")) {
             	databaseMetaDataDecorator = new SQLServer2005DatabaseMetaDataDecorator(rawDBMD, this);
-            } else if (rawDBMD.getDatabaseProductVersion().startsWith("10")) {
+            } else if (version.startsWith("10")) {
             	databaseMetaDataDecorator = new SQLServer2008DatabaseMetaDataDecorator(rawDBMD, this);
             } else {
                 logger.warn("Unknown database product version: " +
-                        rawDBMD.getDatabaseProductVersion() +
+                        version +
                         " -- returning generic SQL Server wrapper");
                 databaseMetaDataDecorator = new SQLServerDatabaseMetaDataDecorator(rawDBMD, this);
             }
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.sqlobject;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sql.DataSourceCollection;
+import ca.sqlpower.sql.SPDataSource;
+import ca.sqlpower.sql.SQL;
+
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+
+/**
+ * Holds the setup that reverse engineering needs for every table of a
+ * database but which does not change from one table to the next: the
+ * database product name, the layout of the result set returned by
+ * {@link DatabaseMetaData#getColumns(String, String, String, String)} and the
+ * lookup maps used to assign upstream types to reverse engineered columns.
+ * Each of these is worked out the first time it is needed and reused for
+ * every later table, so importing a large catalog costs time in proportion to
+ * the number of columns rather than to the number of tables.
+ * <p>
+ * A session describes the database at the time it was created. It should be
+ * discarded when the database is refreshed or disconnected. The type lookup
+ * maps are checked against the types of the data source collection each time
+ * they are asked for and rebuilt if the types have changed, as the collection
+ * does not tell anyone when its types change.
+ * <p>
+ * This class is thread safe.
+ */
+public class ReverseEngineeringSession {
+
+	private static final Logger logger = Logger.getLogger(ReverseEngineeringSession.class);
+
+	/**
+	 * The value {@link #autoIncrementColumn} holds before the layout of the
+	 * columns result set has been examined.
+	 */
+	private static final int UNRESOLVED = 0;
+
+	/**
+	 * The product name of the database as reported by its meta data. This is
+	 * null until the first call to {@link #resolveDatabaseProductName(DatabaseMetaData)}.
+	 */
+	private volatile String databaseProductName;
+
+	/**
+	 * The number of columns in the result set the {@link #autoIncrementColumn}
+	 * was found in. Used to notice a driver that returns a different layout.
+	 */
+	private volatile int columnCount;
+
+	/**
+	 * The 1-based index of the "is_autoincrement" column in the columns result
+	 * set, -1 if the driver does not supply one, or {@link #UNRESOLVED} if no
+	 * result set has been examined yet.
+	 */
+	private volatile int autoIncrementColumn = UNRESOLVED;
+
+	/**
+	 * The type lookup maps for each platform name reverse engineered from in
+	 * this session.
+	 */
+	private final ConcurrentMap<String, TypeMappings> typeMappings =
+		new ConcurrentHashMap<String, TypeMappings>();
+
+	/**
+	 * Returns the database product name of the given meta data. The name is
+	 * only asked of the driver the first time. Callers still have to set the
+	 * {@link SQLColumn#setDbType(String) column database type} before each
+	 * column they build, as it is shared by every session.
+	 */
+	String resolveDatabaseProductName(DatabaseMetaData dbmd) throws SQLException {
+		String productName = databaseProductName;
+		if (productName == null) {
+			productName = dbmd.getDatabaseProductName();
+			databaseProductName = productName;
+		}
+		return productName;
+	}
+
+	/**
+	 * Returns the product name of the database this session has reverse
+	 * engineered from, or null if no columns have been fetched yet.
+	 */
+	public String getDatabaseProductName() {
+		return databaseProductName;
+	}
+
+	/**
+	 * Returns the 1-based index of the "is_autoincrement" column of a result
+	 * set returned by {@link DatabaseMetaData#getColumns(String, String, String, String)},
+	 * or -1 if the driver does not supply the column. The column names are only
+	 * searched again if the result set has a different number of columns than
+	 * the last one examined.
+	 */
+	int findAutoIncrementColumn(ResultSet rs) throws SQLException {
+		int count = rs.getMetaData().getColumnCount();
+		int index = autoIncrementColumn;
+		if (index == UNRESOLVED || count != columnCount) {
+			index = SQL.findColumnIndex(rs, "is_autoincrement");
+			columnCount = count;
+			autoIncrementColumn = index;
+			logger.debug("Auto-increment info column: " + index);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the type lookup maps for columns reverse engineered from the
+	 * given platform. The maps are built from the types of the given
+	 * collection the first time the platform is seen in this session, and
+	 * built again if the collection's types are no longer the ones the maps
+	 * were built from.
+	 */
+	TypeMappings getTypeMappings(
+			DataSourceCollection<? extends SPDataSource> dsCollection, String platform) {
+		List<UserDefinedSQLType> types = dsCollection.getSQLTypes();
+		TypeMappings mappings = typeMappings.get(platform);
+		if (mappings == null || !mappings.isBuiltFrom(types)) {
+			if (mappings != null) {
+				logger.debug("Types changed, rebuilding the type maps for " + platform);
+			}
+			mappings = new TypeMappings(types, platform);
+			typeMappings.put(platform, mappings);
+		}
+		return mappings;
+	}
+
+	/**
+	 * The lookup maps {@link SQLColumn#assignTypes(List, DataSourceCollection, String, ca.sqlpower.util.UserPrompterFactory, ReverseEngineeringSession)}
+	 * uses to find the upstream type of a column. Types created while assigning
+	 * are added to the maps so later tables reuse them. Callers must
+	 * synchronize on the instance while using the maps.
+	 */
+	static class TypeMappings {
+
+		final Map<String, UserDefinedSQLType> byReverseName = new HashMap<String, UserDefinedSQLType>();
+		final ListMultimap<String, UserDefinedSQLType> byForwardName = LinkedListMultimap.create();
+		final ListMultimap<Integer, UserDefinedSQLType> byCode = LinkedListMultimap.create();
+
+		/**
+		 * The platform the forward names were taken from.
+		 */
+		private final String platform;
+
+		/**
+		 * The types the maps were built from, in the order the collection
+		 * returned them, and the values of each that the maps are keyed on at
+		 * the time they were built.
+		 */
+		private final UserDefinedSQLType[] sourceTypes;
+		private final String[] sourceNames;
+		private final String[] sourceForwardNames;
+		private final Integer[] sourceCodes;
+
+		TypeMappings(List<UserDefinedSQLType> types, String platform) {
+			this.platform = platform;
+			int size = types.size();
+			sourceTypes = types.toArray(new UserDefinedSQLType[size]);
+			sourceNames = new String[size];
+			sourceForwardNames = new String[size];
+			sourceCodes = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				UserDefinedSQLType type = sourceTypes[i];
+				sourceNames[i] = type.getName();
+				sourceForwardNames[i] = type.getPhysicalProperties(platform).getName();
+				sourceCodes[i] = type.getType();
+				byReverseName.put(sourceNames[i].toLowerCase(), type);
+				byForwardName.put(sourceForwardNames[i].toLowerCase(), type);
+				byCode.put(sourceCodes[i], type);
+			}
+		}
+
+		/**
+		 * Returns true if the given types are the same types, in the same
+		 * order and with the same names and type codes, as the ones these maps
+		 * were built from.
+		 */
+		boolean isBuiltFrom(List<UserDefinedSQLType> types) {
+			if (types.size() != sourceTypes.length) return false;
+			int i = 0;
+			for (UserDefinedSQLType type : types) {
+				if (type != sourceTypes[i]
+						|| !equal(type.getName(), sourceNames[i])
+						|| !equal(type.getPhysicalProperties(platform).getName(), sourceForwardNames[i])
+						|| !equal(type.getType(), sourceCodes[i])) {
+					return false;
+				}
+				i++;
+			}
+			return true;
+		}
+
+		private static boolean equal(Object a, Object b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+}
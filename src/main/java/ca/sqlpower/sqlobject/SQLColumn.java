@@ -44,7 +44,6 @@ import ca.sqlpower.object.annotation.ConstructorParameter.ParameterType;
 import ca.sqlpower.sql.DataSourceCollection;
 import ca.sqlpower.sql.JDBCDataSourceType;
 import ca.sqlpower.sql.SPDataSource;
-import ca.sqlpower.sql.SQL;
 import ca.sqlpower.sqlobject.SQLRelationship.SQLImportedKey;
 import ca.sqlpower.sqlobject.SQLTypePhysicalProperties.SQLTypeConstraint;
 import ca.sqlpower.sqlobject.SQLTypePhysicalPropertiesProvider.PropertyType;
@@ -53,7 +52,6 @@ import ca.sqlpower.util.UserPrompter;
 import ca.sqlpower.util.UserPrompterFactory;
 
 import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.ListMultimap;
 
 public class SQLColumn extends SQLObject implements java.io.Serializable, SPVariableResolverProvider, SQLCheckConstraintContainer {
@@ -477,14 +475,35 @@ public class SQLColumn extends SQLObject implements java.io.Serializable, SPVari
 	                                String table,
 	                                DatabaseMetaData dbmd) 
 		throws SQLException, DuplicateColumnException, SQLObjectException {
+		return fetchColumnsForTable(catalog, schema, table, dbmd, new ReverseEngineeringSession());
+	}
+
+    /**
+     * Creates a list of unparented SQLColumn objects based on the current
+     * information from the given DatabaseMetaData. The database product name
+     * and the layout of the columns result set are taken from the given
+     * session, which only asks the driver for them the first time.
+     * 
+     * @return A map of table names to a list of SQLColumns that the table
+     *         should contain in the order the columns should appear in the
+     *         table.
+     * @see #fetchColumnsForTable(String, String, String, DatabaseMetaData)
+     */
+	static ListMultimap<String, SQLColumn> fetchColumnsForTable(
+	                                String catalog,
+	                                String schema,
+	                                String table,
+	                                DatabaseMetaData dbmd,
+	                                ReverseEngineeringSession session) 
+		throws SQLException, DuplicateColumnException, SQLObjectException {
 		ResultSet rs = null;
 		final ListMultimap<String, SQLColumn> multimap = ArrayListMultimap.create();
  		try {
 			logger.debug("SQLColumn.addColumnsToTables: catalog="+catalog+"; schema="+schema);
+			String productName = session.resolveDatabaseProductName(dbmd);
 			rs = dbmd.getColumns(catalog, schema, table, "%");
 			
-			int autoIncCol = SQL.findColumnIndex(rs, "is_autoincrement");
-			logger.debug("Auto-increment info column: " + autoIncCol);
+			int autoIncCol = session.findAutoIncrementColumn(rs);
 
 			while (rs.next()) {
 				logger.debug("addColumnsToTable SQLColumn constructor invocation.");
@@ -502,7 +521,7 @@ public class SQLColumn extends SQLObject implements java.io.Serializable, SPVari
 				if(nativeTypeName.indexOf('(') >= 0) {
 					nativeTypeName = nativeTypeName.substring(0, nativeTypeName.indexOf('('));
 				}
-                setDbType(dbmd.getDatabaseProductName());
+				setDbType(productName);
 				SQLColumn col = new SQLColumn(null,
 											  rs.getString(4),  // col name
 											  rs.getInt(5), // data type (from java.sql.Types)
@@ -589,17 +608,43 @@ public class SQLColumn extends SQLObject implements java.io.Serializable, SPVari
 			DataSourceCollection<? extends SPDataSource> dsCollection, 
 			String fromPlatform, 
 			UserPrompterFactory upf) {
+		assignTypes(columns, dsCollection, fromPlatform, upf, new ReverseEngineeringSession());
+	}
+
+	/**
+	 * Assigns an upstream type to each of the columns the same way as
+	 * {@link #assignTypes(List, DataSourceCollection, String, UserPrompterFactory)},
+	 * but takes the type lookup maps from the given session. The maps are built
+	 * from the data source collection the first time a platform is seen in the
+	 * session and reused for every later call, so callers reverse engineering
+	 * many tables should pass the same session for each of them.
+	 * 
+	 * @param session
+	 *            The session of the reverse engineering these columns are
+	 *            part of. See {@link SQLDatabase#getReverseEngineeringSession()}.
+	 */
+	public static void assignTypes(
+			List<SQLColumn> columns, 
+			DataSourceCollection<? extends SPDataSource> dsCollection, 
+			String fromPlatform, 
+			UserPrompterFactory upf,
+			ReverseEngineeringSession session) {
 		if (fromPlatform == null) return; // Dropped from within the PlayPen
-		List<UserDefinedSQLType> types = dsCollection.getSQLTypes();
-		
-		Map<String, UserDefinedSQLType> typeMapByReverseName = new HashMap<String, UserDefinedSQLType>();
-		ListMultimap<String, UserDefinedSQLType> typeMapByForwardName = LinkedListMultimap.create();
-		ListMultimap<Integer, UserDefinedSQLType> typeMapByCode = LinkedListMultimap.create();
-		for (UserDefinedSQLType type : types) {
-				typeMapByReverseName.put(type.getName().toLowerCase(), type);
-				typeMapByForwardName.put(type.getPhysicalProperties(fromPlatform).getName().toLowerCase(), type);
-				typeMapByCode.put(type.getType(), type);
+		ReverseEngineeringSession.TypeMappings mappings = session.getTypeMappings(dsCollection, fromPlatform);
+		synchronized (mappings) {
+			assignTypes(columns, dsCollection, fromPlatform, upf, mappings);
 		}
+	}
+
+	private static void assignTypes(
+			List<SQLColumn> columns, 
+			DataSourceCollection<? extends SPDataSource> dsCollection, 
+			String fromPlatform, 
+			UserPrompterFactory upf,
+			ReverseEngineeringSession.TypeMappings mappings) {
+		Map<String, UserDefinedSQLType> typeMapByReverseName = mappings.byReverseName;
+		ListMultimap<String, UserDefinedSQLType> typeMapByForwardName = mappings.byForwardName;
+		ListMultimap<Integer, UserDefinedSQLType> typeMapByCode = mappings.byCode;
 		
 		Map<String, UserPrompter> userPrompters = new HashMap<String, UserPrompter>();
 		
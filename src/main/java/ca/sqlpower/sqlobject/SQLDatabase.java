@@ -89,6 +89,14 @@ public class SQLDatabase extends SQLObject implements java.io.Serializable, Prop
 	 * Indicates the maximum number of connections held active ever.
 	 */
 	private int maxActiveConnections = 0;
+
+	/**
+	 * The setup shared by every table reverse engineered from this database.
+	 * Created on first use and discarded when the database is refreshed or
+	 * disconnected. You should access it only via the
+	 * getReverseEngineeringSession() method.
+	 */
+	private transient ReverseEngineeringSession reverseEngineeringSession;
 	
 	/**
 	 * The catalog term for the underlying database, according to the JDBC driver's
@@ -698,6 +706,28 @@ public class SQLDatabase extends SQLObject implements java.io.Serializable, Prop
 		}
 	}
 
+	/**
+	 * Returns the reverse engineering session of this database. The same
+	 * session is returned until the database is refreshed or disconnected, so
+	 * the product name, column layout and type mappings it holds are only
+	 * worked out once for all of the tables populated in between.
+	 */
+	@NonProperty
+	public synchronized ReverseEngineeringSession getReverseEngineeringSession() {
+		if (reverseEngineeringSession == null) {
+			reverseEngineeringSession = new ReverseEngineeringSession();
+		}
+		return reverseEngineeringSession;
+	}
+
+	/**
+	 * Discards the current reverse engineering session so the next one asks
+	 * the database for its setup again.
+	 */
+	private synchronized void resetReverseEngineeringSession() {
+		reverseEngineeringSession = null;
+	}
+
 	public String toString() {
 		return getName();
 	}
@@ -720,6 +750,7 @@ public class SQLDatabase extends SQLObject implements java.io.Serializable, Prop
 			connectionPool = null;
 		}
 		maxActiveConnections = 0;
+		resetReverseEngineeringSession();
 	}
 	
 	synchronized BaseObjectPool getConnectionPool() {
@@ -763,6 +794,7 @@ public class SQLDatabase extends SQLObject implements java.io.Serializable, Prop
         }
 
         DatabaseMetaDataDecorator.putHint(DatabaseMetaDataDecorator.CACHE_STALE_DATE, new Date());
+        resetReverseEngineeringSession();
 
         // We're going to just leave caching on all the time and see how it pans out
         DatabaseMetaDataDecorator.putHint(
@@ -665,7 +665,8 @@ public abstract class SQLObject extends AbstractSPObject implements java.io.Seri
 
                 try {
                     final ListMultimap<String, SQLColumn> newCols = SQLColumn.fetchColumnsForTable(
-                            catName, schName, null, dbmd);
+                            catName, schName, null, dbmd,
+                            db.getReverseEngineeringSession());
                     
                     runInForeground(new Runnable() {
                         public void run() {
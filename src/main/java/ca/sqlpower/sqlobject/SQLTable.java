@@ -405,7 +405,8 @@ public class SQLTable extends SQLObject {
 		    con = parentDB.getConnection();
 		    DatabaseMetaData dbmd = con.getMetaData();
 		    final ListMultimap<String, SQLColumn> cols = SQLColumn.fetchColumnsForTable(
-		    		catalogName, schemaName, tableName, dbmd);
+		    		catalogName, schemaName, tableName, dbmd,
+		    		parentDB.getReverseEngineeringSession());
 		    Runnable runner = new Runnable() {
 				public void run() {
 					try {
@@ -19,6 +19,7 @@
 
 package ca.sqlpower.sqlobject;
 
+import java.beans.PropertyChangeEvent;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -26,6 +27,7 @@ import java.util.List;
 
 import javax.sql.RowSetMetaData;
 
+import ca.sqlpower.object.SPChildEvent;
 import ca.sqlpower.object.SPObject;
 import ca.sqlpower.object.SPObjectNameComparator;
 import ca.sqlpower.object.annotation.Accessor;
@@ -555,6 +557,35 @@ public class SQLTypePhysicalProperties extends SQLObject implements SQLCheckCons
 		return equal;
     }
 
+	/**
+	 * The {@link UserDefinedSQLType} that owns these properties keeps a
+	 * snapshot of its properties resolved against its upstream types, which
+	 * has to be thrown away whenever any of these properties change.
+	 */
+    @Override
+    protected PropertyChangeEvent firePropertyChange(String propertyName, Object oldValue, Object newValue) {
+    	clearResolvedProperties();
+    	return super.firePropertyChange(propertyName, oldValue, newValue);
+    }
+    
+    @Override
+    protected SPChildEvent fireChildAdded(Class<? extends SPObject> type, SPObject child, int index) {
+    	clearResolvedProperties();
+    	return super.fireChildAdded(type, child, index);
+    }
+    
+    @Override
+    protected SPChildEvent fireChildRemoved(Class<? extends SPObject> type, SPObject child, int index) {
+    	clearResolvedProperties();
+    	return super.fireChildRemoved(type, child, index);
+    }
+    
+    private void clearResolvedProperties() {
+    	if (getParent() instanceof UserDefinedSQLType) {
+    		((UserDefinedSQLType) getParent()).clearResolvedProperties();
+    	}
+    }
+
     @NonProperty
 	public List<SQLCheckConstraint> getCheckConstraints() {
 		return getChildrenWithoutPopulating(SQLCheckConstraint.class);
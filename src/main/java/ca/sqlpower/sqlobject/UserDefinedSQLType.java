@@ -26,9 +26,12 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import ca.sqlpower.dao.SPPersister;
 import ca.sqlpower.object.ObjectDependentException;
+import ca.sqlpower.object.SPChildEvent;
 import ca.sqlpower.object.SPObject;
 import ca.sqlpower.object.annotation.Accessor;
 import ca.sqlpower.object.annotation.Constructor;
@@ -41,6 +44,8 @@ import ca.sqlpower.sql.JDBCDataSourceType;
 import ca.sqlpower.sqlobject.SQLTypePhysicalProperties.SQLTypeConstraint;
 import ca.sqlpower.util.SQLPowerUtils;
 
+import com.google.common.collect.MapMaker;
+
 /**
  * An implementation of {@link SQLTypePhysicalPropertiesProvider}
  * that provides support for multiple SQLTypePhysicalProperties,
@@ -118,6 +123,119 @@ public class UserDefinedSQLType extends SQLObject implements SQLTypePhysicalProp
      * but the DDL generators are responsible for taking care of that.
      */
     private Boolean myAutoIncrement;
+
+	/**
+	 * The platform specific properties of this type resolved against its
+	 * upstream types, keyed by platform name. A snapshot is made the first
+	 * time a platform is asked for and all of them are cleared whenever this
+	 * type, one of its physical properties or one of its upstream types
+	 * changes. See {@link #clearResolvedProperties()}.
+	 */
+    private final ConcurrentMap<String, ResolvedProperties> resolvedProperties = 
+    	new ConcurrentHashMap<String, ResolvedProperties>();
+
+	/**
+	 * The types that have this type as their upstream type. Their resolved
+	 * properties are cleared along with the ones of this type. The types are
+	 * weakly referenced so a type that is no longer used does not stay
+	 * reachable through its upstream type.
+	 */
+    private final Set<UserDefinedSQLType> downstreamTypes = 
+    	Collections.newSetFromMap(new MapMaker().weakKeys().<UserDefinedSQLType, Boolean>makeMap());
+
+    /**
+     * Set while the resolved properties are being cleared to stop a loop of
+     * upstream types from clearing each other forever.
+     */
+    private boolean clearingResolvedProperties;
+
+	/**
+	 * The platform specific properties of a type for one platform, with the
+	 * properties it does not set taken from its upstream types. Snapshots are
+	 * never modified; a new one is made after the type changes.
+	 */
+    private static final class ResolvedProperties {
+    	private final SQLTypePhysicalProperties physicalProperties;
+    	private final String physicalName;
+    	private final PropertyType precisionType;
+    	private final PropertyType scaleType;
+    	private final int precision;
+    	private final int scale;
+    	private final String defaultValue;
+    	private final SQLTypeConstraint constraintType;
+    	private final List<SQLCheckConstraint> checkConstraints;
+    	private final List<SQLEnumeration> enumerations;
+    	
+    	ResolvedProperties(UserDefinedSQLType type, String platform) {
+    		final UserDefinedSQLType upstreamType = type.getUpstreamType();
+    		physicalProperties = type.findPhysicalProperties(platform);
+    		
+    		String name = physicalProperties.getName();
+    		if (name == null && upstreamType != null) {
+    			name = upstreamType.getPhysicalName(platform);
+    		}
+    		physicalName = name;
+    		
+    		PropertyType resolvedPrecisionType = physicalProperties.getPrecisionType();
+    		if (resolvedPrecisionType == null && upstreamType != null) {
+    			resolvedPrecisionType = upstreamType.getPrecisionType(platform);
+    		}
+    		precisionType = resolvedPrecisionType == null ? PropertyType.NOT_APPLICABLE : resolvedPrecisionType;
+    		
+    		PropertyType resolvedScaleType = physicalProperties.getScaleType();
+    		if (resolvedScaleType == null && upstreamType != null) {
+    			resolvedScaleType = upstreamType.getScaleType(platform);
+    		}
+    		scaleType = resolvedScaleType == null ? PropertyType.NOT_APPLICABLE : resolvedScaleType;
+    		
+    		// A non-applicable precision or scale should just mean that it is
+    		// 0. Otherwise the value comes from the upstream type if this one
+    		// does not exist or the upstream type's is constant.
+    		Integer resolvedPrecision = null;
+    		if (precisionType != PropertyType.NOT_APPLICABLE) {
+    			resolvedPrecision = physicalProperties.getPrecision();
+    			if (upstreamType != null && (resolvedPrecision == null 
+    					|| upstreamType.getPrecisionType(platform) == PropertyType.CONSTANT)) {
+    				resolvedPrecision = upstreamType.getPrecision(platform);
+    			}
+    		}
+    		precision = resolvedPrecision == null ? 0 : resolvedPrecision;
+    		
+    		Integer resolvedScale = null;
+    		if (scaleType != PropertyType.NOT_APPLICABLE) {
+    			resolvedScale = physicalProperties.getScale();
+    			if (upstreamType != null && (resolvedScale == null 
+    					|| upstreamType.getScaleType(platform) == PropertyType.CONSTANT)) {
+    				resolvedScale = upstreamType.getScale(platform);
+    			}
+    		}
+    		scale = resolvedScale == null ? 0 : resolvedScale;
+    		
+    		String resolvedDefaultValue = physicalProperties.getDefaultValue();
+    		if (resolvedDefaultValue == null && upstreamType != null) {
+    			resolvedDefaultValue = upstreamType.getDefaultValue(platform);
+    		}
+    		defaultValue = resolvedDefaultValue;
+    		
+    		SQLTypeConstraint resolvedConstraintType = physicalProperties.getConstraintType();
+    		if (resolvedConstraintType == null && upstreamType != null) {
+    			resolvedConstraintType = upstreamType.getConstraintType(platform);
+    		}
+    		constraintType = resolvedConstraintType;
+    		
+    		List<SQLCheckConstraint> resolvedCheckConstraints = physicalProperties.getCheckConstraints();
+    		if (resolvedCheckConstraints.isEmpty() && upstreamType != null) {
+    			resolvedCheckConstraints = upstreamType.getCheckConstraints(platform);
+    		}
+    		checkConstraints = Collections.unmodifiableList(resolvedCheckConstraints);
+    		
+    		List<SQLEnumeration> resolvedEnumerations = physicalProperties.getChildren(SQLEnumeration.class);
+    		if (resolvedEnumerations.isEmpty() && upstreamType != null) {
+    			resolvedEnumerations = upstreamType.getEnumerations(platform);
+    		}
+    		enumerations = Collections.unmodifiableList(resolvedEnumerations);
+    	}
+    }
     
 	/**
 	 * Constructs a {@link UserDefinedSQLType} with a default
@@ -173,6 +291,15 @@ public class UserDefinedSQLType extends SQLObject implements SQLTypePhysicalProp
 	 */
     @NonProperty
     public SQLTypePhysicalProperties getPhysicalProperties(String platformName) {
+    	return getResolvedProperties(platformName).physicalProperties;
+    }
+
+	/**
+	 * Searches the overriding physical properties for the given platform. This
+	 * is used to build the {@link ResolvedProperties} for a platform, other
+	 * code should use {@link #getPhysicalProperties(String)}.
+	 */
+    private SQLTypePhysicalProperties findPhysicalProperties(String platformName) {
     	if (!GENERIC_PLATFORM.equals(platformName)) {
 	        for (SQLTypePhysicalProperties properties : overridingPhysicalProperties) {
 	        	if (properties.getPlatform().equals(platformName)) return properties;
@@ -180,6 +307,41 @@ public class UserDefinedSQLType extends SQLObject implements SQLTypePhysicalProp
     	}
         return defaultPhysicalProperties;
     }
+
+	/**
+	 * Returns the snapshot of this type's properties for the given platform,
+	 * resolving them if there is no snapshot for the platform yet.
+	 */
+    private ResolvedProperties getResolvedProperties(String platform) {
+    	if (platform == null) {
+    		return new ResolvedProperties(this, platform);
+    	}
+    	ResolvedProperties resolved = resolvedProperties.get(platform);
+    	if (resolved == null) {
+    		resolved = new ResolvedProperties(this, platform);
+    		resolvedProperties.put(platform, resolved);
+    	}
+    	return resolved;
+    }
+
+	/**
+	 * Throws away the resolved properties of this type and of every type
+	 * downstream of it. This is called when this type's upstream type or
+	 * physical properties change and when an event is fired by one of its
+	 * physical properties.
+	 */
+    void clearResolvedProperties() {
+    	if (clearingResolvedProperties) return;
+    	clearingResolvedProperties = true;
+    	try {
+    		resolvedProperties.clear();
+    		for (UserDefinedSQLType downstreamType : downstreamTypes) {
+    			downstreamType.clearResolvedProperties();
+    		}
+    	} finally {
+    		clearingResolvedProperties = false;
+    	}
+    }
     
     @Override
     public List<? extends SQLObject> getChildrenWithoutPopulating() {
@@ -262,128 +424,32 @@ public class UserDefinedSQLType extends SQLObject implements SQLTypePhysicalProp
 	 */
     @NonProperty
     public List<SQLCheckConstraint> getCheckConstraints(String platform) {
-        List<SQLCheckConstraint> checkConstraints = null;
-        SQLTypePhysicalProperties properties = getPhysicalProperties(platform);
-        
-        if (properties != null) {
-        	checkConstraints = properties.getCheckConstraints();
-            if (checkConstraints.isEmpty() && getUpstreamType() != null) {
-                checkConstraints = getUpstreamType().getCheckConstraints(platform);
-            }
-        } else if (getUpstreamType() != null) {
-            checkConstraints = getUpstreamType().getCheckConstraints(platform);
-        } else {
-        	checkConstraints = Collections.emptyList();
-        }
-        
-        return Collections.unmodifiableList(checkConstraints);
+        return getResolvedProperties(platform).checkConstraints;
     }
 
     @NonProperty
     public SQLTypeConstraint getConstraintType(String platform) {
-        SQLTypeConstraint constraintType = null;
-        SQLTypePhysicalProperties properties = getPhysicalProperties(platform);
-        
-        if (properties != null) {
-            constraintType = properties.getConstraintType();
-            if (constraintType == null && getUpstreamType() != null) {
-                constraintType = getUpstreamType().getConstraintType(platform);
-            }
-        } else if (getUpstreamType() != null) {
-            constraintType = getUpstreamType().getConstraintType(platform);
-        }
-        
-        return constraintType;
+        return getResolvedProperties(platform).constraintType;
     }
 
     @NonProperty
     public String getDefaultValue(String platform) {
-        String defaultValue = null;
-        SQLTypePhysicalProperties properties = getPhysicalProperties(platform);
-        
-        if (properties != null) {
-            defaultValue = properties.getDefaultValue();
-            if (defaultValue == null && getUpstreamType() != null) {
-                defaultValue = getUpstreamType().getDefaultValue(platform);
-            }
-        } else if (getUpstreamType() != null) {
-            defaultValue = getUpstreamType().getDefaultValue(platform);
-        }
-        
-        return defaultValue;
+        return getResolvedProperties(platform).defaultValue;
     }
 
     @NonProperty
     public List<SQLEnumeration> getEnumerations(String platform) {
-        List<SQLEnumeration> enumerations = null;
-        SQLTypePhysicalProperties properties = getPhysicalProperties(platform);
-        
-        if (properties != null) {
-        	enumerations = properties.getChildren(SQLEnumeration.class);
-            if (enumerations.isEmpty() && getUpstreamType() != null) {
-            	enumerations = getUpstreamType().getEnumerations(platform);
-            }
-        } else if (getUpstreamType() != null) {
-        	enumerations = getUpstreamType().getEnumerations(platform);
-        } else {
-        	enumerations = Collections.emptyList();
-        }
-        
-        return Collections.unmodifiableList(enumerations);
+        return getResolvedProperties(platform).enumerations;
     }
 
     @NonProperty
     public int getPrecision(String platform) {
-    	Integer precision = null;
-    	
-    	// A non-applicable precision should just mean that precision is 0.
-    	if (getPrecisionType(platform) != PropertyType.NOT_APPLICABLE) {
-    		SQLTypePhysicalProperties properties = getPhysicalProperties(platform);
-
-    		if (properties != null) {
-    			precision = properties.getPrecision();
-    			
-    			// Get the precision property from the upstream type if this one 
-    			// does not exist or its precision type is constant.
-				if (getUpstreamType() != null
-						&& (precision == null || getUpstreamType()
-								.getPrecisionType(platform) == PropertyType.CONSTANT)) {
-    				precision = getUpstreamType().getPrecision(platform);
-    			}
-    		} else if (getUpstreamType() != null) {
-    			precision = getUpstreamType().getPrecision(platform);
-    		}
-    	}
-        
-        // If precision is null and all upstream types also return null, then just return 0 to prevent an NPE
-        return precision == null ? 0 : precision;
+        return getResolvedProperties(platform).precision;
     }
 
     @NonProperty
     public int getScale(String platform) {
-    	Integer scale = null;
-    	
-    	// A non-applicable scale should just mean that scale is 0.
-    	if (getScaleType(platform) != PropertyType.NOT_APPLICABLE) {
-    		SQLTypePhysicalProperties properties = getPhysicalProperties(platform);
-
-    		if (properties != null) {
-    			scale = properties.getScale();
-    			
-    			// Get the scale property from the upstream type if this one 
-    			// does not exist or its scale type is constant.
-				if (getUpstreamType() != null
-						&& (scale == null
-						|| getUpstreamType().getScaleType(platform) == PropertyType.CONSTANT)) {
-    				scale = getUpstreamType().getScale(platform);
-    			}
-    		} else if (getUpstreamType() != null) {
-    			scale = getUpstreamType().getScale(platform);
-    		}
-    	}
-
-    	// If scale is null and all upstream types also return null, then just return 0 to prevent an NPE
-    	return scale == null ? 0 : scale;
+        return getResolvedProperties(platform).scale;
     }
 
     @Accessor
@@ -481,44 +547,12 @@ public class UserDefinedSQLType extends SQLObject implements SQLTypePhysicalProp
 
     @NonProperty
     public PropertyType getPrecisionType(String platform) {
-        PropertyType precisionType = null;
-        SQLTypePhysicalProperties properties = getPhysicalProperties(platform);
-        
-        if (properties != null) {
-            precisionType = properties.getPrecisionType();
-            if (precisionType == null && getUpstreamType() != null) {
-                precisionType = getUpstreamType().getPrecisionType(platform);
-            }
-        } else if (getUpstreamType() != null) {
-            precisionType = getUpstreamType().getPrecisionType(platform);
-        }
-        
-        if (precisionType == null) {
-        	precisionType = PropertyType.NOT_APPLICABLE;
-        }
-        
-        return precisionType;
+        return getResolvedProperties(platform).precisionType;
     }
 
     @NonProperty
     public PropertyType getScaleType(String platform) {
-        PropertyType scaleType = null;
-        SQLTypePhysicalProperties properties = getPhysicalProperties(platform);
-        
-        if (properties != null) {
-            scaleType = properties.getScaleType();
-            if (scaleType == null && getUpstreamType() != null) {
-                scaleType = getUpstreamType().getScaleType(platform);
-            }
-        } else if (getUpstreamType() != null) {
-            scaleType = getUpstreamType().getScaleType(platform);
-        }
-        
-        if (scaleType == null) {
-        	scaleType = PropertyType.NOT_APPLICABLE;
-        }
-        
-        return scaleType;
+        return getResolvedProperties(platform).scaleType;
     }
 
     @NonProperty
@@ -579,6 +613,13 @@ public class UserDefinedSQLType extends SQLObject implements SQLTypePhysicalProp
     	
     	UserDefinedSQLType oldValue = this.upstreamType;
     	this.upstreamType = upstreamType;
+    	if (oldValue != null) {
+    		oldValue.downstreamTypes.remove(this);
+    	}
+    	if (upstreamType != null) {
+    		upstreamType.downstreamTypes.add(this);
+    	}
+    	clearResolvedProperties();
 		firePropertyChange("upstreamType", oldValue, upstreamType);
 		
 		if (upstreamType != null) {
@@ -675,6 +716,18 @@ public class UserDefinedSQLType extends SQLObject implements SQLTypePhysicalProp
     	}
     }
     
+    @Override
+    protected SPChildEvent fireChildAdded(Class<? extends SPObject> type, SPObject child, int index) {
+    	clearResolvedProperties();
+    	return super.fireChildAdded(type, child, index);
+    }
+    
+    @Override
+    protected SPChildEvent fireChildRemoved(Class<? extends SPObject> type, SPObject child, int index) {
+    	clearResolvedProperties();
+    	return super.fireChildRemoved(type, child, index);
+    }
+    
     @Override
     public String toString() {
     	return getName();
@@ -921,19 +974,7 @@ public class UserDefinedSQLType extends SQLObject implements SQLTypePhysicalProp
 	 */
 	@NonProperty
 	public String getPhysicalName(String platform) {
-		String physicalName = null;
-        SQLTypePhysicalProperties properties = getPhysicalProperties(platform);
-        
-        if (properties != null) {
-            physicalName = properties.getName();
-            if (physicalName == null && getUpstreamType() != null) {
-                physicalName = getUpstreamType().getPhysicalName(platform);
-            }
-        } else if (getUpstreamType() != null) {
-            physicalName = getUpstreamType().getPhysicalName(platform);
-        }
-        
-        return physicalName;
+		return getResolvedProperties(platform).physicalName;
 	}
 	
 	@Override @Mutator
@@ -20,6 +20,7 @@
 package ca.sqlpower.swingui.table;
 
 import java.sql.ResultSet;
+import java.sql.SQLException;
 
 import javax.swing.JTable;
 import javax.swing.event.TableModelEvent;
@@ -66,4 +67,16 @@ public class ResultSetTableFactory {
 		return t;
 	}
 
+	/**
+	 * Returns a JTable that displays the given scrollable result set through a
+	 * {@link WindowedResultSetTableModel}. Only the rows near the visible part
+	 * of the table are kept in memory so this is suitable for browsing very
+	 * large result sets. The table cannot be sorted or filtered as that would
+	 * require every row to be loaded.
+	 */
+	public static JTable createWindowedResultSetJTable(ResultSet rs) throws SQLException {
+		final WindowedResultSetTableModel model = new WindowedResultSetTableModel(rs);
+		return new EditableJTable(model);
+	}
+
 }
@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2009, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.swingui.table;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A table model over a scrollable result set that only keeps a window of rows
+ * near the viewport in memory. Rows are fetched a page at a time with
+ * {@link ResultSet#absolute(int)} on a background thread and the pages
+ * adjacent to any requested page are prefetched so scrolling rarely has to
+ * wait on the database. Pages that fall outside the window are discarded in
+ * least recently used order, which keeps the memory footprint of the model
+ * fixed regardless of how many rows the result set contains.
+ * <p>
+ * The result set given to this model must be scrollable (for example
+ * {@link ResultSet#TYPE_SCROLL_INSENSITIVE}) and must not be used by anything
+ * else while this model is alive: all cursor movement is done on the model's
+ * fetch thread. Cells in a page that has not been fetched yet report a null
+ * value; a {@link #fireTableRowsUpdated(int, int)} event is sent on the event
+ * dispatch thread once the page arrives.
+ */
+public class WindowedResultSetTableModel extends AbstractTableModel implements CleanupTableModel {
+
+    private static final Logger logger = Logger.getLogger(WindowedResultSetTableModel.class);
+
+    /**
+     * The default number of rows fetched from the result set in one go.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    /**
+     * The default number of pages kept in memory at once.
+     */
+    public static final int DEFAULT_MAX_PAGES = 8;
+
+    /**
+     * The fewest pages the model can keep. A viewport that spans a page
+     * boundary shows two pages, and each cell request also prefetches the
+     * page on either side, so four pages are in use at once. With fewer the
+     * model would evict a page it is about to be asked for on every paint.
+     */
+    public static final int MIN_PAGES = 4;
+
+    /**
+     * The result set the rows are fetched from. Only the fetch thread may
+     * move its cursor.
+     */
+    private final ResultSet rs;
+
+    private final int pageSize;
+
+    private final int maxPages;
+
+    /**
+     * The total number of rows in the result set, found once when the model
+     * is created.
+     */
+    private final int rowCount;
+
+    private final String[] columnNames;
+
+    private final int[] columnTypes;
+
+    /**
+     * The pages currently in memory, keyed by page number and kept in access
+     * order so the eldest entry is the least recently viewed page. Access to
+     * this map must be synchronized on it as pages are added by the fetch
+     * thread and read by the event dispatch thread.
+     */
+    private final LinkedHashMap<Integer, Object[][]> pages;
+
+    /**
+     * The page numbers that have been queued on the fetch thread but have not
+     * been loaded yet. This prevents the same page from being queued once per
+     * visible cell. Access must be synchronized on {@link #pages}.
+     */
+    private final Set<Integer> pendingPages = new HashSet<Integer>();
+
+    /**
+     * Loads pages off the event dispatch thread. A single thread is used as
+     * result sets are not safe to navigate from multiple threads.
+     */
+    private final ExecutorService fetchExecutor;
+
+    /**
+     * The last exception thrown while fetching a page, if any.
+     */
+    private volatile SQLException lastFetchException;
+
+    public WindowedResultSetTableModel(ResultSet rs) throws SQLException {
+        this(rs, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+    }
+
+    /**
+     * @param rs
+     *            A scrollable result set. The model takes over navigation of
+     *            this result set.
+     * @param pageSize
+     *            The number of rows to fetch in one trip to the result set.
+     * @param maxPages
+     *            The number of pages to keep in memory. This must be at least
+     *            {@link #MIN_PAGES}, and the page size should be larger than
+     *            the number of rows the viewport shows, so the window holds
+     *            every visible page and its neighbours.
+     */
+    public WindowedResultSetTableModel(ResultSet rs, int pageSize, final int maxPages) throws SQLException {
+        if (rs.getType() == ResultSet.TYPE_FORWARD_ONLY) {
+            throw new IllegalArgumentException("The result set given to a windowed table model must be scrollable.");
+        }
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be positive but was " + pageSize);
+        }
+        if (maxPages < MIN_PAGES) {
+            throw new IllegalArgumentException("At least " + MIN_PAGES + 
+                    " pages must be kept in memory but the limit was " + maxPages);
+        }
+        this.rs = rs;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+
+        ResultSetMetaData rsmd = rs.getMetaData();
+        columnNames = new String[rsmd.getColumnCount()];
+        columnTypes = new int[rsmd.getColumnCount()];
+        for (int i = 0; i < columnNames.length; i++) {
+            String colName = rsmd.getColumnLabel(i + 1);
+            if (colName == null || colName.equals("")) {
+                colName = rsmd.getColumnName(i + 1);
+            }
+            columnNames[i] = colName;
+            columnTypes[i] = rsmd.getColumnType(i + 1);
+        }
+
+        if (rs.last()) {
+            rowCount = rs.getRow();
+        } else {
+            rowCount = 0;
+        }
+        rs.beforeFirst();
+
+        pages = new LinkedHashMap<Integer, Object[][]>(maxPages * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Object[][]> eldest) {
+                return size() > maxPages;
+            }
+        };
+
+        fetchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Windowed result set fetcher");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the value in the given cell if the page containing the row is in
+     * memory. If the page is not in memory it is queued to be fetched and null
+     * is returned. In either case the pages around the requested row are
+     * prefetched so the window follows the viewport.
+     */
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        if (rowIndex < 0 || rowIndex >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + rowIndex + " is outside of the " + rowCount + " rows in the table.");
+        }
+        int pageNumber = rowIndex / pageSize;
+        Object[][] page;
+        synchronized (pages) {
+            page = pages.get(pageNumber);
+        }
+        requestPage(pageNumber - 1);
+        requestPage(pageNumber);
+        requestPage(pageNumber + 1);
+        if (page == null) {
+            return null;
+        }
+        return page[rowIndex - pageNumber * pageSize][columnIndex];
+    }
+
+    /**
+     * Returns true if the given row is currently held in memory. Rows that are
+     * not loaded will return null from {@link #getValueAt(int, int)}.
+     */
+    public boolean isRowLoaded(int rowIndex) {
+        synchronized (pages) {
+            return pages.containsKey(rowIndex / pageSize);
+        }
+    }
+
+    /**
+     * Queues the given page to be loaded on the fetch thread if it is a valid
+     * page and is not already loaded or queued.
+     */
+    private void requestPage(final int pageNumber) {
+        if (pageNumber < 0 || pageNumber * pageSize >= rowCount) return;
+        synchronized (pages) {
+            if (pages.containsKey(pageNumber) || pendingPages.contains(pageNumber)) return;
+            pendingPages.add(pageNumber);
+        }
+        try {
+            fetchExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        final Object[][] page = fetchPage(pageNumber);
+                        synchronized (pages) {
+                            pendingPages.remove(pageNumber);
+                            pages.put(pageNumber, page);
+                        }
+                        SwingUtilities.invokeLater(new Runnable() {
+                            public void run() {
+                                int firstRow = pageNumber * pageSize;
+                                fireTableRowsUpdated(firstRow, firstRow + page.length - 1);
+                            }
+                        });
+                    } catch (SQLException e) {
+                        synchronized (pages) {
+                            pendingPages.remove(pageNumber);
+                        }
+                        lastFetchException = e;
+                        logger.error("Could not fetch rows for page " + pageNumber, e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the model was cleaned up while this page was being requested
+            synchronized (pages) {
+                pendingPages.remove(pageNumber);
+            }
+        }
+    }
+
+    /**
+     * Reads the rows of the given page out of the result set. This must only
+     * be called from the fetch thread.
+     */
+    private Object[][] fetchPage(int pageNumber) throws SQLException {
+        int firstRow = pageNumber * pageSize;
+        int rowsInPage = Math.min(pageSize, rowCount - firstRow);
+        Object[][] page = new Object[rowsInPage][];
+        if (!rs.absolute(firstRow + 1)) {
+            throw new SQLException("Could not move to row " + (firstRow + 1) + " of the result set.");
+        }
+        for (int i = 0; i < rowsInPage; i++) {
+            Object[] row = new Object[columnNames.length];
+            for (int j = 0; j < row.length; j++) {
+                row[j] = rs.getObject(j + 1);
+            }
+            page[i] = row;
+            if (i + 1 < rowsInPage && !rs.next()) {
+                throw new SQLException("The result set ended at row " + (firstRow + i + 1) +
+                        " but " + rowCount + " rows were expected.");
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Drops every page that is not adjacent to the given row. This can be used
+     * when the view jumps a long way to free the memory of the old window
+     * right away instead of waiting for it to be evicted.
+     */
+    public void trimToRow(int rowIndex) {
+        int pageNumber = rowIndex / pageSize;
+        synchronized (pages) {
+            for (Iterator<Integer> it = pages.keySet().iterator(); it.hasNext(); ) {
+                if (Math.abs(it.next() - pageNumber) > 1) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of pages currently held in memory.
+     */
+    public int getLoadedPageCount() {
+        synchronized (pages) {
+            return pages.size();
+        }
+    }
+
+    /**
+     * Returns the last exception thrown when fetching a page or null if all
+     * fetches have succeeded.
+     */
+    public SQLException getLastFetchException() {
+        return lastFetchException;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    @Override
+    public int findColumn(String columnName) {
+        for (int i = 0; i < columnNames.length; i++) {
+            if (columnNames[i].equals(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int columnIndex) {
+        if (columnIndex < 0 || columnIndex >= columnTypes.length) {
+            return Object.class;
+        }
+        int columnType = columnTypes[columnIndex];
+        if (columnType == Types.VARCHAR) {
+            return String.class;
+        } else if (columnType == Types.BIT || columnType == Types.INTEGER || columnType == Types.SMALLINT || columnType == Types.TINYINT) {
+            return Integer.class;
+        } else if (columnType == Types.DECIMAL || columnType == Types.DOUBLE || columnType == Types.NUMERIC) {
+            return Double.class;
+        } else if (columnType == Types.FLOAT) {
+            return Float.class;
+        }
+        return Object.class;
+    }
+
+    /**
+     * Stops the fetch thread and releases all of the rows in memory. The
+     * result set is not closed as it is owned by the caller.
+     */
+    public void cleanup() {
+        fetchExecutor.shutdownNow();
+        synchronized (pages) {
+            pages.clear();
+            pendingPages.clear();
+        }
+    }
+}
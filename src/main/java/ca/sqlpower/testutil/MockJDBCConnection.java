@@ -118,7 +118,9 @@ public class MockJDBCConnection implements Connection {
      */
     MockJDBCResultSet resultsForQuery(String sql) {
         for (Map.Entry<String, MockJDBCResultSet> entry : resultSets.entrySet()) {
-            System.out.println("Comparing \""+sql+"\" against \""+entry.getKey()+"\"");
+            if (logger.isDebugEnabled()) {
+                logger.debug("Comparing \""+sql+"\" against \""+entry.getKey()+"\"");
+            }
             Pattern p = Pattern.compile(entry.getKey(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
             if (p.matcher(sql).matches()) {
                 return entry.getValue();
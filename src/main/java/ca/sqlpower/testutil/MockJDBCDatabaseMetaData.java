@@ -878,7 +878,7 @@ public class MockJDBCDatabaseMetaData implements DatabaseMetaData {
         		.getProperty("autoincrement_cols").split(",");
         		autoIncCols.addAll(Arrays.asList(colList));
         	}
-        	System.err.println("autoincCols=" + autoIncCols);
+        	logger.debug("autoincCols=" + autoIncCols);
         	int colNo = 1;
         	for (String colName : Arrays.asList(columnList.split(","))) {
         		rs.addRow();
@@ -904,12 +904,9 @@ public class MockJDBCDatabaseMetaData implements DatabaseMetaData {
         		rs.updateObject(20, null);
         		rs.updateObject(21, null);
         		rs.updateObject(22, null);
-        		System.err.println(" checking " + fqTableName + "." + colName);
         		if (autoIncCols.contains(fqTableName + "." + colName)) {
-        			System.err.println("  FOUND");
         			rs.updateObject(23, "YES");
         		} else {
-        			System.err.println("  NOT FOUND");
         			rs.updateObject(23, "NO");
         		}
         		colNo++;
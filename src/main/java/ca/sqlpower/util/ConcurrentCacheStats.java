@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Cache statistics that can be updated from many threads at once without
+ * locking. The counters of the superclass are not used.
+ */
+@ThreadSafe
+public class ConcurrentCacheStats extends CacheStats {
+
+	private final AtomicInteger inserted = new AtomicInteger();
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger misses = new AtomicInteger();
+	private final AtomicInteger evicted = new AtomicInteger();
+
+	public void itemsInserted(int count) {
+		inserted.addAndGet(count);
+	}
+
+	public void cacheHit() {
+		hits.incrementAndGet();
+	}
+
+	public void cacheMiss() {
+		misses.incrementAndGet();
+	}
+
+	public void itemEvicted() {
+		evicted.incrementAndGet();
+	}
+
+	@Override
+	public void cacheFlush() {
+		inserted.set(0);
+		hits.set(0);
+		misses.set(0);
+		evicted.set(0);
+	}
+
+	@Override
+	public int getTotalInserted() {
+		return inserted.get();
+	}
+
+	@Override
+	public int getTotalRequested() {
+		return hits.get() + misses.get();
+	}
+
+	@Override
+	public int getTotalHits() {
+		return hits.get();
+	}
+
+	@Override
+	public int getTotalMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the number of items removed to keep the cache within its
+	 * bounds since the last flush.
+	 */
+	public int getTotalEvicted() {
+		return evicted.get();
+	}
+
+	@Override
+	public double getHitRatio() {
+		int h = hits.get();
+		int requested = h + misses.get();
+		if (h == 0) return 0.0;
+		else return ((double) h) / ((double) requested);
+	}
+}
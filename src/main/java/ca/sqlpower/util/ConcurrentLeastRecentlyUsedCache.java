@@ -0,0 +1,415 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * An object cache that employs the Least Recently Used disposal policy and
+ * can be shared by many threads without wrapping it in a
+ * {@link SynchronizedCache}. The maxMembers tuning parameter is treated as a
+ * hard limit on the total weight of the items, which is their count unless a
+ * {@link Weigher} is given.
+ * <p>
+ * Lookups never block. The items are kept in a {@link ConcurrentHashMap} and
+ * each hit is recorded in a queue that is applied to the use order, a linked
+ * list with constant time moves, the next time a thread holds the eviction
+ * lock. Insertions and removals take the eviction lock, so they are
+ * serialized with each other but not with lookups. When many threads read at
+ * once some hits may not be recorded, so the order of eviction is close to
+ * but not exactly least recently used.
+ *
+ * @param <K> The cache key type
+ * @param <V> The cache value type
+ */
+@ThreadSafe
+public class ConcurrentLeastRecentlyUsedCache<K, V> extends AbstractMap<K, V> implements Cache<K, V> {
+
+	/**
+	 * Decides how much of the cache's capacity a value uses.
+	 */
+	public static interface Weigher<V> {
+
+		/**
+		 * Returns the weight of the given value, which must be at least 1.
+		 */
+		int weightOf(V value);
+	}
+
+	/**
+	 * The number of recorded hits that makes a reading thread try to apply
+	 * them to the use order.
+	 */
+	private static final int DRAIN_THRESHOLD = 64;
+
+	/**
+	 * The number of recorded hits past which new hits are dropped until the
+	 * queue is drained.
+	 */
+	private static final int MAX_PENDING_HITS = 16 * DRAIN_THRESHOLD;
+
+	/**
+	 * An item in the cache. Replacing the value of a key creates a new node.
+	 */
+	private static final class Node<K, V> {
+		final K key;
+		final V value;
+		final int weight;
+
+		@GuardedBy("evictionLock")
+		Node<K, V> prev;
+
+		@GuardedBy("evictionLock")
+		Node<K, V> next;
+
+		/**
+		 * True while this node is in the use order list.
+		 */
+		@GuardedBy("evictionLock")
+		boolean linked;
+
+		Node(K key, V value, int weight) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<K, Node<K, V>>();
+
+	private final Weigher<? super V> weigher;
+
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	/**
+	 * The least recently used node, which is evicted first.
+	 */
+	@GuardedBy("evictionLock")
+	private Node<K, V> head;
+
+	/**
+	 * The most recently used node.
+	 */
+	@GuardedBy("evictionLock")
+	private Node<K, V> tail;
+
+	/**
+	 * The total weight of the nodes in the use order list.
+	 */
+	@GuardedBy("evictionLock")
+	private long weightedSize;
+
+	private final Queue<Node<K, V>> pendingHits = new ConcurrentLinkedQueue<Node<K, V>>();
+
+	private final AtomicInteger pendingHitCount = new AtomicInteger();
+
+	private volatile int maxMembers;
+
+	private volatile long lastFlushDate = System.currentTimeMillis();
+
+	private final ConcurrentCacheStats stats = new ConcurrentCacheStats();
+
+	private transient Set<Map.Entry<K, V>> entrySet;
+
+	/**
+	 * Creates a cache that holds at most the given number of items.
+	 */
+	public ConcurrentLeastRecentlyUsedCache(int maxMembers) {
+		this(maxMembers, null);
+	}
+
+	/**
+	 * Creates a cache whose values may have a total weight of at most
+	 * maxWeight.
+	 *
+	 * @param weigher
+	 *            Gives the weight of each value. If null, every value weighs
+	 *            1.
+	 */
+	public ConcurrentLeastRecentlyUsedCache(int maxWeight, Weigher<? super V> weigher) {
+		this.maxMembers = maxWeight;
+		this.weigher = weigher;
+	}
+
+	public V get(Object key) {
+		Node<K, V> node = data.get(key);
+		if (node == null) {
+			stats.cacheMiss();
+			return null;
+		}
+		stats.cacheHit();
+		recordHit(node);
+		return node.value;
+	}
+
+	/**
+	 * Queues the hit to be applied to the use order, and applies the queue if
+	 * it has grown long and no other thread is already doing so.
+	 */
+	private void recordHit(Node<K, V> node) {
+		int pending = pendingHitCount.get();
+		if (pending < MAX_PENDING_HITS) {
+			pendingHits.add(node);
+			pending = pendingHitCount.incrementAndGet();
+		}
+		if (pending >= DRAIN_THRESHOLD && evictionLock.tryLock()) {
+			try {
+				drainHits();
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+	}
+
+	public V put(K key, V value) {
+		if (key == null || value == null) {
+			throw new NullPointerException("This cache does not allow null keys or values");
+		}
+		int weight = weigher == null ? 1 : weigher.weightOf(value);
+		if (weight < 1) {
+			throw new IllegalArgumentException("The weight of " + value + " is " + weight + " but must be at least 1");
+		}
+		Node<K, V> node = new Node<K, V>(key, value, weight);
+		Node<K, V> old = data.put(key, node);
+		stats.itemsInserted(1);
+		evictionLock.lock();
+		try {
+			drainHits();
+			if (old != null) {
+				unlink(old);
+			}
+			// A later put or remove of the same key may have finished first.
+			if (data.get(key) == node) {
+				link(node);
+			}
+			evict();
+		} finally {
+			evictionLock.unlock();
+		}
+		return old == null ? null : old.value;
+	}
+
+	public V remove(Object key) {
+		Node<K, V> node = data.remove(key);
+		if (node == null) return null;
+		evictionLock.lock();
+		try {
+			unlink(node);
+		} finally {
+			evictionLock.unlock();
+		}
+		return node.value;
+	}
+
+	public void clear() {
+		evictionLock.lock();
+		try {
+			data.clear();
+			for (Node<K, V> node = head; node != null; node = node.next) {
+				node.linked = false;
+			}
+			head = null;
+			tail = null;
+			weightedSize = 0;
+			pendingHits.clear();
+			pendingHitCount.set(0);
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public boolean containsKey(Object key) {
+		return data.containsKey(key);
+	}
+
+	public int size() {
+		return data.size();
+	}
+
+	public boolean isEmpty() {
+		return data.isEmpty();
+	}
+
+	/**
+	 * Returns the total weight of the items in the cache.
+	 */
+	public long getWeightedSize() {
+		evictionLock.lock();
+		try {
+			return weightedSize;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	@GuardedBy("evictionLock")
+	private void drainHits() {
+		Node<K, V> node;
+		while ((node = pendingHits.poll()) != null) {
+			pendingHitCount.decrementAndGet();
+			if (node.linked && node != tail) {
+				unlink(node);
+				link(node);
+			}
+		}
+	}
+
+	/**
+	 * Adds the node at the most recently used end of the use order.
+	 */
+	@GuardedBy("evictionLock")
+	private void link(Node<K, V> node) {
+		node.prev = tail;
+		node.next = null;
+		if (tail == null) {
+			head = node;
+		} else {
+			tail.next = node;
+		}
+		tail = node;
+		node.linked = true;
+		weightedSize += node.weight;
+	}
+
+	@GuardedBy("evictionLock")
+	private void unlink(Node<K, V> node) {
+		if (!node.linked) return;
+		if (node.prev == null) {
+			head = node.next;
+		} else {
+			node.prev.next = node.next;
+		}
+		if (node.next == null) {
+			tail = node.prev;
+		} else {
+			node.next.prev = node.prev;
+		}
+		node.prev = null;
+		node.next = null;
+		node.linked = false;
+		weightedSize -= node.weight;
+	}
+
+	/**
+	 * Removes the least recently used items until the cache is within its
+	 * maximum weight.
+	 */
+	@GuardedBy("evictionLock")
+	private void evict() {
+		while (weightedSize > maxMembers && head != null) {
+			Node<K, V> victim = head;
+			unlink(victim);
+			data.remove(victim.key, victim);
+			stats.itemEvicted();
+		}
+	}
+
+	/**
+	 * Sets the maximum total weight of the items, evicting items at once if
+	 * the cache is now over it.
+	 */
+	public void setMaxMembers(int argMaxMembers) {
+		maxMembers = argMaxMembers;
+		evictionLock.lock();
+		try {
+			drainHits();
+			evict();
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public int getMaxMembers() {
+		return maxMembers;
+	}
+
+	public Date getLastFlushDate() {
+		return new Date(lastFlushDate);
+	}
+
+	/**
+	 * Releases all objects in the cache and updates the last flush date.
+	 */
+	public void flush() {
+		clear();
+		stats.cacheFlush();
+		lastFlushDate = System.currentTimeMillis();
+	}
+
+	public ConcurrentCacheStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Returns a view of the items in the cache. Iterating over it does not
+	 * count as using the items.
+	 */
+	public Set<Map.Entry<K, V>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Map.Entry<K, V>>() {
+				public Iterator<Map.Entry<K, V>> iterator() {
+					final Iterator<Node<K, V>> nodes = data.values().iterator();
+					return new Iterator<Map.Entry<K, V>>() {
+						private Node<K, V> current;
+
+						public boolean hasNext() {
+							return nodes.hasNext();
+						}
+
+						public Map.Entry<K, V> next() {
+							current = nodes.next();
+							return new SimpleImmutableEntry<K, V>(current.key, current.value);
+						}
+
+						public void remove() {
+							if (current == null) {
+								throw new IllegalStateException();
+							}
+							ConcurrentLeastRecentlyUsedCache.this.remove(current.key);
+							current = null;
+						}
+					};
+				}
+
+				public int size() {
+					return data.size();
+				}
+
+				public void clear() {
+					ConcurrentLeastRecentlyUsedCache.this.clear();
+				}
+			};
+		}
+		return entrySet;
+	}
+}
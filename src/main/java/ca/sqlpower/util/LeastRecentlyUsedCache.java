@@ -1,7 +1,7 @@
 package ca.sqlpower.util;
 
-import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
 /**
  * An object cache that employs the Least Recently Used disposal
@@ -18,40 +18,56 @@ public class LeastRecentlyUsedCache extends AbstractCache implements java.io.Ser
 	}
 	
 	/**
-	 * Tracks the cache contents in order of use, most recent first.
+	 * Tracks the cache contents in order of use, least recent first.
 	 * For example, if item <code>A</code> has been used since item
-	 * <code>B</code>, the index of <code>A</code> in
-	 * <code>useOrder</code> will be less than the index of item
-	 * <code>B</code> in <code>useOrder</code>.
+	 * <code>B</code>, <code>B</code> comes before <code>A</code>
+	 * when iterating over <code>useOrder</code>. The access order of
+	 * the map moves a key to the end in constant time whenever it is
+	 * put or requested.
 	 */
-	private LinkedList useOrder=new LinkedList();
+	private LinkedHashMap useOrder=new LinkedHashMap(16, 0.75f, true);
 	
 	/**
 	 * If maxItems is exceeded by n, n &gt; 0, the n least-recently
 	 * used items in the cache will be evicted.
 	 */
 	public void itemsInserted(Object[] keys) {
-		useOrder.addAll(0, Arrays.asList(keys));
-		while (size() > maxMembers) {
-			Object evictKey = useOrder.getLast();
-			useOrder.removeLast();
-			remove(evictKey);
+		for (int i = 0; i < keys.length; i++) {
+			useOrder.put(keys[i], Boolean.TRUE);
+		}
+		Iterator it = useOrder.keySet().iterator();
+		while (size() > maxMembers && it.hasNext()) {
+			Object evictKey = it.next();
+			it.remove();
+			super.remove(evictKey);
 		}
 	}
 
 	/**
-	 * Moves the requested item's key to the front of the
-	 * <code>useOrder</code> list.
+	 * Moves the requested item's key to the most recently used end of
+	 * the <code>useOrder</code> map.
 	 */
 	public void itemRequested(Object key, boolean wasPresent) {
 		if(wasPresent) {
-			int itemIndex=useOrder.indexOf(key);
-			if (itemIndex == -1) {
+			if (useOrder.get(key) == null) {
 				throw new IllegalStateException("LRUCache.itemRequested: key '"
 												+key+"' was not found in useList");
 			}
-			useOrder.remove(itemIndex);
-			useOrder.addFirst(key);
 		}
 	}
+
+	public Object remove(Object key) {
+		useOrder.remove(key);
+		return super.remove(key);
+	}
+
+	public void clear() {
+		useOrder.clear();
+		super.clear();
+	}
+
+	public void flush() {
+		useOrder.clear();
+		super.flush();
+	}
 }
@@ -1,33 +1,160 @@
 
 package ca.sqlpower.util;
 
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Taken from http://en.wikibooks.org/wiki/Algorithm_implementation/Strings/Levenshtein_distance#Java
  * This algorithm will compute the number of characters different between two strings.
+ * <p>
+ * Only two rows of the distance matrix are kept. A threshold can be given to
+ * limit the work to the band of the matrix that can still lead to a distance
+ * within it, giving up as soon as the distance is known to exceed it.
+ * <p>
+ * An instance keeps its rows between comparisons, so comparing many strings
+ * with one instance allocates no memory per comparison. Instances are not
+ * thread safe; use one per thread.
  */
 public class LevenshteinDistance {
-	private static int minimum(int a, int b, int c) {
-		return Math.min(Math.min(a, b), c);
-	}
- 
+
+	/**
+	 * The two rows of the distance matrix, grown as longer strings are seen.
+	 */
+	private int[] previous = new int[0];
+	private int[] current = new int[0];
+
 	public static int computeLevenshteinDistance(CharSequence str1,
 			CharSequence str2) {
-		int[][] distance = new int[str1.length() + 1][str2.length() + 1];
- 
-		for (int i = 0; i <= str1.length(); i++)
-			distance[i][0] = i;
-		for (int j = 0; j <= str2.length(); j++)
-			distance[0][j] = j;
- 
-		for (int i = 1; i <= str1.length(); i++)
-			for (int j = 1; j <= str2.length(); j++)
-				distance[i][j] = minimum(
-						distance[i - 1][j] + 1,
-						distance[i][j - 1] + 1,
-						distance[i - 1][j - 1]
-								+ ((str1.charAt(i - 1) == str2.charAt(j - 1)) ? 0
-										: 1));
- 
-		return distance[str1.length()][str2.length()];
+		return new LevenshteinDistance().distance(str1, str2);
+	}
+
+	/**
+	 * Returns the distance between the two strings if it is no more than the
+	 * given threshold, or -1 if it is more.
+	 */
+	public static int computeLevenshteinDistance(CharSequence str1,
+			CharSequence str2, int threshold) {
+		return new LevenshteinDistance().distance(str1, str2, threshold);
+	}
+
+	/**
+	 * Returns the distance between the two strings.
+	 */
+	public int distance(CharSequence str1, CharSequence str2) {
+		return distance(str1, str2, Math.max(str1.length(), str2.length()));
+	}
+
+	/**
+	 * Returns the distance between the two strings if it is no more than the
+	 * given threshold, or -1 if it is more. Only the cells of the matrix within
+	 * threshold of its diagonal are computed, and the comparison stops at the
+	 * first row whose cells all exceed the threshold.
+	 */
+	public int distance(CharSequence str1, CharSequence str2, int threshold) {
+		if (threshold < 0) {
+			throw new IllegalArgumentException("Threshold must not be negative: " + threshold);
+		}
+		// The rows run along the shorter string.
+		CharSequence s = str1;
+		CharSequence t = str2;
+		if (s.length() > t.length()) {
+			s = str2;
+			t = str1;
+		}
+		int n = s.length();
+		int m = t.length();
+
+		if (m - n > threshold) return -1;
+		if (n == 0) return m;
+
+		// The distance is never more than m, and capping the threshold keeps
+		// the sentinel from overflowing.
+		threshold = Math.min(threshold, m);
+
+		// Cells outside the band hold a value above the threshold. They can
+		// only lead to other values above the threshold.
+		final int outside = threshold + 1;
+
+		int[] p = previous.length > n ? previous : new int[n + 1];
+		int[] d = current.length > n ? current : new int[n + 1];
+		int boundary = Math.min(n, threshold);
+		for (int i = 0; i <= boundary; i++) {
+			p[i] = i;
+		}
+		Arrays.fill(p, boundary + 1, n + 1, outside);
+		Arrays.fill(d, 0, n + 1, outside);
+
+		for (int j = 1; j <= m; j++) {
+			char tj = t.charAt(j - 1);
+			d[0] = j;
+			int min = Math.max(1, j - threshold);
+			int max = Math.min(n, j + threshold);
+			if (min > 1) {
+				d[min - 1] = outside;
+			}
+			int rowMin = d[0];
+			for (int i = min; i <= max; i++) {
+				if (s.charAt(i - 1) == tj) {
+					d[i] = p[i - 1];
+				} else {
+					d[i] = 1 + Math.min(Math.min(d[i - 1], p[i]), p[i - 1]);
+				}
+				rowMin = Math.min(rowMin, d[i]);
+			}
+			if (max < n) {
+				d[max + 1] = outside;
+			}
+			if (rowMin > threshold) {
+				keepRows(p, d);
+				return -1;
+			}
+			int[] swap = p;
+			p = d;
+			d = swap;
+		}
+		keepRows(p, d);
+		return p[n] <= threshold ? p[n] : -1;
+	}
+
+	private void keepRows(int[] p, int[] d) {
+		previous = p;
+		current = d;
+	}
+
+	/**
+	 * Returns the distance between every pair of strings from the two lists,
+	 * or -1 for the pairs further apart than the threshold. Entry [i][j] is the
+	 * distance between the i-th source and the j-th target.
+	 */
+	public int[][] distances(List<? extends CharSequence> sources,
+			List<? extends CharSequence> targets, int threshold) {
+		int[][] distances = new int[sources.size()][targets.size()];
+		for (int i = 0; i < sources.size(); i++) {
+			CharSequence source = sources.get(i);
+			for (int j = 0; j < targets.size(); j++) {
+				distances[i][j] = distance(source, targets.get(j), threshold);
+			}
+		}
+		return distances;
+	}
+
+	/**
+	 * Returns the candidate closest to the given string, or null if none is
+	 * within the threshold. The first of several equally close candidates is
+	 * returned. Each match found lowers the threshold for the candidates
+	 * after it, so most comparisons stop early.
+	 */
+	public <T extends CharSequence> T findClosest(CharSequence str,
+			Iterable<T> candidates, int threshold) {
+		T closest = null;
+		for (T candidate : candidates) {
+			int distance = distance(str, candidate, threshold);
+			if (distance == -1) continue;
+			closest = candidate;
+			if (distance == 0) break;
+			threshold = distance - 1;
+		}
+		return closest;
 	}
 }
@@ -1,108 +1,205 @@
 package ca.sqlpower.util;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.concurrent.GuardedBy;
 
 import org.apache.log4j.Logger;
 
 /**
  * The Scheduler class is a cron-like facility for Java.
+ *
+ * <p>Scheduled tasks are kept in a set ordered by their next run time,
+ * so adding or removing a task takes logarithmic time no matter how
+ * many tasks are scheduled.  A single scheduler thread waits for the
+ * earliest task to come due and hands it to a fixed-size pool of
+ * worker threads, so a slow task only delays the other tasks if every
+ * worker is busy.  What happens when a task comes due while its
+ * previous run is still going is decided by the task's
+ * {@link OverrunPolicy}.
  */
 public class Scheduler {
 	private static final Logger logger = Logger.getLogger(Scheduler.class);
 
 	/**
-	 * This List contains zero or more ScheduledTask objects sorted by
-	 * nextOccurrence(baseDate) with the first scheduled occurrence
-	 * at position 0 in the list.  If two or more scheduled tasks are
-	 * to occur at the same time, their order relative to each other
-	 * is random.
+	 * The number of worker threads the scheduled tasks are run on
+	 * unless {@link #setWorkerCount(int)} is called.
 	 */
-	protected static final List schedule;
-	
+	public static final int DEFAULT_WORKER_COUNT = 4;
+
 	/**
-	 * This is the base date used for sorting the schedule by next
-	 * occurrence.  It is usually the most recently executed event.
-	 *
-	 * <p>This value should only be changed by threads that hold a
-	 * lock on the schedule object.
+	 * What to do when a task comes due while it is still running
+	 * from a previous occurrence.
+	 */
+	public static enum OverrunPolicy {
+
+		/**
+		 * Drop the occurrence that came due.
+		 */
+		SKIP,
+
+		/**
+		 * Run the task once more as soon as the current run
+		 * finishes, no matter how many occurrences came due in the
+		 * meantime.
+		 */
+		COALESCE,
+
+		/**
+		 * Run the task again right away, alongside the current run.
+		 * The task must be safe to run on several threads at once.
+		 */
+		CONCURRENT
+	}
+
+	/**
+	 * This set contains zero or more ScheduledTask objects sorted by
+	 * their next run time with the first scheduled occurrence first.
+	 * If two or more scheduled tasks are to occur at the same time,
+	 * the one scheduled first comes first.  A task that has come due
+	 * is taken out of the set and put back with its new run time.
+	 */
+	@GuardedBy("scheduleLock")
+	protected static final SortedSet<ScheduledTask> schedule;
+
+	protected static final ReentrantLock scheduleLock = new ReentrantLock();
+
+	/**
+	 * Signalled when a task is added at the head of the schedule, so
+	 * the scheduler thread can reconsider its sleeping time.
+	 */
+	private static final Condition scheduleChanged = scheduleLock.newCondition();
+
+	/**
+	 * This is the scheduled time of the most recently dispatched
+	 * occurrence of any task.
 	 */
-	protected static Date baseDate;
+	protected static volatile Date baseDate;
 
 	/**
 	 * This thread is created when the Scheduler class is loaded.  It
-	 * is responsible for running the ScheduledTask events at the
-	 * correct time and rescheduling them as necessary.  It also gets
-	 * notified when a scheduled task is added to or removed from the
-	 * schedule list.
+	 * is responsible for handing the ScheduledTask events to the
+	 * workers at the correct time and rescheduling them as necessary.
 	 */
 	protected static final Thread schedulerThread;
 
+	/**
+	 * The threads the scheduled tasks run on.
+	 */
+	protected static final ThreadPoolExecutor workers;
+
+	/**
+	 * Breaks ties between tasks that are due at the same time.
+	 */
+	private static final AtomicLong sequence = new AtomicLong();
+
 	/**
 	 * No-op constructor.  This class is meant to be used statically.
 	 */
 	protected Scheduler() {}
 
 	static {
-		schedule = new LinkedList();
+		schedule = new TreeSet<ScheduledTask>();
 		baseDate = new Date();
+		final AtomicInteger workerNumber = new AtomicInteger();
+		workers = new ThreadPoolExecutor(DEFAULT_WORKER_COUNT, DEFAULT_WORKER_COUNT,
+				60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "SQLPower Cron worker " + workerNumber.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
 		schedulerThread = new SchedulerThread();
 		schedulerThread.start();
 	}
 
 	/**
-	 * Incorporates the given Runnable into the list of scheduled
-	 * tasks, then wakes up the scheduler thread in case it needs to
-	 * reconsider its sleeping time.
+	 * Incorporates the given Runnable into the set of scheduled
+	 * tasks.  Occurrences that come due while the task is still
+	 * running are coalesced into one more run.
+	 *
+	 * @return The scheduled task, which can be passed to
+	 * {@link #unscheduleTask(ScheduledTask)}, or null if the
+	 * recurrence has no more occurrences.
 	 */
-	public static void scheduleTask(Recurrence recurrence, Runnable task) {
-		synchronized (schedule) {
-			Date firstOccurrence = recurrence.nextOccurrence(baseDate);
-			if (firstOccurrence == null) {
-				logger.debug("Not scheduling new task because it has no more occurrences");
-				return;
-			}
+	public static ScheduledTask scheduleTask(Recurrence recurrence, Runnable task) {
+		return scheduleTask(recurrence, task, OverrunPolicy.COALESCE);
+	}
 
-			if (firstOccurrence.getTime() < System.currentTimeMillis()) {
-				logger.debug("Newly scheduled task occurs after base date but before now."
-							 +"  Updating base date.");
-				baseDate = new Date();
+	/**
+	 * Incorporates the given Runnable into the set of scheduled
+	 * tasks, then wakes up the scheduler thread if the task is now
+	 * the first one due.
+	 *
+	 * @return The scheduled task, which can be passed to
+	 * {@link #unscheduleTask(ScheduledTask)}, or null if the
+	 * recurrence has no more occurrences.
+	 */
+	public static ScheduledTask scheduleTask(Recurrence recurrence, Runnable task, OverrunPolicy overrunPolicy) {
+		Date firstOccurrence = recurrence.nextOccurrence(new Date());
+		if (firstOccurrence == null) {
+			logger.debug("Not scheduling new task because it has no more occurrences");
+			return null;
+		}
+		ScheduledTask st = new ScheduledTask(recurrence, task, overrunPolicy);
+		st.nextRunTime = firstOccurrence.getTime();
+		scheduleLock.lock();
+		try {
+			schedule.add(st);
+			if (schedule.first() == st) {
+				scheduleChanged.signal();
 			}
-			schedule.add(0, new ScheduledTask(recurrence, task));
-			Collections.sort(schedule);
-			schedulerThread.interrupt();
+		} finally {
+			scheduleLock.unlock();
 		}
+		return st;
 	}
 
 	/**
-	 * Removes the given Runnable task from the schedule.  Uses
-	 * straight pointer comparison to find the task to remove, so
-	 * you'll have to pass in a reference that you got from {@link
-	 * #getScheduledTasks()}.
+	 * Removes the given task from the schedule.  A run that is in
+	 * progress is allowed to finish but the task will not run again.
 	 *
 	 * @return The removed task, or null if the given task wasn't
-	 * found in the list.
+	 * scheduled.
 	 */
 	public static ScheduledTask unscheduleTask(ScheduledTask task) {
-		synchronized (schedule) {
-			Iterator it = schedule.iterator();
-			while (it.hasNext()) {
-				ScheduledTask st = (ScheduledTask) it.next();
-				if (st.task == task) {
-					it.remove();
-					return task;
-				}
-			}
-			return null;
+		scheduleLock.lock();
+		try {
+			if (task.cancelled) return null;
+			task.cancelled = true;
+			schedule.remove(task);
+			return task;
+		} finally {
+			scheduleLock.unlock();
 		}
 	}
 
-	public static List getScheduledTasks() {
-		synchronized (schedule) {
-			return Collections.unmodifiableList(schedule);
+	/**
+	 * Returns the scheduled tasks in the order they will next run.
+	 * The list is a copy and does not change as tasks run.
+	 */
+	public static List<ScheduledTask> getScheduledTasks() {
+		scheduleLock.lock();
+		try {
+			return Collections.unmodifiableList(new ArrayList<ScheduledTask>(schedule));
+		} finally {
+			scheduleLock.unlock();
 		}
 	}
 
@@ -110,6 +207,139 @@ public class Scheduler {
 		return baseDate;
 	}
 
+	/**
+	 * Sets the number of threads the scheduled tasks run on.
+	 */
+	public static void setWorkerCount(int count) {
+		if (count < 1) {
+			throw new IllegalArgumentException("At least one worker is required but " + count + " were requested.");
+		}
+		if (count > workers.getMaximumPoolSize()) {
+			workers.setMaximumPoolSize(count);
+			workers.setCorePoolSize(count);
+		} else {
+			workers.setCorePoolSize(count);
+			workers.setMaximumPoolSize(count);
+		}
+	}
+
+	public static int getWorkerCount() {
+		return workers.getMaximumPoolSize();
+	}
+
+	/**
+	 * Takes the first task out of the schedule once it is due.  Blocks
+	 * until a task is due.
+	 */
+	private static ScheduledTask takeDueTask() throws InterruptedException {
+		scheduleLock.lock();
+		try {
+			for (;;) {
+				if (schedule.isEmpty()) {
+					logger.debug("Sleeping indefinitely");
+					scheduleChanged.await();
+				} else {
+					ScheduledTask first = schedule.first();
+					long delay = first.nextRunTime - System.currentTimeMillis();
+					if (delay <= 0) {
+						schedule.remove(first);
+						return first;
+					}
+					scheduleChanged.await(delay, TimeUnit.MILLISECONDS);
+				}
+			}
+		} finally {
+			scheduleLock.unlock();
+		}
+	}
+
+	/**
+	 * Puts the task back in the schedule at its next occurrence after
+	 * the given time, unless it has been unscheduled or has no more
+	 * occurrences.
+	 */
+	private static void reschedule(ScheduledTask task, long after) {
+		Date next = task.recurrence.nextOccurrence(new Date(after));
+		scheduleLock.lock();
+		try {
+			if (task.cancelled) return;
+			if (next == null) {
+				logger.debug("Task has no more occurrences; removing it from the schedule");
+				task.cancelled = true;
+				return;
+			}
+			task.nextRunTime = next.getTime();
+			schedule.add(task);
+		} finally {
+			scheduleLock.unlock();
+		}
+	}
+
+	/**
+	 * Runs the given occurrence of the task on a worker, or applies the
+	 * task's overrun policy if it is still running.
+	 */
+	private static void dispatch(ScheduledTask task, long scheduledTime) {
+		synchronized (task) {
+			if (task.running > 0 && task.overrunPolicy != OverrunPolicy.CONCURRENT) {
+				if (task.overrunPolicy == OverrunPolicy.COALESCE && task.pendingRunTime < 0) {
+					task.pendingRunTime = scheduledTime;
+				} else {
+					task.skippedCount++;
+				}
+				return;
+			}
+			task.running++;
+		}
+		submit(task, scheduledTime);
+	}
+
+	private static void submit(final ScheduledTask task, final long scheduledTime) {
+		try {
+			workers.execute(new Runnable() {
+				public void run() {
+					runTask(task, scheduledTime);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			logger.error("Could not start scheduled task", e);
+			synchronized (task) {
+				task.running--;
+			}
+		}
+	}
+
+	/**
+	 * Runs the task on the current worker thread and records how late
+	 * and how long the run was.  The run is finished off even if the
+	 * task throws an Error, so the task is not left looking like it
+	 * is still running.
+	 */
+	private static void runTask(ScheduledTask task, long scheduledTime) {
+		long start = System.currentTimeMillis();
+		try {
+			logger.debug("Starting to run scheduled task");
+			task.task.run();
+		} catch (Exception e) {
+			logger.error("Scheduled task threw an exception", e);
+		} finally {
+			long end = System.currentTimeMillis();
+			long pending;
+			synchronized (task) {
+				task.runCompleted(start - scheduledTime, end - start);
+				pending = task.pendingRunTime;
+				task.pendingRunTime = -1;
+				if (pending < 0 || task.cancelled) {
+					task.running--;
+					pending = -1;
+				}
+			}
+			if (pending >= 0) {
+				submit(task, pending);
+			}
+		}
+	}
+
 	protected static class SchedulerThread extends Thread {
 
 		public SchedulerThread() {
@@ -118,140 +348,184 @@ public class Scheduler {
 		}
 
 		public void run() {
-			Date wakeup = null;
-			ScheduledTask nextTask = null;
-
 			for (;;) {
 				try {
-					synchronized (schedule) {
-						if (!schedule.isEmpty()) {
-							nextTask = (ScheduledTask) schedule.get(0);
-							wakeup = nextTask.recurrence.nextOccurrence(baseDate);
-						}
-					}
-					
-					// determine how long to sleep (0 means sleep until interrupted)
-					long sleepMillis = 0;
-					if (wakeup != null) {
-						sleepMillis = wakeup.getTime() - System.currentTimeMillis();
-					}
-					
-					logger.debug("Sleeping "+(wakeup==null?"indefinitely":wakeup.toString()));
-					
-					try {
-						join(sleepMillis);  // not using Thread.sleep() because 0 means forever
-					} catch (InterruptedException e) {
-						logger.debug("Received an interrupt while sleeping");
-					}
-					
-					// remember when we woke up
-					wakeup = new Date();
-					
-					// now that we're awake, we will perform all tasks that were due
-					// at the actual wakeup time
-					// XXX: schedule remains locked during task execution!
-					synchronized (schedule) {
-						if (!schedule.isEmpty()) {
-							nextTask = (ScheduledTask) schedule.get(0);
-							Date nextTime = nextTask.recurrence.nextOccurrence();
-							while (nextTime != null
-								   && nextTime.getTime() <= System.currentTimeMillis()) {
-								try {
-									logger.debug("Starting to run scheduled task");
-									nextTask.task.run();
-								} catch (Exception e) {
-									logger.error("Scheduled task threw an exception", e);
-								}
-								baseDate = nextTime;
-								Collections.sort(schedule);
-								nextTask = (ScheduledTask) schedule.get(0);
-								nextTime = nextTask.recurrence.nextOccurrence();
-							}
-						}
-					}
+					ScheduledTask task = takeDueTask();
+					long scheduledTime = task.nextRunTime;
+					baseDate = new Date(scheduledTime);
+					reschedule(task, Math.max(scheduledTime, System.currentTimeMillis()));
+					dispatch(task, scheduledTime);
+				} catch (InterruptedException e) {
+					logger.debug("Received an interrupt while sleeping");
 				} catch (Exception e) {
 					logger.error("Unexpected exception in scheduler thread", e);
-					return; // XXX: should remove this in production!
-				} finally {
-					logger.error("SchedulerThread.run() is exiting!");
 				}
 			}
 		}
 	}
 
 	/**
-	 * A container for the objects that represent a scheduled task.
-	 * Comparisons of objects of this type are based on the
-	 * recurrence's nextOccurrence() after the Scheduler's current
-	 * base date.
+	 * A container for the objects that represent a scheduled task,
+	 * along with the lag and execution time of its runs.  The lag of
+	 * a run is the time from when it was scheduled to when it started.
+	 * Comparisons of objects of this type are based on the time they
+	 * are next scheduled to run.
 	 */
-	public static class ScheduledTask {
-		public Recurrence recurrence;
-		public Runnable task;
+	public static class ScheduledTask implements Comparable<ScheduledTask> {
+		public final Recurrence recurrence;
+		public final Runnable task;
+		private final OverrunPolicy overrunPolicy;
+		private final long sequenceNumber = sequence.incrementAndGet();
+
+		/**
+		 * The time in milliseconds this task is next due.  Only
+		 * changed while the task is out of the schedule.
+		 */
+		@GuardedBy("scheduleLock")
+		private long nextRunTime;
+
+		private volatile boolean cancelled;
+
+		/**
+		 * The number of runs of this task in progress.
+		 */
+		@GuardedBy("this")
+		private int running;
+
+		/**
+		 * The scheduled time of an occurrence held back by the
+		 * {@link OverrunPolicy#COALESCE} policy, or -1 if there is none.
+		 */
+		@GuardedBy("this")
+		private long pendingRunTime = -1;
+
+		@GuardedBy("this")
+		private int runCount;
+
+		@GuardedBy("this")
+		private int skippedCount;
+
+		@GuardedBy("this")
+		private long lastLag;
+
+		@GuardedBy("this")
+		private long maxLag;
+
+		@GuardedBy("this")
+		private long totalLag;
+
+		@GuardedBy("this")
+		private long lastExecutionTime;
+
+		@GuardedBy("this")
+		private long maxExecutionTime;
+
+		@GuardedBy("this")
+		private long totalExecutionTime;
 
 		public ScheduledTask(Recurrence recurrence, Runnable task) {
+			this(recurrence, task, OverrunPolicy.COALESCE);
+		}
+
+		public ScheduledTask(Recurrence recurrence, Runnable task, OverrunPolicy overrunPolicy) {
 			this.recurrence = recurrence;
 			this.task = task;
+			this.overrunPolicy = overrunPolicy;
+		}
+
+		private synchronized void runCompleted(long lag, long executionTime) {
+			runCount++;
+			lastLag = lag;
+			maxLag = Math.max(maxLag, lag);
+			totalLag += lag;
+			lastExecutionTime = executionTime;
+			maxExecutionTime = Math.max(maxExecutionTime, executionTime);
+			totalExecutionTime += executionTime;
+		}
+
+		public OverrunPolicy getOverrunPolicy() {
+			return overrunPolicy;
 		}
 
 		/**
-		 * Compares this ScheduledTask to the other given task.  The
-		 * comparison is based on the return value of the recurrence's
-		 * nextOccurrence(Scheduler.baseDate).  If other is not an instance of
-		 * ScheduledTask, you will get a ClassCastException.
-		 *
-		 * <p>A null nextOccurrence (meaning the task has no more
-		 * scheduled occurrences) sorts to the end (infinitely far in
-		 * the future).  This helps with pruning the schedule because
-		 * after sorting all the expired tasks will be grouped at the
-		 * end.
+		 * Returns the time this task is next scheduled to run.
 		 */
-		public int compareTo(Object other) {
-			ScheduledTask otherTask = (ScheduledTask) other;
-			Date thisNextOccurrence = this.recurrence.nextOccurrence(baseDate);
-			Date otherNextOccurrence = otherTask.recurrence.nextOccurrence(baseDate);
-			if (thisNextOccurrence == null && otherNextOccurrence == null) {
-				return 0;
-			} else if (thisNextOccurrence == null) {
-				return 1;
-			} else if (otherNextOccurrence == null) {
-				return -1;
-			} else {
-				return (int) (thisNextOccurrence.getTime() - otherNextOccurrence.getTime());
+		public Date getNextRunDate() {
+			scheduleLock.lock();
+			try {
+				return new Date(nextRunTime);
+			} finally {
+				scheduleLock.unlock();
 			}
 		}
 
+		public synchronized int getRunCount() {
+			return runCount;
+		}
+
 		/**
-		 * Tells if two scheduled tasks will occur next at exactly the
-		 * same time.  Warning: this method was implemented so equals
-		 * could be consistent with compareTo, but it is not all that
-		 * useful in reality.  Two different scheduled tasks will be
-		 * considered equal if their next occurrences coincide.
+		 * Returns the number of occurrences dropped because the task
+		 * was still running.
 		 */
-		@Override
-		public boolean equals(Object other) {
-			if (other == null) {
-				return false;
+		public synchronized int getSkippedCount() {
+			return skippedCount;
+		}
+
+		public synchronized long getLastLag() {
+			return lastLag;
+		}
+
+		public synchronized long getMaxLag() {
+			return maxLag;
+		}
+
+		/**
+		 * Returns the average lag in milliseconds of the completed
+		 * runs, or 0 if the task has not run.
+		 */
+		public synchronized double getAverageLag() {
+			if (runCount == 0) return 0;
+			return (double) totalLag / runCount;
+		}
+
+		public synchronized long getLastExecutionTime() {
+			return lastExecutionTime;
+		}
+
+		public synchronized long getMaxExecutionTime() {
+			return maxExecutionTime;
+		}
+
+		/**
+		 * Returns the average time in milliseconds a run took, or 0 if
+		 * the task has not run.
+		 */
+		public synchronized double getAverageExecutionTime() {
+			if (runCount == 0) return 0;
+			return (double) totalExecutionTime / runCount;
+		}
+
+		/**
+		 * Compares this ScheduledTask to the other given task by the
+		 * time each is next scheduled to run.  Tasks due at the same
+		 * time are ordered by when they were created.
+		 */
+		public int compareTo(ScheduledTask other) {
+			if (nextRunTime != other.nextRunTime) {
+				return nextRunTime < other.nextRunTime ? -1 : 1;
 			}
-			ScheduledTask otherTask = (ScheduledTask) other;
-			Date thisNextOccurrence = this.recurrence.nextOccurrence(baseDate);
-			Date otherNextOccurrence = otherTask.recurrence.nextOccurrence(baseDate);
-			if (thisNextOccurrence == null && otherNextOccurrence == null) {
-				return true;
-			} else if (thisNextOccurrence == null) {
-				return false;
-			} else if (otherNextOccurrence == null) {
-				return false;
-			} else {
-				return thisNextOccurrence.getTime() == otherNextOccurrence.getTime();
+			if (sequenceNumber != other.sequenceNumber) {
+				return sequenceNumber < other.sequenceNumber ? -1 : 1;
 			}
+			return 0;
 		}
-		
+
 		@Override
-		public int hashCode() {
-			int result = 17;
-			result = 31 * result + this.recurrence.nextOccurrence(baseDate).hashCode();
-			return result;
+		public synchronized String toString() {
+			return "runs=" + runCount + ", skipped=" + skippedCount +
+				", lastLag=" + lastLag + "ms, maxLag=" + maxLag +
+				"ms, lastExecutionTime=" + lastExecutionTime +
+				"ms, maxExecutionTime=" + maxExecutionTime + "ms";
 		}
 	}
 }
@@ -19,17 +19,44 @@
 
 package ca.sqlpower.util;
 
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 /**
  * The StreamCopier takes any InputStream and reads from it continuously,
- * copying each byte to a given output stream until it reaches end-of-file on
+ * copying its bytes to a given output stream until it reaches end-of-file on
  * the input stream.
+ * <p>
+ * Bytes are copied in blocks of up to {@link #BUFFER_SIZE} bytes, each block
+ * being written as soon as the input stream makes it available. When both
+ * streams are file streams the copy is done by the file system through
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * instead.
+ * <p>
+ * The number of bytes copied so far is available from
+ * {@link #getBytesCopied()}, and a copy can be stopped early by calling
+ * {@link #setCancelled(boolean)}. Cancelling is cooperative: the copier
+ * notices it between blocks, so a read that is blocked waiting for input
+ * is not interrupted.
  */
 public class StreamCopier extends Thread {
 	
+	/**
+	 * The size of the buffer used to copy between streams that are not both
+	 * file streams.
+	 */
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The most bytes handed to a single transferTo call between file streams.
+	 * Keeps the copier responsive to cancellation during large copies.
+	 */
+	private static final long TRANSFER_SIZE = 8L * 1024 * 1024;
+	
 	/**
 	 * The input stream whose bytes are being collected.
 	 */
@@ -46,6 +73,18 @@ public class StreamCopier extends Thread {
 	private boolean eof = false;
 	
 	private final boolean closeOutputStream;
+
+	/**
+	 * The number of bytes written to the output stream so far. Only the
+	 * copying thread updates this.
+	 */
+	private volatile long bytesCopied;
+
+	/**
+	 * Set to true to make the copier stop at the end of the block it is
+	 * copying.
+	 */
+	private volatile boolean cancelled;
 	
 	/**
 	 * Creates a new StreamCopier that monitors the given input stream and
@@ -60,7 +99,7 @@ public class StreamCopier extends Thread {
 	 *            The stream to write to.
 	 * @param closeOutputStream
 	 *            Indicates whether the output stream will be closed when EOF is
-	 *            encountered on the input stream.
+	 *            encountered on the input stream or the copy is cancelled.
 	 */
 	public StreamCopier(InputStream in, OutputStream out, boolean closeOutputStream) {
 		this.in = in;
@@ -69,21 +108,28 @@ public class StreamCopier extends Thread {
 	}
 
 	/**
-	 * Enters the main loop, stopping only when EOF is reached on the input stream
-	 * or there is an IO Exception.  Remember that if you call this method directly,
-	 * this will happen on the calling thread.  You probably want to call start()
-	 * instead, which will invoke this run() method on a new thread.
+	 * Enters the main loop, stopping only when EOF is reached on the input stream,
+	 * the copy is cancelled or there is an IO Exception.  Remember that if you call
+	 * this method directly, this will happen on the calling thread.  You probably
+	 * want to call start() instead, which will invoke this run() method on a new
+	 * thread.
 	 */
 	public void run() {
 		try {
-			int ch;
-			while ((ch = in.read()) != -1) {
+			if (in instanceof FileInputStream && out instanceof FileOutputStream) {
+				transferFileChannels(((FileInputStream) in).getChannel(), 
+						((FileOutputStream) out).getChannel());
+			}
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int count;
+			while (!cancelled && (count = in.read(buffer)) != -1) {
 				synchronized (this) {
-					out.write(ch);
+					out.write(buffer, 0, count);
 				}
+				bytesCopied += count;
 			}
 			synchronized (this) {
-				eof = true;
+				eof = !cancelled;
 				if (closeOutputStream) {
 					out.close();
 				}
@@ -92,8 +138,51 @@ public class StreamCopier extends Thread {
 			ioe.printStackTrace();
 		}
 	}
+
+	/**
+	 * Copies the rest of the input file to the output file with the file
+	 * system's bulk transfer. Stops early if the copy is cancelled, and does
+	 * nothing if the input channel does not report a size, as is the case for
+	 * pipes. Any bytes this leaves behind are copied by the buffered loop in
+	 * {@link #run()}, which also detects EOF.
+	 */
+	private void transferFileChannels(FileChannel inChannel, FileChannel outChannel) 
+			throws IOException {
+		long position = inChannel.position();
+		long size = inChannel.size();
+		while (!cancelled && position < size) {
+			long count;
+			synchronized (this) {
+				count = inChannel.transferTo(position, Math.min(TRANSFER_SIZE, size - position), outChannel);
+			}
+			if (count <= 0) break;
+			position += count;
+			inChannel.position(position);
+			bytesCopied += count;
+		}
+	}
 	
 	public synchronized boolean eofEncountered() {
 		return eof;
 	}
+
+	/**
+	 * Returns the number of bytes copied to the output stream so far.
+	 */
+	public long getBytesCopied() {
+		return bytesCopied;
+	}
+
+	/**
+	 * Asks this copier to stop. The copier stops once the block it is copying
+	 * has been written, without reaching EOF. Setting this back to false has
+	 * no effect once the copier has stopped.
+	 */
+	public void setCancelled(boolean cancelled) {
+		this.cancelled = cancelled;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
 }
@@ -36,9 +36,9 @@ import java.util.Random;
  * efficient algorithms use the same amount of I/O (a sequential scan of the input),
  * but significantly less CPU time.  The more efficient algorithms are also
  * significantly more complicated, and require some experimentation with threshold
- * values to yield maximum benefit.  If you choose to implement Algorithm Z,
- * and testing shows it to be faster, let us know and we'll add it to the
- * library.
+ * values to yield maximum benefit.  Algorithm Z is implemented by
+ * {@link VitterReservoir}, which also skips unwanted records in runs instead
+ * of one at a time; prefer it for large data sources.
  */
 public class BasicReservoir<T> implements Reservoir<T> {
 
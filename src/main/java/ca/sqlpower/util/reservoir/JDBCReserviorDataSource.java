@@ -32,6 +32,10 @@ import java.sql.Statement;
  * however that is not possible on all database platforms.  If it is possible
  * to skip rows on your platform, but this class isn't achieving that behaviour,
  * please send us a patch that makes it work!
+ * <p>
+ * Asking for one row at a time means one round trip per row on most drivers.
+ * For large tables, {@link StreamingJDBCReservoirDataSource} is usually much
+ * faster.
  */
 public class JDBCReserviorDataSource implements ReservoirDataSource<Object[]> {
 
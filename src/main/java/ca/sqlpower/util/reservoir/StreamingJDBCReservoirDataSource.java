@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.util.reservoir;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A reservoir data source that reads the results of an SQL query through a
+ * forward-only cursor with a large fetch size. Unlike
+ * {@link JDBCReserviorDataSource}, which asks for one row per round trip so
+ * that it can scroll past skipped rows, this data source lets the driver
+ * stream rows in batches and skips rows by reading past them on the client.
+ * Every row crosses the network, but only once per fetch, so this is the
+ * faster choice on drivers that can't skip rows on the server (which is most
+ * of them).
+ * <p>
+ * The data source reads one row ahead so that {@link #hasNext()} does not
+ * need a scrollable cursor. Call {@link #close()} when done with it.
+ */
+public class StreamingJDBCReservoirDataSource implements ReservoirDataSource<Object[]> {
+
+    /**
+     * The fetch size used when none is given.
+     */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private final Statement stmt;
+    private final ResultSet rs;
+    private final int colCount;
+
+    /**
+     * True if the cursor is on a row that has not been read or skipped yet.
+     */
+    private boolean onRow;
+
+    /**
+     * The number of rows read or skipped so far.
+     */
+    private int rowCount;
+
+    public StreamingJDBCReservoirDataSource(Connection con, String query) throws SQLException {
+        this(con, query, DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * @param con
+     *            The connection to use. WARNING: auto-commit will be turned
+     *            off for this connection, as some drivers (PostgreSQL for one)
+     *            only honour the fetch size inside a transaction. If you want
+     *            auto-commit on, turn it back on when you're finished with
+     *            this reservoir data source.
+     * @param query
+     *            The query to execute
+     * @param fetchSize
+     *            The number of rows to ask the driver for in each round trip.
+     *            Some drivers need a special value here to stream at all (the
+     *            MySQL driver wants {@link Integer#MIN_VALUE}).
+     * @throws SQLException
+     *             if there is a problem reading the data from the database.
+     */
+    public StreamingJDBCReservoirDataSource(Connection con, String query, int fetchSize) throws SQLException {
+        con.setAutoCommit(false);
+        stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        try {
+            stmt.setFetchSize(fetchSize);
+            rs = stmt.executeQuery(query);
+            colCount = rs.getMetaData().getColumnCount();
+            onRow = rs.next();
+        } catch (SQLException e) {
+            stmt.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The element type is an array: the column values of a row returned by the query.
+     */
+    public Class<Object[]> getElementType() {
+        return Object[].class;
+    }
+
+    public boolean hasNext() {
+        return onRow;
+    }
+
+    public Object[] readNextRecord() throws ReservoirDataException {
+        if (!onRow) throw new ReservoirDataException("Attempted to read past last record");
+        try {
+            Object[] rowValues = new Object[colCount];
+            for (int i = 0; i < colCount; i++) {
+                rowValues[i] = rs.getObject(i + 1);
+            }
+            rowCount++;
+            onRow = rs.next();
+            return rowValues;
+        } catch (SQLException e) {
+            throw new ReservoirDataException(e);
+        }
+    }
+
+    public void skipRecords(int count) throws ReservoirDataException {
+        try {
+            for (int i = 0; i < count && onRow; i++) {
+                rowCount++;
+                onRow = rs.next();
+            }
+        } catch (SQLException e) {
+            throw new ReservoirDataException(e);
+        }
+    }
+
+    /**
+     * Returns the number of rows read or skipped so far. Once
+     * {@link #hasNext()} has returned false, this will be the total number of
+     * rows that were returned by the query.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * This is exposed as package-private so that the tests can examine
+     * the statement settings.
+     */
+    Statement getStatement() {
+        return stmt;
+    }
+
+    /**
+     * Closes the query's result set and statement.
+     */
+    public void close() throws SQLException {
+        try {
+            rs.close();
+        } finally {
+            stmt.close();
+        }
+    }
+}
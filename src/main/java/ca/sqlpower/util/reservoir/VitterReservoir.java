@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.util.reservoir;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Implementation of Reservoir using <i>Algorithm Z</i> from "<a
+ * href="http://www.cs.duke.edu/~jsv/Papers/Vit85.Reservoir.pdf">Random
+ * Sampling with a Reservoir</a>" by J. S. Vitter.
+ * <p>
+ * Where {@link BasicReservoir} (Algorithm R) draws a random number for every
+ * record and skips the records it doesn't want one at a time, Algorithm Z
+ * draws the length of the next run of unwanted records directly and skips the
+ * whole run with a single {@link ReservoirDataSource#skipRecords(int)} call.
+ * The number of random numbers drawn and of calls to the data source is
+ * proportional to the size of the sample times the log of the population
+ * size, not to the population size, which matters for data sources that can
+ * skip records cheaply.
+ * <p>
+ * Until the number of records processed reaches {@link #THRESHOLD} times the
+ * sample size, the skips are computed with the simpler Algorithm X, as the
+ * paper recommends.
+ */
+public class VitterReservoir<T> implements Reservoir<T> {
+
+    /**
+     * The multiple of the sample size at which skip computation switches from
+     * Algorithm X to Algorithm Z. The paper found 22 to be about optimal.
+     */
+    public static final int THRESHOLD = 22;
+
+    private final Random r = new Random();
+
+    public T[] getSample(ReservoirDataSource<T> dataSource, int n) throws ReservoirDataException {
+        if (n == 0) {
+            return makeArray(dataSource.getElementType(), 0);
+        }
+        // The reservoir.
+        List<T> C = new ArrayList<T>(n);
+
+        // Make the first n records candidates for the sample
+        for (int j = 0; j < n && dataSource.hasNext(); j++) {
+            C.add(dataSource.readNextRecord());
+        }
+        double t = n; // t is the number of records processed so far
+
+        // Algorithm X: find the skip by stepping through the records until the
+        // probability of skipping them all falls below a random number
+        double thresh = (double) THRESHOLD * n;
+        while (dataSource.hasNext() && t <= thresh) {
+            double v = r.nextDouble();
+            long s = 0;
+            t++;
+            double quot = (t - n) / t;
+            while (quot > v) {
+                s++;
+                t++;
+                quot = quot * (t - n) / t;
+            }
+            if (!replaceAfterSkip(dataSource, C, s)) break;
+        }
+
+        // Algorithm Z: draw the skip from a continuous approximation of its
+        // distribution and accept or reject it with the squeeze tests of the
+        // paper
+        double w = Math.exp(-Math.log(r.nextDouble()) / n);
+        double term = t - n + 1;
+        while (dataSource.hasNext()) {
+            double s;
+            while (true) {
+                // generate u and x
+                double u = r.nextDouble();
+                double x = t * (w - 1.0);
+                s = Math.floor(x);
+
+                // test if u <= h(s)/cg(x)
+                double lhs = Math.exp(Math.log(((u * square((t + 1) / term)) * (term + s)) / (t + x)) / n);
+                double rhs = (((t + x) / (term + s)) * term) / t;
+                if (lhs <= rhs) {
+                    w = rhs / lhs;
+                    break;
+                }
+
+                // test if u <= f(s)/cg(x)
+                double y = (((u * (t + 1)) / term) * (t + s + 1)) / (t + x);
+                double denom;
+                double numerLim;
+                if (n < s) {
+                    denom = t;
+                    numerLim = term + s;
+                } else {
+                    denom = t - n + s;
+                    numerLim = t + 1;
+                }
+                for (double numer = t + s; numer >= numerLim; numer--) {
+                    y = (y * numer) / denom;
+                    denom--;
+                }
+                w = Math.exp(-Math.log(r.nextDouble()) / n); // generate w in advance
+                if (Math.exp(Math.log(y) / n) <= (t + x) / t) break;
+            }
+            if (!replaceAfterSkip(dataSource, C, (long) s)) break;
+            t += s + 1;
+            term += s + 1;
+        }
+
+        return C.toArray(makeArray(dataSource.getElementType(), C.size()));
+    }
+
+    /**
+     * Skips the given number of records, then makes the next record (if there
+     * is one) a candidate, replacing one at random.
+     * 
+     * @return false if the data source ran out of records.
+     */
+    private boolean replaceAfterSkip(ReservoirDataSource<T> dataSource, List<T> C, long skip)
+        throws ReservoirDataException {
+        while (skip > 0) {
+            int count = (int) Math.min(skip, Integer.MAX_VALUE);
+            dataSource.skipRecords(count);
+            skip -= count;
+            if (!dataSource.hasNext()) return false;
+        }
+        if (!dataSource.hasNext()) return false;
+        C.set(r.nextInt(C.size()), dataSource.readNextRecord());
+        return true;
+    }
+
+    private static double square(double d) {
+        return d * d;
+    }
+
+    public void setRandomSeed(long s) {
+        r.setSeed(s);
+    }
+
+    /**
+     * Creates an array of the given size having elements of the given type.
+     * 
+     * @see BasicReservoir
+     */
+    @SuppressWarnings("unchecked")
+    private T[] makeArray(Class<T> elemType, int size) {
+        return (T[]) Array.newInstance(elemType, size);
+    }
+}
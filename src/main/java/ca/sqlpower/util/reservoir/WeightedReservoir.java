@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.util.reservoir;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Implementation of Reservoir using <i>Algorithm A-ExpJ</i> from "Weighted
+ * Random Sampling with a Reservoir" by P. Efraimidis and P. Spirakis.
+ * <p>
+ * Every record is given a random key of <i>u</i><sup>1/<i>w</i></sup>, where
+ * <i>u</i> is uniform on (0, 1] and <i>w</i> is the record's weight, and the
+ * sample is the <i>n</i> records with the largest keys. Between insertions the
+ * algorithm draws how much weight it can pass over before the next record
+ * gets into the sample, so with the default weight of 1 for every record it
+ * skips whole runs of records with a single
+ * {@link ReservoirDataSource#skipRecords(int)} call, like
+ * {@link VitterReservoir}.
+ * <p>
+ * Because the keys are independent of each other, two samples of disjoint
+ * populations can be merged into a sample of the combined population by
+ * keeping the <i>n</i> largest keys of both. This is what
+ * {@link #getSample(List, int, ExecutorService)} does to sample the
+ * partitions of a population (for example key ranges of a table, each read on
+ * its own connection) in parallel.
+ */
+public class WeightedReservoir<T> implements Reservoir<T> {
+
+    /**
+     * Gives the weight of a record. A record's chance of being in the sample
+     * is proportional to its weight. Records with a weight of 0 or less are
+     * never sampled.
+     */
+    public interface Weigher<T> {
+        public double getWeight(T record);
+    }
+
+    /**
+     * A record in a sample with its key.
+     */
+    private static class KeyedRecord<T> {
+        final double key;
+        final T record;
+
+        KeyedRecord(double key, T record) {
+            this.key = key;
+            this.record = record;
+        }
+    }
+
+    private static final Comparator<KeyedRecord<?>> KEY_ORDER = new Comparator<KeyedRecord<?>>() {
+        public int compare(KeyedRecord<?> o1, KeyedRecord<?> o2) {
+            return Double.compare(o1.key, o2.key);
+        }
+    };
+
+    /**
+     * The records with the largest keys seen so far in one population or
+     * partition of a population. Samples of disjoint populations can be
+     * merged.
+     */
+    public static class Sample<T> {
+
+        private final int size;
+
+        /**
+         * The sampled records, smallest key first.
+         */
+        private final PriorityQueue<KeyedRecord<T>> records;
+
+        private Sample(int size) {
+            this.size = size;
+            records = new PriorityQueue<KeyedRecord<T>>(Math.max(1, size), KEY_ORDER);
+        }
+
+        /**
+         * Adds a record to the sample if its key is large enough.
+         */
+        private void offer(double key, T record) {
+            if (records.size() < size) {
+                records.add(new KeyedRecord<T>(key, record));
+            } else if (size > 0 && key > records.peek().key) {
+                records.poll();
+                records.add(new KeyedRecord<T>(key, record));
+            }
+        }
+
+        /**
+         * The smallest key in the sample. Only valid when the sample is full.
+         */
+        private double getThreshold() {
+            return records.peek().key;
+        }
+
+        private boolean isFull() {
+            return records.size() >= size;
+        }
+
+        /**
+         * Adds the records of a sample of a disjoint population to this
+         * sample, keeping the records with the largest keys. Afterwards this
+         * is a sample of both populations.
+         * 
+         * @throws IllegalArgumentException
+         *             if the other sample was taken with a different size.
+         */
+        public void merge(Sample<T> other) {
+            if (other.size != size) {
+                throw new IllegalArgumentException("Can't merge a sample of size " + other.size +
+                        " into a sample of size " + size);
+            }
+            for (KeyedRecord<T> kr : other.records) {
+                offer(kr.key, kr.record);
+            }
+        }
+
+        /**
+         * Returns the sampled records in no particular order.
+         */
+        public List<T> getRecords() {
+            List<T> list = new ArrayList<T>(records.size());
+            for (KeyedRecord<T> kr : records) {
+                list.add(kr.record);
+            }
+            return list;
+        }
+
+        /**
+         * Returns the number of records in the sample, which is at most the
+         * size the sample was taken with.
+         */
+        public int getRecordsSampled() {
+            return records.size();
+        }
+    }
+
+    private final Random r = new Random();
+
+    /**
+     * The weigher for records, or null if every record has a weight of 1.
+     */
+    private final Weigher<T> weigher;
+
+    /**
+     * Creates a reservoir that gives every record the same chance of being
+     * sampled.
+     */
+    public WeightedReservoir() {
+        this(null);
+    }
+
+    /**
+     * Creates a reservoir that samples records in proportion to their
+     * weights. Every record has to be read to find its weight, so records
+     * can't be skipped.
+     * 
+     * @param weigher
+     *            Gives the weight of each record, or null to give every record
+     *            a weight of 1.
+     */
+    public WeightedReservoir(Weigher<T> weigher) {
+        this.weigher = weigher;
+    }
+
+    public T[] getSample(ReservoirDataSource<T> dataSource, int n) throws ReservoirDataException {
+        return toArray(dataSource.getElementType(), sample(dataSource, n));
+    }
+
+    /**
+     * Samples the given data source and returns the sample in a form that can
+     * be merged with samples of other partitions of the same population.
+     */
+    public Sample<T> sample(ReservoirDataSource<T> dataSource, int n) throws ReservoirDataException {
+        return sample(dataSource, n, r);
+    }
+
+    /**
+     * Samples each partition of a population in its own task on the given
+     * executor and merges the results. The partitions must not overlap. Each
+     * partition gets its own random number generator, seeded from this
+     * reservoir's, so a seeded reservoir gives the same sample every time.
+     * 
+     * @param partitions
+     *            The data sources to sample. Each is only used by one task.
+     * @param n
+     *            The sample size.
+     * @param executor
+     *            Runs the sampling tasks. To sample all the partitions at once
+     *            it needs at least as many threads as there are partitions.
+     * @throws ReservoirDataException
+     *             if reading any of the partitions failed, or the calling
+     *             thread was interrupted while waiting for the tasks.
+     */
+    public T[] getSample(List<? extends ReservoirDataSource<T>> partitions, int n, ExecutorService executor)
+        throws ReservoirDataException {
+        if (partitions.isEmpty()) {
+            throw new IllegalArgumentException("At least one partition is required");
+        }
+        List<Future<Sample<T>>> futures = new ArrayList<Future<Sample<T>>>(partitions.size());
+        for (final ReservoirDataSource<T> partition : partitions) {
+            final int sampleSize = n;
+            final Random partitionRandom = new Random(r.nextLong());
+            futures.add(executor.submit(new Callable<Sample<T>>() {
+                public Sample<T> call() throws Exception {
+                    return sample(partition, sampleSize, partitionRandom);
+                }
+            }));
+        }
+        Sample<T> merged = new Sample<T>(n);
+        try {
+            for (Future<Sample<T>> future : futures) {
+                merged.merge(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ReservoirDataException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ReservoirDataException) {
+                throw (ReservoirDataException) e.getCause();
+            }
+            throw new ReservoirDataException(e.getCause());
+        } finally {
+            for (Future<Sample<T>> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return toArray(partitions.get(0).getElementType(), merged);
+    }
+
+    private Sample<T> sample(ReservoirDataSource<T> dataSource, int n, Random random)
+        throws ReservoirDataException {
+        Sample<T> sample = new Sample<T>(n);
+        if (n == 0) {
+            return sample;
+        }
+
+        // Every record goes into the sample until it is full
+        while (!sample.isFull() && dataSource.hasNext()) {
+            T record = dataSource.readNextRecord();
+            double w = weigh(record);
+            if (w > 0) {
+                sample.offer(Math.pow(nextUniform(random), 1.0 / w), record);
+            }
+        }
+
+        while (dataSource.hasNext()) {
+            // The weight to pass over before the next record gets in
+            double threshold = sample.getThreshold();
+            double jump = Math.log(nextUniform(random)) / Math.log(threshold);
+
+            T record;
+            double w;
+            if (weigher == null) {
+                double skip = Math.max(0, Math.ceil(jump) - 1);
+                if (!skip(dataSource, skip)) break;
+                record = dataSource.readNextRecord();
+                w = 1;
+            } else {
+                double passed = 0;
+                do {
+                    record = dataSource.readNextRecord();
+                    w = weigh(record);
+                    if (w > 0) passed += w;
+                } while ((w <= 0 || passed < jump) && dataSource.hasNext());
+                if (w <= 0 || passed < jump) break;
+            }
+
+            // The new record's key is uniform between the threshold and 1
+            double low = Math.pow(threshold, w);
+            double u = low + (1 - low) * random.nextDouble();
+            sample.offer(Math.pow(u, 1.0 / w), record);
+        }
+        return sample;
+    }
+
+    /**
+     * Skips the given number of records.
+     * 
+     * @return false if the data source ran out of records.
+     */
+    private static boolean skip(ReservoirDataSource<?> dataSource, double skip)
+        throws ReservoirDataException {
+        while (skip > 0) {
+            int count = (int) Math.min(skip, Integer.MAX_VALUE);
+            dataSource.skipRecords(count);
+            skip -= count;
+            if (!dataSource.hasNext()) return false;
+        }
+        return dataSource.hasNext();
+    }
+
+    private double weigh(T record) {
+        if (weigher == null) return 1;
+        return weigher.getWeight(record);
+    }
+
+    /**
+     * Returns a random number in (0, 1]. Keys of 0 would break the
+     * logarithms.
+     */
+    private static double nextUniform(Random random) {
+        return 1.0 - random.nextDouble();
+    }
+
+    public void setRandomSeed(long s) {
+        r.setSeed(s);
+    }
+
+    /**
+     * Creates an array of the given sample's records having elements of the
+     * given type.
+     * 
+     * @see BasicReservoir
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T[] toArray(Class<T> elemType, Sample<T> sample) {
+        List<T> records = sample.getRecords();
+        return records.toArray((T[]) Array.newInstance(elemType, records.size()));
+    }
+}
@@ -0,0 +1,858 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+
+/**
+ * A pull parser for JSON text. Where a {@link JSONTokener} is used to build a
+ * {@link JSONObject} or {@link JSONArray} for every value in the text, this
+ * reader hands out one token at a time and leaves it to the caller to decide
+ * what to keep. Large arrays of objects can then be processed one value at a
+ * time without any intermediate objects being built.
+ * <p>
+ * The text is read through a char buffer rather than one character at a time.
+ * Strings that contain no escapes are copied straight out of the buffer, the
+ * names of object members are shared between objects that use the same name
+ * and numbers are only boxed if {@link #nextValue()} is used. The reader
+ * accepts the same non-standard forms as {@link JSONTokener} that the
+ * {@link JSONObject#toString()} family never produces (single quoted strings,
+ * '=' and '=>' after keys, ';' between values and trailing commas) except
+ * that keys must be quoted.
+ * <p>
+ * For example, reading an array of objects looks like: <pre>
+ * reader.beginArray();
+ * while (reader.hasNext()) {
+ *     reader.beginObject();
+ *     while (reader.hasNext()) {
+ *         String name = reader.nextName();
+ *         if (name.equals("uuid")) {
+ *             uuid = reader.nextString();
+ *         } else {
+ *             reader.skipValue();
+ *         }
+ *     }
+ *     reader.endObject();
+ * }
+ * reader.endArray();</pre>
+ * <p>
+ * This class is not thread safe.
+ */
+public class JSONStreamReader implements Closeable {
+
+    /**
+     * The kinds of tokens the reader can be positioned at.
+     */
+    public static enum Token {
+        BEGIN_ARRAY,
+        END_ARRAY,
+        BEGIN_OBJECT,
+        END_OBJECT,
+        NAME,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL,
+        END_DOCUMENT
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The number of distinct member names that are remembered. Must be a
+     * power of two.
+     */
+    private static final int NAME_CACHE_SIZE = 64;
+
+    /**
+     * Characters that end an unquoted value. These match the ones used by
+     * {@link JSONTokener#nextValue()}.
+     */
+    private static final String DELIMITERS = ",:]}/\\\"[{;=#";
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    /**
+     * The source of the text, or null if the whole text is in the buffer.
+     */
+    private final Reader reader;
+
+    private final char[] buffer;
+
+    /**
+     * The index of the next character to read in the buffer.
+     */
+    private int pos;
+
+    /**
+     * The number of valid characters in the buffer.
+     */
+    private int limit;
+
+    /**
+     * The number of characters that were discarded from the start of the
+     * buffer, used to report positions in errors.
+     */
+    private long bufferOffset;
+
+    /**
+     * The enclosing arrays and objects of the current position, innermost
+     * last.
+     */
+    private int[] stack = new int[16];
+
+    private int stackSize;
+
+    /**
+     * The token the reader is positioned at, or null if it has not been
+     * peeked yet.
+     */
+    private Token peeked;
+
+    /**
+     * The quote character that opened the peeked name or string.
+     */
+    private char peekedQuote;
+
+    /**
+     * The text of a peeked number or unquoted string. This is null if the
+     * peeked string is quoted, in which case it has not been read yet.
+     */
+    private String peekedLiteral;
+
+    private boolean peekedBoolean;
+
+    /**
+     * Holds strings that contain escapes or span a buffer refill.
+     */
+    private final StringBuilder scratch = new StringBuilder();
+
+    private final String[] nameCache = new String[NAME_CACHE_SIZE];
+
+    /**
+     * Creates a reader over the given source. The source does not need to be
+     * buffered.
+     */
+    public JSONStreamReader(Reader reader) {
+        this.reader = reader;
+        this.buffer = new char[BUFFER_SIZE];
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Creates a reader over the given JSON text.
+     */
+    public JSONStreamReader(String s) {
+        this.reader = null;
+        this.buffer = s.toCharArray();
+        this.limit = buffer.length;
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Creates a reader over UTF-8 encoded JSON text.
+     */
+    public JSONStreamReader(InputStream in) {
+        this(new InputStreamReader(in, UTF8));
+    }
+
+    /**
+     * Creates a reader over UTF-8 encoded JSON text in the given part of a
+     * byte array.
+     */
+    public JSONStreamReader(byte[] bytes, int offset, int length) {
+        this(new ByteArrayInputStream(bytes, offset, length));
+    }
+
+    /**
+     * Returns the kind of the next token without consuming it.
+     */
+    public Token peek() throws JSONException {
+        if (peeked != null) {
+            return peeked;
+        }
+        int c;
+        int scope = stack[stackSize - 1];
+        switch (scope) {
+        case EMPTY_ARRAY:
+            stack[stackSize - 1] = NONEMPTY_ARRAY;
+            c = nextClean();
+            if (c == ']') {
+                return peeked = Token.END_ARRAY;
+            }
+            return peekValue(c);
+        case NONEMPTY_ARRAY:
+            c = nextClean();
+            if (c == ']') {
+                return peeked = Token.END_ARRAY;
+            } else if (c != ',' && c != ';') {
+                throw syntaxError("Expected a ',' or ']'");
+            }
+            c = nextClean();
+            if (c == ']') {
+                return peeked = Token.END_ARRAY;
+            }
+            return peekValue(c);
+        case EMPTY_OBJECT:
+        case NONEMPTY_OBJECT:
+            c = nextClean();
+            if (scope == NONEMPTY_OBJECT) {
+                if (c == '}') {
+                    return peeked = Token.END_OBJECT;
+                } else if (c != ',' && c != ';') {
+                    throw syntaxError("Expected a ',' or '}'");
+                }
+                c = nextClean();
+            }
+            if (c == '}') {
+                return peeked = Token.END_OBJECT;
+            } else if (c != '"' && c != '\'') {
+                throw syntaxError("Expected a quoted key");
+            }
+            stack[stackSize - 1] = DANGLING_NAME;
+            peekedQuote = (char) c;
+            return peeked = Token.NAME;
+        case DANGLING_NAME:
+            c = nextClean();
+            if (c == '=') {
+                if ((pos < limit || fill(1)) && buffer[pos] == '>') {
+                    pos++;
+                }
+            } else if (c != ':') {
+                throw syntaxError("Expected a ':' after a key");
+            }
+            stack[stackSize - 1] = NONEMPTY_OBJECT;
+            return peekValue(nextClean());
+        case EMPTY_DOCUMENT:
+            stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+            return peekValue(nextClean());
+        default:
+            c = nextClean();
+            if (c != -1) {
+                pos--;
+                throw syntaxError("Unexpected text after the end of the value");
+            }
+            return peeked = Token.END_DOCUMENT;
+        }
+    }
+
+    /**
+     * Returns true if the current array or object has another element.
+     */
+    public boolean hasNext() throws JSONException {
+        Token token = peek();
+        return token != Token.END_ARRAY && token != Token.END_OBJECT && token != Token.END_DOCUMENT;
+    }
+
+    public void beginArray() throws JSONException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws JSONException {
+        expect(Token.END_ARRAY);
+        stackSize--;
+    }
+
+    public void beginObject() throws JSONException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws JSONException {
+        expect(Token.END_OBJECT);
+        stackSize--;
+    }
+
+    /**
+     * Returns the name of the next member of the current object. Names that
+     * were seen recently are returned as the same string instance.
+     */
+    public String nextName() throws JSONException {
+        expect(Token.NAME);
+        char quote = peekedQuote;
+        int hash = 0;
+        for (int i = pos; i < limit; i++) {
+            char c = buffer[i];
+            if (c == quote) {
+                String name = cachedName(pos, i - pos, hash);
+                pos = i + 1;
+                return name;
+            } else if (c == '\\' || c == '\n' || c == '\r') {
+                break;
+            }
+            hash = 31 * hash + c;
+        }
+        return readString(quote);
+    }
+
+    /**
+     * Returns the next string value. Numbers are returned as their text.
+     */
+    public String nextString() throws JSONException {
+        Token token = peek();
+        if (token == Token.STRING) {
+            peeked = null;
+            return peekedLiteral != null ? peekedLiteral : readString(peekedQuote);
+        } else if (token == Token.NUMBER) {
+            peeked = null;
+            return peekedLiteral;
+        }
+        throw syntaxError("Expected a string but found " + token);
+    }
+
+    /**
+     * Returns a reader over the unescaped contents of the next string value,
+     * which is read out of this reader's buffer as the returned reader is
+     * read, so a JSON document nested in a string does not have to be copied
+     * into a String before it can be parsed. The returned reader must be read
+     * to its end, or closed, before this reader is used again.
+     */
+    public Reader nextStringReader() throws JSONException {
+        Token token = peek();
+        if (token != Token.STRING) {
+            throw syntaxError("Expected a string but found " + token);
+        }
+        peeked = null;
+        if (peekedLiteral != null) {
+            return new StringReader(peekedLiteral);
+        }
+        return new StringValueReader(peekedQuote);
+    }
+
+    /**
+     * Returns the next boolean value. The strings "true" and "false" are
+     * accepted the same way {@link JSONObject#getBoolean(String)} does.
+     */
+    public boolean nextBoolean() throws JSONException {
+        Token token = peek();
+        if (token == Token.BOOLEAN) {
+            peeked = null;
+            return peekedBoolean;
+        } else if (token == Token.STRING) {
+            String s = nextString();
+            if (s.equalsIgnoreCase("true")) {
+                return true;
+            } else if (s.equalsIgnoreCase("false")) {
+                return false;
+            }
+        }
+        throw syntaxError("Expected a boolean but found " + token);
+    }
+
+    /**
+     * Consumes the next value, which must be null.
+     */
+    public void nextNull() throws JSONException {
+        expect(Token.NULL);
+    }
+
+    /**
+     * Returns the next number, or string containing a number, as a double.
+     */
+    public double nextDouble() throws JSONException {
+        Token token = peek();
+        if (token != Token.NUMBER && token != Token.STRING) {
+            throw syntaxError("Expected a number but found " + token);
+        }
+        String s = nextString();
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected a number but found " + JSONObject.quote(s));
+        }
+    }
+
+    /**
+     * Returns the next number, or string containing a number, as a long.
+     * Numbers with a fraction or exponent are truncated.
+     */
+    public long nextLong() throws JSONException {
+        Token token = peek();
+        if (token != Token.NUMBER && token != Token.STRING) {
+            throw syntaxError("Expected a number but found " + token);
+        }
+        String s = nextString();
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            try {
+                return (long) Double.parseDouble(s);
+            } catch (NumberFormatException e2) {
+                throw syntaxError("Expected a number but found " + JSONObject.quote(s));
+            }
+        }
+    }
+
+    /**
+     * Returns the next number, or string containing a number, as an int.
+     * Numbers that are too large for an int are clipped the same way
+     * {@link JSONObject#getInt(String)} does.
+     */
+    public int nextInt() throws JSONException {
+        return (int) nextLong();
+    }
+
+    /**
+     * Returns the next value as the object {@link JSONTokener#nextValue()}
+     * would have returned for it: a {@link JSONObject}, {@link JSONArray},
+     * String, Boolean, Integer, Long, Double or {@link JSONObject#NULL}.
+     */
+    public Object nextValue() throws JSONException {
+        Token token = peek();
+        switch (token) {
+        case BEGIN_OBJECT:
+            beginObject();
+            JSONObject object = new JSONObject();
+            while (hasNext()) {
+                String name = nextName();
+                object.put(name, nextValue());
+            }
+            endObject();
+            return object;
+        case BEGIN_ARRAY:
+            beginArray();
+            JSONArray array = new JSONArray();
+            while (hasNext()) {
+                array.put(nextValue());
+            }
+            endArray();
+            return array;
+        case STRING:
+            return nextString();
+        case NUMBER:
+            peeked = null;
+            return JSONObject.stringToValue(peekedLiteral);
+        case BOOLEAN:
+            peeked = null;
+            return Boolean.valueOf(peekedBoolean);
+        case NULL:
+            peeked = null;
+            return JSONObject.NULL;
+        default:
+            throw syntaxError("Expected a value but found " + token);
+        }
+    }
+
+    /**
+     * Skips the next value, including all of its contents if it is an array
+     * or object. Strings are skipped without being copied out of the buffer.
+     */
+    public void skipValue() throws JSONException {
+        Token token = peek();
+        if (token == Token.END_ARRAY || token == Token.END_OBJECT || token == Token.END_DOCUMENT) {
+            throw syntaxError("Expected a value but found " + token);
+        }
+        int depth = 0;
+        do {
+            token = peek();
+            switch (token) {
+            case BEGIN_ARRAY:
+                beginArray();
+                depth++;
+                break;
+            case BEGIN_OBJECT:
+                beginObject();
+                depth++;
+                break;
+            case END_ARRAY:
+                endArray();
+                depth--;
+                break;
+            case END_OBJECT:
+                endObject();
+                depth--;
+                break;
+            case NAME:
+                peeked = null;
+                skipString(peekedQuote);
+                break;
+            case STRING:
+                peeked = null;
+                if (peekedLiteral == null) {
+                    skipString(peekedQuote);
+                }
+                break;
+            case END_DOCUMENT:
+                throw syntaxError("Unterminated value");
+            default:
+                peeked = null;
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * Closes the underlying reader, if there is one.
+     */
+    public void close() throws IOException {
+        peeked = null;
+        stack[0] = NONEMPTY_DOCUMENT;
+        stackSize = 1;
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    /**
+     * Make a JSONException to signal a syntax error.
+     *
+     * @param message The error message.
+     * @return  A JSONException object, suitable for throwing
+     */
+    public JSONException syntaxError(String message) {
+        return new JSONException(message + toString());
+    }
+
+    /**
+     * Make a printable string of this reader.
+     *
+     * @return " at character [position]"
+     */
+    public String toString() {
+        return " at character " + (bufferOffset + pos);
+    }
+
+    private void expect(Token token) throws JSONException {
+        Token actual = peek();
+        if (actual != token) {
+            throw syntaxError("Expected " + token + " but found " + actual);
+        }
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = scope;
+    }
+
+    /**
+     * Sets the peeked token to the kind of value that starts with the given
+     * character, which has already been consumed.
+     */
+    private Token peekValue(int c) throws JSONException {
+        peekedLiteral = null;
+        switch (c) {
+        case '{':
+            return peeked = Token.BEGIN_OBJECT;
+        case '[':
+            return peeked = Token.BEGIN_ARRAY;
+        case '"':
+        case '\'':
+            peekedQuote = (char) c;
+            return peeked = Token.STRING;
+        case -1:
+            throw syntaxError("Missing value");
+        }
+        pos--;
+        StringBuilder sb = scratch;
+        sb.setLength(0);
+        while (pos < limit || fill(1)) {
+            char d = buffer[pos];
+            if (d <= ' ' || DELIMITERS.indexOf(d) >= 0) {
+                break;
+            }
+            sb.append(d);
+            pos++;
+        }
+        if (sb.length() == 0) {
+            throw syntaxError("Missing value");
+        }
+        if (matches(sb, "true")) {
+            peekedBoolean = true;
+            return peeked = Token.BOOLEAN;
+        } else if (matches(sb, "false")) {
+            peekedBoolean = false;
+            return peeked = Token.BOOLEAN;
+        } else if (matches(sb, "null")) {
+            return peeked = Token.NULL;
+        }
+        peekedLiteral = sb.toString();
+        char b = peekedLiteral.charAt(0);
+        if ((b >= '0' && b <= '9') || b == '.' || b == '-' || b == '+') {
+            return peeked = Token.NUMBER;
+        }
+        return peeked = Token.STRING;
+    }
+
+    /**
+     * Compares the literal in the builder to a lower case keyword ignoring
+     * case, as {@link JSONObject#stringToValue(String)} does.
+     */
+    private static boolean matches(StringBuilder sb, String keyword) {
+        if (sb.length() != keyword.length()) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length(); i++) {
+            if (Character.toLowerCase(sb.charAt(i)) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String cachedName(int start, int length, int hash) {
+        int index = (hash ^ (hash >>> 16)) & (NAME_CACHE_SIZE - 1);
+        String name = nameCache[index];
+        if (name != null && name.length() == length) {
+            int i = 0;
+            while (i < length && name.charAt(i) == buffer[start + i]) {
+                i++;
+            }
+            if (i == length) {
+                return name;
+            }
+        }
+        name = new String(buffer, start, length);
+        nameCache[index] = name;
+        return name;
+    }
+
+    /**
+     * Reads the rest of a quoted string whose opening quote has been consumed.
+     */
+    private String readString(char quote) throws JSONException {
+        StringBuilder sb = null;
+        while (true) {
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos++];
+                if (c == quote) {
+                    if (sb == null) {
+                        return new String(buffer, start, pos - start - 1);
+                    }
+                    sb.append(buffer, start, pos - start - 1);
+                    return sb.toString();
+                } else if (c == '\\') {
+                    if (sb == null) {
+                        sb = scratch;
+                        sb.setLength(0);
+                    }
+                    sb.append(buffer, start, pos - start - 1);
+                    sb.append(readEscape());
+                    start = pos;
+                } else if (c == '\n' || c == '\r') {
+                    throw syntaxError("Unterminated string");
+                }
+            }
+            if (sb == null) {
+                sb = scratch;
+                sb.setLength(0);
+            }
+            sb.append(buffer, start, pos - start);
+            if (!fill(1)) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private void skipString(char quote) throws JSONException {
+        while (true) {
+            while (pos < limit) {
+                char c = buffer[pos++];
+                if (c == quote) {
+                    return;
+                } else if (c == '\\') {
+                    readEscape();
+                } else if (c == '\n' || c == '\r') {
+                    throw syntaxError("Unterminated string");
+                }
+            }
+            if (!fill(1)) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    /**
+     * Reads the character of an escape sequence whose backslash has been
+     * consumed. The escapes are the ones {@link JSONTokener} understands.
+     */
+    private char readEscape() throws JSONException {
+        if (pos == limit && !fill(1)) {
+            throw syntaxError("Unterminated string");
+        }
+        char c = buffer[pos++];
+        switch (c) {
+        case 'b':
+            return '\b';
+        case 't':
+            return '\t';
+        case 'n':
+            return '\n';
+        case 'f':
+            return '\f';
+        case 'r':
+            return '\r';
+        case 'u':
+            return (char) readHex(4);
+        case 'x':
+            return (char) readHex(2);
+        default:
+            return c;
+        }
+    }
+
+    private int readHex(int digits) throws JSONException {
+        if (limit - pos < digits && !fill(digits)) {
+            throw syntaxError("Substring bounds error");
+        }
+        int value = 0;
+        for (int i = 0; i < digits; i++) {
+            int digit = Character.digit(buffer[pos++], 16);
+            if (digit < 0) {
+                throw syntaxError("Illegal escape.");
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the next character that is not whitespace, or -1 at the end of
+     * the text.
+     */
+    private int nextClean() throws JSONException {
+        while (pos < limit || fill(1)) {
+            char c = buffer[pos++];
+            if (c > ' ') {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves the unread characters to the start of the buffer and reads until
+     * at least the given number of characters are available. Returns false if
+     * the text ends first.
+     */
+    private boolean fill(int minimum) throws JSONException {
+        if (reader == null) {
+            return limit - pos >= minimum;
+        }
+        if (pos > 0) {
+            bufferOffset += pos;
+            limit -= pos;
+            System.arraycopy(buffer, pos, buffer, 0, limit);
+            pos = 0;
+        }
+        try {
+            while (limit < minimum) {
+                int count = reader.read(buffer, limit, buffer.length - limit);
+                if (count == -1) {
+                    return false;
+                }
+                limit += count;
+            }
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+        return true;
+    }
+
+    /**
+     * Reads the rest of a quoted string whose opening quote has been consumed,
+     * resolving escapes as it goes. The reader ends at the closing quote,
+     * leaving the enclosing reader positioned just after it.
+     */
+    private class StringValueReader extends Reader {
+
+        private final char quote;
+
+        private boolean ended;
+
+        StringValueReader(char quote) {
+            this.quote = quote;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (ended) {
+                return -1;
+            }
+            try {
+                int count = 0;
+                while (count < len) {
+                    if (pos == limit) {
+                        // hand out what has been read rather than waiting
+                        // for more of the enclosing text
+                        if (count > 0) break;
+                        if (!fill(1)) {
+                            throw syntaxError("Unterminated string");
+                        }
+                    }
+                    char c = buffer[pos++];
+                    if (c == quote) {
+                        ended = true;
+                        break;
+                    } else if (c == '\\') {
+                        c = readEscape();
+                    } else if (c == '\n' || c == '\r') {
+                        throw syntaxError("Unterminated string");
+                    }
+                    cbuf[off + count++] = c;
+                }
+                return count == 0 && ended ? -1 : count;
+            } catch (JSONException e) {
+                IOException ex = new IOException(e.getMessage());
+                ex.initCause(e);
+                throw ex;
+            }
+        }
+
+        /**
+         * Skips whatever is left of the string. The enclosing reader is not
+         * closed.
+         */
+        @Override
+        public void close() throws IOException {
+            if (ended) {
+                return;
+            }
+            ended = true;
+            try {
+                skipString(quote);
+            } catch (JSONException e) {
+                IOException ex = new IOException(e.getMessage());
+                ex.initCause(e);
+                throw ex;
+            }
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.json;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writes JSON text to a {@link Writer} as it is produced. Unlike
+ * {@link JSONWriter} no {@link JSONObject} is created to check the keys of
+ * each object and strings are escaped straight into the writer instead of
+ * being quoted into a new string first, so writing a large array of objects
+ * does not allocate per value. The text written for strings, numbers and
+ * existing {@link JSONObject}s and {@link JSONArray}s is the same as their
+ * toString methods produce.
+ * <p>
+ * The writer can optionally escape every character outside of the ASCII
+ * range. The text is then the same in every character set, which is useful
+ * when the reader of the text may not decode it the way it was encoded.
+ * <p>
+ * All methods return the writer so calls can be cascaded: <pre>
+ * new JSONStreamWriter(out)
+ *     .beginObject()
+ *         .name("JSON").value("Hello, World!")
+ *     .endObject()
+ *     .flush();</pre>
+ * <p>
+ * This class is not thread safe.
+ */
+public class JSONStreamWriter implements Closeable {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private final Writer out;
+
+    /**
+     * If true all characters above 0x7e are written as unicode escapes.
+     */
+    private final boolean asciiOnly;
+
+    private int[] stack = new int[16];
+
+    private int stackSize;
+
+    /**
+     * Creates a writer that writes its text to the given writer. Characters
+     * are only escaped where {@link JSONObject#quote(String)} escapes them.
+     */
+    public JSONStreamWriter(Writer out) {
+        this(out, false);
+    }
+
+    /**
+     * Creates a writer that writes its text to the given writer.
+     * 
+     * @param asciiOnly
+     *            If true every character outside of printable ASCII is
+     *            written as a unicode escape.
+     */
+    public JSONStreamWriter(Writer out, boolean asciiOnly) {
+        this.out = out;
+        this.asciiOnly = asciiOnly;
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Creates a writer that writes its text as bytes to the given stream. Only
+     * ASCII is written, so the bytes are valid UTF-8 and ISO-8859-1 alike.
+     */
+    public JSONStreamWriter(OutputStream out) {
+        this(new BufferedWriter(new OutputStreamWriter(out, ASCII)), true);
+    }
+
+    public JSONStreamWriter beginArray() throws JSONException {
+        beforeValue();
+        write('[');
+        push(EMPTY_ARRAY);
+        return this;
+    }
+
+    public JSONStreamWriter endArray() throws JSONException {
+        return close(EMPTY_ARRAY, NONEMPTY_ARRAY, ']');
+    }
+
+    public JSONStreamWriter beginObject() throws JSONException {
+        beforeValue();
+        write('{');
+        push(EMPTY_OBJECT);
+        return this;
+    }
+
+    public JSONStreamWriter endObject() throws JSONException {
+        return close(EMPTY_OBJECT, NONEMPTY_OBJECT, '}');
+    }
+
+    /**
+     * Writes the name of the next member of the current object. Names are
+     * not checked for duplicates.
+     */
+    public JSONStreamWriter name(String name) throws JSONException {
+        if (name == null) {
+            throw new JSONException("Null key.");
+        }
+        int scope = stack[stackSize - 1];
+        if (scope == NONEMPTY_OBJECT) {
+            write(',');
+        } else if (scope != EMPTY_OBJECT) {
+            throw new JSONException("Misplaced key.");
+        }
+        stack[stackSize - 1] = DANGLING_NAME;
+        writeQuoted(name);
+        write(':');
+        return this;
+    }
+
+    /**
+     * Writes a string value, or null if the string is null.
+     */
+    public JSONStreamWriter value(String value) throws JSONException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeQuoted(value);
+        return this;
+    }
+
+    public JSONStreamWriter value(long value) throws JSONException {
+        beforeValue();
+        write(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes a double value the way {@link JSONObject#numberToString(Number)}
+     * does, dropping a fraction of zero.
+     */
+    public JSONStreamWriter value(double value) throws JSONException {
+        beforeValue();
+        write(JSONObject.numberToString(Double.valueOf(value)));
+        return this;
+    }
+
+    public JSONStreamWriter value(boolean value) throws JSONException {
+        beforeValue();
+        write(value ? "true" : "false");
+        return this;
+    }
+
+    public JSONStreamWriter nullValue() throws JSONException {
+        beforeValue();
+        write("null");
+        return this;
+    }
+
+    /**
+     * Writes any value that can be put into a {@link JSONObject}. The text is
+     * the same as {@link JSONObject#toString()} would produce for the value,
+     * except that the contents of {@link JSONObject}s, {@link JSONArray}s,
+     * maps and collections are written directly instead of being turned into
+     * strings first.
+     */
+    public JSONStreamWriter value(Object value) throws JSONException {
+        if (value == null || value.equals(null)) {
+            return nullValue();
+        } else if (value instanceof String) {
+            return value((String) value);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            return value(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            beforeValue();
+            write(JSONObject.numberToString((Number) value));
+            return this;
+        } else if (value instanceof Boolean) {
+            return value(((Boolean) value).booleanValue());
+        } else if (value instanceof JSONObject) {
+            return object((JSONObject) value);
+        } else if (value instanceof JSONArray) {
+            return array((JSONArray) value);
+        } else if (value instanceof JSONString) {
+            Object s;
+            try {
+                s = ((JSONString) value).toJSONString();
+            } catch (Exception e) {
+                throw new JSONException(e);
+            }
+            if (!(s instanceof String)) {
+                throw new JSONException("Bad value from toJSONString: " + s);
+            }
+            beforeValue();
+            write((String) s);
+            return this;
+        } else if (value instanceof Map) {
+            return object(new JSONObject((Map) value));
+        } else if (value instanceof Collection) {
+            return array(new JSONArray((Collection) value));
+        } else if (value.getClass().isArray()) {
+            return array(new JSONArray(value));
+        }
+        return value(value.toString());
+    }
+
+    /**
+     * Flushes the underlying writer.
+     */
+    public void flush() throws JSONException {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
+    /**
+     * Closes the underlying writer. An exception is thrown if the text is not
+     * a complete JSON value.
+     */
+    public void close() throws IOException {
+        out.close();
+        if (stackSize != 1 || stack[0] != NONEMPTY_DOCUMENT) {
+            throw new IOException("Incomplete document");
+        }
+    }
+
+    private JSONStreamWriter object(JSONObject object) throws JSONException {
+        beginObject();
+        Iterator keys = object.keys();
+        while (keys.hasNext()) {
+            String key = keys.next().toString();
+            name(key);
+            value(object.opt(key));
+        }
+        return endObject();
+    }
+
+    private JSONStreamWriter array(JSONArray array) throws JSONException {
+        beginArray();
+        for (int i = 0; i < array.length(); i++) {
+            value(array.opt(i));
+        }
+        return endArray();
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private JSONStreamWriter close(int empty, int nonempty, char end) throws JSONException {
+        int scope = stack[stackSize - 1];
+        if (scope != empty && scope != nonempty) {
+            throw new JSONException("Misplaced " + end + ".");
+        }
+        stackSize--;
+        write(end);
+        return this;
+    }
+
+    /**
+     * Writes the separator needed before a value and updates the scope.
+     */
+    private void beforeValue() throws JSONException {
+        switch (stack[stackSize - 1]) {
+        case EMPTY_DOCUMENT:
+            stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+            break;
+        case EMPTY_ARRAY:
+            stack[stackSize - 1] = NONEMPTY_ARRAY;
+            break;
+        case NONEMPTY_ARRAY:
+            write(',');
+            break;
+        case DANGLING_NAME:
+            stack[stackSize - 1] = NONEMPTY_OBJECT;
+            break;
+        case NONEMPTY_DOCUMENT:
+            throw new JSONException("A JSON text can only contain one value.");
+        default:
+            throw new JSONException("Misplaced value.");
+        }
+    }
+
+    /**
+     * Writes the string in double quotes with the same escapes as
+     * {@link JSONObject#quote(String)}. Runs of characters that need no
+     * escaping are written with a single call.
+     */
+    private void writeQuoted(String s) throws JSONException {
+        try {
+            out.write('"');
+            int length = s.length();
+            int start = 0;
+            char previous = 0;
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                String escape = null;
+                boolean unicode = false;
+                switch (c) {
+                case '\\':
+                    escape = "\\\\";
+                    break;
+                case '"':
+                    escape = "\\\"";
+                    break;
+                case '/':
+                    if (previous == '<') {
+                        escape = "\\/";
+                    }
+                    break;
+                case '\b':
+                    escape = "\\b";
+                    break;
+                case '\t':
+                    escape = "\\t";
+                    break;
+                case '\n':
+                    escape = "\\n";
+                    break;
+                case '\f':
+                    escape = "\\f";
+                    break;
+                case '\r':
+                    escape = "\\r";
+                    break;
+                default:
+                    unicode = c < ' ' || (c >= '\u0080' && c < '\u00a0')
+                            || (c >= '\u2000' && c < '\u2100') || (asciiOnly && c > '~');
+                }
+                previous = c;
+                if (escape == null && !unicode) {
+                    continue;
+                }
+                if (start < i) {
+                    out.write(s, start, i - start);
+                }
+                start = i + 1;
+                if (escape != null) {
+                    out.write(escape);
+                } else {
+                    out.write('\\');
+                    out.write('u');
+                    out.write(HEX[(c >> 12) & 0xf]);
+                    out.write(HEX[(c >> 8) & 0xf]);
+                    out.write(HEX[(c >> 4) & 0xf]);
+                    out.write(HEX[c & 0xf]);
+                }
+            }
+            if (start < length) {
+                out.write(s, start, length - start);
+            }
+            out.write('"');
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
+    private void write(char c) throws JSONException {
+        try {
+            out.write(c);
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
+    private void write(String s) throws JSONException {
+        try {
+            out.write(s);
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+}
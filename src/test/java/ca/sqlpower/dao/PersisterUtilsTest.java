@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.dao.helper.PersisterHelperFinder;
+import ca.sqlpower.dao.helper.SPPersisterHelper;
+import ca.sqlpower.object.SPObject;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class PersisterUtilsTest extends TestCase {
+
+    public void testTypePosition() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            assertEquals(0, PersisterUtils.getTypePosition(
+                    SQLColumn.class.getName(), SQLTable.class.getName()));
+            assertEquals(3, PersisterUtils.getTypePosition(
+                    SQLIndex.class.getName(), SQLTable.class.getName()));
+            assertEquals(-1, PersisterUtils.getTypePosition(
+                    SQLDatabase.class.getName(), SQLTable.class.getName()));
+        }
+    }
+
+    public void testParentAllowedChildType() throws Exception {
+        assertEquals(SQLColumn.class, PersisterUtils.getParentAllowedChildType(
+                SQLColumn.class.getName(), SQLTable.class.getName()));
+        assertEquals(SQLColumn.class, PersisterUtils.getParentAllowedChildType(
+                SQLColumn.class.getName(), ""));
+        assertNull(PersisterUtils.getParentAllowedChildType(
+                SQLDatabase.class.getName(), SQLTable.class.getName()));
+        assertSame(SQLTable.allowedChildTypes, PersisterUtils.getAllowedChildTypes(SQLTable.class));
+        try {
+            PersisterUtils.getTypePosition("ca.sqlpower.NoSuchClass", SQLTable.class.getName());
+            fail("Expected the missing class to be reported");
+        } catch (ClassNotFoundException expected) {
+            // expected
+        }
+    }
+
+    /**
+     * Every thread asking for a helper at the same time should be given the
+     * same instance, whether it asks by class or by class name.
+     */
+    public void testHelpersAreSharedAcrossThreads() throws Exception {
+        final List<SPPersisterHelper<? extends SPObject>> found = 
+            Collections.synchronizedList(new ArrayList<SPPersisterHelper<? extends SPObject>>());
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        found.add(PersisterHelperFinder.findPersister(SQLColumn.class.getName()));
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(threads.length, found.size());
+        for (SPPersisterHelper<? extends SPObject> helper : found) {
+            assertSame(found.get(0), helper);
+        }
+        assertSame("Lookups by class and by name share one helper", found.get(0), 
+                PersisterHelperFinder.findPersister(SQLColumn.class));
+    }
+
+    /**
+     * Shared helpers hand out one complete list of persisted properties that
+     * callers cannot change.
+     */
+    public void testPersistedPropertiesAreSharedAndComplete() throws Exception {
+        SPPersisterHelper<? extends SPObject> helper = PersisterHelperFinder.findPersister(SQLColumn.class);
+        List<String> properties = helper.getPersistedProperties();
+        assertSame(properties, helper.getPersistedProperties());
+        assertTrue(properties.contains("name"));
+        assertTrue("The parent class' properties are included", properties.contains("UUID"));
+        try {
+            properties.add("notAProperty");
+            fail("The shared list must not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao;
+
+import ca.sqlpower.sqlobject.SQLDatabase;
+
+/**
+ * Measures committing a whole tree of tables and columns through an
+ * {@link SPSessionPersister}: the persist calls are pooled by the persister
+ * and then sorted and applied to an empty database in a single commit.
+ */
+public class SPSessionPersisterCommitBenchmark extends SQLObjectPersisterBenchmark {
+
+    public SPSessionPersisterCommitBenchmark(int tableCount, int columnCount, 
+            int warmupIterations, int iterationsPerRound, int rounds) {
+        super("SPSessionPersister commit", tableCount, columnCount, 
+                warmupIterations, iterationsPerRound, rounds);
+    }
+    
+    @Override
+    protected long runOnce() throws Exception {
+        SQLDatabase target = createTarget();
+        persistSource(createSessionPersister(target), false);
+        return countLoaded(target);
+    }
+}
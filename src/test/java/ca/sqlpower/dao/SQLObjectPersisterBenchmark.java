@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao;
+
+import java.sql.Types;
+
+import ca.sqlpower.dao.session.SessionPersisterSuperConverter;
+import ca.sqlpower.object.SPObject;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.testutil.Benchmark;
+import ca.sqlpower.util.WorkspaceContainer;
+
+/**
+ * A benchmark of persisting a tree of SQLObjects. The source tree is a
+ * {@link SQLDatabase} of tables and columns built in memory in
+ * {@link #setUp()}, and each operation loads it into a new, empty database
+ * with the same UUID through an {@link SPSessionPersister}.
+ */
+public abstract class SQLObjectPersisterBenchmark extends Benchmark {
+
+    private final int tableCount;
+    
+    private final int columnCount;
+    
+    private SQLDatabase source;
+    
+    private SPPersisterListener sourceListener;
+
+    protected SQLObjectPersisterBenchmark(String name, int tableCount, int columnCount, 
+            int warmupIterations, int iterationsPerRound, int rounds) {
+        super(name + " (" + tableCount + " tables x " + columnCount + " columns)", 
+                warmupIterations, iterationsPerRound, rounds);
+        this.tableCount = tableCount;
+        this.columnCount = columnCount;
+    }
+    
+    @Override
+    protected void setUp() throws Exception {
+        source = new SQLDatabase();
+        source.setName("source");
+        for (int t = 0; t < tableCount; t++) {
+            SQLTable table = new SQLTable(source, true);
+            table.setName("table_" + t);
+            source.addTable(table);
+            for (int c = 0; c < columnCount; c++) {
+                table.addColumn(new SQLColumn(table, "col_" + c, 
+                        c % 2 == 0 ? Types.VARCHAR : Types.INTEGER, 20, 0));
+            }
+        }
+        sourceListener = new SPPersisterListener(null, 
+                new SessionPersisterSuperConverter(new PlDotIni(), source));
+    }
+    
+    protected SQLDatabase getSource() {
+        return source;
+    }
+
+    /**
+     * Makes every persist call needed to create the source tree, and all of
+     * its properties, on the given persister. Each object's properties are
+     * persisted right after the object itself.
+     * 
+     * @param includeRoot
+     *            If false the persist object call for the root database is
+     *            left out, for targets where the root already exists.
+     */
+    protected void persistSource(SPPersister target, boolean includeRoot) throws SPPersistenceException {
+        sourceListener.persistObjectInterleaveProperties(source, 0, includeRoot, target);
+    }
+
+    /**
+     * Returns a new empty database with the source's UUID.
+     */
+    protected SQLDatabase createTarget() {
+        SQLDatabase target = new SQLDatabase();
+        target.setUUID(source.getUUID());
+        return target;
+    }
+
+    /**
+     * Returns a session persister that loads persist calls into the given
+     * target. The persist call for the root itself is accepted and ignored,
+     * as the target already exists.
+     */
+    protected SPSessionPersister createSessionPersister(final SQLDatabase target) {
+        SPSessionPersister persister = new SPSessionPersister("benchmark", target, 
+                new SessionPersisterSuperConverter(new PlDotIni(), target)) {
+            @Override
+            protected void refreshRootNode(PersistedSPObject pso) {
+                // the target is the root, there is nothing to refresh
+            }
+        };
+        persister.setWorkspaceContainer(new WorkspaceContainer() {
+            public SPObject getWorkspace() {
+                return target;
+            }
+        });
+        return persister;
+    }
+
+    /**
+     * Returns the number of columns loaded into the target, to check that
+     * each operation loaded the whole tree.
+     */
+    protected long countLoaded(SQLDatabase target) throws Exception {
+        long count = 0;
+        for (SQLTable table : target.getTables()) {
+            count += table.getColumnsWithoutPopulating().size();
+        }
+        if (count != (long) tableCount * columnCount) {
+            throw new IllegalStateException("Expected " + (tableCount * columnCount) + 
+                    " columns to be loaded but there were " + count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+
+import ca.sqlpower.dao.upgrade.UpgradePersisterManager;
+import ca.sqlpower.sqlobject.SQLDatabase;
+
+/**
+ * Measures saving a whole tree of tables and columns with an
+ * {@link XMLPersister} and loading the saved XML back into an empty database
+ * with an {@link XMLPersisterReader} feeding an {@link SPSessionPersister}.
+ */
+public class XMLPersisterRoundTripBenchmark extends SQLObjectPersisterBenchmark {
+
+    private static final String PROJECT_TAG = "benchmark";
+    
+    private UpgradePersisterManager upgradePersisterManager;
+
+    public XMLPersisterRoundTripBenchmark(int tableCount, int columnCount, 
+            int warmupIterations, int iterationsPerRound, int rounds) {
+        super("XMLPersister round trip", tableCount, columnCount, 
+                warmupIterations, iterationsPerRound, rounds);
+    }
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        upgradePersisterManager = new UpgradePersisterManager() {
+            @Override
+            public int getStateVersion() {
+                return 0;
+            }
+            
+            @Override
+            public SPUpgradePersister getUpgradePersister(int version) {
+                return null;
+            }
+        };
+        XMLPersister.setUpgradePersisterManager(upgradePersisterManager);
+    }
+    
+    @Override
+    protected long runOnce() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLPersister writer = new XMLPersister(out, SQLDatabase.class.getName(), PROJECT_TAG);
+        persistSource(writer, true);
+        
+        SQLDatabase target = createTarget();
+        XMLPersisterReader reader = new XMLPersisterReader(
+                new InputStreamReader(new ByteArrayInputStream(out.toByteArray())), 
+                createSessionPersister(target), upgradePersisterManager, PROJECT_TAG);
+        reader.read();
+        return countLoaded(target);
+    }
+}
@@ -19,16 +19,29 @@
 
 package ca.sqlpower.dao.json;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import junit.framework.TestCase;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONStreamReader;
 
+import ca.sqlpower.dao.JsonMessageSender;
 import ca.sqlpower.dao.MessageDecoder;
 import ca.sqlpower.dao.SPPersistenceException;
 import ca.sqlpower.dao.SPPersister;
 import ca.sqlpower.dao.SPPersister.DataType;
 import ca.sqlpower.dao.SPPersister.SPPersistMethod;
+import ca.sqlpower.dao.json.SPJSONMessageDecoder.PersistCall;
+import ca.sqlpower.util.SQLPowerUtils;
 
 public class SPJSONMessageDecoderTest extends TestCase {
 
@@ -375,4 +388,148 @@ public class SPJSONMessageDecoderTest extends TestCase {
 		MessageDecoder<String> decoder = new SPJSONMessageDecoder(dummyPersister);
 		decoder.decode(messages.toString());
 	}
+	
+	/**
+	 * Records each persist call as a string, including the class of each
+	 * value, so the calls made by two decoders can be compared.
+	 */
+	private static class RecordingPersister implements SPPersister {
+		
+		final List<String> calls = new ArrayList<String>();
+		
+		private static String describe(Object value) {
+			if (value instanceof InputStream) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				try {
+					SQLPowerUtils.copyStream((InputStream) value, out);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				return "bytes" + Arrays.toString(out.toByteArray());
+			}
+			return value == null ? "null" : value.getClass().getSimpleName() + ":" + value;
+		}
+		
+		public void begin() {
+			calls.add("begin");
+		}
+		
+		public void commit() {
+			calls.add("commit");
+		}
+		
+		public void persistObject(String parentUUID, String type, String uuid, int index) {
+			calls.add("persistObject " + parentUUID + " " + type + " " + uuid + " " + index);
+		}
+		
+		public void persistProperty(String uuid, String propertyName, DataType propertyType, 
+				Object oldValue, Object newValue) {
+			calls.add("changeProperty " + uuid + " " + propertyName + " " + propertyType + " " + 
+					describe(oldValue) + " " + describe(newValue));
+		}
+		
+		public void persistProperty(String uuid, String propertyName, DataType propertyType, 
+				Object newValue) {
+			calls.add("persistProperty " + uuid + " " + propertyName + " " + propertyType + " " + 
+					describe(newValue));
+		}
+		
+		public void removeObject(String parentUUID, String uuid) {
+			calls.add("removeObject " + parentUUID + " " + uuid);
+		}
+		
+		public void rollback() {
+			calls.add("rollback");
+		}
+	}
+
+	/**
+	 * Decoding the text of the persist calls with the streaming reader must
+	 * make the same calls with the same value types as decoding the
+	 * {@link JSONObject}s the persister created.
+	 */
+	public void testStreamedDecodeMatchesObjectDecode() throws Exception {
+		JsonMessageSender sender = new JsonMessageSender();
+		SPJSONPersister persister = new SPJSONPersister(sender);
+		persister.begin();
+		persister.persistObject("parent", "SQLTable", "table", 3);
+		persister.persistObject(null, "SQLDatabase", "db", 0);
+		persister.persistProperty("table", "name", DataType.STRING, "old \u00e9\"name\"", "new\nname");
+		persister.persistProperty("table", "count", DataType.INTEGER, 1, 12);
+		persister.persistProperty("table", "big", DataType.LONG, 12345678901L);
+		persister.persistProperty("table", "ratio", DataType.DOUBLE, 1.0, 2.5);
+		persister.persistProperty("table", "flag", DataType.BOOLEAN, Boolean.TRUE, Boolean.FALSE);
+		persister.persistProperty("table", "size", DataType.SHORT, (short) 7);
+		persister.persistProperty("table", "scale", DataType.FLOAT, 0.5f);
+		persister.persistProperty("table", "parent", DataType.REFERENCE, null, "parent");
+		persister.persistProperty("table", "image", DataType.PNG_IMG, 
+				new ByteArrayInputStream(new byte[] {1, 2, 3, -1}));
+		persister.removeObject("parent", "table");
+		persister.commit();
+		
+		RecordingPersister fromObjects = new RecordingPersister();
+		new SPJSONMessageDecoder(fromObjects).decode(sender.getJsonArray());
+		RecordingPersister fromStream = new RecordingPersister();
+		new SPJSONMessageDecoder(fromStream).decode(sender.getJsonString());
+		
+		assertEquals(14, fromObjects.calls.size());
+		assertEquals(fromObjects.calls, fromStream.calls);
+	}
+	
+	public void testStreamedDecodeAcceptsAnyMemberOrder() throws Exception {
+		String message = "[{\"type\":\"INTEGER\",\"extra\":{\"a\":[1,2]},\"NV\":\"5\"," +
+				"\"PN\":\"count\",\"uuid\":\"table\",\"M\":\"" + 
+				SPPersistMethod.persistProperty.getCode() + "\"}]";
+		RecordingPersister recorder = new RecordingPersister();
+		new SPJSONMessageDecoder(recorder).decode(message);
+		assertEquals(Collections.singletonList("persistProperty table count INTEGER Integer:5"), 
+				recorder.calls);
+	}
+	
+	public void testStreamedDecodeReportsMissingMembers() throws Exception {
+		String message = "[{\"M\":\"" + SPPersistMethod.persistObject.getCode() + 
+				"\",\"uuid\":\"table\",\"type\":\"SQLTable\"}]";
+		try {
+			new SPJSONMessageDecoder(new RecordingPersister()).decode(message);
+			fail("The persist call has no parent");
+		} catch (SPPersistenceException e) {
+			assertEquals("table", e.getUUID());
+		}
+	}
+	
+	/**
+	 * Calls read ahead of time and decoded in groups must be made the same
+	 * way as calls decoded while they are read.
+	 */
+	public void testDecodeReadAheadCalls() throws Exception {
+		JsonMessageSender sender = new JsonMessageSender();
+		SPJSONPersister persister = new SPJSONPersister(sender);
+		persister.begin();
+		persister.persistObject("parent", "SQLTable", "table", 3);
+		persister.persistProperty("table", "name", DataType.STRING, "old", "new\nname");
+		persister.persistProperty("table", "count", DataType.INTEGER, 1, 12);
+		persister.commit();
+		
+		List<PersistCall> calls = new ArrayList<PersistCall>();
+		JSONStreamReader reader = new JSONStreamReader(sender.getJsonString());
+		reader.beginArray();
+		while (reader.hasNext()) {
+			PersistCall call = new PersistCall();
+			call.read(reader);
+			calls.add(call);
+		}
+		reader.endArray();
+		assertEquals(SPPersistMethod.changeProperty, calls.get(2).getMethod());
+		assertEquals("table", calls.get(2).getUUID());
+		assertEquals("name", calls.get(2).getPropertyName());
+		assertEquals("new\nname", calls.get(2).getNewValue());
+		
+		RecordingPersister fromStream = new RecordingPersister();
+		new SPJSONMessageDecoder(fromStream).decode(sender.getJsonString());
+		RecordingPersister readAhead = new RecordingPersister();
+		SPJSONMessageDecoder decoder = new SPJSONMessageDecoder(readAhead);
+		decoder.decode(calls.subList(0, 2));
+		decoder.decode(calls.subList(2, calls.size()));
+		assertEquals(fromStream.calls, readAhead.calls);
+	}
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao.json;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONStreamWriter;
+import org.json.JSONTokener;
+
+import ca.sqlpower.dao.JsonMessageSender;
+import ca.sqlpower.dao.SPPersistenceException;
+import ca.sqlpower.dao.StubSPPersister;
+import ca.sqlpower.dao.SPPersister.DataType;
+import ca.sqlpower.testutil.Benchmark;
+
+/**
+ * Measures decoding or encoding a stream of persist calls, either with the
+ * {@link JSONTokener} and {@link JSONObject} based paths or with the
+ * streaming reader and writer. The stream is made of transactions that add
+ * an object and set a handful of its properties, which is what a session
+ * sends when tables and columns are created.
+ */
+public class SPJSONPersistCallBenchmark extends Benchmark {
+
+    /**
+     * The ways of handling the stream of persist calls that can be measured.
+     */
+    public enum Mode {
+        DECODE_TOKENER("decode with JSONTokener"),
+        DECODE_STREAM_READER("decode with JSONStreamReader"),
+        ENCODE_JSON_ARRAY("encode with JSONArray.toString"),
+        ENCODE_STREAM_WRITER("encode with JSONStreamWriter");
+
+        private final String description;
+
+        private Mode(String description) {
+            this.description = description;
+        }
+    }
+
+    /**
+     * Counts the transactions decoded, so each operation can report how much
+     * work it did.
+     */
+    private static class CommitCountingPersister extends StubSPPersister {
+
+        private int commitCount;
+
+        @Override
+        public void commit() throws SPPersistenceException {
+            super.commit();
+            commitCount++;
+        }
+    }
+
+    private final Mode mode;
+
+    private final int objectCount;
+
+    private String text;
+
+    private List<JSONObject> calls;
+
+    private CommitCountingPersister target;
+
+    /**
+     * @param mode
+     *            What is done with the stream of persist calls.
+     * @param objectCount
+     *            The number of objects added in the stream. Each is added in
+     *            its own transaction of eight persist calls.
+     */
+    public SPJSONPersistCallBenchmark(Mode mode, int objectCount, 
+            int warmupIterations, int iterationsPerRound, int rounds) {
+        super("SPJSON " + mode.description + " (" + objectCount + " objects)", 
+                warmupIterations, iterationsPerRound, rounds);
+        this.mode = mode;
+        this.objectCount = objectCount;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        JsonMessageSender sender = new JsonMessageSender();
+        SPJSONPersister persister = new SPJSONPersister(sender);
+        for (int i = 0; i < objectCount; i++) {
+            String uuid = "column-" + i;
+            persister.begin();
+            persister.persistObject("parent", "SQLColumn", uuid, i);
+            persister.persistProperty(uuid, "name", DataType.STRING, "column_" + i);
+            persister.persistProperty(uuid, "remarks", DataType.STRING, null, "A column \"" + i + "\"\n");
+            persister.persistProperty(uuid, "type", DataType.INTEGER, 12);
+            persister.persistProperty(uuid, "precision", DataType.INTEGER, 10, 255);
+            persister.persistProperty(uuid, "nullable", DataType.BOOLEAN, Boolean.TRUE);
+            persister.persistProperty(uuid, "scale", DataType.DOUBLE, 0.5);
+            persister.commit();
+        }
+        text = sender.getJsonString();
+        calls = sender.getJsonObjects();
+        target = new CommitCountingPersister();
+    }
+
+    @Override
+    protected long runOnce() throws Exception {
+        switch (mode) {
+        case DECODE_TOKENER:
+            target.commitCount = 0;
+            new SPJSONMessageDecoder(target).decode(new JSONTokener(text));
+            return target.commitCount;
+        case DECODE_STREAM_READER:
+            target.commitCount = 0;
+            new SPJSONMessageDecoder(target).decode(text);
+            return target.commitCount;
+        case ENCODE_JSON_ARRAY:
+            JSONArray array = new JSONArray();
+            for (JSONObject call : calls) {
+                array.put(call);
+            }
+            return array.toString().getBytes("ISO-8859-1").length;
+        case ENCODE_STREAM_WRITER:
+            ByteArrayOutputStream out = new ByteArrayOutputStream(text.length());
+            JSONStreamWriter writer = new JSONStreamWriter(out);
+            writer.beginArray();
+            for (JSONObject call : calls) {
+                writer.value(call);
+            }
+            writer.endArray();
+            writer.flush();
+            return out.size();
+        default:
+            throw new IllegalStateException("Unknown mode " + mode);
+        }
+    }
+}
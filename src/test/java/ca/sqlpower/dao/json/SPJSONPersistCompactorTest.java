@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao.json;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONStreamReader;
+
+import ca.sqlpower.dao.MessageSender;
+import ca.sqlpower.dao.SPPersistenceException;
+import ca.sqlpower.dao.SPPersister.DataType;
+import ca.sqlpower.dao.SPPersister.SPPersistMethod;
+import ca.sqlpower.dao.json.SPJSONMessageDecoder.PersistCall;
+
+public class SPJSONPersistCompactorTest extends TestCase {
+
+    /**
+     * Collects the messages of the persister into a buffer the same way the
+     * network conflict resolver does.
+     */
+    private JSONArray buffer;
+
+    private SPJSONPersister persister;
+
+    private SPJSONPersistCompactor compactor;
+
+    @Override
+    protected void setUp() throws Exception {
+        buffer = new JSONArray();
+        persister = new SPJSONPersister(new MessageSender<JSONObject>() {
+            public void send(JSONObject content) throws SPPersistenceException {
+                buffer.put(content);
+            }
+            public void flush() throws SPPersistenceException {
+                // no-op
+            }
+            public void clear() {
+                // no-op
+            }
+        });
+        compactor = new SPJSONPersistCompactor();
+    }
+
+    private static String methodAt(JSONArray calls, int index) throws Exception {
+        return calls.getJSONObject(index).getString(SPJSONPersister.METHOD);
+    }
+
+    public void testRepeatedPropertyChangesCollapse() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            persister.begin();
+            persister.persistProperty("table", "name", DataType.STRING, "name" + i, "name" + (i + 1));
+            persister.commit();
+        }
+
+        JSONArray compacted = compactor.compact(buffer);
+
+        assertEquals(3, compacted.length());
+        assertEquals(SPPersistMethod.begin.getCode(), methodAt(compacted, 0));
+        JSONObject change = compacted.getJSONObject(1);
+        assertEquals("name0", change.getString("oldValue"));
+        assertEquals("name3", change.getString(SPJSONPersister.NEW_VALUE));
+        assertEquals(SPPersistMethod.commit.getCode(), methodAt(compacted, 2));
+        assertEquals(6, compactor.getLastCallsRemoved());
+        assertTrue(compactor.getLastBytesSaved() > 0);
+    }
+
+    public void testAddThenRemoveCancels() throws Exception {
+        persister.begin();
+        persister.persistObject("schema", "SQLTable", "table", 0);
+        persister.persistProperty("table", "name", DataType.STRING, "new table");
+        persister.persistObject("table", "SQLColumn", "column", 0);
+        persister.persistProperty("column", "name", DataType.STRING, "new column");
+        persister.commit();
+        persister.begin();
+        persister.persistProperty("other", "name", DataType.STRING, "a", "b");
+        persister.commit();
+        persister.begin();
+        persister.removeObject("schema", "table");
+        persister.commit();
+
+        JSONArray compacted = compactor.compact(buffer);
+
+        assertEquals(3, compacted.length());
+        assertEquals("other", compacted.getJSONObject(1).getString("uuid"));
+    }
+
+    public void testChangesAreNotMergedAcrossReAdd() throws Exception {
+        persister.begin();
+        persister.persistProperty("table", "name", DataType.STRING, "a", "b");
+        persister.removeObject("schema", "table");
+        persister.persistObject("schema", "SQLTable", "table", 0);
+        persister.persistProperty("table", "name", DataType.STRING, "c");
+        persister.commit();
+
+        JSONArray compacted = compactor.compact(buffer);
+
+        assertEquals(buffer.length(), compacted.length());
+    }
+
+    public void testUnchangedAndAcknowledgedValuesElided() throws Exception {
+        persister.begin();
+        persister.persistProperty("table", "name", DataType.STRING, "a", "b");
+        persister.commit();
+        compactor.acknowledge(compactor.compact(buffer));
+
+        buffer = new JSONArray();
+        persister.begin();
+        persister.persistProperty("table", "name", DataType.STRING, "b", "c");
+        persister.persistProperty("table", "name", DataType.STRING, "c", "b");
+        persister.persistProperty("table", "remarks", DataType.STRING, "x", "x");
+        persister.commit();
+
+        JSONArray compacted = compactor.compact(buffer);
+
+        assertEquals(0, compacted.length());
+    }
+
+    /**
+     * Property values from an update the server sent, read the way the
+     * network conflict resolver reads them, are known to be on the server.
+     */
+    public void testRecordedServerUpdateValuesElided() throws Exception {
+        persister.begin();
+        persister.persistProperty("table", "name", DataType.STRING, "a", "b");
+        persister.persistProperty("column", "name", DataType.STRING, "c", "d");
+        persister.removeObject("table", "column");
+        persister.commit();
+        List<PersistCall> update = new ArrayList<PersistCall>();
+        JSONStreamReader reader = new JSONStreamReader(buffer.toString());
+        reader.beginArray();
+        while (reader.hasNext()) {
+            PersistCall call = new PersistCall();
+            call.read(reader);
+            update.add(call);
+        }
+        reader.endArray();
+        compactor.recordServerChanges(update);
+
+        buffer = new JSONArray();
+        persister.begin();
+        persister.persistProperty("table", "name", DataType.STRING, "x", "b");
+        persister.persistProperty("column", "name", DataType.STRING, "x", "d");
+        persister.commit();
+
+        JSONArray compacted = compactor.compact(buffer);
+
+        // the column was removed after its change so its value is not known
+        assertEquals(3, compacted.length());
+        assertEquals("column", compacted.getJSONObject(1).getString("uuid"));
+    }
+}
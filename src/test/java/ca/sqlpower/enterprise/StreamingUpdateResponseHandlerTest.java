@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.enterprise;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import ca.sqlpower.dao.json.SPJSONMessageDecoder.PersistCall;
+import ca.sqlpower.enterprise.StreamingUpdateResponseHandler.UpdateHandler;
+
+public class StreamingUpdateResponseHandlerTest extends TestCase {
+
+    /**
+     * Records the calls made to it by the handler under test.
+     */
+    private static class RecordingUpdateHandler implements UpdateHandler {
+
+        private final List<String> events = new ArrayList<String>();
+
+        private final List<PersistCall> persistCalls = new ArrayList<PersistCall>();
+
+        public void updateStarted(int revision, long timestamp) {
+            events.add("start " + revision + " " + timestamp);
+        }
+
+        public void persistCallsRead(List<PersistCall> calls) {
+            events.add("chunk " + calls.size());
+            persistCalls.addAll(calls);
+        }
+
+        public void updateFinished(int revision, long timestamp) {
+            events.add("finish " + revision + " " + timestamp);
+        }
+    }
+
+    private RecordingUpdateHandler updateHandler;
+
+    @Override
+    protected void setUp() throws Exception {
+        updateHandler = new RecordingUpdateHandler();
+    }
+
+    private static String persistCalls(int count) throws Exception {
+        JSONArray calls = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            JSONObject call = new JSONObject();
+            call.put("M", "persistProperty");
+            call.put("uuid", "uuid" + i);
+            call.put("NV", "a \"quoted\" value\nwith a newline");
+            calls.put(call);
+        }
+        return calls.toString();
+    }
+
+    /**
+     * The server nests the update in the envelope as a string, and the persist
+     * calls in the update as a string again. Both levels of escaping must be
+     * undone while streaming.
+     */
+    public void testNestedStringUpdateIsChunked() throws Exception {
+        JSONObject update = new JSONObject();
+        update.put("currentRevision", 42);
+        update.put("serverTimestamp", 1234567890123L);
+        update.put("data", persistCalls(5));
+        JSONObject envelope = new JSONObject();
+        envelope.put("responseKind", "data");
+        envelope.put("data", update.toString());
+
+        StreamingUpdateResponseHandler handler = new StreamingUpdateResponseHandler(updateHandler, 2);
+        JSONMessage message = handler.handleResponse(new StringReader(envelope.toString()), 200);
+
+        assertNull(message.getBody());
+        assertEquals(200, message.getStatusCode());
+        assertEquals("start 42 1234567890123", updateHandler.events.get(0));
+        assertEquals("chunk 2", updateHandler.events.get(1));
+        assertEquals("chunk 2", updateHandler.events.get(2));
+        assertEquals("chunk 1", updateHandler.events.get(3));
+        assertEquals("finish 42 1234567890123", updateHandler.events.get(4));
+        assertEquals(5, updateHandler.persistCalls.size());
+        assertEquals("uuid3", updateHandler.persistCalls.get(3).getUUID());
+        assertEquals("a \"quoted\" value\nwith a newline", updateHandler.persistCalls.get(3).getNewValue());
+    }
+
+    /**
+     * If the persist calls come before the revision they must be held until
+     * the revision is known.
+     */
+    public void testDataBeforeRevision() throws Exception {
+        String update = "{\"data\":" + persistCalls(3) + ",\"currentRevision\":7,\"serverTimestamp\":99}";
+        String envelope = "{\"responseKind\":\"data\",\"data\":" + update + "}";
+
+        StreamingUpdateResponseHandler handler = new StreamingUpdateResponseHandler(updateHandler, 10);
+        handler.handleResponse(new StringReader(envelope), 200);
+
+        assertEquals(3, updateHandler.events.size());
+        assertEquals("start 7 99", updateHandler.events.get(0));
+        assertEquals("chunk 3", updateHandler.events.get(1));
+        assertEquals("finish 7 99", updateHandler.events.get(2));
+    }
+
+    /**
+     * The update is still given to the handler if the kind of the response
+     * only comes after its data.
+     */
+    public void testDataBeforeResponseKind() throws Exception {
+        JSONObject update = new JSONObject();
+        update.put("currentRevision", 8);
+        update.put("serverTimestamp", 100);
+        update.put("data", persistCalls(2));
+        String envelope = "{\"data\":" + JSONObject.quote(update.toString()) + ",\"responseKind\":\"data\"}";
+
+        StreamingUpdateResponseHandler handler = new StreamingUpdateResponseHandler(updateHandler);
+        JSONMessage message = handler.handleResponse(new StringReader(envelope), 200);
+
+        assertNull(message.getBody());
+        assertEquals(3, updateHandler.events.size());
+        assertEquals("start 8 100", updateHandler.events.get(0));
+        assertEquals("chunk 2", updateHandler.events.get(1));
+        assertEquals("uuid1", updateHandler.persistCalls.get(1).getUUID());
+    }
+
+    /**
+     * Responses that are not updates are returned as messages for the caller
+     * to handle.
+     */
+    public void testUnsuccessfulResponseIsNotStreamed() throws Exception {
+        String envelope = "{\"responseKind\":\"unsuccessful\",\"data\":\"Not allowed\"}";
+
+        StreamingUpdateResponseHandler handler = new StreamingUpdateResponseHandler(updateHandler);
+        JSONMessage message = handler.handleResponse(new StringReader(envelope), 200);
+
+        assertEquals("Not allowed", message.getBody());
+        assertTrue(updateHandler.events.isEmpty());
+    }
+}
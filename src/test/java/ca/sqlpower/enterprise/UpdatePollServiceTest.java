@@ -0,0 +1,546 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.enterprise;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.conn.SingleClientConnManager;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import ca.sqlpower.dao.json.SPJSONMessageDecoder.PersistCall;
+import ca.sqlpower.enterprise.client.ProjectLocation;
+import ca.sqlpower.enterprise.client.SPServerInfo;
+import ca.sqlpower.object.SPObject;
+import ca.sqlpower.util.RunnableDispatcher;
+
+public class UpdatePollServiceTest extends TestCase {
+
+    /**
+     * The longest time to wait for a poll to be made or an update applied.
+     */
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    /**
+     * How long to wait to be reasonably sure a poll that should not be made
+     * was not made.
+     */
+    private static final long QUIET_MILLIS = 200;
+    
+    private static interface Condition {
+        boolean isMet();
+    }
+
+    /**
+     * The response to one poll of a workspace. If the exception is set the
+     * poll fails with it, otherwise the status and body are returned.
+     */
+    private static class StubResponse {
+        private final int status;
+        private final String body;
+        private final IOException exception;
+        
+        StubResponse(int status, String body) {
+            this.status = status;
+            this.body = body;
+            this.exception = null;
+        }
+        
+        StubResponse(IOException exception) {
+            this.status = 0;
+            this.body = null;
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * Answers update requests like the server's long poll: each request
+     * blocks until a response is queued for its workspace or the request is
+     * aborted.
+     */
+    private static class StubHttpClient implements HttpClient {
+        
+        private final Map<String, BlockingQueue<StubResponse>> responses = 
+            new HashMap<String, BlockingQueue<StubResponse>>();
+        
+        private final Map<String, Integer> requestCounts = new HashMap<String, Integer>();
+        
+        private final Map<String, Integer> inFlight = new HashMap<String, Integer>();
+        
+        private final Map<String, Integer> maxInFlight = new HashMap<String, Integer>();
+        
+        private final ClientConnectionManager connectionManager = 
+            new SingleClientConnManager(new BasicHttpParams(), new SchemeRegistry());
+        
+        private synchronized BlockingQueue<StubResponse> getQueue(String uuid) {
+            BlockingQueue<StubResponse> queue = responses.get(uuid);
+            if (queue == null) {
+                queue = new LinkedBlockingQueue<StubResponse>();
+                responses.put(uuid, queue);
+            }
+            return queue;
+        }
+        
+        void respond(String uuid, StubResponse response) {
+            getQueue(uuid).add(response);
+        }
+        
+        synchronized int getRequestCount(String uuid) {
+            return count(requestCounts, uuid);
+        }
+        
+        synchronized int getInFlight(String uuid) {
+            return count(inFlight, uuid);
+        }
+        
+        synchronized int getMaxInFlight(String uuid) {
+            return count(maxInFlight, uuid);
+        }
+        
+        private static int count(Map<String, Integer> counts, String uuid) {
+            Integer count = counts.get(uuid);
+            return count == null ? 0 : count;
+        }
+        
+        public <T> T execute(HttpUriRequest request, ResponseHandler<? extends T> handler) 
+                throws IOException {
+            String path = request.getURI().getPath();
+            String uuid = path.substring(path.lastIndexOf('/') + 1);
+            synchronized (this) {
+                requestCounts.put(uuid, count(requestCounts, uuid) + 1);
+                int current = count(inFlight, uuid) + 1;
+                inFlight.put(uuid, current);
+                maxInFlight.put(uuid, Math.max(current, count(maxInFlight, uuid)));
+            }
+            StubResponse response = null;
+            try {
+                while (response == null) {
+                    if (((HttpRequestBase) request).isAborted()) {
+                        throw new IOException("Request aborted");
+                    }
+                    response = getQueue(uuid).poll(10, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted waiting for the long poll");
+            } finally {
+                synchronized (this) {
+                    inFlight.put(uuid, count(inFlight, uuid) - 1);
+                }
+            }
+            if (response.exception != null) {
+                throw response.exception;
+            }
+            HttpResponse httpResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, response.status, "");
+            httpResponse.setEntity(new StringEntity(response.body, "UTF-8"));
+            return handler.handleResponse(httpResponse);
+        }
+        
+        public ClientConnectionManager getConnectionManager() {
+            return connectionManager;
+        }
+        
+        public HttpParams getParams() {
+            throw new UnsupportedOperationException();
+        }
+        
+        public HttpResponse execute(HttpUriRequest request) {
+            throw new UnsupportedOperationException();
+        }
+        
+        public HttpResponse execute(HttpUriRequest request, HttpContext context) {
+            throw new UnsupportedOperationException();
+        }
+        
+        public HttpResponse execute(HttpHost target, HttpRequest request) {
+            throw new UnsupportedOperationException();
+        }
+        
+        public HttpResponse execute(HttpHost target, HttpRequest request, HttpContext context) {
+            throw new UnsupportedOperationException();
+        }
+        
+        public <T> T execute(HttpUriRequest request, ResponseHandler<? extends T> handler, 
+                HttpContext context) {
+            throw new UnsupportedOperationException();
+        }
+        
+        public <T> T execute(HttpHost target, HttpRequest request, 
+                ResponseHandler<? extends T> handler) {
+            throw new UnsupportedOperationException();
+        }
+        
+        public <T> T execute(HttpHost target, HttpRequest request, 
+                ResponseHandler<? extends T> handler, HttpContext context) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Runs everything on the calling thread, as a session without a user
+     * interface does.
+     */
+    private static class ImmediateDispatcher implements RunnableDispatcher {
+        public void runInForeground(Runnable runner) {
+            runner.run();
+        }
+        public void runInBackground(Runnable runner) {
+            runner.run();
+        }
+        public boolean isForegroundThread() {
+            return true;
+        }
+    }
+
+    /**
+     * Records the revisions of the updates it applies instead of decoding
+     * them into a workspace.
+     */
+    private static class StubResolver extends AbstractNetworkConflictResolver {
+        
+        private final List<Integer> appliedRevisions = new ArrayList<Integer>();
+        
+        private final List<Integer> batchSizes = new ArrayList<Integer>();
+        
+        private int abandonedUpdates;
+        
+        StubResolver(String uuid, SPServerInfo serverInfo) {
+            super(new ProjectLocation(uuid, uuid, serverInfo), null, null, null, new ImmediateDispatcher());
+        }
+        
+        @Override
+        protected void decodeMessage(List<PersistCall> persistCalls) {
+            synchronized (appliedRevisions) {
+                batchSizes.add(persistCalls.size());
+            }
+        }
+        
+        @Override
+        protected void finishApplyingUpdate(int newRevision, long timestamp) {
+            synchronized (appliedRevisions) {
+                appliedRevisions.add(newRevision);
+            }
+            super.finishApplyingUpdate(newRevision, timestamp);
+        }
+        
+        List<Integer> getAppliedRevisions() {
+            synchronized (appliedRevisions) {
+                return new ArrayList<Integer>(appliedRevisions);
+            }
+        }
+        
+        @Override
+        protected void abandonUpdate() {
+            synchronized (appliedRevisions) {
+                abandonedUpdates++;
+            }
+        }
+        
+        int getAbandonedUpdates() {
+            synchronized (appliedRevisions) {
+                return abandonedUpdates;
+            }
+        }
+        
+        List<Integer> getBatchSizes() {
+            synchronized (appliedRevisions) {
+                return new ArrayList<Integer>(batchSizes);
+            }
+        }
+        
+        void setRetryDelay(long retryDelay) {
+            this.retryDelay = retryDelay;
+        }
+        
+        @Override
+        protected void flush(boolean reflush) {
+            // nothing is sent to the server in these tests
+        }
+        
+        @Override
+        protected List<ConflictMessage> detectConflicts() {
+            return new ArrayList<ConflictMessage>();
+        }
+        
+        @Override
+        protected SPObject getWorkspace() {
+            return null;
+        }
+    }
+    
+    private SPServerInfo serverInfo;
+    
+    private StubHttpClient client;
+    
+    private UpdatePollService service;
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        serverInfo = new SPServerInfo("test", "localhost", 8080, "/server", "user", "pass");
+        client = new StubHttpClient();
+        service = new UpdatePollService(serverInfo, client, 2);
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        service.shutdown();
+        super.tearDown();
+    }
+    
+    private static StubResponse update(int revision) throws Exception {
+        return update(revision, 0);
+    }
+    
+    private static StubResponse update(int revision, int persistCallCount) throws Exception {
+        JSONArray persistCalls = new JSONArray();
+        for (int i = 0; i < persistCallCount; i++) {
+            persistCalls.put(new JSONObject().put("uuid", "uuid" + i));
+        }
+        // the revision comes before the persist calls, as the server sends
+        // it, so the calls are streamed
+        String update = "{\"currentRevision\":" + revision + ",\"serverTimestamp\":5,\"data\":" + 
+            JSONObject.quote(persistCalls.toString()) + "}";
+        return new StubResponse(200, "{\"responseKind\":\"data\",\"data\":" + JSONObject.quote(update) + "}");
+    }
+    
+    private static void waitFor(String description, Condition condition) throws Exception {
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.isMet()) {
+            if (System.currentTimeMillis() > end) {
+                fail("Timed out waiting for " + description);
+            }
+            Thread.sleep(10);
+        }
+    }
+    
+    private void waitForPolls(final String uuid, final int count) throws Exception {
+        waitFor(count + " polls of " + uuid, new Condition() {
+            public boolean isMet() {
+                return client.getRequestCount(uuid) >= count && client.getInFlight(uuid) > 0;
+            }
+        });
+    }
+    
+    private void waitForRevision(final StubResolver resolver, final int revision) throws Exception {
+        waitFor("revision " + revision, new Condition() {
+            public boolean isMet() {
+                return resolver.getAppliedRevisions().contains(revision);
+            }
+        });
+    }
+
+    /**
+     * More workspaces than pollers share the pollers by taking turns, each
+     * long poll being given up after the poll timeout, and an update to any
+     * of them is applied.
+     */
+    public void testMoreWorkspacesThanPollers() throws Exception {
+        service.setPollTimeout(50);
+        List<StubResolver> resolvers = new ArrayList<StubResolver>();
+        for (int i = 0; i < 5; i++) {
+            StubResolver resolver = new StubResolver("ws" + i, serverInfo);
+            resolvers.add(resolver);
+            service.register(resolver);
+        }
+        
+        // every workspace gets a second turn, which it could not if the
+        // first polls were held
+        for (int i = 0; i < 5; i++) {
+            final String uuid = "ws" + i;
+            waitFor("2 polls of " + uuid, new Condition() {
+                public boolean isMet() {
+                    return client.getRequestCount(uuid) >= 2;
+                }
+            });
+        }
+        for (int i = 0; i < 5; i++) {
+            client.respond("ws" + i, update(1));
+        }
+        for (StubResolver resolver : resolvers) {
+            waitForRevision(resolver, 1);
+            assertEquals(0, resolver.getPollMetrics().getFailedPollCount());
+            assertEquals(1, client.getMaxInFlight(resolver.projectLocation.getUUID()));
+        }
+        assertNotNull(service.getMetrics("ws4"));
+    }
+
+    /**
+     * A failed poll is retried after the resolver's retry delay, doubled for
+     * each failure in a row, and the delay goes back to normal once a poll
+     * succeeds.
+     */
+    public void testRetryWithBackoff() throws Exception {
+        final StubResolver resolver = new StubResolver("ws", serverInfo);
+        resolver.setRetryDelay(10);
+        client.respond("ws", new StubResponse(new IOException("failure 1")));
+        client.respond("ws", new StubResponse(new IOException("failure 2")));
+        client.respond("ws", new StubResponse(new IOException("failure 3")));
+        service.register(resolver);
+        
+        waitForPolls("ws", 4);
+        assertEquals(3, resolver.getPollMetrics().getFailedPollCount());
+        assertEquals(40, service.getRetryDelay(resolver));
+        
+        client.respond("ws", update(1));
+        waitForRevision(resolver, 1);
+        waitFor("the retry delay to reset", new Condition() {
+            public boolean isMet() {
+                return service.getRetryDelay(resolver) == 10;
+            }
+        });
+        waitForPolls("ws", 5);
+        assertEquals(1, client.getMaxInFlight("ws"));
+    }
+    
+    public void testRetryDelayIsCapped() throws Exception {
+        final StubResolver resolver = new StubResolver("ws", serverInfo);
+        resolver.setRetryDelay(UpdatePollService.MAX_RETRY_DELAY * 2);
+        assertEquals(UpdatePollService.MAX_RETRY_DELAY, service.getRetryDelay(resolver));
+        
+        client.respond("ws", new StubResponse(new IOException("failure")));
+        service.register(resolver);
+        waitFor("a failed poll", new Condition() {
+            public boolean isMet() {
+                return resolver.getPollMetrics().getFailedPollCount() == 1;
+            }
+        });
+        assertEquals(UpdatePollService.MAX_RETRY_DELAY, service.getRetryDelay(resolver));
+    }
+    
+    /**
+     * An unregistered workspace's poll in progress is allowed to finish but
+     * the workspace is not polled again.
+     */
+    public void testUnregister() throws Exception {
+        StubResolver resolver = new StubResolver("ws", serverInfo);
+        service.register(resolver);
+        waitForPolls("ws", 1);
+        
+        service.unregister(resolver);
+        assertNull(service.getMetrics("ws"));
+        client.respond("ws", update(1));
+        waitForRevision(resolver, 1);
+        
+        Thread.sleep(QUIET_MILLIS);
+        assertEquals(1, client.getRequestCount("ws"));
+    }
+
+    /**
+     * Scheduling a workspace that is already being polled must not start a
+     * second poll for it.
+     */
+    public void testDuplicateSchedulePoll() throws Exception {
+        StubResolver resolver = new StubResolver("ws", serverInfo);
+        service.register(resolver);
+        waitForPolls("ws", 1);
+        
+        service.updateFinished(resolver);
+        service.updateFinished(resolver);
+        Thread.sleep(QUIET_MILLIS);
+        assertEquals(1, client.getRequestCount("ws"));
+        
+        client.respond("ws", update(1));
+        waitForRevision(resolver, 1);
+        waitForPolls("ws", 2);
+        Thread.sleep(QUIET_MILLIS);
+        assertEquals(2, client.getRequestCount("ws"));
+        assertEquals(1, client.getMaxInFlight("ws"));
+        assertEquals(1, resolver.getAppliedRevisions().size());
+    }
+
+    /**
+     * A refused update request must not stop the workspace from being
+     * polled, even without a user prompter.
+     */
+    public void testPreconditionFailedKeepsPolling() throws Exception {
+        StubResolver resolver = new StubResolver("ws", serverInfo);
+        client.respond("ws", new StubResponse(412, 
+                "{\"responseKind\":\"unsuccessful\",\"data\":\"Precondition failed\"}"));
+        service.register(resolver);
+        
+        waitForPolls("ws", 2);
+        client.respond("ws", update(3));
+        waitForRevision(resolver, 3);
+        assertEquals(1, client.getMaxInFlight("ws"));
+    }
+
+    /**
+     * A large update is given to the foreground in batches as it is read.
+     */
+    public void testLargeUpdateIsAppliedInBatches() throws Exception {
+        StubResolver resolver = new StubResolver("ws", serverInfo);
+        client.respond("ws", update(1, 1200));
+        service.register(resolver);
+        
+        waitForRevision(resolver, 1);
+        assertEquals(Arrays.asList(500, 500, 200), resolver.getBatchSizes());
+        assertEquals(0, resolver.getAbandonedUpdates());
+    }
+
+    /**
+     * If an update cannot be read to its end the batches already decoded are
+     * rolled back and the update is requested again.
+     */
+    public void testTruncatedUpdateIsAbandoned() throws Exception {
+        final StubResolver resolver = new StubResolver("ws", serverInfo);
+        resolver.setRetryDelay(10);
+        String body = update(1, 1200).body;
+        client.respond("ws", new StubResponse(200, body.substring(0, body.length() * 2 / 3)));
+        service.register(resolver);
+        
+        waitFor("a failed poll", new Condition() {
+            public boolean isMet() {
+                return resolver.getPollMetrics().getFailedPollCount() == 1;
+            }
+        });
+        assertEquals(Arrays.asList(500), resolver.getBatchSizes());
+        assertEquals(1, resolver.getAbandonedUpdates());
+        assertTrue(resolver.getAppliedRevisions().isEmpty());
+        
+        client.respond("ws", update(1, 10));
+        waitForRevision(resolver, 1);
+        assertEquals(1, resolver.getAbandonedUpdates());
+    }
+}
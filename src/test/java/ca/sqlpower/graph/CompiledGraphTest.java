@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class CompiledGraphTest extends TestCase {
+
+    /**
+     * A graph of integers built from a map of each node to its adjacent nodes.
+     * Edges are not needed by the compiled graph so none are returned.
+     */
+    private static class AdjacencyGraph implements GraphModel<Integer, Object> {
+        
+        private final Map<Integer, List<Integer>> adjacency = new LinkedHashMap<Integer, List<Integer>>();
+        
+        void addNode(Integer node, Integer ... adjacent) {
+            adjacency.put(node, Arrays.asList(adjacent));
+        }
+        
+        public Collection<Integer> getAdjacentNodes(Integer node) {
+            return adjacency.get(node);
+        }
+
+        public Collection<Object> getEdges() {
+            return Collections.emptyList();
+        }
+
+        public Collection<Object> getInboundEdges(Integer node) {
+            return Collections.emptyList();
+        }
+
+        public Collection<Integer> getNodes() {
+            return adjacency.keySet();
+        }
+
+        public Collection<Object> getOutboundEdges(Integer node) {
+            return Collections.emptyList();
+        }
+    }
+    
+    /**
+     *   1 -> 2 -> 4
+     *   |         ^
+     *   v         |
+     *   3 --------+     5 -> 6 (not in graph)
+     */
+    private AdjacencyGraph graph;
+    
+    @Override
+    protected void setUp() throws Exception {
+        graph = new AdjacencyGraph();
+        graph.addNode(1, 2, 3);
+        graph.addNode(2, 4);
+        graph.addNode(3, 4);
+        graph.addNode(4);
+        graph.addNode(5, 6);
+    }
+    
+    public void testCompile() throws Exception {
+        CompiledGraph<Integer> compiled = new CompiledGraph<Integer>(graph);
+        
+        assertEquals(5, compiled.getNodeCount());
+        assertEquals(4, compiled.getEdgeCount());
+        assertEquals(0, compiled.getId(1));
+        assertEquals(-1, compiled.getId(6));
+        assertEquals(Integer.valueOf(3), compiled.getNode(2));
+        assertEquals(Arrays.asList(2, 3), compiled.getAdjacentNodes(1));
+        assertEquals(0, compiled.getOutDegree(compiled.getId(5)));
+    }
+    
+    public void testShortestPaths() throws Exception {
+        Map<Integer, Integer> pi = new DijkstrasAlgorithm<Integer, Object>().calculateShortestPaths(graph, 1);
+        
+        assertEquals(3, pi.size());
+        assertEquals(Integer.valueOf(1), pi.get(2));
+        assertEquals(Integer.valueOf(1), pi.get(3));
+        // 2 comes before 3 in the node order so it is visited first
+        assertEquals(Integer.valueOf(2), pi.get(4));
+        assertFalse(pi.containsKey(5));
+    }
+    
+    public void testTopologicalSort() throws Exception {
+        DepthFirstSearch<Integer, Object> dfs = new DepthFirstSearch<Integer, Object>();
+        dfs.performSearch(graph);
+        
+        assertFalse(dfs.isCyclic());
+        assertEquals(Arrays.asList(5, 1, 3, 2, 4), dfs.getFinishOrder());
+    }
+
+    /**
+     * A chain this long overflowed the call stack when the search was
+     * recursive.
+     */
+    public void testLongChain() throws Exception {
+        AdjacencyGraph chain = new AdjacencyGraph();
+        int length = 200000;
+        for (int i = 0; i < length - 1; i++) {
+            chain.addNode(i, i + 1);
+        }
+        chain.addNode(length - 1, 0);
+        
+        DepthFirstSearch<Integer, Object> dfs = new DepthFirstSearch<Integer, Object>();
+        dfs.performSearch(chain);
+        
+        assertTrue(dfs.isCyclic());
+        assertEquals(length, dfs.getFinishOrder().size());
+        assertEquals(Integer.valueOf(0), dfs.getFinishOrder().get(0));
+        assertEquals(Integer.valueOf(length - 1), dfs.getFinishOrder().get(length - 1));
+    }
+    
+    public void testConnectedComponents() throws Exception {
+        Set<Set<Integer>> components = new ConnectedComponentFinder<Integer, Object>().findConnectedComponents(graph);
+        
+        List<Set<Integer>> expected = new ArrayList<Set<Integer>>();
+        expected.add(new HashSet<Integer>(Arrays.asList(1, 2, 3, 4)));
+        expected.add(Collections.singleton(5));
+        assertEquals(expected, new ArrayList<Set<Integer>>(components));
+    }
+}
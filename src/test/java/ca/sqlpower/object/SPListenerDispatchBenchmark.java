@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.object;
+
+import ca.sqlpower.sqlobject.StubSQLObject;
+import ca.sqlpower.testutil.Benchmark;
+
+/**
+ * Measures how quickly an {@link AbstractSPObject} fires a property change
+ * event to its listeners. Each operation changes the name of the object, so
+ * every listener is called once.
+ */
+public class SPListenerDispatchBenchmark extends Benchmark {
+
+    private static final String[] NAMES = new String[] {"a", "b"};
+
+    private final int listenerCount;
+
+    private StubSQLObject object;
+
+    private CountingSPListener[] listeners;
+
+    private int next;
+
+    /**
+     * @param listenerCount
+     *            The number of listeners attached to the object firing the
+     *            events.
+     */
+    public SPListenerDispatchBenchmark(int listenerCount, 
+            int warmupIterations, int iterationsPerRound, int rounds) {
+        super("SPObject event dispatch (" + listenerCount + " listeners)", 
+                warmupIterations, iterationsPerRound, rounds);
+        this.listenerCount = listenerCount;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        object = new StubSQLObject();
+        listeners = new CountingSPListener[listenerCount];
+        for (int i = 0; i < listenerCount; i++) {
+            listeners[i] = new CountingSPListener();
+            object.addSPListener(listeners[i]);
+        }
+        next = 0;
+    }
+
+    @Override
+    protected long runOnce() throws Exception {
+        int before = countCalls();
+        object.setName(NAMES[next++ & 1]);
+        return countCalls() - before;
+    }
+
+    /**
+     * Returns the number of property changes all of the listeners have seen.
+     */
+    private int countCalls() {
+        int calls = 0;
+        for (CountingSPListener listener : listeners) {
+            calls += listener.getPropertyChangedCount();
+        }
+        return calls;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.object;
+
+import java.beans.PropertyChangeEvent;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sqlobject.StubSQLObject;
+
+public class SPListenerListTest extends TestCase {
+
+    public void testSnapshotUnaffectedByChanges() throws Exception {
+        SPListenerList list = new SPListenerList();
+        CountingSPListener first = new CountingSPListener();
+        CountingSPListener second = new CountingSPListener();
+        list.add(first);
+        SPListener[] snapshot = list.snapshot();
+        
+        list.add(second);
+        list.remove(first);
+        
+        assertEquals(1, snapshot.length);
+        assertSame(first, snapshot[0]);
+        assertEquals(1, list.size());
+        assertSame(second, list.get(0));
+        assertEquals(1, list.snapshot().length);
+    }
+
+    /**
+     * A listener that removes itself while an event is being fired must not
+     * stop the remaining listeners from receiving the event.
+     */
+    public void testListenerRemovingItselfDuringEvent() throws Exception {
+        final StubSQLObject object = new StubSQLObject();
+        CountingSPListener counter = new CountingSPListener();
+        object.addSPListener(counter);
+        object.addSPListener(new AbstractSPListener() {
+            @Override
+            public void propertyChanged(PropertyChangeEvent evt) {
+                object.removeSPListener(this);
+            }
+        });
+        
+        object.setName("new name");
+        
+        assertEquals(1, counter.getPropertyChangedCount());
+        assertEquals(1, object.getSPListeners().size());
+    }
+}
@@ -278,6 +278,32 @@ public class QueryImplTest extends TestCase {
         assertTrue(query.getJoins().contains(join2to3));
     }
     
+    /**
+     * The join graph is kept between calls, so it must be rebuilt when joins
+     * are added and removed.
+     */
+    public void testCrossJoinsFollowJoinChanges() throws Exception {
+        QueryImpl query = new QueryImpl(new StubDatabaseMapping());
+        ItemContainer container1 = new ItemContainer("Table 1");
+        StringItem item1 = new StringItem("Column 1");
+        container1.addItem(item1);
+        query.addTable(container1);
+        
+        ItemContainer container2 = new ItemContainer("Table 2");
+        StringItem item2 = new StringItem("Column 2");
+        container2.addItem(item2);
+        query.addTable(container2);
+        
+        assertTrue(query.containsCrossJoins());
+        
+        SQLJoin join = new SQLJoin(item1, item2);
+        query.addJoin(join);
+        assertFalse(query.containsCrossJoins());
+        
+        query.removeJoin(join);
+        assertTrue(query.containsCrossJoins());
+    }
+    
     /**
      * This test is to ensure that a simple graph of the query will have
      * proper edges and nodes.
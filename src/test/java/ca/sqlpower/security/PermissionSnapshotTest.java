@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.security;
+
+import java.util.Collections;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sql.DatabaseObject;
+import ca.sqlpower.testutil.MockJDBCResultSet;
+
+public class PermissionSnapshotTest extends TestCase {
+
+    private static class StubDatabaseObject implements DatabaseObject {
+        private final String type;
+        private final String name;
+
+        StubDatabaseObject(String type, String name) {
+            this.type = type;
+            this.name = name;
+        }
+
+        public String getObjectName() {
+            return name;
+        }
+
+        public String getObjectType() {
+            return type;
+        }
+    }
+
+    private MockJDBCResultSet rs;
+
+    @Override
+    protected void setUp() throws Exception {
+        rs = new MockJDBCResultSet(11);
+        rs.addRow(new Object[] { "U", "bob", "O", "KPI", "sales", "Y", "N", "N", "N", "N", "N" });
+        rs.addRow(new Object[] { "G", "admins", "S", "KPI", "ALL", "N", "Y", "N", "N", "N", "Y" });
+    }
+
+    public void testObjectPermission() throws Exception {
+        PermissionSnapshot snapshot = PermissionSnapshot.read(rs, null, 0);
+        DatabaseObject sales = new StubDatabaseObject("KPI", "sales");
+        DatabaseObject costs = new StubDatabaseObject("KPI", "costs");
+
+        assertTrue(snapshot.isGranted(sales, PLSecurityManager.MODIFY_PERMISSION));
+        assertFalse(snapshot.isGranted(costs, PLSecurityManager.MODIFY_PERMISSION));
+        assertFalse(snapshot.isGranted(sales, PLSecurityManager.EXECUTE_PERMISSION));
+    }
+
+    public void testSystemPermissionCoversEveryObject() throws Exception {
+        PermissionSnapshot snapshot = PermissionSnapshot.read(rs, null, 0);
+
+        assertTrue(snapshot.isGranted(new StubDatabaseObject("KPI", "costs"), PLSecurityManager.DELETE_PERMISSION));
+        assertTrue(snapshot.isGranted(PLSecurityManager.getSystemObject("KPI"), PLSecurityManager.CREATE_PERMISSION));
+        assertFalse(snapshot.isGranted(PLSecurityManager.getSystemObject("KPI"), PLSecurityManager.MODIFY_PERMISSION));
+        assertFalse(snapshot.isGranted(new StubDatabaseObject("REPORT", "costs"), PLSecurityManager.DELETE_PERMISSION));
+    }
+
+    public void testGroupFilterExcludesGroups() throws Exception {
+        PermissionSnapshot snapshot = PermissionSnapshot.read(rs, Collections.singleton("users"), 0);
+
+        assertFalse(snapshot.isGranted(new StubDatabaseObject("KPI", "costs"), PLSecurityManager.DELETE_PERMISSION));
+        assertTrue(snapshot.isGranted(new StubDatabaseObject("KPI", "sales"), PLSecurityManager.MODIFY_PERMISSION));
+    }
+
+    public void testClearingCacheMakesSnapshotStale() throws Exception {
+        PermissionSnapshot snapshot = PermissionSnapshot.read(rs, null, PLSecurityManager.getPermissionGeneration());
+        long now = System.currentTimeMillis();
+        assertTrue(snapshot.isFresh(now, 60000));
+        assertFalse(snapshot.isFresh(now + 60000, 60000));
+
+        PLSecurityManager.clearPermissionCache();
+        assertFalse(snapshot.isFresh(now, 60000));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import junit.framework.TestCase;
+
+public class BlockSequenceGeneratorTest extends TestCase {
+
+    /**
+     * Counts up from 1 and records the size of each block requested.
+     */
+    private static class CountingSequenceGenerator extends SequenceGenerator {
+
+        private final List<Integer> requests = new ArrayList<Integer>();
+
+        private long last;
+
+        @Override
+        public synchronized long nextLong(String sequenceTable) throws SQLException {
+            return ++last;
+        }
+
+        @Override
+        public synchronized long[] nextLongs(String sequenceTable, int count) throws SQLException {
+            requests.add(count);
+            return super.nextLongs(sequenceTable, count);
+        }
+    }
+
+    /**
+     * Holds on to the prefetches so the test decides when they run.
+     */
+    private static class QueueingExecutor implements Executor {
+
+        private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            tasks.clear();
+        }
+    }
+
+    private CountingSequenceGenerator source;
+
+    @Override
+    protected void setUp() throws Exception {
+        source = new CountingSequenceGenerator();
+    }
+
+    public void testValuesComeFromBlocks() throws Exception {
+        BlockSequenceGenerator generator = new BlockSequenceGenerator(source, 10);
+        for (int i = 1; i <= 25; i++) {
+            assertEquals(i, generator.nextLong("seq"));
+        }
+        assertEquals(3, source.requests.size());
+        assertEquals(10, source.requests.get(0).intValue());
+    }
+
+    public void testSequencesHaveSeparateBlocks() throws Exception {
+        BlockSequenceGenerator generator = new BlockSequenceGenerator(source, 5);
+        assertEquals(1, generator.nextLong("a"));
+        assertEquals(6, generator.nextLong("b"));
+        assertEquals(2, generator.nextLong("a"));
+    }
+
+    public void testNextBlockIsPrefetched() throws Exception {
+        QueueingExecutor executor = new QueueingExecutor();
+        BlockSequenceGenerator generator = new BlockSequenceGenerator(source, 4, executor);
+        generator.nextLong("seq");
+        assertTrue(executor.tasks.isEmpty());
+        generator.nextLong("seq");
+        assertEquals(1, executor.tasks.size());
+        generator.nextLong("seq");
+        assertEquals("Only one prefetch is started per block", 1, executor.tasks.size());
+
+        executor.runAll();
+        assertEquals(2, source.requests.size());
+        assertEquals(4, generator.nextLong("seq"));
+        assertEquals(5, generator.nextLong("seq"));
+        assertEquals(2, source.requests.size());
+    }
+
+    public void testNextLongsDrainsBlockThenFetchesShortfall() throws Exception {
+        BlockSequenceGenerator generator = new BlockSequenceGenerator(source, 10);
+        generator.nextLong("seq");
+        long[] values = generator.nextLongs("seq", 20);
+        assertEquals(20, values.length);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(i + 2, values[i]);
+        }
+        assertEquals(2, source.requests.size());
+        assertEquals(11, source.requests.get(1).intValue());
+        assertEquals(22, generator.nextLong("seq"));
+    }
+
+    public void testNextLongsFromBlock() throws Exception {
+        BlockSequenceGenerator generator = new BlockSequenceGenerator(source, 10);
+        long[] values = generator.nextLongs("seq", 4);
+        assertEquals(4, values.length);
+        assertEquals(4, values[3]);
+        assertEquals(1, source.requests.size());
+        assertEquals(5, generator.nextLong("seq"));
+    }
+}
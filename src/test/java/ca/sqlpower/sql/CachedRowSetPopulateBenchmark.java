@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.sql.Types;
+
+import ca.sqlpower.testutil.Benchmark;
+import ca.sqlpower.testutil.MockJDBCResultSet;
+
+/**
+ * Measures caching a result set with {@link CachedRowSet#populate(java.sql.ResultSet)}
+ * and then reading every value of the cached rows back by column name, which
+ * is how the metadata decorators use their caches.
+ */
+public class CachedRowSetPopulateBenchmark extends Benchmark {
+
+    private final int rowCount;
+    
+    private final int columnCount;
+    
+    private MockJDBCResultSet rs;
+    
+    private String[] columnNames;
+
+    /**
+     * @param rowCount
+     *            The number of rows in the result set being cached.
+     * @param columnCount
+     *            The number of columns in the result set being cached. Even
+     *            columns hold strings and odd columns hold integers.
+     */
+    public CachedRowSetPopulateBenchmark(int rowCount, int columnCount, 
+            int warmupIterations, int iterationsPerRound, int rounds) {
+        super("CachedRowSet populate (" + rowCount + " rows x " + columnCount + " columns)", 
+                warmupIterations, iterationsPerRound, rounds);
+        this.rowCount = rowCount;
+        this.columnCount = columnCount;
+    }
+    
+    @Override
+    protected void setUp() throws Exception {
+        rs = new MockJDBCResultSet(columnCount);
+        columnNames = new String[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            columnNames[c] = "COL_" + c;
+            rs.setColumnName(c + 1, columnNames[c]);
+            rs.getMetaData().setColumnLabel(c + 1, columnNames[c]);
+            if (c % 2 == 0) {
+                rs.getMetaData().setColumnType(c + 1, Types.VARCHAR);
+                rs.getMetaData().setColumnClassName(c + 1, String.class.getName());
+            } else {
+                rs.getMetaData().setColumnType(c + 1, Types.INTEGER);
+                rs.getMetaData().setColumnClassName(c + 1, Integer.class.getName());
+            }
+        }
+        for (int r = 0; r < rowCount; r++) {
+            Object[] row = new Object[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                if (c % 2 == 0) {
+                    row[c] = "value_" + r + "_" + c;
+                } else {
+                    row[c] = Integer.valueOf(r * columnCount + c);
+                }
+            }
+            rs.addRow(row);
+        }
+    }
+    
+    @Override
+    protected long runOnce() throws Exception {
+        CachedRowSet crs = new CachedRowSet();
+        crs.populate(rs);
+        long count = 0;
+        while (crs.next()) {
+            for (String columnName : columnNames) {
+                if (crs.getObject(columnName) != null) {
+                    count++;
+                }
+            }
+        }
+        crs.close();
+        return count;
+    }
+}
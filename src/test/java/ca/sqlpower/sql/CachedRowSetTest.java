@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.sql;
+
+import java.sql.SQLException;
+
+import junit.framework.TestCase;
+import ca.sqlpower.testutil.MockJDBCResultSet;
+
+public class CachedRowSetTest extends TestCase {
+
+    private CachedRowSet crs;
+
+    @Override
+    protected void setUp() throws Exception {
+        MockJDBCResultSet rs = new MockJDBCResultSet(3);
+        rs.setColumnName(1, "id");
+        rs.setColumnName(2, "name");
+        rs.setColumnName(3, "Name");
+        for (int i = 1; i <= 5; i++) {
+            rs.addRow(new Object[] { i, "row" + i, "other" + i });
+        }
+        crs = new CachedRowSet();
+        crs.populate(rs);
+    }
+
+    public void testColumnIndexIgnoresCase() throws Exception {
+        assertEquals(1, crs.getColumnIndex("ID"));
+        assertEquals(1, crs.getColumnIndex("id"));
+        assertEquals(2, crs.findColumn("nAmE"));
+        assertEquals(-1, crs.getColumnIndex("missing"));
+        assertEquals(-1, crs.getColumnIndex(null));
+        try {
+            crs.findColumn("missing");
+            fail("Expected an exception for a missing column");
+        } catch (SQLException expected) {
+            // expected
+        }
+    }
+
+    public void testColumnIndexSeesExtraColumns() throws Exception {
+        CachedRowSet copy = new CachedRowSet();
+        copy.populate(crs, null, "extra");
+        assertEquals(4, copy.findColumn("EXTRA"));
+    }
+
+    public void testCursorsMoveIndependently() throws Exception {
+        CachedRowSet first = crs.createCursor();
+        CachedRowSet second = crs.createCursor();
+        assertTrue(first.next());
+        assertTrue(first.next());
+        assertTrue(second.next());
+        assertEquals("row2", first.getString("NAME"));
+        assertEquals("row1", second.getString("NAME"));
+        assertTrue(crs.isBeforeFirst());
+        assertTrue(first.last());
+        assertEquals(5, first.getInt("id"));
+        assertFalse(first.next());
+        assertTrue(first.isAfterLast());
+        assertEquals(5, second.size());
+    }
+
+    public void testCursorDoesNotSeeLaterRows() throws Exception {
+        CachedRowSet cursor = crs.createCursor();
+        crs.moveToInsertRow();
+        crs.updateInt(1, 6);
+        crs.insertRow();
+        crs.moveToCurrentRow();
+        assertEquals(6, crs.size());
+        assertEquals(5, cursor.size());
+        assertEquals(6, crs.createCursor().size());
+        try {
+            cursor.moveToInsertRow();
+            cursor.insertRow();
+            fail("Rows should not be insertable through a cursor");
+        } catch (SQLException expected) {
+            // expected
+        }
+    }
+
+    public void testCursorsOnManyThreads() throws Exception {
+        final int[] sums = new int[4];
+        Thread[] threads = new Thread[sums.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int slot = t;
+            final CachedRowSet cursor = crs.createCursor();
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int pass = 0; pass < 1000; pass++) {
+                            cursor.beforeFirst();
+                            while (cursor.next()) {
+                                sums[slot] += cursor.getInt("ID");
+                            }
+                        }
+                    } catch (SQLException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int sum : sums) {
+            assertEquals(15 * 1000, sum);
+        }
+    }
+}
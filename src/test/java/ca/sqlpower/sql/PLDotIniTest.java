@@ -23,6 +23,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 import junit.framework.TestCase;
@@ -299,4 +300,71 @@ public class PLDotIniTest extends TestCase {
     	UserDefinedSQLType sqlTypeInList = target.getSQLTypes().get(0);
     	assertEquals(sqlType, sqlTypeInList);
     }
+
+    public void testPasswordRoundTrip() throws Exception {
+        testRead();
+        target.getDataSource(FUN_DATASOURCE_NAME, JDBCDataSource.class).setPass("p@ss\u00e9 w0rd");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        target.write(out);
+
+        PlDotIni reread = new PlDotIni();
+        reread.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("p@ss\u00e9 w0rd", reread.getDataSource(FUN_DATASOURCE_NAME, JDBCDataSource.class).getPass());
+    }
+
+    /**
+     * Reloading a file should only fire events for the data sources that
+     * were added to or removed from it since it was last read.
+     */
+    public void testReloadIfModified() throws Exception {
+        testRead();
+        File file = File.createTempFile("pl.ini", null);
+        file.deleteOnExit();
+        target.write(file);
+
+        PlDotIni other = new PlDotIni();
+        other.read(file);
+        final List<String> events = new ArrayList<String>();
+        other.addDatabaseListChangeListener(new DatabaseListChangeListener() {
+            public void databaseAdded(DatabaseListChangeEvent e) {
+                events.add("added " + e.getDataSource().getName());
+            }
+            public void databaseRemoved(DatabaseListChangeEvent e) {
+                events.add("removed " + e.getDataSource().getName());
+            }
+        });
+        assertFalse(other.reloadIfModified());
+
+        JDBCDataSource newbie = new JDBCDataSource(target);
+        newbie.setName("newbie");
+        target.addDataSource(newbie);
+        target.removeDataSource(target.getDataSource(FUN_DATASOURCE_NAME));
+
+        assertTrue(other.reloadIfModified());
+        assertEquals(2, events.size());
+        assertTrue(events.contains("added newbie"));
+        assertTrue(events.contains("removed " + FUN_DATASOURCE_NAME));
+        assertNotNull(other.getDataSource("newbie"));
+        assertNull(other.getDataSource(FUN_DATASOURCE_NAME));
+        assertFalse(other.reloadIfModified());
+    }
+
+    public void testMonitorCanBeRestarted() throws Exception {
+        target.startMonitor();
+        Thread first = target.monitor;
+        target.startMonitor();
+        assertSame("Starting twice must not start a second monitor", first, target.monitor);
+        target.stopMonitor();
+        target.stopMonitor();
+        first.join(5000);
+        assertFalse(first.isAlive());
+
+        target.startMonitor();
+        Thread second = target.monitor;
+        assertNotSame(first, second);
+        assertTrue(second.isAlive());
+        target.stopMonitor();
+        second.join(5000);
+        assertFalse(second.isAlive());
+    }
 }
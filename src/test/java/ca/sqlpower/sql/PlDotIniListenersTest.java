@@ -18,6 +18,9 @@
  */
 package ca.sqlpower.sql;
 
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
 import javax.swing.undo.UndoManager;
 
 import junit.framework.TestCase;
@@ -134,4 +137,40 @@ public class PlDotIniListenersTest extends TestCase {
 		
 	}
 
+	/**
+	 * Listeners are called once the sections have been unlocked, so a listener
+	 * that waits for another thread reading the collection does not deadlock.
+	 */
+	public void testListenerCanWaitForOtherReaders() throws Exception {
+		final boolean[] otherThreadFinished = new boolean[1];
+		pld.addDatabaseListChangeListener(new DatabaseListChangeListener() {
+			public void databaseAdded(DatabaseListChangeEvent e) {
+				Thread reader = new Thread() {
+					public void run() {
+						pld.getConnections();
+					}
+				};
+				reader.start();
+				try {
+					reader.join(TimeUnit.SECONDS.toMillis(5));
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				otherThreadFinished[0] = !reader.isAlive();
+			}
+
+			public void databaseRemoved(DatabaseListChangeEvent e) {
+				// not tested
+			}
+		});
+		
+		pld.addDataSource(dbcs);
+		assertTrue(otherThreadFinished[0]);
+		
+		otherThreadFinished[0] = false;
+		pld.read(new ByteArrayInputStream("[Databases_1]\nLogical=Gallant\n".getBytes()));
+		assertTrue(otherThreadFinished[0]);
+		assertEquals(2, pld.getConnections().size());
+	}
+
 }
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import junit.framework.TestCase;
+
+public class SQLTest extends TestCase {
+
+    public void testInListSizeRoundsUpToPowerOfTwo() throws Exception {
+        assertEquals(1, SQL.inListSize(1));
+        assertEquals(2, SQL.inListSize(2));
+        assertEquals(4, SQL.inListSize(3));
+        assertEquals(8, SQL.inListSize(5));
+        assertEquals(SQL.MAX_IN_LIST_SIZE, SQL.inListSize(SQL.MAX_IN_LIST_SIZE));
+    }
+
+    public void testInListSizeOutOfRange() throws Exception {
+        try {
+            SQL.inListSize(0);
+            fail("Empty IN lists are not valid SQL");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        try {
+            SQL.inListSize(SQL.MAX_IN_LIST_SIZE + 1);
+            fail("Lists longer than the maximum must be split by the caller");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    public void testInListPlaceholders() throws Exception {
+        assertEquals("?", SQL.inListPlaceholders(1));
+        assertEquals("?,?,?,?", SQL.inListPlaceholders(4));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql.jdbcwrapper;
+
+import java.io.File;
+import java.sql.Connection;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sql.jdbcwrapper.DriverDialect.Family;
+import ca.sqlpower.sqlobject.SQLDatabase;
+
+public class DriverDialectTest extends TestCase {
+
+    private JDBCDataSource ds;
+
+    @Override
+    protected void setUp() throws Exception {
+        PlDotIni plini = new PlDotIni();
+        plini.read(new File("pl.regression.ini"));
+        ds = new JDBCDataSource(plini.getDataSource("regression_test", JDBCDataSource.class));
+        DriverDialect.clearCache();
+    }
+
+    public void testFamilyOf() throws Exception {
+        assertEquals(Family.ORACLE, DriverDialect.familyOf("Oracle JDBC driver"));
+        assertEquals(Family.SQL_SERVER, DriverDialect.familyOf("Microsoft SQL Server JDBC Driver 3.0"));
+        assertEquals(Family.HSQLDB, DriverDialect.familyOf("HSQL Database Engine Driver"));
+        assertEquals(Family.MOCK, DriverDialect.familyOf("SQL Power Mock JDBC Database Driver"));
+        assertEquals(Family.GENERIC, DriverDialect.familyOf("Some Other Driver"));
+    }
+
+    public void testDialectSharedByDataSourceConnections() throws Exception {
+        assertNull(DriverDialect.getCached(ds));
+        Connection con1 = ds.createConnection();
+        Connection con2 = ds.createConnection();
+        try {
+            DriverDialect dialect = ((ConnectionDecorator) con1).getDialect();
+            assertEquals(Family.HSQLDB, dialect.getFamily());
+            assertTrue(con1 instanceof HSQLDBConnectionDecorator);
+            assertSame(dialect, ((ConnectionDecorator) con2).getDialect());
+            assertSame(dialect, DriverDialect.getCached(ds));
+            assertEquals(con1.getMetaData().getIdentifierQuoteString(), dialect.getIdentifierQuoteString());
+        } finally {
+            con1.close();
+            con2.close();
+        }
+    }
+
+    public void testForConnectionLooksInsidePool() throws Exception {
+        SQLDatabase db = new SQLDatabase(ds);
+        Connection con = db.getConnection();
+        try {
+            DriverDialect dialect = DriverDialect.forConnection(con);
+            assertNotNull(dialect);
+            assertSame(DriverDialect.getCached(ds), dialect);
+        } finally {
+            con.close();
+            db.disconnect();
+        }
+    }
+
+    public void testCacheKeyMatchesMetaDataKey() throws Exception {
+        Connection con = ds.createConnection();
+        try {
+            DriverDialect dialect = ((ConnectionDecorator) con).getDialect();
+            assertEquals(new CacheKey(con.getMetaData(), "cat", "schema"),
+                    new CacheKey(dialect, "cat", "schema"));
+            assertFalse(new CacheKey(con.getMetaData(), "cat", "schema").equals(
+                    new CacheKey(dialect, "cat", "other")));
+        } finally {
+            con.close();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.sql.jdbcwrapper;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sql.CachedRowSet;
+import ca.sqlpower.sql.RowFilter;
+import ca.sqlpower.testutil.MockJDBCResultSet;
+
+public class IndexedCachedRowSetTest extends TestCase {
+
+    private IndexedCachedRowSet keys;
+
+    /**
+     * Sets up a key list shaped like the first columns of the imported keys
+     * result set, with PK_TABLE_SCHEM and PK_TABLE_NAME in columns 1 and 2 and
+     * FK_TABLE_SCHEM and FK_TABLE_NAME in columns 3 and 4. The rows for a
+     * table are deliberately not next to each other.
+     */
+    @Override
+    protected void setUp() throws Exception {
+        MockJDBCResultSet rs = new MockJDBCResultSet(4);
+        rs.setColumnName(1, "pktable_schem");
+        rs.setColumnName(2, "pktable_name");
+        rs.setColumnName(3, "fktable_schem");
+        rs.setColumnName(4, "fktable_name");
+        rs.addRow(new Object[] { "A", "PARENT", "A", "CHILD" });
+        rs.addRow(new Object[] { "A", "OTHER", "B", "CHILD" });
+        rs.addRow(new Object[] { "B", "PARENT", "A", "GRANDCHILD" });
+        rs.addRow(new Object[] { "A", "PARENT", "A", "GRANDCHILD" });
+        keys = new IndexedCachedRowSet(rs, 2, 4);
+    }
+
+    public void testExtractFindsScatteredRows() throws Exception {
+        CachedRowSet parents = keys.extract(2, "PARENT", null);
+        assertEquals(3, parents.size());
+        assertTrue(parents.next());
+        assertEquals("CHILD", parents.getString(4));
+        assertTrue(parents.next());
+        assertEquals("B", parents.getString(1));
+        assertTrue(parents.next());
+        assertEquals("GRANDCHILD", parents.getString(4));
+        assertFalse(parents.next());
+    }
+
+    public void testExtractAppliesFilter() throws Exception {
+        CachedRowSet children = keys.extract(4, "CHILD", new RowFilter() {
+            public boolean acceptsRow(Object[] row) {
+                return "B".equals(row[2]);
+            }
+        });
+        assertEquals(1, children.size());
+        assertTrue(children.next());
+        assertEquals("OTHER", children.getString("PKTABLE_NAME"));
+    }
+
+    public void testExtractMissingValue() throws Exception {
+        assertFalse(keys.containsValue(2, "NOPE"));
+        assertTrue(keys.containsValue(4, "GRANDCHILD"));
+        assertEquals(0, keys.extract(2, "NOPE", null).size());
+        try {
+            keys.extract(1, "A", null);
+            fail("Column 1 is not indexed");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    public void testExtractedRowsAreCopies() throws Exception {
+        CachedRowSet parents = keys.extract(2, "PARENT", null);
+        parents.next();
+        parents.updateString(4, "CHANGED");
+        assertEquals("CHILD", keys.extract(2, "PARENT", null).getData().get(0)[3]);
+    }
+}
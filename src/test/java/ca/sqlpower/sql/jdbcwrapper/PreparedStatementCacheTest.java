@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql.jdbcwrapper;
+
+import java.io.File;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLDatabase;
+
+public class PreparedStatementCacheTest extends TestCase {
+
+    private SQLDatabase db;
+
+    private ConnectionDecorator con;
+
+    @Override
+    protected void setUp() throws Exception {
+        PlDotIni plini = new PlDotIni();
+        plini.read(new File("pl.regression.ini"));
+        db = new SQLDatabase(new JDBCDataSource(plini.getDataSource("regression_test", JDBCDataSource.class)));
+        con = new GenericConnectionDecorator(db.getConnection());
+        Statement stmt = con.createStatement();
+        try {
+            stmt.execute("CREATE TABLE statement_cache_test (id INTEGER)");
+        } catch (SQLException ex) {
+            // left over from an earlier run
+        }
+        stmt.execute("DELETE FROM statement_cache_test");
+        stmt.execute("INSERT INTO statement_cache_test (id) VALUES (1)");
+        stmt.execute("INSERT INTO statement_cache_test (id) VALUES (2)");
+        stmt.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        con.close();
+        db.disconnect();
+    }
+
+    private int countRows(String sql, int id) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(sql);
+        try {
+            ps.setInt(1, id);
+            ResultSet rs = ps.executeQuery();
+            int count = 0;
+            while (rs.next()) count++;
+            return count;
+        } finally {
+            ps.close();
+        }
+    }
+
+    public void testCachingIsOffByDefault() throws Exception {
+        assertEquals(0, con.getStatementCacheSize());
+        countRows("SELECT id FROM statement_cache_test WHERE id = ?", 1);
+        countRows("SELECT id FROM statement_cache_test WHERE id = ?", 1);
+        assertEquals(0, con.getStatementCacheStats().getTotalRequested());
+    }
+
+    public void testClosedStatementIsReused() throws Exception {
+        con.setStatementCacheSize(4);
+        String sql = "SELECT id FROM statement_cache_test WHERE id = ?";
+        assertEquals(1, countRows(sql, 1));
+        assertEquals(1, countRows(sql, 2));
+        assertEquals(0, countRows(sql, 3));
+        assertEquals(1, con.getStatementCacheStats().getTotalMisses());
+        assertEquals(2, con.getStatementCacheStats().getTotalHits());
+    }
+
+    public void testResultSetOptionsAreSeparateEntries() throws Exception {
+        con.setStatementCacheSize(4);
+        String sql = "SELECT id FROM statement_cache_test";
+        con.prepareStatement(sql).close();
+        con.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).close();
+        assertEquals(2, con.getStatementCacheStats().getTotalMisses());
+        con.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).close();
+        assertEquals(1, con.getStatementCacheStats().getTotalHits());
+    }
+
+    public void testLeastRecentlyUsedStatementIsEvicted() throws Exception {
+        con.setStatementCacheSize(2);
+        String first = "SELECT id FROM statement_cache_test WHERE id = ?";
+        String second = "SELECT id FROM statement_cache_test WHERE id > ?";
+        String third = "SELECT id FROM statement_cache_test WHERE id < ?";
+        countRows(first, 1);
+        countRows(second, 1);
+        countRows(first, 1);
+        countRows(third, 1);
+        assertEquals(1, con.getStatementCacheStats().getTotalEvicted());
+
+        countRows(first, 1);
+        assertEquals(2, con.getStatementCacheStats().getTotalHits());
+        countRows(second, 1);
+        assertEquals(2, con.getStatementCacheStats().getTotalHits());
+    }
+
+    public void testStatementsInUseAreNotShared() throws Exception {
+        con.setStatementCacheSize(4);
+        String sql = "SELECT id FROM statement_cache_test WHERE id = ?";
+        PreparedStatement ps1 = con.prepareStatement(sql);
+        PreparedStatement ps2 = con.prepareStatement(sql);
+        ps1.setInt(1, 1);
+        ps2.setInt(1, 3);
+        ResultSet rs1 = ps1.executeQuery();
+        ResultSet rs2 = ps2.executeQuery();
+        assertTrue(rs1.next());
+        assertFalse(rs2.next());
+        ps1.close();
+        ps2.close();
+        assertEquals(2, con.getStatementCacheStats().getTotalMisses());
+    }
+
+    public void testClosedStatementCannotBeUsed() throws Exception {
+        con.setStatementCacheSize(4);
+        String sql = "SELECT id FROM statement_cache_test WHERE id = ?";
+        PreparedStatement ps = con.prepareStatement(sql);
+        assertFalse(ps.isClosed());
+        ps.close();
+        assertTrue(ps.isClosed());
+        try {
+            ps.setInt(1, 1);
+            fail("A closed statement must not reach the cached driver statement");
+        } catch (SQLException ex) {
+            assertEquals("Statement is closed", ex.getMessage());
+        }
+        try {
+            ps.executeQuery();
+            fail("A closed statement must not be executed");
+        } catch (SQLException ex) {
+            // expected
+        }
+        ps.close();
+
+        PreparedStatement reused = con.prepareStatement(sql);
+        assertFalse(reused.isClosed());
+        assertEquals(1, con.getStatementCacheStats().getTotalHits());
+        reused.close();
+    }
+
+    public void testStatementWithChangedSettingsIsNotReused() throws Exception {
+        con.setStatementCacheSize(4);
+        String sql = "SELECT id FROM statement_cache_test WHERE id > ?";
+        PreparedStatement ps = con.prepareStatement(sql);
+        ps.setMaxRows(1);
+        ps.setInt(1, 0);
+        ResultSet rs = ps.executeQuery();
+        assertTrue(rs.next());
+        assertFalse(rs.next());
+        ps.close();
+
+        assertEquals(2, countRows(sql, 0));
+        assertEquals(0, con.getStatementCacheStats().getTotalHits());
+    }
+
+    public void testPendingBatchIsNotRunByNextUser() throws Exception {
+        con.setStatementCacheSize(4);
+        String sql = "INSERT INTO statement_cache_test (id) VALUES (?)";
+        PreparedStatement ps = con.prepareStatement(sql);
+        ps.setInt(1, 10);
+        ps.addBatch();
+        ps.close();
+
+        ps = con.prepareStatement(sql);
+        ps.setInt(1, 11);
+        ps.addBatch();
+        int[] counts = ps.executeBatch();
+        ps.close();
+        assertEquals(1, con.getStatementCacheStats().getTotalHits());
+        assertEquals(1, counts.length);
+        assertEquals(0, countRows("SELECT id FROM statement_cache_test WHERE id = ?", 10));
+        assertEquals(1, countRows("SELECT id FROM statement_cache_test WHERE id = ?", 11));
+    }
+
+    public void testResultSetsFromExecuteAreClosed() throws Exception {
+        con.setStatementCacheSize(4);
+        String sql = "SELECT id FROM statement_cache_test WHERE id > ?";
+        PreparedStatement ps = con.prepareStatement(sql);
+        ps.setInt(1, 0);
+        assertTrue(ps.execute());
+        ResultSet rs = ps.getResultSet();
+        ps.close();
+        try {
+            // two rows were left unread, so only a closed result set has no more
+            assertFalse("The result set must be closed when the statement is checked in", rs.next());
+        } catch (SQLException ex) {
+            // some drivers refuse to move a closed result set
+        }
+        assertEquals(2, countRows(sql, 0));
+        assertEquals(1, con.getStatementCacheStats().getTotalHits());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sqlobject;
+
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.JDBCDataSourceType;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.testutil.Benchmark;
+import ca.sqlpower.testutil.MockJDBCDriver;
+
+/**
+ * Measures reverse engineering a whole catalog into a new {@link SQLDatabase}:
+ * its tables, and for each table its columns, imported keys and indices. The
+ * catalog is simulated by the {@link MockJDBCDriver}, so the time measured is
+ * the time spent in the SQLObject layer and not in a database server.
+ */
+public class SQLDatabasePopulateBenchmark extends Benchmark {
+
+    private final int tableCount;
+    
+    private final int columnCount;
+    
+    private JDBCDataSource ds;
+
+    /**
+     * @param tableCount
+     *            The number of tables in the simulated catalog.
+     * @param columnCount
+     *            The number of columns in each table. Every table's first
+     *            column is reported as auto-increment.
+     */
+    public SQLDatabasePopulateBenchmark(int tableCount, int columnCount, 
+            int warmupIterations, int iterationsPerRound, int rounds) {
+        super("SQLDatabase populate (" + tableCount + " tables x " + columnCount + " columns)", 
+                warmupIterations, iterationsPerRound, rounds);
+        this.tableCount = tableCount;
+        this.columnCount = columnCount;
+    }
+    
+    @Override
+    protected void setUp() throws Exception {
+        PlDotIni plini = new PlDotIni();
+
+        JDBCDataSourceType dst = new JDBCDataSourceType();
+        dst.setJdbcDriver(MockJDBCDriver.class.getName());
+        plini.addDataSourceType(dst);
+
+        ds = new JDBCDataSource(plini);
+        ds.setUrl(buildUrl(tableCount, columnCount));
+        ds.setParentType(dst);
+        ds.setUser("x");
+        ds.setPass("x");
+        plini.addDataSource(ds);
+    }
+
+    /**
+     * Returns a mock JDBC URL describing a catalog of tables named table_0,
+     * table_1 and so on, each with the given number of columns.
+     */
+    static String buildUrl(int tableCount, int columnCount) {
+        StringBuilder tables = new StringBuilder();
+        StringBuilder columns = new StringBuilder();
+        StringBuilder autoIncrement = new StringBuilder();
+        for (int t = 0; t < tableCount; t++) {
+            String tableName = "table_" + t;
+            if (t > 0) {
+                tables.append(",");
+                autoIncrement.append(",");
+            }
+            tables.append(tableName);
+            autoIncrement.append(tableName).append(".col_0");
+            columns.append("&columns.").append(tableName).append("=");
+            for (int c = 0; c < columnCount; c++) {
+                if (c > 0) columns.append(",");
+                columns.append("col_").append(c);
+            }
+        }
+        return "jdbc:mock:tables=" + tables + columns + "&autoincrement_cols=" + autoIncrement;
+    }
+    
+    @Override
+    protected long runOnce() throws Exception {
+        SQLDatabase db = new SQLDatabase(ds);
+        try {
+            long count = 0;
+            for (SQLTable table : db.getTables()) {
+                count += table.getColumns().size();
+                count += table.getImportedKeys().size();
+                count += table.getIndices().size();
+            }
+            return count;
+        } finally {
+            db.disconnect();
+        }
+    }
+}
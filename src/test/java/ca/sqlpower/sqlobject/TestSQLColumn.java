@@ -20,8 +20,11 @@ package ca.sqlpower.sqlobject;
 
 import java.sql.DatabaseMetaData;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -826,6 +829,119 @@ public class TestSQLColumn extends BaseSQLObjectTestCase {
         assertFalse(normalcol.isAutoIncrement());
     }
     
+    /**
+     * Tables populated one at a time from the same database should share the
+     * setup of a single reverse engineering session.
+     */
+    public void testReverseEngineerSharesSession() throws Exception {
+        PlDotIni plini = new PlDotIni();
+
+        JDBCDataSourceType dst = new JDBCDataSourceType();
+        dst.setJdbcDriver("ca.sqlpower.testutil.MockJDBCDriver");
+        plini.addDataSourceType(dst);
+
+        JDBCDataSource ds = new JDBCDataSource(plini);
+        String url = "jdbc:mock:tables=table1,table2" +
+                "&columns.table1=pkcol,normalcol" +
+                "&columns.table2=othercol" +
+                "&autoincrement_cols=table1.pkcol,table2.othercol";
+        ds.setUrl(url);
+        ds.setParentType(dst);
+        ds.setUser("x");
+        ds.setPass("x");
+        plini.addDataSource(ds);
+        
+        SQLDatabase db = new SQLDatabase(ds);
+        ReverseEngineeringSession session = db.getReverseEngineeringSession();
+        assertNull(session.getDatabaseProductName());
+        
+        SQLTable t1 = db.getTableByName("table1");
+        assertTrue(t1.getColumnByName("pkcol").isAutoIncrement());
+        assertFalse(t1.getColumnByName("normalcol").isAutoIncrement());
+        assertNotNull(session.getDatabaseProductName());
+        
+        // another session may have changed the shared column database type
+        SQLColumn.setDbType("Some Other Database");
+        SQLTable t2 = db.getTableByName("table2");
+        assertTrue(t2.getColumnByName("othercol").isAutoIncrement());
+        assertEquals(session.getDatabaseProductName(), SQLColumn.getDbType());
+        assertSame(session, db.getReverseEngineeringSession());
+        
+        db.disconnect();
+        assertNotSame(session, db.getReverseEngineeringSession());
+    }
+
+    /**
+     * The type maps of a session are built once and reused for every list of
+     * columns assigned types in that session.
+     */
+    public void testAssignTypesReusesSessionMappings() throws Exception {
+        final UserDefinedSQLType varchar = new UserDefinedSQLType();
+        varchar.setName("VARCHAR");
+        varchar.setType(Types.VARCHAR);
+        varchar.getDefaultPhysicalProperties().setName("VARCHAR");
+        PlDotIni plini = new PlDotIni() {
+            @Override
+            public List<UserDefinedSQLType> getSQLTypes() {
+                return Collections.singletonList(varchar);
+            }
+        };
+        
+        ReverseEngineeringSession session = new ReverseEngineeringSession();
+        List<SQLColumn> firstTable = new ArrayList<SQLColumn>();
+        firstTable.add(new SQLColumn(null, "first", Types.VARCHAR, "varchar", 10, 0, DatabaseMetaData.columnNullable, "", null, false));
+        List<SQLColumn> secondTable = new ArrayList<SQLColumn>();
+        secondTable.add(new SQLColumn(null, "second", Types.VARCHAR, "VARCHAR", 20, 0, DatabaseMetaData.columnNullable, "", null, false));
+        
+        SQLColumn.assignTypes(firstTable, plini, "GENERIC", null, session);
+        ReverseEngineeringSession.TypeMappings mappings = session.getTypeMappings(plini, "GENERIC");
+        SQLColumn.assignTypes(secondTable, plini, "GENERIC", null, session);
+        
+        assertSame(mappings, session.getTypeMappings(plini, "GENERIC"));
+        assertSame(varchar, firstTable.get(0).getUserDefinedSQLType().getUpstreamType());
+        assertSame(varchar, secondTable.get(0).getUserDefinedSQLType().getUpstreamType());
+    }
+    
+    /**
+     * The type maps of a session are rebuilt when the types of the data source
+     * collection change, so later tables see the new types.
+     */
+    public void testAssignTypesSeesChangedTypes() throws Exception {
+        final UserDefinedSQLType varchar = new UserDefinedSQLType();
+        varchar.setName("VARCHAR");
+        varchar.setType(Types.VARCHAR);
+        varchar.getDefaultPhysicalProperties().setName("VARCHAR");
+        final UserDefinedSQLType text = new UserDefinedSQLType();
+        text.setName("TEXT");
+        text.setType(Types.VARCHAR);
+        text.getDefaultPhysicalProperties().setName("TEXT");
+        final List<UserDefinedSQLType> types = new ArrayList<UserDefinedSQLType>();
+        types.add(varchar);
+        PlDotIni plini = new PlDotIni() {
+            @Override
+            public List<UserDefinedSQLType> getSQLTypes() {
+                return new ArrayList<UserDefinedSQLType>(types);
+            }
+        };
+        
+        ReverseEngineeringSession session = new ReverseEngineeringSession();
+        List<SQLColumn> firstTable = new ArrayList<SQLColumn>();
+        firstTable.add(new SQLColumn(null, "first", Types.VARCHAR, "text", 10, 0, DatabaseMetaData.columnNullable, "", null, false));
+        SQLColumn.assignTypes(firstTable, plini, "GENERIC", null, session);
+        assertSame(varchar, firstTable.get(0).getUserDefinedSQLType().getUpstreamType());
+        
+        types.add(text);
+        List<SQLColumn> secondTable = new ArrayList<SQLColumn>();
+        secondTable.add(new SQLColumn(null, "second", Types.VARCHAR, "text", 10, 0, DatabaseMetaData.columnNullable, "", null, false));
+        SQLColumn.assignTypes(secondTable, plini, "GENERIC", null, session);
+        assertSame(text, secondTable.get(0).getUserDefinedSQLType().getUpstreamType());
+        
+        text.setName("LONGTEXT");
+        ReverseEngineeringSession.TypeMappings mappings = session.getTypeMappings(plini, "GENERIC");
+        assertTrue(mappings.byReverseName.containsKey("longtext"));
+        assertFalse(mappings.byReverseName.containsKey("text"));
+    }
+    
     @Override
     public void testAllChildHandlingMethods() throws SQLObjectException {
     	/*
@@ -216,6 +216,58 @@ public class UserDefinedSQLTypeTest extends BaseSQLObjectTestCase {
         assertEquals(PropertyType.NOT_APPLICABLE, typeProxy.getPrecisionType("Oracle"));
     }
 
+    /**
+     * The resolved properties of a type are remembered, so a change anywhere
+     * in the upstream chain must still be seen by the types downstream of it.
+     */
+    public void testUpstreamChangesAreSeenAfterResolving() throws Exception {
+    	udtProperties.setPrecisionType(PropertyType.VARIABLE);
+    	udtProperties.setPrecision(10);
+    	assertEquals(10, typeProxy.getPrecision("Oracle"));
+    	
+    	udtProperties.setPrecision(20);
+    	assertEquals(20, typeProxy.getPrecision("Oracle"));
+    	
+    	domainProperties.setPrecision(15);
+    	assertEquals(15, typeProxy.getPrecision("Oracle"));
+    	
+    	udtProperties.setPrecisionType(PropertyType.NOT_APPLICABLE);
+    	assertEquals(0, typeProxy.getPrecision("Oracle"));
+    	
+    	SQLEnumeration udtEnum = new SQLEnumeration("udt");
+    	assertTrue(typeProxy.getEnumerations("Oracle").isEmpty());
+    	udtProperties.addEnumeration(udtEnum);
+    	assertEquals(udtEnum, typeProxy.getEnumerations("Oracle").get(0));
+    	udtProperties.removeEnumeration(udtEnum);
+    	assertTrue(typeProxy.getEnumerations("Oracle").isEmpty());
+    }
+    
+    public void testUpstreamTypeChangesAreSeenAfterResolving() throws Exception {
+    	domainProperties.setDefaultValue("domain");
+    	assertEquals("domain", typeProxy.getDefaultValue("Oracle"));
+    	
+    	UserDefinedSQLType otherDomain = new UserDefinedSQLType();
+    	SQLTypePhysicalProperties otherProperties = new SQLTypePhysicalProperties("Oracle");
+    	otherDomain.putPhysicalProperties("Oracle", otherProperties);
+    	otherProperties.setDefaultValue("other");
+    	typeProxy.setUpstreamType(otherDomain);
+    	assertEquals("other", typeProxy.getDefaultValue("Oracle"));
+    	
+    	// The old upstream type no longer affects the proxy.
+    	domainProperties.setDefaultValue("changed");
+    	assertEquals("other", typeProxy.getDefaultValue("Oracle"));
+    	
+    	SQLTypePhysicalProperties override = new SQLTypePhysicalProperties("Oracle");
+    	override.setDefaultValue("override");
+    	typeProxy.putPhysicalProperties("Oracle", override);
+    	assertSame(override, typeProxy.getPhysicalProperties("Oracle"));
+    	assertEquals("override", typeProxy.getDefaultValue("Oracle"));
+    	
+    	typeProxy.removeChild(override);
+    	assertSame(typeProxy.getDefaultPhysicalProperties(), typeProxy.getPhysicalProperties("Oracle"));
+    	assertEquals("other", typeProxy.getDefaultValue("Oracle"));
+    }
+    
     /**
      * this test ensures that the new physical properties object replaces the
      * old when they have the same platform
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.swingui.table;
+
+import java.sql.SQLException;
+import java.sql.Types;
+
+import javax.swing.JTable;
+
+import junit.framework.TestCase;
+import ca.sqlpower.testutil.MockJDBCResultSet;
+
+public class WindowedResultSetTableModelTest extends TestCase {
+
+    private static final int ROW_COUNT = 95;
+    
+    private static final int PAGE_SIZE = 10;
+    
+    private static final int MAX_PAGES = WindowedResultSetTableModel.MIN_PAGES;
+
+    /**
+     * The longest time to wait for the fetch thread to load a page.
+     */
+    private static final long TIMEOUT_MILLIS = 5000;
+    
+    private MockJDBCResultSet rs;
+
+    /**
+     * The number of pages the model has fetched from {@link #rs}.
+     */
+    private int fetchCount;
+    
+    private WindowedResultSetTableModel model;
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        rs = new MockJDBCResultSet(2) {
+            @Override
+            public boolean absolute(int row) {
+                synchronized (WindowedResultSetTableModelTest.this) {
+                    fetchCount++;
+                }
+                return super.absolute(row);
+            }
+        };
+        rs.setColumnName(1, "id");
+        rs.getMetaData().setColumnLabel(1, "id");
+        rs.getMetaData().setColumnType(1, Types.INTEGER);
+        rs.setColumnName(2, "name");
+        rs.getMetaData().setColumnLabel(2, "name");
+        rs.getMetaData().setColumnType(2, Types.VARCHAR);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            rs.addRow(new Object[] { Integer.valueOf(i), "row " + i });
+        }
+        model = new WindowedResultSetTableModel(rs, PAGE_SIZE, MAX_PAGES);
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        model.cleanup();
+        super.tearDown();
+    }
+
+    /**
+     * Waits for the fetch thread to load the page holding the given row.
+     * This only checks if the row is loaded, so unlike
+     * {@link WindowedResultSetTableModel#getValueAt(int, int)} it does not
+     * request any more pages.
+     */
+    private void waitUntilLoaded(int rowIndex) throws Exception {
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!model.isRowLoaded(rowIndex)) {
+            if (model.getLastFetchException() != null) {
+                throw model.getLastFetchException();
+            }
+            if (System.currentTimeMillis() > end) {
+                fail("Row " + rowIndex + " was not loaded in " + TIMEOUT_MILLIS + "ms");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Requests the given row and returns its values once its page is loaded.
+     */
+    private Object[] fetchRow(int rowIndex) throws Exception {
+        model.getValueAt(rowIndex, 0);
+        waitUntilLoaded(rowIndex);
+        return new Object[] { model.getValueAt(rowIndex, 0), model.getValueAt(rowIndex, 1) };
+    }
+    
+    public void testRowAndColumnCounts() throws Exception {
+        assertEquals(ROW_COUNT, model.getRowCount());
+        assertEquals(2, model.getColumnCount());
+        assertEquals("id", model.getColumnName(0));
+        assertEquals("name", model.getColumnName(1));
+        assertEquals(Integer.class, model.getColumnClass(0));
+        assertEquals(String.class, model.getColumnClass(1));
+        assertEquals(1, model.findColumn("name"));
+        assertEquals(0, model.getLoadedPageCount());
+    }
+    
+    public void testAccessAcrossPageBoundaries() throws Exception {
+        for (int row = PAGE_SIZE - 2; row <= 2 * PAGE_SIZE + 1; row++) {
+            Object[] values = fetchRow(row);
+            assertEquals(Integer.valueOf(row), values[0]);
+            assertEquals("row " + row, values[1]);
+        }
+        
+        // the last page is only partly filled
+        Object[] values = fetchRow(ROW_COUNT - 1);
+        assertEquals(Integer.valueOf(ROW_COUNT - 1), values[0]);
+    }
+    
+    public void testEvictionPastMaxPages() throws Exception {
+        fetchRow(0);
+        waitUntilLoaded(PAGE_SIZE);
+        // page 0 is now viewed more recently than page 1
+        model.getValueAt(0, 0);
+        
+        // requesting page 5 loads pages 4, 5 and 6, pushing out page 1
+        fetchRow(5 * PAGE_SIZE);
+        waitUntilLoaded(4 * PAGE_SIZE);
+        waitUntilLoaded(6 * PAGE_SIZE);
+        
+        assertEquals(MAX_PAGES, model.getLoadedPageCount());
+        assertTrue(model.isRowLoaded(0));
+        assertFalse(model.isRowLoaded(PAGE_SIZE));
+    }
+    
+    public void testScrollBackToEvictedPage() throws Exception {
+        fetchRow(0);
+        fetchRow(5 * PAGE_SIZE);
+        fetchRow(8 * PAGE_SIZE);
+        waitUntilLoaded(7 * PAGE_SIZE);
+        waitUntilLoaded(9 * PAGE_SIZE);
+        assertFalse(model.isRowLoaded(3));
+        
+        Object[] values = fetchRow(3);
+        assertEquals(Integer.valueOf(3), values[0]);
+        assertEquals("row 3", values[1]);
+        assertTrue(model.getLoadedPageCount() <= MAX_PAGES);
+    }
+    
+    /**
+     * A viewport that spans a page boundary must not make the model evict and
+     * fetch the same pages again every time it is painted.
+     */
+    public void testViewportAcrossPageBoundaryDoesNotRefetch() throws Exception {
+        int firstVisible = 2 * PAGE_SIZE - 2;
+        int lastVisible = 2 * PAGE_SIZE + 1;
+        for (int row = firstVisible; row <= lastVisible; row++) {
+            model.getValueAt(row, 0);
+        }
+        waitUntilLoaded(PAGE_SIZE);
+        waitUntilLoaded(2 * PAGE_SIZE);
+        waitUntilLoaded(3 * PAGE_SIZE);
+        waitUntilLoaded(0);
+        
+        int fetchesBefore;
+        synchronized (this) {
+            fetchesBefore = fetchCount;
+        }
+        for (int paint = 0; paint < 10; paint++) {
+            for (int row = firstVisible; row <= lastVisible; row++) {
+                assertEquals(Integer.valueOf(row), model.getValueAt(row, 0));
+            }
+        }
+        Thread.sleep(100);
+        synchronized (this) {
+            assertEquals(fetchesBefore, fetchCount);
+        }
+    }
+    
+    public void testTooFewPagesRejected() throws Exception {
+        try {
+            new WindowedResultSetTableModel(rs, PAGE_SIZE, WindowedResultSetTableModel.MIN_PAGES - 1);
+            fail("A window that cannot hold a viewport across a page boundary would refetch forever");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+    
+    public void testRequestAfterCleanup() throws Exception {
+        model.cleanup();
+        assertNull(model.getValueAt(0, 0));
+        assertEquals(0, model.getLoadedPageCount());
+    }
+    
+    public void testRowOutOfRange() throws Exception {
+        try {
+            model.getValueAt(ROW_COUNT, 0);
+            fail("Rows past the end of the result set should not be accessible");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+    
+    public void testForwardOnlyResultSetRejected() throws Exception {
+        MockJDBCResultSet forwardOnly = new MockJDBCResultSet(1) {
+            @Override
+            public int getType() throws SQLException {
+                return TYPE_FORWARD_ONLY;
+            }
+        };
+        try {
+            new WindowedResultSetTableModel(forwardOnly, PAGE_SIZE, MAX_PAGES);
+            fail("A forward only result set cannot be windowed");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+    
+    public void testFactoryCreatesWindowedTable() throws Exception {
+        JTable table = ResultSetTableFactory.createWindowedResultSetJTable(rs);
+        try {
+            assertTrue(table.getModel() instanceof WindowedResultSetTableModel);
+            assertEquals(ROW_COUNT, table.getRowCount());
+            assertEquals(2, table.getColumnCount());
+        } finally {
+            ((WindowedResultSetTableModel) table.getModel()).cleanup();
+        }
+    }
+}
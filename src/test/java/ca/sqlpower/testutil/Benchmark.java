@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.testutil;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * A repeatable benchmark of one operation. The runner calls {@link #setUp()}
+ * once, calls {@link #runOnce()} for a number of warmup iterations and then
+ * for a number of rounds of measured iterations, and finally calls
+ * {@link #tearDown()}. Everything an operation needs that is not part of what
+ * is being measured belongs in {@link #setUp()}.
+ * <p>
+ * Benchmarks are given fixed sizes and fixed data so two runs on the same
+ * machine measure the same work, and a regression shows up as a change in
+ * the time or bytes allocated per operation.
+ */
+public abstract class Benchmark {
+
+    /**
+     * The result of measuring a benchmark. Times are the fastest and the
+     * median of the measured rounds, which are less disturbed by the garbage
+     * collector and the JIT than the mean.
+     */
+    public static class Result {
+        
+        private final String name;
+        private final long minNanosPerOp;
+        private final long medianNanosPerOp;
+        private final long bytesPerOp;
+        
+        Result(String name, long minNanosPerOp, long medianNanosPerOp, long bytesPerOp) {
+            this.name = name;
+            this.minNanosPerOp = minNanosPerOp;
+            this.medianNanosPerOp = medianNanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public long getMinNanosPerOp() {
+            return minNanosPerOp;
+        }
+        
+        public long getMedianNanosPerOp() {
+            return medianNanosPerOp;
+        }
+
+        /**
+         * Returns the bytes allocated per operation, or -1 if this VM cannot
+         * measure the bytes allocated by a thread.
+         */
+        public long getBytesPerOp() {
+            return bytesPerOp;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%-60s %12d %12d %12s", name, minNanosPerOp, medianNanosPerOp,
+                    bytesPerOp < 0 ? "n/a" : Long.toString(bytesPerOp));
+        }
+    }
+    
+    private final String name;
+    
+    private final int warmupIterations;
+    
+    private final int iterationsPerRound;
+    
+    private final int rounds;
+    
+    /**
+     * The sum of the values returned by {@link #runOnce()}. Keeping it
+     * stops the VM from discarding an operation whose result is unused.
+     */
+    private long sink;
+
+    /**
+     * @param name
+     *            The name to report this benchmark's results under. It
+     *            should include the sizes the benchmark was given.
+     * @param warmupIterations
+     *            The number of operations to run before measuring.
+     * @param iterationsPerRound
+     *            The number of operations timed together in one round.
+     * @param rounds
+     *            The number of rounds to time.
+     */
+    protected Benchmark(String name, int warmupIterations, int iterationsPerRound, int rounds) {
+        this.name = name;
+        this.warmupIterations = warmupIterations;
+        this.iterationsPerRound = iterationsPerRound;
+        this.rounds = rounds;
+    }
+    
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Prepares everything the operations need. The default does nothing.
+     */
+    protected void setUp() throws Exception {
+        // nothing to prepare by default
+    }
+
+    /**
+     * Runs the operation being measured once.
+     * 
+     * @return A value derived from the work done, such as a count of the
+     *         objects created. It is checked to be the same for every
+     *         operation, so it doubles as a sanity check that each operation
+     *         did the same work.
+     */
+    protected abstract long runOnce() throws Exception;
+
+    /**
+     * Releases what {@link #setUp()} acquired. The default does nothing.
+     */
+    protected void tearDown() throws Exception {
+        // nothing to release by default
+    }
+
+    /**
+     * Sets up, warms up, measures and tears down this benchmark.
+     */
+    public Result measure() throws Exception {
+        setUp();
+        try {
+            long expected = runOnce();
+            for (int i = 1; i < warmupIterations; i++) {
+                check(expected, runOnce());
+            }
+            
+            long[] nanosPerOp = new long[rounds];
+            long totalBytes = 0;
+            for (int r = 0; r < rounds; r++) {
+                long allocatedBefore = allocatedBytes();
+                long start = System.nanoTime();
+                for (int i = 0; i < iterationsPerRound; i++) {
+                    check(expected, runOnce());
+                }
+                nanosPerOp[r] = (System.nanoTime() - start) / iterationsPerRound;
+                long allocatedAfter = allocatedBytes();
+                if (allocatedBefore < 0 || allocatedAfter < 0) {
+                    totalBytes = -1;
+                } else if (totalBytes >= 0) {
+                    totalBytes += allocatedAfter - allocatedBefore;
+                }
+            }
+            
+            Arrays.sort(nanosPerOp);
+            long bytesPerOp = totalBytes < 0 ? -1 : totalBytes / ((long) rounds * iterationsPerRound);
+            return new Result(name, nanosPerOp[0], nanosPerOp[rounds / 2], bytesPerOp);
+        } finally {
+            tearDown();
+        }
+    }
+    
+    private void check(long expected, long actual) {
+        if (expected != actual) {
+            throw new IllegalStateException("Benchmark " + name + " did different work between " +
+                    "operations, expected " + expected + " but was " + actual);
+        }
+        sink += actual;
+    }
+
+    /**
+     * Returns the value accumulated from the operations run so far. It is
+     * only here so the results of the operations are used.
+     */
+    public long getSink() {
+        return sink;
+    }
+    
+    /**
+     * Returns the number of bytes the current thread has allocated, or -1 if
+     * the VM cannot tell.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        if (!sunBean.isThreadAllocatedMemorySupported()) return -1;
+        if (!sunBean.isThreadAllocatedMemoryEnabled()) {
+            sunBean.setThreadAllocatedMemoryEnabled(true);
+        }
+        return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.testutil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.dao.SPSessionPersisterCommitBenchmark;
+import ca.sqlpower.dao.XMLPersisterRoundTripBenchmark;
+import ca.sqlpower.dao.json.SPJSONPersistCallBenchmark;
+import ca.sqlpower.object.SPListenerDispatchBenchmark;
+import ca.sqlpower.sql.CachedRowSetPopulateBenchmark;
+import ca.sqlpower.sqlobject.SQLDatabasePopulateBenchmark;
+
+/**
+ * Runs the library's benchmarks one after another and prints the time and
+ * bytes allocated per operation of each. None of them need a database; the
+ * JDBC layer is simulated by the {@link MockJDBCDriver} and its relatives.
+ * <p>
+ * Each benchmark is run at a small size, which measures the cost of one
+ * operation on the hot path, and at a large size, which measures how that
+ * cost grows with the size of the catalog or object tree. Run it with the
+ * <code>benchmark</code> target of the build; the optional argument is a
+ * piece of text, and only the benchmarks whose names contain it are run.
+ */
+public class BenchmarkRunner {
+
+    /**
+     * Returns every benchmark the runner knows about.
+     */
+    public static List<Benchmark> createBenchmarks() {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(new CachedRowSetPopulateBenchmark(100, 10, 2000, 1000, 10));
+        benchmarks.add(new CachedRowSetPopulateBenchmark(10000, 20, 20, 10, 10));
+        benchmarks.add(new SQLDatabasePopulateBenchmark(10, 10, 200, 100, 10));
+        benchmarks.add(new SQLDatabasePopulateBenchmark(500, 20, 5, 2, 5));
+        benchmarks.add(new SPSessionPersisterCommitBenchmark(10, 10, 200, 100, 10));
+        benchmarks.add(new SPSessionPersisterCommitBenchmark(200, 20, 5, 2, 5));
+        benchmarks.add(new XMLPersisterRoundTripBenchmark(10, 10, 200, 100, 10));
+        benchmarks.add(new XMLPersisterRoundTripBenchmark(200, 20, 5, 2, 5));
+        benchmarks.add(new SPListenerDispatchBenchmark(8, 200000, 100000, 10));
+        benchmarks.add(new SPListenerDispatchBenchmark(64, 20000, 10000, 10));
+        for (SPJSONPersistCallBenchmark.Mode mode : SPJSONPersistCallBenchmark.Mode.values()) {
+            benchmarks.add(new SPJSONPersistCallBenchmark(mode, 10, 2000, 1000, 10));
+            benchmarks.add(new SPJSONPersistCallBenchmark(mode, 2000, 20, 10, 10));
+        }
+        return benchmarks;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        String filter = null;
+        if (args.length > 0 && args[0].trim().length() > 0) {
+            filter = args[0].trim();
+        }
+        
+        // log4j logs at debug level when it is not configured, which would
+        // measure the cost of building log messages instead of the operations.
+        Logger.getRootLogger().setLevel(Level.INFO);
+        
+        System.out.println(String.format("%-60s %12s %12s %12s", 
+                "Benchmark", "min ns/op", "median ns/op", "bytes/op"));
+        long sink = 0;
+        for (Benchmark benchmark : createBenchmarks()) {
+            if (filter != null && !benchmark.getName().contains(filter)) continue;
+            System.out.println(benchmark.measure());
+            sink += benchmark.getSink();
+        }
+        if (sink == 42) {
+            // Only here so the results of the operations are used.
+            System.out.println();
+        }
+    }
+}
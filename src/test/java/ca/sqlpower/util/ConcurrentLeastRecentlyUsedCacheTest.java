@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ConcurrentLeastRecentlyUsedCacheTest extends CacheTest {
+
+	public void setUp() {
+		cache = new ConcurrentLeastRecentlyUsedCache<Integer, String>(maxMembers);
+		super.setUp();
+	}
+
+	public void testLRUPolicy() {
+		for (int i = 44; i >= 0; i--) {
+			assertEquals(String.valueOf(i), cache.get(new Integer(i)));
+		}
+
+		for (int i = 45; i < 51; i++) {
+			cache.put(new Integer(i), String.valueOf(i));
+		}
+
+		assertNull(cache.get(new Integer(44)));
+		assertEquals(String.valueOf(43), cache.get(new Integer(43)));
+
+		// 42 is now the least recently used because we just used 43
+		cache.put(new Integer(52), String.valueOf(52));
+		assertNull(cache.get(new Integer(42)));
+	}
+
+	public void testStats() {
+		cache.get(new Integer(1));
+		cache.get(new Integer(100));
+		for (int i = 45; i < 60; i++) {
+			cache.put(new Integer(i), String.valueOf(i));
+		}
+		ConcurrentCacheStats stats = (ConcurrentCacheStats) cache.getStats();
+		assertEquals(1, stats.getTotalHits());
+		assertEquals(1, stats.getTotalMisses());
+		assertEquals(60, stats.getTotalInserted());
+		assertEquals(10, stats.getTotalEvicted());
+	}
+
+	public void testWeightBound() {
+		ConcurrentLeastRecentlyUsedCache<String, String> weighted =
+			new ConcurrentLeastRecentlyUsedCache<String, String>(10, new ConcurrentLeastRecentlyUsedCache.Weigher<String>() {
+				public int weightOf(String value) {
+					return value.length();
+				}
+			});
+		weighted.put("a", "aaaa");
+		weighted.put("b", "bbbb");
+		weighted.put("c", "cccc");
+		assertFalse(weighted.containsKey("a"));
+		assertEquals(8, weighted.getWeightedSize());
+
+		weighted.put("b", "b");
+		assertEquals(5, weighted.getWeightedSize());
+		assertEquals("b", weighted.get("b"));
+	}
+
+	public void testConcurrentUseStaysBounded() throws Exception {
+		final ConcurrentLeastRecentlyUsedCache<Integer, Integer> shared =
+			new ConcurrentLeastRecentlyUsedCache<Integer, Integer>(100);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			final long seed = t;
+			threads.add(new Thread() {
+				public void run() {
+					try {
+						Random random = new Random(seed);
+						for (int i = 0; i < 20000; i++) {
+							Integer key = new Integer(random.nextInt(300));
+							Integer value = shared.get(key);
+							if (value == null) {
+								shared.put(key, key);
+							} else {
+								assertEquals(key, value);
+							}
+							if (i % 1000 == 0) {
+								shared.remove(key);
+							}
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		assertTrue(shared.size() <= 100);
+		assertEquals(shared.size(), shared.getWeightedSize());
+	}
+}
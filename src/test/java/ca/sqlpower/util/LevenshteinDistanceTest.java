@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class LevenshteinDistanceTest extends TestCase {
+
+    /**
+     * The full matrix version of the algorithm, to check the others against.
+     */
+    private static int fullMatrixDistance(String s, String t) {
+        int[][] d = new int[s.length() + 1][t.length() + 1];
+        for (int i = 0; i <= s.length(); i++) d[i][0] = i;
+        for (int j = 0; j <= t.length(); j++) d[0][j] = j;
+        for (int i = 1; i <= s.length(); i++) {
+            for (int j = 1; j <= t.length(); j++) {
+                int cost = s.charAt(i - 1) == t.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+            }
+        }
+        return d[s.length()][t.length()];
+    }
+
+    private static String randomString(Random r) {
+        char[] chars = new char[r.nextInt(12)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('a' + r.nextInt(3));
+        }
+        return new String(chars);
+    }
+
+    public void testKnownDistances() throws Exception {
+        assertEquals(3, LevenshteinDistance.computeLevenshteinDistance("kitten", "sitting"));
+        assertEquals(0, LevenshteinDistance.computeLevenshteinDistance("", ""));
+        assertEquals(4, LevenshteinDistance.computeLevenshteinDistance("", "abcd"));
+        assertEquals(3, LevenshteinDistance.computeLevenshteinDistance("kitten", "sitting", 3));
+        assertEquals(-1, LevenshteinDistance.computeLevenshteinDistance("kitten", "sitting", 2));
+        assertEquals(-1, LevenshteinDistance.computeLevenshteinDistance("a", "abcd", 2));
+    }
+
+    public void testAgreesWithFullMatrix() throws Exception {
+        Random r = new Random(49);
+        LevenshteinDistance ld = new LevenshteinDistance();
+        for (int trial = 0; trial < 2000; trial++) {
+            String s = randomString(r);
+            String t = randomString(r);
+            int expected = fullMatrixDistance(s, t);
+            assertEquals(s + "/" + t, expected, ld.distance(s, t));
+            for (int threshold = 0; threshold <= 12; threshold++) {
+                int bounded = ld.distance(s, t, threshold);
+                assertEquals(s + "/" + t + " within " + threshold,
+                        expected <= threshold ? expected : -1, bounded);
+            }
+        }
+    }
+
+    public void testBatch() throws Exception {
+        List<String> sources = Arrays.asList("customer_id", "order_date");
+        List<String> targets = Arrays.asList("CUSTOMER_ID", "customerid", "order_dt");
+        LevenshteinDistance ld = new LevenshteinDistance();
+        int[][] distances = ld.distances(sources, targets, 2);
+        assertEquals(-1, distances[0][0]);
+        assertEquals(1, distances[0][1]);
+        assertEquals(-1, distances[0][2]);
+        assertEquals(2, distances[1][2]);
+
+        assertEquals("customerid", ld.findClosest("customer_id", targets, 3));
+        assertEquals("order_dt", ld.findClosest("order_date", targets, 3));
+        assertNull(ld.findClosest("product", targets, 3));
+        assertEquals("ab", ld.findClosest("ab", Arrays.asList("abc", "xb", "ab", "ab"), 5));
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.util;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import ca.sqlpower.util.Scheduler.OverrunPolicy;
+import ca.sqlpower.util.Scheduler.ScheduledTask;
+
+public class SchedulerTest extends TestCase {
+
+	/**
+	 * Returns a daily recurrence whose first occurrence is the given
+	 * number of milliseconds from now.
+	 */
+	private static Recurrence startingIn(long millis) {
+		Recurrence r = new Recurrence();
+		r.setStartDate(new Date(System.currentTimeMillis() + millis));
+		return r;
+	}
+
+	/**
+	 * A recurrence that comes due every interval for the given number
+	 * of occurrences, counting the first, and then only once a day.
+	 */
+	private static class BurstRecurrence extends Recurrence {
+		private final long interval;
+		private final AtomicInteger remaining;
+
+		BurstRecurrence(long interval, int occurrences) {
+			this.interval = interval;
+			this.remaining = new AtomicInteger(occurrences);
+		}
+
+		@Override
+		public Date nextOccurrence(Date baseDate) {
+			if (remaining.getAndDecrement() > 0) {
+				return new Date(baseDate.getTime() + interval);
+			}
+			return new Date(baseDate.getTime() + 24L * 60 * 60 * 1000);
+		}
+	}
+
+	/**
+	 * A task that blocks until released and counts how many of its
+	 * runs have started and how many were running at once.
+	 */
+	private static class CountingTask implements Runnable {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger started = new AtomicInteger();
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+
+		public void run() {
+			started.incrementAndGet();
+			int now = running.incrementAndGet();
+			while (maxRunning.get() < now) {
+				maxRunning.set(now);
+			}
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+	}
+
+	private static void waitForSkips(ScheduledTask st, int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (st.getSkippedCount() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, st.getSkippedCount());
+	}
+
+	private static void waitForRuns(ScheduledTask st, int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (st.getRunCount() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, st.getRunCount());
+	}
+
+	private static class LatchTask implements Runnable {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release;
+
+		LatchTask(CountDownLatch release) {
+			this.release = release;
+		}
+
+		public void run() {
+			started.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public void testTaskRunsAndRecordsMetrics() throws Exception {
+		LatchTask task = new LatchTask(new CountDownLatch(0));
+		ScheduledTask st = Scheduler.scheduleTask(startingIn(50), task);
+		try {
+			assertTrue(task.started.await(5, TimeUnit.SECONDS));
+			long deadline = System.currentTimeMillis() + 5000;
+			while (st.getRunCount() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, st.getRunCount());
+			assertTrue(st.getLastLag() >= 0);
+			assertTrue("The next run should be a day later",
+					st.getNextRunDate().getTime() > System.currentTimeMillis() + 60000);
+		} finally {
+			Scheduler.unscheduleTask(st);
+		}
+	}
+
+	public void testUnscheduledTaskDoesNotRun() throws Exception {
+		LatchTask task = new LatchTask(new CountDownLatch(0));
+		ScheduledTask st = Scheduler.scheduleTask(startingIn(100), task);
+		assertSame(st, Scheduler.unscheduleTask(st));
+		assertNull(Scheduler.unscheduleTask(st));
+		assertFalse(Scheduler.getScheduledTasks().contains(st));
+		assertFalse(task.started.await(300, TimeUnit.MILLISECONDS));
+	}
+
+	public void testScheduledTasksInRunOrder() throws Exception {
+		ScheduledTask later = Scheduler.scheduleTask(startingIn(200000), new LatchTask(new CountDownLatch(0)));
+		ScheduledTask sooner = Scheduler.scheduleTask(startingIn(100000), new LatchTask(new CountDownLatch(0)));
+		try {
+			List<ScheduledTask> tasks = Scheduler.getScheduledTasks();
+			assertTrue(tasks.indexOf(sooner) < tasks.indexOf(later));
+		} finally {
+			Scheduler.unscheduleTask(later);
+			Scheduler.unscheduleTask(sooner);
+		}
+	}
+
+	public void testSlowTaskDoesNotDelayOthers() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		LatchTask slow = new LatchTask(release);
+		LatchTask fast = new LatchTask(new CountDownLatch(0));
+		ScheduledTask slowTask = Scheduler.scheduleTask(startingIn(50), slow);
+		ScheduledTask fastTask = Scheduler.scheduleTask(startingIn(60), fast);
+		try {
+			assertTrue(slow.started.await(5, TimeUnit.SECONDS));
+			assertTrue(fast.started.await(5, TimeUnit.SECONDS));
+		} finally {
+			release.countDown();
+			Scheduler.unscheduleTask(slowTask);
+			Scheduler.unscheduleTask(fastTask);
+		}
+	}
+
+	/**
+	 * Every occurrence that comes due while the task is running is
+	 * dropped.
+	 */
+	public void testSkipOverrunPolicy() throws Exception {
+		CountingTask task = new CountingTask();
+		ScheduledTask st = Scheduler.scheduleTask(new BurstRecurrence(50, 5), task, OverrunPolicy.SKIP);
+		try {
+			waitForSkips(st, 4);
+			task.release.countDown();
+			waitForRuns(st, 1);
+			Thread.sleep(200);
+			assertEquals(1, task.started.get());
+			assertEquals(1, st.getRunCount());
+		} finally {
+			task.release.countDown();
+			Scheduler.unscheduleTask(st);
+		}
+	}
+
+	/**
+	 * The occurrences that come due while the task is running are
+	 * run once, as soon as the current run finishes.
+	 */
+	public void testCoalesceOverrunPolicy() throws Exception {
+		CountingTask task = new CountingTask();
+		ScheduledTask st = Scheduler.scheduleTask(new BurstRecurrence(50, 5), task, OverrunPolicy.COALESCE);
+		try {
+			// the first overrun is held back, the other three are dropped
+			waitForSkips(st, 3);
+			assertEquals(1, task.started.get());
+			task.release.countDown();
+			waitForRuns(st, 2);
+			Thread.sleep(200);
+			assertEquals(2, task.started.get());
+			assertEquals(1, task.maxRunning.get());
+		} finally {
+			task.release.countDown();
+			Scheduler.unscheduleTask(st);
+		}
+	}
+
+	/**
+	 * Occurrences that come due while the task is running start
+	 * another run right away.
+	 */
+	public void testConcurrentOverrunPolicy() throws Exception {
+		CountingTask task = new CountingTask();
+		ScheduledTask st = Scheduler.scheduleTask(new BurstRecurrence(50, 3), task, OverrunPolicy.CONCURRENT);
+		try {
+			long deadline = System.currentTimeMillis() + 5000;
+			while (task.started.get() < 3 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(3, task.started.get());
+			assertEquals(3, task.maxRunning.get());
+			task.release.countDown();
+			waitForRuns(st, 3);
+			assertEquals(0, st.getSkippedCount());
+		} finally {
+			task.release.countDown();
+			Scheduler.unscheduleTask(st);
+		}
+	}
+
+	/**
+	 * A task that throws an Error is not left marked as running, so
+	 * its next occurrence still runs.
+	 */
+	public void testTaskThrowingErrorRunsAgain() throws Exception {
+		final AtomicInteger started = new AtomicInteger();
+		Runnable task = new Runnable() {
+			public void run() {
+				if (started.incrementAndGet() == 1) {
+					throw new Error("Expected failure of the first run");
+				}
+			}
+		};
+		ScheduledTask st = Scheduler.scheduleTask(new BurstRecurrence(100, 2), task, OverrunPolicy.COALESCE);
+		try {
+			waitForRuns(st, 2);
+			assertEquals(2, started.get());
+			assertEquals(0, st.getSkippedCount());
+		} finally {
+			Scheduler.unscheduleTask(st);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class StreamCopierTest extends TestCase {
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    public void testCopiesAllBytes() throws Exception {
+        byte[] data = randomBytes(3 * StreamCopier.BUFFER_SIZE + 17);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamCopier copier = new StreamCopier(new ByteArrayInputStream(data), out, false);
+        copier.run();
+        assertTrue(copier.eofEncountered());
+        assertEquals(data.length, copier.getBytesCopied());
+        assertTrue(Arrays.equals(data, out.toByteArray()));
+    }
+
+    public void testClosesOutputStream() throws Exception {
+        final boolean[] closed = new boolean[1];
+        OutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+            }
+        };
+        new StreamCopier(new ByteArrayInputStream(new byte[0]), out, true).run();
+        assertTrue(closed[0]);
+    }
+
+    public void testCopiesBetweenFiles() throws Exception {
+        byte[] data = randomBytes(5 * StreamCopier.BUFFER_SIZE + 3);
+        File source = File.createTempFile("streamCopier", ".in");
+        File target = File.createTempFile("streamCopier", ".out");
+        source.deleteOnExit();
+        target.deleteOnExit();
+        FileOutputStream sourceOut = new FileOutputStream(source);
+        sourceOut.write(data);
+        sourceOut.close();
+
+        FileInputStream in = new FileInputStream(source);
+        // skip a few bytes to make sure copying starts at the stream's position
+        assertEquals(3, in.skip(3));
+        StreamCopier copier = new StreamCopier(in, new FileOutputStream(target), true);
+        copier.run();
+        in.close();
+
+        assertTrue(copier.eofEncountered());
+        assertEquals(data.length - 3, copier.getBytesCopied());
+        assertEquals(data.length - 3, target.length());
+        byte[] copied = new byte[data.length - 3];
+        FileInputStream targetIn = new FileInputStream(target);
+        int read = 0;
+        while (read < copied.length) {
+            read += targetIn.read(copied, read, copied.length - read);
+        }
+        targetIn.close();
+        assertTrue(Arrays.equals(Arrays.copyOfRange(data, 3, data.length), copied));
+    }
+
+    public void testCancel() throws Exception {
+        InputStream endless = new InputStream() {
+            @Override
+            public int read() {
+                return 1;
+            }
+            @Override
+            public int read(byte[] b, int off, int len) {
+                Arrays.fill(b, off, off + len, (byte) 1);
+                return len;
+            }
+        };
+        OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) {
+                // discard
+            }
+            @Override
+            public void write(byte[] b, int off, int len) {
+                // discard
+            }
+        };
+        StreamCopier copier = new StreamCopier(endless, sink, false);
+        copier.start();
+        while (copier.getBytesCopied() == 0) {
+            Thread.sleep(1);
+        }
+        copier.setCancelled(true);
+        copier.join(10000);
+        assertFalse(copier.isAlive());
+        assertTrue(copier.isCancelled());
+        assertFalse(copier.eofEncountered());
+        assertTrue(copier.getBytesCopied() > 0);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.util.reservoir;
+
+import junit.framework.TestCase;
+
+public class VitterReservoirTest extends TestCase {
+
+    /**
+     * The number of records in the data source. This is large enough that
+     * Algorithm Z takes over from Algorithm X for small samples.
+     */
+    private final int POPULATION_SIZE = 5000;
+
+    /**
+     * Counts the calls made to the data source it wraps.
+     */
+    private static class CountingDataSource extends TestingReservoirDataSource {
+        int reads;
+        int skips;
+
+        CountingDataSource(int recCount) {
+            super(recCount);
+        }
+
+        @Override
+        public Integer readNextRecord() throws ReservoirDataException {
+            reads++;
+            return super.readNextRecord();
+        }
+
+        @Override
+        public void skipRecords(int count) throws ReservoirDataException {
+            skips++;
+            super.skipRecords(count);
+        }
+    }
+
+    VitterReservoir<Integer> r;
+
+    @Override
+    protected void setUp() throws Exception {
+        r = new VitterReservoir<Integer>();
+
+        // This should ensure the tests are the same every time
+        r.setRandomSeed(1234L);
+    }
+
+    public void testSampleSmallerThanPopulation() throws Exception {
+        Integer[] s = r.getSample(new TestingReservoirDataSource(POPULATION_SIZE), 50);
+        assertEquals(50, s.length);
+        for (int i = 0; i < s.length; i++) {
+            assertTrue("Sample "+i+" outside range 0.."+(POPULATION_SIZE-1),
+                        s[i] >= 0 && s[i] < POPULATION_SIZE);
+        }
+    }
+
+    public void testSampleLargerThanPopulation() throws Exception {
+        Integer[] s = r.getSample(new TestingReservoirDataSource(100), 200);
+        assertEquals(100, s.length);
+        for (int i = 0; i < 100; i++) {
+            assertEquals("Sample "+i+" has incorrect value", i, s[i].intValue());
+        }
+    }
+
+    public void testEmptyDataSource() throws Exception {
+        assertEquals(0, r.getSample(new TestingReservoirDataSource(0), 10).length);
+    }
+
+    public void testZeroSizeSample() throws Exception {
+        assertEquals(0, r.getSample(new TestingReservoirDataSource(POPULATION_SIZE), 0).length);
+    }
+
+    /**
+     * The point of Algorithm Z is to touch the data source far fewer times
+     * than there are records.
+     */
+    public void testSkipsInRuns() throws Exception {
+        CountingDataSource ds = new CountingDataSource(POPULATION_SIZE);
+        r.getSample(ds, 10);
+        assertTrue("Too many reads: " + ds.reads, ds.reads < POPULATION_SIZE / 20);
+        assertTrue("Too many skips: " + ds.skips, ds.skips < POPULATION_SIZE / 20);
+    }
+
+    /**
+     * Every record should be about equally likely to be in the sample. With
+     * 2000 samples of 10 out of 1000 records, each record is expected 20
+     * times; the bounds are loose enough that a correct implementation
+     * practically never fails.
+     */
+    public void testSampleIsUniform() throws Exception {
+        int population = 1000;
+        int[] hits = new int[population];
+        for (int trial = 0; trial < 2000; trial++) {
+            for (Integer i : r.getSample(new TestingReservoirDataSource(population), 10)) {
+                hits[i]++;
+            }
+        }
+        int firstHalf = 0;
+        for (int i = 0; i < population; i++) {
+            assertTrue("Record " + i + " was sampled " + hits[i] + " times", hits[i] < 60);
+            if (i < population / 2) firstHalf += hits[i];
+        }
+        assertTrue("First half was sampled " + firstHalf + " times", Math.abs(firstHalf - 10000) < 500);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.util.reservoir;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+public class WeightedReservoirTest extends TestCase {
+
+    /**
+     * A data source of the values from start (inclusive) to end (exclusive).
+     */
+    private static class RangeDataSource implements ReservoirDataSource<Integer> {
+        private int next;
+        private final int end;
+
+        RangeDataSource(int start, int end) {
+            this.next = start;
+            this.end = end;
+        }
+
+        public Class<Integer> getElementType() {
+            return Integer.class;
+        }
+
+        public boolean hasNext() {
+            return next < end;
+        }
+
+        public Integer readNextRecord() throws ReservoirDataException {
+            if (next >= end) throw new ReservoirDataException("Already after last record");
+            return next++;
+        }
+
+        public void skipRecords(int count) {
+            next = (int) Math.min((long) next + count, end);
+        }
+    }
+
+    WeightedReservoir<Integer> r;
+
+    @Override
+    protected void setUp() throws Exception {
+        r = new WeightedReservoir<Integer>();
+        r.setRandomSeed(1234L);
+    }
+
+    public void testSampleSmallerThanPopulation() throws Exception {
+        Integer[] s = r.getSample(new TestingReservoirDataSource(1000), 50);
+        assertEquals(50, s.length);
+        Set<Integer> distinct = new HashSet<Integer>();
+        for (Integer i : s) {
+            assertTrue(i >= 0 && i < 1000);
+            distinct.add(i);
+        }
+        assertEquals(50, distinct.size());
+    }
+
+    public void testSampleLargerThanPopulation() throws Exception {
+        Integer[] s = r.getSample(new TestingReservoirDataSource(100), 200);
+        assertEquals(100, s.length);
+        Set<Integer> distinct = new HashSet<Integer>();
+        for (Integer i : s) distinct.add(i);
+        assertEquals(100, distinct.size());
+    }
+
+    public void testZeroWeightNeverSampled() throws Exception {
+        r = new WeightedReservoir<Integer>(new WeightedReservoir.Weigher<Integer>() {
+            public double getWeight(Integer record) {
+                return record % 2 == 0 ? 1 : 0;
+            }
+        });
+        r.setRandomSeed(1234L);
+        Integer[] s = r.getSample(new TestingReservoirDataSource(1000), 20);
+        assertEquals(20, s.length);
+        for (Integer i : s) {
+            assertEquals("Odd records have no weight", 0, i % 2);
+        }
+    }
+
+    public void testHeavyRecordsPreferred() throws Exception {
+        r = new WeightedReservoir<Integer>(new WeightedReservoir.Weigher<Integer>() {
+            public double getWeight(Integer record) {
+                return record < 100 ? 100 : 1;
+            }
+        });
+        r.setRandomSeed(1234L);
+        int heavy = 0;
+        for (int trial = 0; trial < 100; trial++) {
+            for (Integer i : r.getSample(new TestingReservoirDataSource(1000), 10)) {
+                if (i < 100) heavy++;
+            }
+        }
+        // the first 100 records carry over 90% of the weight
+        assertTrue("Only " + heavy + " of 1000 sampled records were heavy", heavy > 800);
+    }
+
+    public void testMergedPartitionsAreUniform() throws Exception {
+        int[] hits = new int[1000];
+        for (int trial = 0; trial < 2000; trial++) {
+            WeightedReservoir.Sample<Integer> small = r.sample(new RangeDataSource(0, 100), 10);
+            WeightedReservoir.Sample<Integer> large = r.sample(new RangeDataSource(100, 1000), 10);
+            small.merge(large);
+            assertEquals(10, small.getRecordsSampled());
+            for (Integer i : small.getRecords()) {
+                hits[i]++;
+            }
+        }
+        int smallPartition = 0;
+        for (int i = 0; i < 100; i++) smallPartition += hits[i];
+        // 10% of the population, so about 2000 of the 20000 sampled records
+        assertTrue("Small partition was sampled " + smallPartition + " times",
+                Math.abs(smallPartition - 2000) < 250);
+    }
+
+    public void testParallelPartitions() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<ReservoirDataSource<Integer>> partitions = new ArrayList<ReservoirDataSource<Integer>>();
+            for (int i = 0; i < 4; i++) {
+                partitions.add(new RangeDataSource(i * 250, (i + 1) * 250));
+            }
+            Integer[] s = r.getSample(partitions, 40, executor);
+            assertEquals(40, s.length);
+            Set<Integer> distinct = new HashSet<Integer>();
+            for (Integer i : s) distinct.add(i);
+            assertEquals(40, distinct.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testParallelFailureReported() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<ReservoirDataSource<Integer>> partitions = new ArrayList<ReservoirDataSource<Integer>>();
+            partitions.add(new RangeDataSource(0, 100));
+            partitions.add(new RangeDataSource(0, 100) {
+                @Override
+                public Integer readNextRecord() throws ReservoirDataException {
+                    throw new ReservoirDataException("broken partition");
+                }
+            });
+            try {
+                r.getSample(partitions, 10, executor);
+                fail("The partition's exception was lost");
+            } catch (ReservoirDataException e) {
+                assertEquals("broken partition", e.getMessage());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
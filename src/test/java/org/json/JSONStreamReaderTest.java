@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.json;
+
+import java.io.Reader;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.json.JSONStreamReader.Token;
+
+public class JSONStreamReaderTest extends TestCase {
+
+    /**
+     * A reader that returns at most one character per read so every token
+     * crosses a buffer refill.
+     */
+    private static class TrickleReader extends StringReader {
+        TrickleReader(String s) {
+            super(s);
+        }
+        @Override
+        public int read(char[] cbuf, int off, int len) throws java.io.IOException {
+            return super.read(cbuf, off, Math.min(len, 1));
+        }
+    }
+
+    private static final String TEXT = 
+        "[{\"M\":\"persistProperty\", \"uuid\":\"a\\\"b\\u00e9\", \"NV\":12, \"big\":12345678901," +
+        " \"d\":1.5, \"t\":true, \"n\":null, \"nested\":{\"x\":[1,{\"y\":\"z\"}]}}, [], {}]";
+
+    private void assertReadsText(Reader source) throws Exception {
+        JSONStreamReader reader = new JSONStreamReader(source);
+        reader.beginArray();
+        reader.beginObject();
+        assertEquals("M", reader.nextName());
+        assertEquals("persistProperty", reader.nextString());
+        assertEquals("uuid", reader.nextName());
+        assertEquals("a\"b\u00e9", reader.nextString());
+        assertEquals("NV", reader.nextName());
+        assertEquals(Token.NUMBER, reader.peek());
+        assertEquals(12, reader.nextInt());
+        assertEquals("big", reader.nextName());
+        assertEquals(12345678901L, reader.nextLong());
+        assertEquals("d", reader.nextName());
+        assertEquals(1.5, reader.nextDouble());
+        assertEquals("t", reader.nextName());
+        assertTrue(reader.nextBoolean());
+        assertEquals("n", reader.nextName());
+        reader.nextNull();
+        assertEquals("nested", reader.nextName());
+        reader.skipValue();
+        assertFalse(reader.hasNext());
+        reader.endObject();
+        reader.beginArray();
+        reader.endArray();
+        reader.beginObject();
+        reader.endObject();
+        reader.endArray();
+        assertEquals(Token.END_DOCUMENT, reader.peek());
+    }
+
+    public void testReadTokens() throws Exception {
+        assertReadsText(new StringReader(TEXT));
+    }
+
+    public void testReadTokensAcrossRefills() throws Exception {
+        assertReadsText(new TrickleReader(TEXT));
+    }
+
+    /**
+     * The values read must be the same as the ones a {@link JSONTokener}
+     * produces so code can switch between the two.
+     */
+    public void testNextValueMatchesTokener() throws Exception {
+        JSONArray expected = new JSONArray(new JSONTokener(TEXT));
+        Object actual = new JSONStreamReader(TEXT).nextValue();
+        assertEquals(expected.toString(), actual.toString());
+        JSONObject first = ((JSONArray) actual).getJSONObject(0);
+        assertEquals(Integer.class, first.get("NV").getClass());
+        assertEquals(Long.class, first.get("big").getClass());
+        assertEquals(Double.class, first.get("d").getClass());
+        assertSame(JSONObject.NULL, first.get("n"));
+    }
+
+    public void testRepeatedNamesShareInstances() throws Exception {
+        JSONStreamReader reader = new JSONStreamReader("[{\"uuid\":1},{\"uuid\":2}]");
+        reader.beginArray();
+        reader.beginObject();
+        String first = reader.nextName();
+        reader.skipValue();
+        reader.endObject();
+        reader.beginObject();
+        assertSame(first, reader.nextName());
+    }
+
+    public void testLenientForms() throws Exception {
+        JSONStreamReader reader = new JSONStreamReader("{'a'=>'b'; \"c\":[1,2,],}");
+        reader.beginObject();
+        assertEquals("a", reader.nextName());
+        assertEquals("b", reader.nextString());
+        assertEquals("c", reader.nextName());
+        reader.beginArray();
+        assertEquals(1, reader.nextInt());
+        assertEquals(2, reader.nextInt());
+        reader.endArray();
+        reader.endObject();
+    }
+
+    /**
+     * A document nested in a string is parsed straight out of the enclosing
+     * reader, which continues after the closing quote.
+     */
+    public void testNestedDocumentInString() throws Exception {
+        String text = "{\"data\":\"[{\\\"a\\\":\\\"b\\\\u00e9\\\"}]\", \"after\":1}";
+        for (Reader source : new Reader[] { new StringReader(text), new TrickleReader(text) }) {
+            JSONStreamReader reader = new JSONStreamReader(source);
+            reader.beginObject();
+            assertEquals("data", reader.nextName());
+            JSONStreamReader nested = new JSONStreamReader(reader.nextStringReader());
+            nested.beginArray();
+            nested.beginObject();
+            assertEquals("a", nested.nextName());
+            assertEquals("b\u00e9", nested.nextString());
+            nested.endObject();
+            nested.endArray();
+            assertEquals(Token.END_DOCUMENT, nested.peek());
+            assertEquals("after", reader.nextName());
+            assertEquals(1, reader.nextInt());
+            reader.endObject();
+        }
+    }
+
+    public void testClosingStringReaderSkipsRest() throws Exception {
+        JSONStreamReader reader = new JSONStreamReader("[\"abc\\\"def\", 2]");
+        reader.beginArray();
+        Reader value = reader.nextStringReader();
+        assertEquals('a', value.read());
+        value.close();
+        assertEquals(-1, value.read());
+        assertEquals(2, reader.nextInt());
+        reader.endArray();
+    }
+
+    public void testSyntaxErrors() throws Exception {
+        try {
+            JSONStreamReader reader = new JSONStreamReader("[\"unterminated");
+            reader.beginArray();
+            reader.nextString();
+            fail("The string was not terminated");
+        } catch (JSONException e) {
+            // expected
+        }
+        try {
+            JSONStreamReader reader = new JSONStreamReader("[1 2]");
+            reader.beginArray();
+            reader.nextInt();
+            reader.nextInt();
+            fail("The values were not separated");
+        } catch (JSONException e) {
+            assertTrue(e.getMessage().contains("at character"));
+        }
+        try {
+            new JSONStreamReader("{}").beginArray();
+            fail("An object is not an array");
+        } catch (JSONException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+public class JSONStreamWriterTest extends TestCase {
+
+    public void testWriteTokens() throws Exception {
+        StringWriter out = new StringWriter();
+        new JSONStreamWriter(out)
+            .beginArray()
+                .beginObject()
+                    .name("a").value("x\"</y")
+                    .name("b").value(3)
+                    .name("c").value(2.50)
+                    .name("d").value(true)
+                    .name("e").nullValue()
+                .endObject()
+                .beginArray().endArray()
+            .endArray();
+        assertEquals("[{\"a\":\"x\\\"<\\/y\",\"b\":3,\"c\":2.5,\"d\":true,\"e\":null},[]]", out.toString());
+    }
+
+    /**
+     * Existing objects must be written exactly as their toString methods
+     * write them.
+     */
+    public void testValuesMatchToString() throws Exception {
+        JSONObject object = new JSONObject();
+        object.put("string", "tab\there \u0085 \u2001 \u00e9");
+        object.put("int", 42);
+        object.put("long", 12345678901L);
+        object.put("double", 1.0);
+        object.put("bigDouble", 1e15);
+        object.put("null", JSONObject.NULL);
+        object.put("array", new JSONArray().put(1).put("two").put(new JSONObject().put("three", 3)));
+        StringWriter out = new StringWriter();
+        new JSONStreamWriter(out).value(object);
+        assertEquals(object.toString(), out.toString());
+    }
+
+    public void testAsciiOnly() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JSONStreamWriter writer = new JSONStreamWriter(out);
+        writer.value("caf\u00e9 \u4e2d");
+        writer.flush();
+        String text = new String(out.toByteArray(), "US-ASCII");
+        assertEquals("\"caf\\u00e9 \\u4e2d\"", text);
+        assertEquals("caf\u00e9 \u4e2d", new JSONStreamReader(text).nextString());
+    }
+
+    public void testMisplacedTokens() throws Exception {
+        JSONStreamWriter writer = new JSONStreamWriter(new StringWriter());
+        writer.beginObject();
+        try {
+            writer.value("no name");
+            fail("Values in objects need a name");
+        } catch (JSONException e) {
+            // expected
+        }
+        try {
+            writer.endArray();
+            fail("The object is not an array");
+        } catch (JSONException e) {
+            // expected
+        }
+        writer.endObject();
+        try {
+            writer.beginArray();
+            fail("Only one value can be written");
+        } catch (JSONException e) {
+            // expected
+        }
+    }
+}